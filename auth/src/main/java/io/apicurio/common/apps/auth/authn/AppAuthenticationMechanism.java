@@ -22,6 +22,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
@@ -51,6 +52,9 @@ import io.quarkus.vertx.http.runtime.security.HttpAuthenticationMechanism;
 import io.quarkus.vertx.http.runtime.security.HttpCredentialTransport;
 import io.quarkus.vertx.http.runtime.security.QuarkusHttpUser;
 import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
 import io.vertx.ext.web.RoutingContext;
 
 public abstract class AppAuthenticationMechanism implements HttpAuthenticationMechanism {
@@ -98,12 +102,9 @@ public abstract class AppAuthenticationMechanism implements HttpAuthenticationMe
             if (basicAuthEnabled) {
                 final Pair<String, String> clientCredentials = CredentialsHelper.extractCredentialsFromContext(context);
                 if (null != clientCredentials) {
-                    try {
-                        return authenticateWithClientCredentials(clientCredentials, context, identityProviderManager);
-                    } catch (NotAuthorizedException ex) {
-                        //Ignore exception, wrong credentials passed
-                        throw new AuthenticationFailedException();
-                    }
+                    return authenticateWithClientCredentials(clientCredentials, context, identityProviderManager)
+                            //Ignore exception, wrong credentials passed
+                            .onFailure(NotAuthorizedException.class).transform(ex -> new AuthenticationFailedException());
                 } else {
                     return customAuthentication(context, identityProviderManager);
                 }
@@ -122,20 +123,16 @@ public abstract class AppAuthenticationMechanism implements HttpAuthenticationMe
         } else {
             final Pair<String, String> credentialsFromContext = CredentialsHelper.extractCredentialsFromContext(context);
             if (credentialsFromContext != null) {
-                try (OidcAuth oidcAuth = new OidcAuth(httpClient, clientId, clientSecret.get())) {
-                    String jwtToken = oidcAuth.obtainAccessTokenPasswordGrant(credentialsFromContext.getLeft(), credentialsFromContext.getRight());
-                    if (jwtToken != null) {
-                        //If we manage to get a token from basic credentials, try to authenticate it using the fetched token using the identity provider manager
-                        return identityProviderManager
-                                .authenticate(new TokenAuthenticationRequest(new AccessTokenCredential(jwtToken, context)));
+                return authenticateWithToken(() -> {
+                    try (OidcAuth oidcAuth = new OidcAuth(httpClient, clientId, clientSecret.get())) {
+                        return oidcAuth.obtainAccessTokenPasswordGrant(credentialsFromContext.getLeft(), credentialsFromContext.getRight());
                     }
-                }
+                }, context, identityProviderManager);
             } else {
                 //If we cannot get a token, then try to authenticate using oidc provider as last resource
                 return oidcAuthenticationMechanism.authenticate(context, identityProviderManager);
             }
         }
-        return Uni.createFrom().nullItem();
     }
 
     private void setAuditLogger(RoutingContext context) {
@@ -187,10 +184,26 @@ public abstract class AppAuthenticationMechanism implements HttpAuthenticationMe
     }
 
     private Uni<SecurityIdentity> authenticateWithClientCredentials(Pair<String, String> clientCredentials, RoutingContext context, IdentityProviderManager identityProviderManager) {
-        try (OidcAuth oidcAuth = new OidcAuth(httpClient, clientCredentials.getLeft(), clientCredentials.getRight())) {
-            final String jwtToken = oidcAuth.authenticate();//If we manage to get a token from basic credentials, try to authenticate it using the fetched token using the identity provider manager
-            return identityProviderManager
-                    .authenticate(new TokenAuthenticationRequest(new AccessTokenCredential(jwtToken, context)));
+        return authenticateWithToken(() -> {
+            try (OidcAuth oidcAuth = new OidcAuth(httpClient, clientCredentials.getLeft(), clientCredentials.getRight())) {
+                return oidcAuth.authenticate();
+            }
+        }, context, identityProviderManager);
+    }
+
+    /**
+     * Obtains a token from the auth server on a worker thread (the call blocks), then resumes on the
+     * request's Vert.x context to authenticate it.
+     */
+    private Uni<SecurityIdentity> authenticateWithToken(Supplier<String> tokenSupplier, RoutingContext context, IdentityProviderManager identityProviderManager) {
+        Context vertxContext = Vertx.currentContext();
+        Uni<String> token = Uni.createFrom().item(tokenSupplier)
+                .runSubscriptionOn(Infrastructure.getDefaultWorkerPool());
+        if (vertxContext != null) {
+            token = token.emitOn(task -> vertxContext.runOnContext(v -> task.run()));
         }
+        //If we manage to get a token from basic credentials, try to authenticate it using the fetched token using the identity provider manager
+        return token.onItem().ifNotNull().transformToUni(jwtToken -> identityProviderManager
+                .authenticate(new TokenAuthenticationRequest(new AccessTokenCredential(jwtToken, context))));
     }
 }
@@ -16,8 +16,10 @@
 
 package apicurio.common.app.components.config.index.deployment;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.TreeMap;
 
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.jandex.AnnotationInstance;
@@ -37,13 +39,21 @@ import io.quarkus.deployment.annotations.BuildStep;
 import io.quarkus.deployment.annotations.ExecutionTime;
 import io.quarkus.deployment.annotations.Record;
 import io.quarkus.runtime.RuntimeValue;
+import io.smallrye.config.SmallRyeConfig;
+import io.smallrye.config.SmallRyeConfigBuilder;
 
 class ConfigIndexProcessor {
 
+    /**
+     * An empty config, only used for its built-in converters.
+     */
+    private static final SmallRyeConfig CONVERTERS = new SmallRyeConfigBuilder().build();
+
     @BuildStep
     @Record(ExecutionTime.RUNTIME_INIT)
     void syntheticBean(DynamicPropertiesInfoRecorder recorder, BeanDiscoveryFinishedBuildItem beanDiscovery, BuildProducer<SyntheticBeanBuildItem> syntheticBeans) {
-        List<DynamicConfigPropertyDef> dynamicProperties = beanDiscovery.getInjectionPoints()
+        Map<String, DynamicConfigPropertyDef> propertiesByName = new TreeMap<>();
+        beanDiscovery.getInjectionPoints()
                 .stream()
                 .filter(ConfigIndexProcessor::isDynamicConfigProperty)
                 .map(injectionPointInfo -> {
@@ -81,7 +91,15 @@ class ConfigIndexProcessor {
                         throw new RuntimeException(e);
                     }
                 })
-                .collect(Collectors.toList());
+                .forEach(def -> propertiesByName.putIfAbsent(def.getName(), def));
+
+        // Properties are sorted by name, so the ordinal assigned to each is stable across builds.
+        List<DynamicConfigPropertyDef> dynamicProperties = new ArrayList<>(propertiesByName.size());
+        for (DynamicConfigPropertyDef def : propertiesByName.values()) {
+            def.setOrdinal(dynamicProperties.size());
+            def.setTypedDefaultValue(parseDefaultValue(def.getType(), def.getDefaultValue()));
+            dynamicProperties.add(def);
+        }
 
         final RuntimeValue<DynamicConfigPropertyList> dynamicPropertiesHolderRuntimeValue = recorder.initializePropertiesInfo(
                 dynamicProperties);
@@ -93,6 +111,27 @@ class ConfigIndexProcessor {
                 .done());
     }
 
+    /**
+     * Converts the default value of simple property types at build time, using the same (SmallRye)
+     * converters as the runtime config, so that e.g. "on" or "yes" is true for a Boolean.  Returns null
+     * for any other type, or for values that cannot be parsed (those defaults are converted at startup
+     * instead).
+     */
+    static Object parseDefaultValue(Class<?> type, String defaultValue) {
+        if (type == String.class) {
+            return defaultValue;
+        }
+        if (type != Integer.class && type != Long.class && type != Boolean.class && type != Double.class) {
+            return null;
+        }
+        try {
+            return CONVERTERS.convert(defaultValue, type);
+        } catch (IllegalArgumentException e) {
+            // Fall through - will be converted at startup.
+        }
+        return null;
+    }
+
     private static boolean isDynamicConfigProperty(InjectionPointInfo injectionPointInfo) {
         return injectionPointInfo.getRequiredQualifier(DotName.createSimple(ConfigProperty.class.getName())) != null && injectionPointInfo.isField() &&
                 injectionPointInfo.getTarget().asField().annotation(DotName.createSimple(Dynamic.class.getName())) != null;
@@ -0,0 +1,32 @@
+package apicurio.common.app.components.config.index.deployment;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ConfigIndexProcessorTest {
+
+    @Test
+    public void testParseBooleanDefaultValueLikeRuntimeConfig() {
+        for (String value : new String[] { "true", "TRUE", "on", "yes", "y", "1", " true " }) {
+            Assertions.assertEquals(Boolean.TRUE, ConfigIndexProcessor.parseDefaultValue(Boolean.class, value), value);
+        }
+        for (String value : new String[] { "false", "off", "no", "0", "whatever" }) {
+            Assertions.assertEquals(Boolean.FALSE, ConfigIndexProcessor.parseDefaultValue(Boolean.class, value), value);
+        }
+    }
+
+    @Test
+    public void testParseNumericDefaultValue() {
+        Assertions.assertEquals(17, ConfigIndexProcessor.parseDefaultValue(Integer.class, " 17 "));
+        Assertions.assertEquals(17L, ConfigIndexProcessor.parseDefaultValue(Long.class, "17"));
+        Assertions.assertEquals(1.5d, ConfigIndexProcessor.parseDefaultValue(Double.class, "1.5"));
+        // Converted at startup instead
+        Assertions.assertNull(ConfigIndexProcessor.parseDefaultValue(Integer.class, "abc"));
+        Assertions.assertNull(ConfigIndexProcessor.parseDefaultValue(java.time.Duration.class, "PT1S"));
+    }
+
+    @Test
+    public void testParseStringDefaultValue() {
+        Assertions.assertEquals(" x ", ConfigIndexProcessor.parseDefaultValue(String.class, " x "));
+    }
+}
@@ -119,6 +119,13 @@ public class ConfigIndexResource {
         this.storage.setConfigProperty(dto);
     }
 
+    @Path("/update/string/{value}")
+    @GET
+    public void updateStringProperty(@PathParam("value") String value) {
+        DynamicConfigPropertyDto dto = new DynamicConfigPropertyDto("app.properties.dynamic.string", value);
+        this.storage.setConfigProperty(dto);
+    }
+
     private String getPropertyValue(String propertyName) {
         Optional<String> optionalValue = config.getOptionalValue(propertyName, String.class);
         return optionalValue.orElseGet(() -> this.dynamicPropertyIndex.getProperty(propertyName).getDefaultValue());
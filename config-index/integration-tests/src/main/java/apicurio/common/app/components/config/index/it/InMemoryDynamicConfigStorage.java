@@ -19,9 +19,13 @@ package apicurio.common.app.components.config.index.it;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Event;
+import javax.inject.Inject;
 
+import io.apicurio.common.apps.config.DynamicConfigChangedEvent;
 import io.apicurio.common.apps.config.DynamicConfigPropertyDto;
 import io.apicurio.common.apps.config.DynamicConfigStorage;
 
@@ -30,6 +34,9 @@ public class InMemoryDynamicConfigStorage implements DynamicConfigStorage {
 
     private final Map<String, String> properties = new HashMap<>();
 
+    @Inject
+    Event<DynamicConfigChangedEvent> configChangedEvent;
+
     @Override
     public DynamicConfigPropertyDto getConfigProperty(String propertyName) {
         String value = properties.get(propertyName);
@@ -38,16 +45,20 @@ public class InMemoryDynamicConfigStorage implements DynamicConfigStorage {
 
     @Override
     public void setConfigProperty(DynamicConfigPropertyDto propertyDto) {
-        properties.put(propertyDto.getName(), propertyDto.getValue());
+        String oldValue = properties.put(propertyDto.getName(), propertyDto.getValue());
+        configChangedEvent.fire(new DynamicConfigChangedEvent("_", propertyDto.getName(), oldValue, propertyDto.getValue(), false));
     }
 
     @Override
     public void deleteConfigProperty(String propertyName) {
-        properties.remove(propertyName);
+        String oldValue = properties.remove(propertyName);
+        configChangedEvent.fire(new DynamicConfigChangedEvent("_", propertyName, oldValue, null, false));
     }
 
     @Override
     public List<DynamicConfigPropertyDto> getConfigProperties() {
-        return null;
+        return properties.entrySet().stream()
+                .map(entry -> new DynamicConfigPropertyDto(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
     }
 }
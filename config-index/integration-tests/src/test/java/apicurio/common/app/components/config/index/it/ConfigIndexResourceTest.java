@@ -2,6 +2,9 @@ package apicurio.common.app.components.config.index.it;
 
 import static io.restassured.RestAssured.given;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -51,4 +54,39 @@ public class ConfigIndexResourceTest {
         Assertions.assertTrue(acceptedProperties.hasProperty("app.properties.dynamic.bool.dep"));
         Assertions.assertFalse(acceptedProperties.hasProperty("property.does.not.exist"));
     }
+
+    @Test
+    public void testListDynamicConfigWithETag() throws Exception {
+        String etag = given()
+                .when().get("/config/list")
+                .then().statusCode(200)
+                .extract().header("ETag");
+        Assertions.assertNotNull(etag);
+
+        // Unchanged config results in a 304
+        given().header("If-None-Match", etag)
+                .when().get("/config/list")
+                .then().statusCode(304);
+
+        // Long-poll times out with a 304 when nothing changes
+        given().header("If-None-Match", etag)
+                .when().get("/config/list?wait=1")
+                .then().statusCode(304);
+
+        // Long-poll is woken up by a change
+        CompletableFuture<String> poll = CompletableFuture.supplyAsync(() -> given().header("If-None-Match", etag)
+                .when().get("/config/list?wait=30")
+                .then().statusCode(200)
+                .extract().header("ETag"));
+        Thread.sleep(500);
+        given().when().get("/config/update/string/changed").then().statusCode(204);
+        String newETag = poll.get(10, TimeUnit.SECONDS);
+        Assertions.assertNotEquals(etag, newETag);
+
+        String value = given().header("If-None-Match", etag)
+                .when().get("/config/list")
+                .then().statusCode(200)
+                .extract().path("find { it.name == 'app.properties.dynamic.string' }.value");
+        Assertions.assertEquals("changed", value);
+    }
 }
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.config;
+
+/**
+ * Listener that can be registered with a {@link DynamicConfigStorage} to be notified when
+ * dynamic configuration properties change.  Useful for components that derive state from a
+ * property (e.g. a pool size or a limit) and want to recompute it once per change instead of
+ * once per call.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+@FunctionalInterface
+public interface DynamicConfigChangeListener {
+
+    /**
+     * Called after a dynamic config property has changed.
+     * @param event the change event
+     */
+    public void onConfigPropertyChanged(DynamicConfigChangedEvent event);
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apicurio.common.apps.config;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+/**
+ * A thread safe list of {@link DynamicConfigChangeListener}s.  The shared instance backs the default
+ * implementation of {@link DynamicConfigStorage#addConfigChangeListener(DynamicConfigChangeListener)}:
+ * its listeners are notified of every {@link DynamicConfigChangedEvent} fired as a CDI event, once the
+ * transaction that made the change (if any) has committed.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+public class DynamicConfigChangeListeners {
+
+    private static final DynamicConfigChangeListeners SHARED = new DynamicConfigChangeListeners();
+
+    private final List<DynamicConfigChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @return the listeners registered through the default {@link DynamicConfigStorage} methods
+     */
+    public static DynamicConfigChangeListeners shared() {
+        return SHARED;
+    }
+
+    /**
+     * @param listener the listener to add
+     */
+    public void add(DynamicConfigChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener the listener to remove
+     */
+    public void remove(DynamicConfigChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return true if no listener is registered
+     */
+    public boolean isEmpty() {
+        return listeners.isEmpty();
+    }
+
+    /**
+     * Notifies every listener of the given event.  A listener that fails does not prevent the others
+     * from being notified.
+     * @param event the change event
+     * @param errorHandler called with the listener and the error when a listener fails
+     */
+    public void notifyListeners(DynamicConfigChangedEvent event, BiConsumer<DynamicConfigChangeListener, Exception> errorHandler) {
+        for (DynamicConfigChangeListener listener : listeners) {
+            try {
+                listener.onConfigPropertyChanged(event);
+            } catch (Exception e) {
+                errorHandler.accept(listener, e);
+            }
+        }
+    }
+
+}
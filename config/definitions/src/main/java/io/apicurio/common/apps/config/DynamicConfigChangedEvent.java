@@ -0,0 +1,115 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.config;
+
+/**
+ * Event fired (both as a CDI event and to any registered {@link DynamicConfigChangeListener})
+ * when the value of a dynamic configuration property changes.  Events are fired locally when
+ * a property is written or deleted on this node (once the change is committed), and remotely
+ * when a storage implementation detects that the property was changed by another node.
+ * <p>
+ * A bulk change (e.g. an import) of any number of properties of a tenant is reported with a
+ * single event without a property name (see {@link #isBulk()}): listeners should re-read the
+ * tenant's config rather than apply the change.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+public class DynamicConfigChangedEvent {
+
+    private final String tenantId;
+    private final String name;
+    private final String oldValue;
+    private final String newValue;
+    private final boolean remote;
+
+    /**
+     * Constructor.
+     * @param tenantId the tenant that owns the property
+     * @param name the name of the property
+     * @param oldValue the previous value (null if it was not set or is not known)
+     * @param newValue the new value (null if the property was deleted)
+     * @param remote true if the change was made on another node
+     */
+    public DynamicConfigChangedEvent(String tenantId, String name, String oldValue, String newValue, boolean remote) {
+        this.tenantId = tenantId;
+        this.name = name;
+        this.oldValue = oldValue;
+        this.newValue = newValue;
+        this.remote = remote;
+    }
+
+    /**
+     * Constructor for a bulk change of (any number of) properties of a tenant.
+     * @param tenantId the tenant that owns the properties
+     * @param remote true if the change was made on another node
+     */
+    public DynamicConfigChangedEvent(String tenantId, boolean remote) {
+        this(tenantId, null, null, null, remote);
+    }
+
+    /**
+     * @return the tenantId
+     */
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    /**
+     * @return the name, or null for a bulk change
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the oldValue
+     */
+    public String getOldValue() {
+        return oldValue;
+    }
+
+    /**
+     * @return the newValue
+     */
+    public String getNewValue() {
+        return newValue;
+    }
+
+    /**
+     * @return true if several properties of the tenant changed, and the values are not known
+     */
+    public boolean isBulk() {
+        return name == null;
+    }
+
+    /**
+     * @return true if the change was detected on another node
+     */
+    public boolean isRemote() {
+        return remote;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "DynamicConfigChangedEvent [tenantId=" + tenantId + ", name=" + name + ", oldValue=" + oldValue
+                + ", newValue=" + newValue + ", remote=" + remote + "]";
+    }
+
+}
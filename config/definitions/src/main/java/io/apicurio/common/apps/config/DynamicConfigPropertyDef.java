@@ -30,6 +30,8 @@ public class DynamicConfigPropertyDef {
     private String label;
     private String description;
     private String[] requires;
+    private int ordinal;
+    private Object typedDefaultValue;
 
     /**
      * Constructor.
@@ -189,4 +191,33 @@ public class DynamicConfigPropertyDef {
         this.requires = requires;
     }
 
+    /**
+     * @return the ordinal (a stable, dense index assigned to each dynamic property at build time)
+     */
+    public int getOrdinal() {
+        return ordinal;
+    }
+
+    /**
+     * @param ordinal the ordinal to set
+     */
+    public void setOrdinal(int ordinal) {
+        this.ordinal = ordinal;
+    }
+
+    /**
+     * @return the default value already converted to the property type, or null if it could not be
+     *         converted at build time
+     */
+    public Object getTypedDefaultValue() {
+        return typedDefaultValue;
+    }
+
+    /**
+     * @param typedDefaultValue the typedDefaultValue to set
+     */
+    public void setTypedDefaultValue(Object typedDefaultValue) {
+        this.typedDefaultValue = typedDefaultValue;
+    }
+
 }
@@ -23,6 +23,11 @@ import java.util.List;
  */
 public interface DynamicConfigStorage {
 
+    /**
+     * The id of the default tenant, also used by storages that are not multi-tenant.
+     */
+    public static final String DEFAULT_TENANT_ID = "_";
+
     /**
      * Should return the stored config property or null if not found.
      * @param propertyName the name of a property
@@ -48,4 +53,44 @@ public interface DynamicConfigStorage {
      */
     public List<DynamicConfigPropertyDto> getConfigProperties();
 
+    /**
+     * Returns the id of the tenant whose properties are currently read and written (the tenant of the
+     * current request).  The default implementation is for storages that are not multi-tenant.
+     * @return the tenant id
+     */
+    public default String getCurrentTenantId() {
+        return DEFAULT_TENANT_ID;
+    }
+
+    /**
+     * Registers a listener that will be notified whenever a dynamic config property changes,
+     * either locally or (when the storage supports it) on another node.  Listeners are notified
+     * after the change has been committed.  The default implementation registers the listener with
+     * {@link DynamicConfigChangeListeners#shared()}, which is notified of the
+     * {@link DynamicConfigChangedEvent}s the storage fires as CDI events.
+     * @param listener the listener to register
+     */
+    public default void addConfigChangeListener(DynamicConfigChangeListener listener) {
+        DynamicConfigChangeListeners.shared().add(listener);
+    }
+
+    /**
+     * Removes a previously registered config change listener.
+     * @param listener the listener to remove
+     */
+    public default void removeConfigChangeListener(DynamicConfigChangeListener listener) {
+        DynamicConfigChangeListeners.shared().remove(listener);
+    }
+
+    /**
+     * Pre-loads (typically into a cache) the dynamic config of up to the given number of the most
+     * recently active tenants, so that the first requests after a restart do not pay for cold
+     * reads.  The default implementation does nothing.
+     * @param maxTenants the maximum number of tenants to load
+     * @return the number of tenants actually loaded
+     */
+    public default int warmUp(int maxTenants) {
+        return 0;
+    }
+
 }
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.config;
+
+/**
+ * A dynamic config property along with the tenant that owns it and the time it was last
+ * modified.  Used when reading config across tenants.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+public class TenantDynamicConfigPropertyDto extends DynamicConfigPropertyDto {
+
+    private String tenantId;
+    private long modifiedOn;
+
+    /**
+     * Constructor.
+     */
+    public TenantDynamicConfigPropertyDto() {
+    }
+
+    /**
+     * Constructor.
+     * @param tenantId the tenant that owns the property
+     * @param name the name of the property
+     * @param value the value of the property
+     * @param modifiedOn the time the property was last modified (epoch millis)
+     */
+    public TenantDynamicConfigPropertyDto(String tenantId, String name, String value, long modifiedOn) {
+        super(name, value);
+        this.tenantId = tenantId;
+        this.modifiedOn = modifiedOn;
+    }
+
+    /**
+     * @return the tenantId
+     */
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    /**
+     * @param tenantId the tenantId to set
+     */
+    public void setTenantId(String tenantId) {
+        this.tenantId = tenantId;
+    }
+
+    /**
+     * @return the modifiedOn
+     */
+    public long getModifiedOn() {
+        return modifiedOn;
+    }
+
+    /**
+     * @param modifiedOn the modifiedOn to set
+     */
+    public void setModifiedOn(long modifiedOn) {
+        this.modifiedOn = modifiedOn;
+    }
+
+    /**
+     * @see io.apicurio.common.apps.config.DynamicConfigPropertyDto#toString()
+     */
+    @Override
+    public String toString() {
+        return "TenantDynamicConfigPropertyDto [tenantId=" + tenantId + ", name=" + getName() + ", value=" + getValue()
+                + ", modifiedOn=" + modifiedOn + "]";
+    }
+
+}
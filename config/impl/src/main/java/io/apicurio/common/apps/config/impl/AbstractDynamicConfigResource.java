@@ -0,0 +1,246 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.config.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.eclipse.microprofile.config.ConfigProvider;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+
+import io.apicurio.common.apps.config.DynamicConfigPropertyDef;
+import io.apicurio.common.apps.config.DynamicConfigPropertyDto;
+import io.apicurio.common.apps.config.DynamicConfigPropertyIndex;
+import io.apicurio.common.apps.config.DynamicConfigStorage;
+import io.quarkus.arc.Arc;
+import io.quarkus.arc.ManagedContext;
+
+/**
+ * Base class for a JAX-RS resource that lists the accepted dynamic config properties along with
+ * their current values.  Applications subclass it and annotate the subclass with {@code @Path}.
+ * <p>
+ * Responses carry a strong ETag derived from the listed properties and values, so it is the same
+ * on every node.  It is only re-computed when the tenant's config version changes (see
+ * {@link DynamicConfigVersionTracker}), and a request whose {@code If-None-Match} header matches
+ * the current ETag gets a {@code 304} without the config being read at all.  If such a request
+ * also has a {@code wait} query parameter (seconds), it is parked until the tenant's config
+ * changes (and then answered with the new list) or the wait expires (and then answered with
+ * {@code 304}).
+ *
+ * @author eric.wittmann@gmail.com
+ */
+public abstract class AbstractDynamicConfigResource {
+
+    @Inject
+    Logger log;
+
+    @Inject
+    DynamicConfigPropertyIndex configIndex;
+
+    @Inject
+    DynamicConfigVersionTracker versionTracker;
+
+    @ConfigProperty(name = "app.config.dynamic.long-poll.max-wait-seconds", defaultValue = "60")
+    long maxWaitSeconds;
+
+    /**
+     * Lists the accepted dynamic config properties and their current values.
+     * @param ifNoneMatch the ETag the client already has (if any)
+     * @param waitSeconds how long to wait for a change when the client's ETag is current (0 to not wait)
+     * @param response the async response
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public void listConfigProperties(@HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch,
+            @QueryParam("wait") Long waitSeconds, @Suspended AsyncResponse response) {
+        final String tenantId = getTenantId();
+        long version = versionTracker.getVersion(tenantId);
+        String etag = currentETag(tenantId);
+        if (!matches(ifNoneMatch, etag)) {
+            response.resume(okResponse());
+            return;
+        }
+        long wait = waitSeconds == null ? 0 : Math.min(Math.max(waitSeconds, 0), maxWaitSeconds);
+        if (wait == 0) {
+            response.resume(notModifiedResponse(etag));
+            return;
+        }
+
+        // Both callbacks run on other threads, and resuming also runs the response filters, so
+        // they are run in the tenant's context
+        Runnable cancel = versionTracker.onNextChange(tenantId, () -> {
+            if (response.isSuspended()) {
+                try {
+                    runInTenantContext(tenantId, () -> response.resume(okResponse()));
+                } catch (Exception e) {
+                    log.warn("Error reading dynamic config after a change.", e);
+                    runInTenantContext(tenantId, () -> response.resume(e));
+                }
+            }
+        });
+        response.setTimeout(wait, TimeUnit.SECONDS);
+        response.setTimeoutHandler(ar -> {
+            // Do not keep the parked response reachable until the next change
+            cancel.run();
+            runInTenantContext(tenantId, () -> ar.resume(notModifiedResponse(currentETag(tenantId))));
+        });
+        // The config may have changed before we started listening
+        if (versionTracker.getVersion(tenantId) != version) {
+            cancel.run();
+            response.resume(okResponse());
+            return;
+        }
+        onParked();
+    }
+
+    /**
+     * Returns the id of the tenant of the current request.  Single-tenant applications can use
+     * the default, multi-tenant applications must override this.
+     */
+    protected String getTenantId() {
+        return DynamicConfigStorage.DEFAULT_TENANT_ID;
+    }
+
+    /**
+     * Called on the request thread once a request is parked waiting for a config change.  Parked requests
+     * do no work, so they should not hold resources that are limited per request; multi-tenant
+     * applications should override this to give back the request's concurrency permit (see
+     * io.apicurio.common.apps.mt.TenantBulkhead#releasePermit).  The default does nothing.
+     */
+    protected void onParked() {
+    }
+
+    /**
+     * Runs the given action in the context of the given tenant.  Used to read the config and send
+     * the response when a parked request is woken up (or times out), which happens on a different
+     * thread than the original request.
+     * The default implementation activates a CDI request context for the duration of the action;
+     * multi-tenant applications should override this to also establish the tenant.
+     * @param tenantId the tenant
+     * @param action the action
+     */
+    protected <T> T runInTenantContext(String tenantId, Supplier<T> action) {
+        ManagedContext requestContext = Arc.container().requestContext();
+        boolean activated = !requestContext.isActive();
+        if (activated) {
+            requestContext.activate();
+        }
+        try {
+            return action.get();
+        } finally {
+            if (activated) {
+                requestContext.terminate();
+            }
+        }
+    }
+
+    /**
+     * Reads the accepted properties with their current (dynamic, static or default) values.
+     */
+    protected List<DynamicConfigPropertyDto> readConfigProperties() {
+        return configIndex.getAcceptedPropertyNames().stream()
+                .sorted()
+                .map(name -> {
+                    DynamicConfigPropertyDef def = configIndex.getProperty(name);
+                    String value = ConfigProvider.getConfig().getOptionalValue(name, String.class)
+                            .orElse(def == null ? null : def.getDefaultValue());
+                    return new DynamicConfigPropertyDto(name, value);
+                })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return true if the given If-None-Match header value matches the given (strong) ETag
+     */
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals(etag) || tag.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String currentETag(String tenantId) {
+        return versionTracker.getETag(tenantId, () -> etagOf(readConfigProperties()));
+    }
+
+    private Response okResponse() {
+        List<DynamicConfigPropertyDto> properties = readConfigProperties();
+        return Response.ok(properties).tag(toEntityTag(etagOf(properties))).build();
+    }
+
+    /**
+     * Derives a strong ETag (including the quotes) from the properties and their values, so that
+     * every node serving the same config returns the same ETag.
+     */
+    private static String etagOf(List<DynamicConfigPropertyDto> properties) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (DynamicConfigPropertyDto property : properties) {
+            digest.update(property.getName().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            if (property.getValue() != null) {
+                digest.update((byte) 1);
+                digest.update(property.getValue().getBytes(StandardCharsets.UTF_8));
+            }
+            digest.update((byte) 0);
+        }
+        byte[] hash = digest.digest();
+        StringBuilder etag = new StringBuilder("\"");
+        for (int i = 0; i < 16; i++) {
+            etag.append(Character.forDigit((hash[i] >> 4) & 0xF, 16)).append(Character.forDigit(hash[i] & 0xF, 16));
+        }
+        return etag.append('"').toString();
+    }
+
+    private static Response notModifiedResponse(String etag) {
+        return Response.notModified(toEntityTag(etag)).build();
+    }
+
+    private static EntityTag toEntityTag(String etag) {
+        // Strip the quotes, EntityTag adds them back when serialized
+        return new EntityTag(etag.substring(1, etag.length() - 1));
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apicurio.common.apps.config.impl;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.enterprise.event.TransactionPhase;
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+
+import io.apicurio.common.apps.config.DynamicConfigChangeListeners;
+import io.apicurio.common.apps.config.DynamicConfigChangedEvent;
+
+/**
+ * Notifies the listeners registered through the default
+ * {@link io.apicurio.common.apps.config.DynamicConfigStorage#addConfigChangeListener(io.apicurio.common.apps.config.DynamicConfigChangeListener)}
+ * of the change events fired by the storage, once the change is committed.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+@ApplicationScoped
+public class DynamicConfigChangeDispatcher {
+
+    @Inject
+    Logger log;
+
+    void onConfigPropertyChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) DynamicConfigChangedEvent event) {
+        DynamicConfigChangeListeners listeners = DynamicConfigChangeListeners.shared();
+        if (!listeners.isEmpty()) {
+            listeners.notifyListeners(event, (listener, e) -> log.warn("Error notifying config change listener.", e));
+        }
+    }
+
+}
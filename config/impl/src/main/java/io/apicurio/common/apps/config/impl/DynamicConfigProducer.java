@@ -16,14 +16,19 @@
 
 package io.apicurio.common.apps.config.impl;
 
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Optional;
 import java.util.function.Supplier;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.context.Dependent;
 import javax.enterprise.inject.Produces;
 import javax.enterprise.inject.spi.InjectionPoint;
+import javax.inject.Inject;
 
 import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.config.spi.Converter;
 
 import io.apicurio.common.apps.config.Dynamic;
 import io.smallrye.config.inject.ConfigProducer;
@@ -32,17 +37,63 @@ import io.smallrye.config.inject.ConfigProducerUtil;
 /**
  * CDI producer used when injecting dynamic configuration properties into application injection
  * points.
+ * <p>
+ * The ordinal of the property (see {@link DynamicConfigPropertyIndexImpl}) is resolved once, when
+ * the supplier is produced.  The statically configured value (or the typed default) is also
+ * resolved once at that time, so each call to the supplier is a lookup of the dynamic value by
+ * ordinal, falling back to the precomputed value.
+ *
  * @author eric.wittmann@gmail.com
  */
 @ApplicationScoped
 public class DynamicConfigProducer extends ConfigProducer {
 
+    @Inject
+    DynamicConfigPropertyIndexImpl configIndex;
+
     @Override
     @Dependent
     @Produces
     @ConfigProperty
     @Dynamic
     protected <T> Supplier<T> produceSupplierConfigValue(InjectionPoint ip) {
-        return () -> ConfigProducerUtil.getValue(ip, getConfig());
+        ConfigProperty configProperty = ip.getAnnotated().getAnnotation(ConfigProperty.class);
+        Class<T> valueType = getSupplierValueType(ip);
+        int ordinal = configProperty == null ? -1 : configIndex.getOrdinal(configProperty.name());
+        if (ordinal < 0 || valueType == null) {
+            return () -> ConfigProducerUtil.getValue(ip, getConfig());
+        }
+
+        Optional<Converter<T>> converter = getConfig().getConverter(valueType);
+        if (converter.isEmpty()) {
+            return () -> ConfigProducerUtil.getValue(ip, getConfig());
+        }
+        T fallbackValue = getStaticValue(configProperty.name(), valueType, ordinal);
+        Converter<T> valueConverter = converter.get();
+        return () -> {
+            String dynamicValue = DynamicConfigSource.getDynamicValue(ordinal);
+            return dynamicValue == null ? fallbackValue : valueConverter.convert(dynamicValue);
+        };
+    }
+
+    /**
+     * Returns the value of the property ignoring any dynamic value - either the statically configured
+     * value (e.g. from application.properties) or the default value.
+     */
+    private <T> T getStaticValue(String propertyName, Class<T> valueType, int ordinal) {
+        Optional<T> staticValue = DynamicConfigSource.withoutDynamicValues(() -> getConfig().getOptionalValue(propertyName, valueType));
+        return staticValue.orElseGet(() -> valueType.cast(configIndex.getDefaultValue(ordinal)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Class<T> getSupplierValueType(InjectionPoint ip) {
+        Type type = ip.getType();
+        if (type instanceof ParameterizedType) {
+            Type[] typeArgs = ((ParameterizedType) type).getActualTypeArguments();
+            if (typeArgs.length == 1 && typeArgs[0] instanceof Class) {
+                return (Class<T>) typeArgs[0];
+            }
+        }
+        return null;
     }
 }
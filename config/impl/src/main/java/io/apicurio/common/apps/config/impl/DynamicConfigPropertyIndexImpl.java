@@ -30,18 +30,25 @@ import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
 import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.spi.Converter;
 
 import io.apicurio.common.apps.config.DynamicConfigPropertyDef;
 import io.apicurio.common.apps.config.DynamicConfigPropertyIndex;
 import io.apicurio.common.apps.config.DynamicConfigPropertyList;
 
 /**
+ * Index of all dynamic config properties known to the application.  Each property has an ordinal
+ * (assigned at build time by the config-index extension) which can be used to look the property
+ * and its (already converted) default value up by array index rather than by name.
+ *
  * @author eric.wittmann@gmail.com
  */
 @ApplicationScoped
 public class DynamicConfigPropertyIndexImpl implements DynamicConfigPropertyIndex {
 
     private Map<String, DynamicConfigPropertyDef> propertyIndex;
+    private DynamicConfigPropertyDef[] propertiesByOrdinal;
+    private Object[] defaultValuesByOrdinal;
 
     @Inject
     DynamicConfigPropertyList properties;
@@ -64,12 +71,30 @@ public class DynamicConfigPropertyIndexImpl implements DynamicConfigPropertyInde
     }
 
     private void indexProperties(List<DynamicConfigPropertyDef> dynamicConfigProperties) {
-        this.propertyIndex = new HashMap<>(dynamicConfigProperties.size());
-        for (DynamicConfigPropertyDef def : dynamicConfigProperties) {
+        int size = dynamicConfigProperties.size();
+        this.propertyIndex = new HashMap<>(size);
+        this.propertiesByOrdinal = new DynamicConfigPropertyDef[size];
+        this.defaultValuesByOrdinal = new Object[size];
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            DynamicConfigPropertyDef def = dynamicConfigProperties.get(ordinal);
+            // The list is recorded in ordinal order, this simply guards against older recordings.
+            def.setOrdinal(ordinal);
             this.propertyIndex.put(def.getName(), def);
+            this.propertiesByOrdinal[ordinal] = def;
+            this.defaultValuesByOrdinal[ordinal] = def.getTypedDefaultValue() != null ? def.getTypedDefaultValue() : convertDefaultValue(def);
         }
     }
 
+    @SuppressWarnings("unchecked")
+    private Object convertDefaultValue(DynamicConfigPropertyDef def) {
+        if (def.getDefaultValue() == null) {
+            return null;
+        }
+        return config.getConverter(def.getType())
+                .map(converter -> ((Converter<Object>) converter).convert(def.getDefaultValue()))
+                .orElse(null);
+    }
+
     private boolean accept(DynamicConfigPropertyDef def) {
         List<String> requires = def.getRequires() == null ? new ArrayList<>(1) : new ArrayList<>(Arrays.asList(def.getRequires()));
         requires.add(def.getName() + ".dynamic.allow=true");
@@ -99,6 +124,42 @@ public class DynamicConfigPropertyIndexImpl implements DynamicConfigPropertyInde
         return getPropertyIndex().get(name);
     }
 
+    /**
+     * Returns the property with the given ordinal.
+     * @param ordinal the property ordinal
+     * @return the property definition
+     */
+    public DynamicConfigPropertyDef getProperty(int ordinal) {
+        return propertiesByOrdinal[ordinal];
+    }
+
+    /**
+     * Returns the ordinal of the property with the given name, or -1 if no such property exists.
+     * @param name the property name
+     * @return the property ordinal or -1
+     */
+    public int getOrdinal(String name) {
+        DynamicConfigPropertyDef def = getPropertyIndex().get(name);
+        return def == null ? -1 : def.getOrdinal();
+    }
+
+    /**
+     * Returns the default value of the property with the given ordinal, already converted to the
+     * type of the property.
+     * @param ordinal the property ordinal
+     * @return the typed default value (may be null)
+     */
+    public Object getDefaultValue(int ordinal) {
+        return defaultValuesByOrdinal[ordinal];
+    }
+
+    /**
+     * @return the number of indexed properties (ordinals range from 0 to size - 1)
+     */
+    public int size() {
+        return propertiesByOrdinal.length;
+    }
+
     /**
      * @see io.apicurio.common.apps.config.DynamicConfigPropertyIndex#hasProperty(java.lang.String)
      */
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.config.impl;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.enterprise.context.RequestScoped;
+import javax.enterprise.event.Observes;
+import javax.enterprise.event.Reception;
+import javax.enterprise.event.TransactionPhase;
+import javax.inject.Inject;
+
+import io.apicurio.common.apps.config.DynamicConfigChangedEvent;
+import io.apicurio.common.apps.config.DynamicConfigPropertyDto;
+import io.apicurio.common.apps.config.DynamicConfigStorage;
+import io.apicurio.common.apps.config.DynamicConfigStorageAccessor;
+
+/**
+ * A request-scoped, point-in-time view of all dynamic configuration properties.  The first
+ * dynamic property read in a request loads the full property map from storage (a single
+ * call to {@link io.apicurio.common.apps.config.DynamicConfigStorage#getConfigProperties()}),
+ * and all later reads in the same request are served from that map.  This means at most one
+ * storage read per request, and mutually consistent values even if a write lands mid-request.
+ * Writes made by the request to its tenant's config are applied to the snapshot once committed,
+ * so a request always sees its own changes.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+@RequestScoped
+public class DynamicConfigSnapshot {
+
+    private static final String[] EMPTY = new String[0];
+
+    @Inject
+    DynamicConfigStorageAccessor configStorageAccessor;
+    @Inject
+    DynamicConfigPropertyIndexImpl configIndex;
+
+    /**
+     * Property values indexed by property ordinal (see {@link DynamicConfigPropertyIndexImpl}).
+     */
+    private volatile String[] values;
+
+    /**
+     * The tenant whose properties were loaded.
+     */
+    private String tenantId;
+
+    /**
+     * Returns the value of the given property as it was when the snapshot was taken, or null
+     * if the property is not set in storage.
+     * @param propertyName the name of a dynamic config property
+     * @return the property value or null
+     */
+    public String getValue(String propertyName) {
+        int ordinal = configIndex.getOrdinal(propertyName);
+        return ordinal < 0 ? null : getValue(ordinal);
+    }
+
+    /**
+     * Returns the value of the property with the given ordinal as it was when the snapshot was
+     * taken, or null if the property is not set in storage.
+     * @param ordinal the ordinal of a dynamic config property
+     * @return the property value or null
+     */
+    public String getValue(int ordinal) {
+        String[] vals = getValues();
+        return ordinal < vals.length ? vals[ordinal] : null;
+    }
+
+    /**
+     * Applies local changes made during the current request to the snapshot's tenant (if the
+     * snapshot has already been loaded).
+     * @param event the config change event
+     */
+    void onConfigPropertyChanged(@Observes(notifyObserver = Reception.IF_EXISTS, during = TransactionPhase.AFTER_SUCCESS)
+            DynamicConfigChangedEvent event) {
+        if (event.isRemote()) {
+            return;
+        }
+        int ordinal = event.isBulk() ? -1 : configIndex.getOrdinal(event.getName());
+        if (ordinal < 0 && !event.isBulk()) {
+            return;
+        }
+        synchronized (this) {
+            String[] vals = this.values;
+            if (vals == null || !tenantId.equals(event.getTenantId())) {
+                return;
+            }
+            if (event.isBulk()) {
+                // The changed values are not known, reload
+                this.values = null;
+                return;
+            }
+            if (event.getNewValue() == null && !DynamicConfigStorage.DEFAULT_TENANT_ID.equals(tenantId)) {
+                // A deleted tenant override may fall back to an inherited (global) value, reload
+                this.values = null;
+                return;
+            }
+            String[] updated = Arrays.copyOf(vals, Math.max(vals.length, configIndex.size()));
+            updated[ordinal] = event.getNewValue();
+            this.values = updated;
+        }
+    }
+
+    private String[] getValues() {
+        String[] vals = this.values;
+        if (vals == null) {
+            synchronized (this) {
+                vals = this.values;
+                if (vals == null) {
+                    vals = load();
+                    this.values = vals;
+                }
+            }
+        }
+        return vals;
+    }
+
+    private String[] load() {
+        DynamicConfigStorage storage = configStorageAccessor.getConfigStorage();
+        tenantId = storage.getCurrentTenantId();
+        List<DynamicConfigPropertyDto> dtos = storage.getConfigProperties();
+        if (dtos == null || dtos.isEmpty()) {
+            return EMPTY;
+        }
+        String[] vals = new String[configIndex.size()];
+        for (DynamicConfigPropertyDto dto : dtos) {
+            int ordinal = configIndex.getOrdinal(dto.getName());
+            if (ordinal >= 0) {
+                vals[ordinal] = dto.getValue();
+            }
+        }
+        return vals;
+    }
+
+}
@@ -19,16 +19,23 @@ package io.apicurio.common.apps.config.impl;
 import java.util.Collections;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Supplier;
 
 import org.eclipse.microprofile.config.spi.ConfigSource;
 
 import io.apicurio.common.apps.config.DynamicConfigPropertyDto;
 import io.apicurio.common.apps.config.DynamicConfigStorage;
+import io.quarkus.arc.Arc;
+import io.quarkus.arc.ArcContainer;
 
 /**
  * A microprofile-config configsource.  This class uses the dynamic config storage to
  * read/write configuration properties to, for example, a database.
  * <p>
+ * When a request context is active (and request snapshots are enabled) values are read from
+ * a {@link DynamicConfigSnapshot} so that all dynamic reads within a single request hit
+ * storage at most once and observe a consistent set of values.
+ * <p>
  * TODO cache properties.  this would need to be multi-tenant aware?  probably should be implemented in the storage layer!
  *
  * @author eric.wittmann@gmail.com
@@ -43,6 +50,11 @@ public class DynamicConfigSource implements ConfigSource {
     public static void setConfigurationIndex(DynamicConfigPropertyIndexImpl index) {
         configIndex = Optional.of(index);
     }
+    private static final ThreadLocal<Boolean> bypass = new ThreadLocal<>();
+    private static Optional<DynamicConfigSnapshot> snapshot = Optional.empty();
+    public static void setSnapshot(DynamicConfigSnapshot requestSnapshot) {
+        snapshot = Optional.ofNullable(requestSnapshot);
+    }
 
     @Override
     public int getOrdinal() {
@@ -62,16 +74,58 @@ public class DynamicConfigSource implements ConfigSource {
      */
     @Override
     public String getValue(String propertyName) {
-        String pname = normalizePropertyName(propertyName);
-        if (configIndex.isPresent() && configIndex.get().hasProperty(pname) && storage.isPresent()) {
-            DynamicConfigPropertyDto dto = storage.get().getConfigProperty(pname);
-            if (dto != null) {
-                return dto.getValue();
+        if (configIndex.isPresent()) {
+            int ordinal = configIndex.get().getOrdinal(normalizePropertyName(propertyName));
+            if (ordinal >= 0) {
+                return getDynamicValue(ordinal);
             }
         }
         return null;
     }
 
+    /**
+     * Returns the current dynamic value of the property with the given ordinal, or null if the
+     * property has no dynamic value.
+     * @param ordinal the ordinal of an indexed dynamic config property
+     * @return the dynamic value or null
+     */
+    public static String getDynamicValue(int ordinal) {
+        if (bypass.get() != null || configIndex.isEmpty() || storage.isEmpty()) {
+            return null;
+        }
+        if (snapshot.isPresent() && isRequestContextActive()) {
+            return snapshot.get().getValue(ordinal);
+        }
+        DynamicConfigPropertyDto dto = storage.get().getConfigProperty(configIndex.get().getProperty(ordinal).getName());
+        if (dto != null) {
+            return dto.getValue();
+        }
+        return null;
+    }
+
+    /**
+     * Invokes the given operation with this config source disabled on the current thread, so that
+     * the operation only sees statically configured values.
+     * @param operation the operation to invoke
+     * @return the result of the operation
+     */
+    public static <T> T withoutDynamicValues(Supplier<T> operation) {
+        if (bypass.get() != null) {
+            return operation.get();
+        }
+        bypass.set(Boolean.TRUE);
+        try {
+            return operation.get();
+        } finally {
+            bypass.remove();
+        }
+    }
+
+    private static boolean isRequestContextActive() {
+        ArcContainer container = Arc.container();
+        return container != null && container.requestContext().isActive();
+    }
+
     private String normalizePropertyName(String propertyName) {
         if (propertyName == null || !propertyName.startsWith("%")) {
             return propertyName;
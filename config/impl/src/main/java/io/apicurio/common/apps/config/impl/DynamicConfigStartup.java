@@ -16,10 +16,20 @@
 
 package io.apicurio.common.apps.config.impl;
 
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+
+import io.apicurio.common.apps.config.DynamicConfigStorage;
 import io.apicurio.common.apps.config.DynamicConfigStorageAccessor;
 import io.quarkus.runtime.Startup;
 
@@ -30,14 +40,59 @@ import io.quarkus.runtime.Startup;
 @Startup
 public class DynamicConfigStartup {
 
+    @Inject
+    Logger log;
+
     @Inject
     DynamicConfigStorageAccessor configStorageAccessor;
     @Inject
     DynamicConfigPropertyIndexImpl configIndex;
+    @Inject
+    DynamicConfigSnapshot configSnapshot;
+
+    @ConfigProperty(name = "app.config.dynamic.snapshot.enabled", defaultValue = "true")
+    boolean snapshotEnabled;
+
+    @ConfigProperty(name = "app.config.dynamic.warm-up.enabled", defaultValue = "false")
+    boolean warmUpEnabled;
+
+    @ConfigProperty(name = "app.config.dynamic.warm-up.tenants", defaultValue = "500")
+    int warmUpTenants;
+
+    @ConfigProperty(name = "app.config.dynamic.warm-up.deadline", defaultValue = "10s")
+    Duration warmUpDeadline;
 
     @PostConstruct
     void onStart() {
         DynamicConfigSource.setStorage(configStorageAccessor.getConfigStorage());
         DynamicConfigSource.setConfigurationIndex(configIndex);
+        if (snapshotEnabled) {
+            DynamicConfigSource.setSnapshot(configSnapshot);
+        }
+        if (warmUpEnabled) {
+            warmUp(configStorageAccessor.getConfigStorage());
+        }
+    }
+
+    /**
+     * Pre-loads the dynamic config of the most recently active tenants.  Startup waits for the
+     * warm-up for at most the configured deadline, after which the warm-up carries on in the
+     * background.
+     */
+    private void warmUp(DynamicConfigStorage storage) {
+        CompletableFuture<Integer> warmUp = CompletableFuture.supplyAsync(() -> storage.warmUp(warmUpTenants), r -> {
+            Thread thread = new Thread(r, "dynamic-config-warm-up");
+            thread.setDaemon(true);
+            thread.start();
+        });
+        try {
+            warmUp.get(warmUpDeadline.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("Dynamic config warm-up did not finish within {}, continuing in the background.", warmUpDeadline);
+        } catch (ExecutionException e) {
+            log.warn("Dynamic config warm-up failed.", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 }
\ No newline at end of file
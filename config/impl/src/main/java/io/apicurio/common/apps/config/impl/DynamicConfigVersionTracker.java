@@ -0,0 +1,255 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.config.impl;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.enterprise.event.TransactionPhase;
+
+import io.apicurio.common.apps.config.DynamicConfigChangedEvent;
+import io.apicurio.common.apps.config.DynamicConfigStorage;
+
+/**
+ * Tracks a version number of the dynamic config of every tenant, bumped whenever one of the
+ * tenant's properties changes (on this node, or on another node once detected).  Changes to the
+ * global config (the default tenant's) bump the version of every tenant, since tenants may
+ * inherit it.  Also allows callers to wait for the next change of a tenant's config.
+ * <p>
+ * Versions are only meaningful on this node and for the lifetime of the process, so they are not
+ * used as ETags directly: {@link #getETag(String, Supplier)} caches a content-derived ETag per
+ * version instead, which is the same on every node serving the same config.
+ * <p>
+ * Tenants that have not been used for a while are forgotten, as are the least recently used ones
+ * when too many are tracked.  A forgotten tenant's version is folded into a floor shared by all
+ * untracked tenants, so versions still never decrease.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+@ApplicationScoped
+public class DynamicConfigVersionTracker {
+
+    static final int DEFAULT_MAX_TENANTS = 10000;
+    static final long DEFAULT_IDLE_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    int maxTenants = DEFAULT_MAX_TENANTS;
+    long idleNanos = DEFAULT_IDLE_NANOS;
+
+    private final AtomicLong globalVersion = new AtomicLong();
+    private final ConcurrentHashMap<String, TenantVersion> tenants = new ConcurrentHashMap<>();
+    /**
+     * The highest version of any forgotten tenant, the version of every tenant not tracked (any more).
+     */
+    private final AtomicLong versionFloor = new AtomicLong();
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime());
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final ConcurrentHashMap<String, Set<Runnable>> waiters = new ConcurrentHashMap<>();
+
+    private final AtomicInteger threadCount = new AtomicInteger();
+    private final ExecutorService notificationExecutor = Executors.newFixedThreadPool(2, r -> {
+        Thread thread = new Thread(r, "dynamic-config-notify-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Returns the current config version of the given tenant.  The version only ever increases.
+     * @param tenantId the tenant
+     */
+    public long getVersion(String tenantId) {
+        long global = globalVersion.get();
+        TenantVersion tenant = tenants.get(tenantId);
+        if (tenant == null) {
+            return global + versionFloor.get();
+        }
+        tenant.lastUsed = System.nanoTime();
+        return global + tenant.version.get();
+    }
+
+    /**
+     * Returns the ETag of the current config of the given tenant, computing it with the given
+     * supplier only if the config changed since it was last computed.
+     * @param tenantId the tenant
+     * @param etagSupplier computes the ETag from the tenant's current config
+     */
+    public String getETag(String tenantId, Supplier<String> etagSupplier) {
+        TenantVersion tenant = track(tenantId);
+        long version = globalVersion.get() + tenant.version.get();
+        VersionedETag cached = tenant.etag;
+        if (cached != null && cached.version == version) {
+            return cached.etag;
+        }
+        String etag = etagSupplier.get();
+        // Cached with the version read before computing it, so a concurrent change invalidates it
+        tenant.etag = new VersionedETag(version, etag);
+        return etag;
+    }
+
+    /**
+     * Runs the given callback (on a notification thread, never the thread that made the change)
+     * the next time the config of the given tenant changes.  Callers should re-check the version
+     * after registering, to not miss a change made in the meantime.
+     * @param tenantId the tenant
+     * @param callback the callback
+     * @return cancels the callback, e.g. when the caller stops waiting
+     */
+    public Runnable onNextChange(String tenantId, Runnable callback) {
+        waiters.compute(tenantId, (key, callbacks) -> {
+            Set<Runnable> rval = callbacks == null ? ConcurrentHashMap.newKeySet() : callbacks;
+            rval.add(callback);
+            return rval;
+        });
+        return () -> waiters.computeIfPresent(tenantId, (key, callbacks) -> {
+            callbacks.remove(callback);
+            return callbacks.isEmpty() ? null : callbacks;
+        });
+    }
+
+    /**
+     * Bumps the version of the changed tenant and wakes up anyone waiting for a change.
+     * @param event the change event
+     */
+    void onConfigPropertyChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) DynamicConfigChangedEvent event) {
+        String tenantId = event.getTenantId();
+        if (tenantId == null || DynamicConfigStorage.DEFAULT_TENANT_ID.equals(tenantId)) {
+            globalVersion.incrementAndGet();
+            waiters.keySet().forEach(this::signal);
+        } else {
+            long now = System.nanoTime();
+            tenants.compute(tenantId, (key, tenant) -> {
+                TenantVersion rval = tenant == null ? new TenantVersion(versionFloor.get(), now) : tenant;
+                rval.version.incrementAndGet();
+                return rval;
+            });
+            signal(tenantId);
+            maybeEvict(now);
+        }
+    }
+
+    /**
+     * Returns the tracked state of the given tenant, tracking it if needed.
+     */
+    private TenantVersion track(String tenantId) {
+        long now = System.nanoTime();
+        TenantVersion tenant = tenants.get(tenantId);
+        if (tenant == null) {
+            tenant = tenants.computeIfAbsent(tenantId, key -> new TenantVersion(versionFloor.get(), now));
+            maybeEvict(now);
+        }
+        tenant.lastUsed = now;
+        return tenant;
+    }
+
+    /**
+     * Forgets idle tenants every now and then, and the least recently used tenth of them if there
+     * are too many.  Only one thread evicts at a time, the others go on (the map may briefly exceed
+     * its size).
+     */
+    private void maybeEvict(long now) {
+        boolean sweep = now - nextSweep.get() > 0;
+        if ((!sweep && tenants.size() <= maxTenants) || !evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            nextSweep.set(now + idleNanos / 2);
+            evictIf(tenant -> now - tenant.lastUsed > idleNanos);
+            if (tenants.size() <= maxTenants) {
+                return;
+            }
+            long[] ages = tenants.values().stream().mapToLong(tenant -> now - tenant.lastUsed).toArray();
+            if (ages.length == 0) {
+                return;
+            }
+            Arrays.sort(ages);
+            long minAge = ages[ages.length - Math.max(1, ages.length / 10)];
+            evictIf(tenant -> now - tenant.lastUsed >= minAge);
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private void evictIf(Predicate<TenantVersion> idle) {
+        for (String tenantId : tenants.keySet()) {
+            // Atomic with a concurrent change of the tenant: either the change is folded, or it re-tracks the tenant
+            tenants.computeIfPresent(tenantId, (key, tenant) -> {
+                if (!idle.test(tenant)) {
+                    return tenant;
+                }
+                versionFloor.accumulateAndGet(tenant.version.get(), Math::max);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * @return the number of tenants currently tracked
+     */
+    int trackedTenants() {
+        return tenants.size();
+    }
+
+    private void signal(String tenantId) {
+        Set<Runnable> callbacks = waiters.remove(tenantId);
+        if (callbacks != null) {
+            callbacks.forEach(notificationExecutor::execute);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        notificationExecutor.shutdownNow();
+    }
+
+    private static class TenantVersion {
+
+        /**
+         * Starts at the version floor, so a tenant tracked again does not go back to a lower version.
+         */
+        final AtomicLong version;
+        volatile long lastUsed;
+        volatile VersionedETag etag;
+
+        TenantVersion(long version, long now) {
+            this.version = new AtomicLong(version);
+            this.lastUsed = now;
+        }
+    }
+
+    private static class VersionedETag {
+
+        final long version;
+        final String etag;
+
+        VersionedETag(long version, String etag) {
+            this.version = version;
+            this.etag = etag;
+        }
+    }
+
+}
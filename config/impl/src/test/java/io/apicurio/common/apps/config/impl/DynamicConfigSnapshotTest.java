@@ -0,0 +1,142 @@
+package io.apicurio.common.apps.config.impl;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.apicurio.common.apps.config.DynamicConfigChangedEvent;
+import io.apicurio.common.apps.config.DynamicConfigPropertyDef;
+import io.apicurio.common.apps.config.DynamicConfigPropertyDto;
+import io.apicurio.common.apps.config.DynamicConfigPropertyList;
+import io.apicurio.common.apps.config.DynamicConfigStorage;
+
+public class DynamicConfigSnapshotTest {
+
+    private final MemoryStorage storage = new MemoryStorage();
+
+    @Test
+    public void testRequestSeesOneConsistentSnapshot() {
+        storage.properties.put("a", "1");
+        storage.properties.put("b", "2");
+        DynamicConfigSnapshot snapshot = snapshot();
+        Assertions.assertEquals("1", snapshot.getValue("a"));
+
+        // Written by another request (or node) in the middle of this one
+        storage.properties.put("a", "10");
+        storage.properties.put("b", "20");
+        Assertions.assertEquals("1", snapshot.getValue("a"));
+        Assertions.assertEquals("2", snapshot.getValue("b"));
+        Assertions.assertNull(snapshot.getValue("c"));
+        Assertions.assertNull(snapshot.getValue("unknown"));
+        // A single storage read for the whole request
+        Assertions.assertEquals(1, storage.loads);
+    }
+
+    @Test
+    public void testOwnWritesAreApplied() {
+        storage.properties.put("a", "1");
+        DynamicConfigSnapshot snapshot = snapshot();
+        Assertions.assertEquals("1", snapshot.getValue("a"));
+
+        storage.properties.put("a", "10");
+        snapshot.onConfigPropertyChanged(new DynamicConfigChangedEvent("t1", "a", "1", "10", false));
+        storage.properties.put("c", "30");
+        snapshot.onConfigPropertyChanged(new DynamicConfigChangedEvent("t1", "c", null, "30", false));
+        Assertions.assertEquals("10", snapshot.getValue("a"));
+        Assertions.assertEquals("30", snapshot.getValue("c"));
+        Assertions.assertEquals(1, storage.loads);
+    }
+
+    @Test
+    public void testOtherChangesAreNotApplied() {
+        storage.properties.put("a", "1");
+        DynamicConfigSnapshot snapshot = snapshot();
+        Assertions.assertEquals("1", snapshot.getValue("a"));
+
+        snapshot.onConfigPropertyChanged(new DynamicConfigChangedEvent("t2", "a", "1", "10", false));
+        snapshot.onConfigPropertyChanged(new DynamicConfigChangedEvent("t1", "a", null, "20", true));
+        snapshot.onConfigPropertyChanged(new DynamicConfigChangedEvent("t1", "unknown", null, "30", false));
+        Assertions.assertEquals("1", snapshot.getValue("a"));
+        Assertions.assertEquals(1, storage.loads);
+    }
+
+    @Test
+    public void testDeletedOverrideAndBulkChangesReload() {
+        storage.properties.put("a", "1");
+        DynamicConfigSnapshot snapshot = snapshot();
+        Assertions.assertEquals("1", snapshot.getValue("a"));
+
+        // The override may fall back to an inherited value, only the storage knows which
+        storage.properties.put("a", "global");
+        snapshot.onConfigPropertyChanged(new DynamicConfigChangedEvent("t1", "a", "1", null, false));
+        Assertions.assertEquals("global", snapshot.getValue("a"));
+        Assertions.assertEquals(2, storage.loads);
+
+        storage.properties.put("b", "imported");
+        snapshot.onConfigPropertyChanged(new DynamicConfigChangedEvent("t1", false));
+        Assertions.assertEquals("imported", snapshot.getValue("b"));
+        Assertions.assertEquals(3, storage.loads);
+    }
+
+    @Test
+    public void testEventBeforeFirstReadIsIgnored() {
+        storage.properties.put("a", "1");
+        DynamicConfigSnapshot snapshot = snapshot();
+        snapshot.onConfigPropertyChanged(new DynamicConfigChangedEvent("t1", "a", null, "stale", false));
+        Assertions.assertEquals("1", snapshot.getValue("a"));
+        Assertions.assertEquals(1, storage.loads);
+    }
+
+    private DynamicConfigSnapshot snapshot() {
+        DynamicConfigPropertyIndexImpl index = new DynamicConfigPropertyIndexImpl();
+        index.properties = new DynamicConfigPropertyList(List.of(
+                new DynamicConfigPropertyDef("a", String.class, null),
+                new DynamicConfigPropertyDef("b", String.class, null),
+                new DynamicConfigPropertyDef("c", String.class, null)));
+        index.onInit();
+
+        DynamicConfigSnapshot snapshot = new DynamicConfigSnapshot();
+        snapshot.configIndex = index;
+        snapshot.configStorageAccessor = () -> storage;
+        return snapshot;
+    }
+
+    private static class MemoryStorage implements DynamicConfigStorage {
+
+        final Map<String, String> properties = new ConcurrentHashMap<>();
+        int loads;
+
+        @Override
+        public String getCurrentTenantId() {
+            return "t1";
+        }
+
+        @Override
+        public List<DynamicConfigPropertyDto> getConfigProperties() {
+            loads++;
+            return properties.entrySet().stream()
+                    .map(entry -> new DynamicConfigPropertyDto(entry.getKey(), entry.getValue()))
+                    .collect(Collectors.toList());
+        }
+
+        @Override
+        public DynamicConfigPropertyDto getConfigProperty(String propertyName) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setConfigProperty(DynamicConfigPropertyDto propertyDto) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void deleteConfigProperty(String propertyName) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
@@ -0,0 +1,124 @@
+package io.apicurio.common.apps.config.impl;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntUnaryOperator;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import io.apicurio.common.apps.config.DynamicConfigPropertyDto;
+import io.apicurio.common.apps.config.DynamicConfigPropertyList;
+import io.apicurio.common.apps.config.DynamicConfigStorage;
+
+public class DynamicConfigStartupTest {
+
+    @Test
+    public void testStartupWaitsForWarmUp() {
+        WarmUpStorage storage = new WarmUpStorage(tenants -> tenants);
+        startup(storage, Duration.ofSeconds(30)).onStart();
+        Assertions.assertEquals(0, storage.warmUps.getCount());
+        Assertions.assertEquals(500, storage.lastMaxTenants);
+    }
+
+    @Test
+    public void testStartupDoesNotWaitPastTheDeadline() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        WarmUpStorage storage = new WarmUpStorage(tenants -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return tenants;
+        });
+        long start = System.nanoTime();
+        startup(storage, Duration.ofMillis(200)).onStart();
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assertions.assertTrue(elapsed >= 200, "Returned before the deadline: " + elapsed);
+        Assertions.assertTrue(elapsed < 10000, "Waited past the deadline: " + elapsed);
+
+        // The warm-up carries on in the background
+        Assertions.assertEquals(1, storage.warmUps.getCount());
+        release.countDown();
+        Assertions.assertTrue(storage.warmUps.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFailedWarmUpDoesNotFailStartup() {
+        WarmUpStorage storage = new WarmUpStorage(tenants -> {
+            throw new IllegalStateException("DB down");
+        });
+        startup(storage, Duration.ofSeconds(30)).onStart();
+    }
+
+    @Test
+    public void testWarmUpDisabled() {
+        WarmUpStorage storage = new WarmUpStorage(tenants -> tenants);
+        DynamicConfigStartup startup = startup(storage, Duration.ofSeconds(30));
+        startup.warmUpEnabled = false;
+        startup.onStart();
+        Assertions.assertEquals(1, storage.warmUps.getCount());
+    }
+
+    private static DynamicConfigStartup startup(DynamicConfigStorage storage, Duration deadline) {
+        DynamicConfigPropertyIndexImpl index = new DynamicConfigPropertyIndexImpl();
+        index.properties = new DynamicConfigPropertyList(List.of());
+        index.onInit();
+
+        DynamicConfigStartup startup = new DynamicConfigStartup();
+        startup.log = LoggerFactory.getLogger(DynamicConfigStartup.class);
+        startup.configStorageAccessor = () -> storage;
+        startup.configIndex = index;
+        startup.snapshotEnabled = false;
+        startup.warmUpEnabled = true;
+        startup.warmUpTenants = 500;
+        startup.warmUpDeadline = deadline;
+        return startup;
+    }
+
+    private static class WarmUpStorage implements DynamicConfigStorage {
+
+        final CountDownLatch warmUps = new CountDownLatch(1);
+        final IntUnaryOperator warmUp;
+        volatile int lastMaxTenants;
+
+        WarmUpStorage(IntUnaryOperator warmUp) {
+            this.warmUp = warmUp;
+        }
+
+        @Override
+        public int warmUp(int maxTenants) {
+            lastMaxTenants = maxTenants;
+            try {
+                return warmUp.applyAsInt(maxTenants);
+            } finally {
+                warmUps.countDown();
+            }
+        }
+
+        @Override
+        public DynamicConfigPropertyDto getConfigProperty(String propertyName) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setConfigProperty(DynamicConfigPropertyDto propertyDto) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void deleteConfigProperty(String propertyName) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<DynamicConfigPropertyDto> getConfigProperties() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
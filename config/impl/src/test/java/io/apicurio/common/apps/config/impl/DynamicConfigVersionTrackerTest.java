@@ -0,0 +1,131 @@
+package io.apicurio.common.apps.config.impl;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.apicurio.common.apps.config.DynamicConfigChangedEvent;
+import io.apicurio.common.apps.config.DynamicConfigStorage;
+
+public class DynamicConfigVersionTrackerTest {
+
+    private final DynamicConfigVersionTracker tracker = new DynamicConfigVersionTracker();
+
+    @AfterEach
+    public void shutdown() {
+        tracker.shutdown();
+    }
+
+    @Test
+    public void testTenantAndGlobalChangesBumpVersions() {
+        long a = tracker.getVersion("a");
+        long b = tracker.getVersion("b");
+
+        change("a");
+        Assertions.assertEquals(a + 1, tracker.getVersion("a"));
+        Assertions.assertEquals(b, tracker.getVersion("b"));
+
+        change(DynamicConfigStorage.DEFAULT_TENANT_ID);
+        Assertions.assertEquals(a + 2, tracker.getVersion("a"));
+        Assertions.assertEquals(b + 1, tracker.getVersion("b"));
+    }
+
+    @Test
+    public void testETagIsOnlyRecomputedAfterAChange() {
+        AtomicInteger computed = new AtomicInteger();
+        Assertions.assertEquals("\"1\"", tracker.getETag("a", () -> "\"" + computed.incrementAndGet() + "\""));
+        Assertions.assertEquals("\"1\"", tracker.getETag("a", () -> "\"" + computed.incrementAndGet() + "\""));
+
+        change("b");
+        Assertions.assertEquals("\"1\"", tracker.getETag("a", () -> "\"" + computed.incrementAndGet() + "\""));
+
+        change("a");
+        Assertions.assertEquals("\"2\"", tracker.getETag("a", () -> "\"" + computed.incrementAndGet() + "\""));
+    }
+
+    @Test
+    public void testWaitersAreNotifiedOnce() throws Exception {
+        CountDownLatch notified = new CountDownLatch(2);
+        AtomicInteger calls = new AtomicInteger();
+        tracker.onNextChange("a", () -> {
+            calls.incrementAndGet();
+            notified.countDown();
+        });
+        tracker.onNextChange("b", () -> {
+            calls.incrementAndGet();
+            notified.countDown();
+        });
+
+        change(DynamicConfigStorage.DEFAULT_TENANT_ID);
+        Assertions.assertTrue(notified.await(5, TimeUnit.SECONDS));
+
+        change("a");
+        change("b");
+        Thread.sleep(100);
+        Assertions.assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testCancelledWaitersAreDropped() throws Exception {
+        AtomicInteger cancelledCalls = new AtomicInteger();
+        CountDownLatch notified = new CountDownLatch(1);
+        for (int i = 0; i < 1000; i++) {
+            tracker.onNextChange("a", cancelledCalls::incrementAndGet).run();
+        }
+        tracker.onNextChange("a", notified::countDown);
+
+        change("a");
+        Assertions.assertTrue(notified.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        Assertions.assertEquals(0, cancelledCalls.get());
+    }
+
+    @Test
+    public void testEvictedTenantVersionsNeverDecrease() {
+        tracker.maxTenants = 10;
+        for (int i = 0; i < 5; i++) {
+            change("a");
+        }
+        long a = tracker.getVersion("a");
+        for (int i = 0; i < 100; i++) {
+            change("t" + i);
+        }
+        Assertions.assertTrue(tracker.trackedTenants() <= 11);
+        Assertions.assertTrue(tracker.getVersion("a") >= a);
+
+        long before = tracker.getVersion("a");
+        change("a");
+        Assertions.assertTrue(tracker.getVersion("a") > before);
+    }
+
+    @Test
+    public void testIdleTenantsAreForgotten() throws Exception {
+        tracker.idleNanos = TimeUnit.MILLISECONDS.toNanos(10);
+        change("a");
+        change("b");
+        long a = tracker.getVersion("a");
+        Thread.sleep(50);
+
+        change("c");
+        Assertions.assertEquals(1, tracker.trackedTenants());
+        Assertions.assertTrue(tracker.getVersion("a") >= a);
+    }
+
+    @Test
+    public void testETagIsRecomputedAfterEviction() {
+        tracker.maxTenants = 1;
+        AtomicInteger computed = new AtomicInteger();
+        Assertions.assertEquals("\"1\"", tracker.getETag("a", () -> "\"" + computed.incrementAndGet() + "\""));
+        change("b");
+        change("c");
+        Assertions.assertEquals("\"2\"", tracker.getETag("a", () -> "\"" + computed.incrementAndGet() + "\""));
+    }
+
+    private void change(String tenantId) {
+        tracker.onConfigPropertyChanged(new DynamicConfigChangedEvent(tenantId, "app.prop", "old", "new", false));
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.mt;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import io.apicurio.rest.client.JdkHttpClientProvider;
+import io.apicurio.rest.client.auth.Auth;
+import io.apicurio.rest.client.auth.OidcAuth;
+import io.apicurio.rest.client.auth.exception.AuthErrorHandler;
+import io.apicurio.rest.client.error.ApicurioRestClientException;
+import io.apicurio.rest.client.error.RestClientErrorHandler;
+import io.apicurio.rest.client.request.Operation;
+import io.apicurio.rest.client.request.Request;
+import io.apicurio.rest.client.spi.ApicurioHttpClient;
+
+/**
+ * A {@link TenantManagerClient} that calls the tenant manager REST API (api/v1/tenants).
+ * When tenant manager authentication is enabled, requests are authenticated using the OIDC client
+ * credentials configured in {@link MtProperties}.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+public class HttpTenantManagerClient implements TenantManagerClient, AutoCloseable {
+
+    private static final String TENANTS_PATH = "api/v1/tenants";
+    private static final String TENANT_PATH = "api/v1/tenants/%s";
+    private static final String REQUEST_RATE_RESOURCE = "MAX_REQUESTS_PER_SECOND_COUNT";
+    private static final TypeReference<JsonNode> TENANT_TYPE = new TypeReference<JsonNode>() {
+    };
+    private static final TypeReference<Void> VOID_TYPE = new TypeReference<Void>() {
+    };
+
+    private final ApicurioHttpClient authHttpClient;
+    private final OidcAuth auth;
+    private final ApicurioHttpClient httpClient;
+
+    /**
+     * Constructor.
+     * @param mtProperties the multi-tenancy configuration
+     */
+    public HttpTenantManagerClient(MtProperties mtProperties) {
+        String url = mtProperties.getTenantManagerUrl()
+                .orElseThrow(() -> new IllegalArgumentException("Missing required configuration property 'app.tenant.manager.url'"));
+        if (!url.endsWith("/")) {
+            url += "/";
+        }
+        if (mtProperties.isTenantManagerAuthEnabled()) {
+            String authUrl = mtProperties.getTenantManagerAuthUrl()
+                    .orElseThrow(() -> new IllegalArgumentException("Missing required configuration property 'app.tenant.manager.auth.url.configured'"));
+            authHttpClient = new JdkHttpClientProvider().create(authUrl, Collections.emptyMap(), null, new AuthErrorHandler());
+            auth = new OidcAuth(authHttpClient, mtProperties.getTenantManagerClientId().orElse(null),
+                    mtProperties.getTenantManagerClientSecret().orElse(null));
+        } else {
+            authHttpClient = null;
+            auth = null;
+        }
+        httpClient = new JdkHttpClientProvider().create(url, Collections.emptyMap(), (Auth) auth, new TenantManagerErrorHandler());
+    }
+
+    /**
+     * @see io.apicurio.common.apps.mt.TenantManagerClient#getTenant(java.lang.String)
+     */
+    @Override
+    public Optional<TenantInfo> getTenant(String tenantId) {
+        Request<JsonNode> request = new Request.RequestBuilder<JsonNode>()
+                .operation(Operation.GET)
+                .path(TENANT_PATH)
+                .pathParams(Collections.singletonList(tenantId))
+                .responseType(TENANT_TYPE)
+                .build();
+        try {
+            return Optional.of(toTenantInfo(httpClient.sendRequest(request)));
+        } catch (TenantNotFoundException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @see io.apicurio.common.apps.mt.TenantManagerClient#listTenants(io.apicurio.common.apps.mt.TenantStatus, int, int)
+     */
+    @Override
+    public List<TenantInfo> listTenants(TenantStatus status, int offset, int limit) {
+        Request<JsonNode> request = new Request.RequestBuilder<JsonNode>()
+                .operation(Operation.GET)
+                .path(TENANTS_PATH)
+                .queryParams(Map.of(
+                        "status", List.of(status.value()),
+                        "offset", List.of(String.valueOf(offset)),
+                        "limit", List.of(String.valueOf(limit))))
+                .responseType(TENANT_TYPE)
+                .build();
+        List<TenantInfo> rval = new ArrayList<>();
+        for (JsonNode tenant : httpClient.sendRequest(request).path("items")) {
+            rval.add(toTenantInfo(tenant));
+        }
+        return rval;
+    }
+
+    /**
+     * @see io.apicurio.common.apps.mt.TenantManagerClient#updateTenantStatus(java.lang.String, io.apicurio.common.apps.mt.TenantStatus)
+     */
+    @Override
+    public void updateTenantStatus(String tenantId, TenantStatus status) {
+        Request<Void> request = new Request.RequestBuilder<Void>()
+                .operation(Operation.PUT)
+                .path(TENANT_PATH)
+                .pathParams(Collections.singletonList(tenantId))
+                .headers(Map.of("Content-Type", "application/json"))
+                .data("{\"status\":\"" + status.value() + "\"}")
+                .responseType(VOID_TYPE)
+                .build();
+        httpClient.sendRequest(request);
+    }
+
+    /**
+     * Maps the tenant manager's representation of a tenant to a {@link TenantInfo}.  A tenant without
+     * a (known) status is rejected rather than assumed to be READY.
+     */
+    static TenantInfo toTenantInfo(JsonNode tenant) {
+        TenantInfo info = new TenantInfo();
+        info.setId(tenant.path("tenantId").asText(null));
+        info.setOrgId(tenant.path("organizationId").asText(null));
+        info.setOwner(tenant.path("createdBy").asText(null));
+        info.setStatus(toTenantStatus(info.getId(), tenant.path("status").asText(null)));
+        for (JsonNode resource : tenant.path("resources")) {
+            if (REQUEST_RATE_RESOURCE.equals(resource.path("type").asText())) {
+                info.setLimits(new TenantLimits(resource.path("limit").asLong(), null));
+            }
+        }
+        return info;
+    }
+
+    private static TenantStatus toTenantStatus(String tenantId, String status) {
+        if (status == null) {
+            throw new TenantManagerException("Tenant manager returned tenant " + tenantId + " without a status.");
+        }
+        try {
+            return TenantStatus.fromValue(status);
+        } catch (IllegalArgumentException e) {
+            throw new TenantManagerException("Tenant manager returned tenant " + tenantId + " with an unknown status: " + status);
+        }
+    }
+
+    /**
+     * @see java.lang.AutoCloseable#close()
+     */
+    @Override
+    public void close() {
+        httpClient.close();
+        if (auth != null) {
+            auth.close();
+        }
+        if (authHttpClient != null) {
+            authHttpClient.close();
+        }
+    }
+
+    private static class TenantNotFoundException extends ApicurioRestClientException {
+
+        private static final long serialVersionUID = 1L;
+
+        TenantNotFoundException(String message) {
+            super(message);
+        }
+
+    }
+
+    private static class TenantManagerException extends ApicurioRestClientException {
+
+        private static final long serialVersionUID = 1L;
+
+        TenantManagerException(String message) {
+            super(message);
+        }
+
+    }
+
+    private static class TenantManagerErrorHandler implements RestClientErrorHandler {
+
+        @Override
+        public ApicurioRestClientException handleErrorResponse(InputStream body, int statusCode) {
+            if (statusCode == 404) {
+                return new TenantNotFoundException("Tenant not found.");
+            }
+            return new TenantManagerException("Tenant manager request failed with status " + statusCode);
+        }
+
+        @Override
+        public ApicurioRestClientException parseError(Exception ex) {
+            TenantManagerException error = new TenantManagerException("Error calling the tenant manager: " + ex.getMessage());
+            error.initCause(ex);
+            return error;
+        }
+
+        @Override
+        public ApicurioRestClientException parseInputSerializingError(JsonProcessingException ex) {
+            return parseError(ex);
+        }
+
+    }
+
+}
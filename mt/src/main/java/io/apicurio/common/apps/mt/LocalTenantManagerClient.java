@@ -0,0 +1,94 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.mt;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * An in-process stand-in for the tenant manager, useful in tests and local development.  Tenants
+ * are registered directly on the client, and the number of lookups is recorded so that the
+ * caching done by the {@link TenantInfoLoader} can be verified.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+public class LocalTenantManagerClient implements TenantManagerClient {
+
+    private final Map<String, TenantInfo> tenants = new ConcurrentHashMap<>();
+    private final AtomicLong requestCount = new AtomicLong();
+
+    /**
+     * @see io.apicurio.common.apps.mt.TenantManagerClient#getTenant(java.lang.String)
+     */
+    @Override
+    public Optional<TenantInfo> getTenant(String tenantId) {
+        requestCount.incrementAndGet();
+        return Optional.ofNullable(tenants.get(tenantId));
+    }
+
+    /**
+     * @see io.apicurio.common.apps.mt.TenantManagerClient#listTenants(io.apicurio.common.apps.mt.TenantStatus, int, int)
+     */
+    @Override
+    public List<TenantInfo> listTenants(TenantStatus status, int offset, int limit) {
+        requestCount.incrementAndGet();
+        return tenants.values().stream()
+                .filter(tenant -> tenant.getStatus() == status)
+                .sorted((t1, t2) -> t1.getId().compareTo(t2.getId()))
+                .skip(offset)
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @see io.apicurio.common.apps.mt.TenantManagerClient#updateTenantStatus(java.lang.String, io.apicurio.common.apps.mt.TenantStatus)
+     */
+    @Override
+    public void updateTenantStatus(String tenantId, TenantStatus status) {
+        requestCount.incrementAndGet();
+        tenants.computeIfPresent(tenantId, (id, tenant) ->
+                new TenantInfo(tenant.getId(), tenant.getOwner(), tenant.getOrgId(), status, tenant.getLimits()));
+    }
+
+    /**
+     * Registers (or replaces) a tenant.
+     * @param tenant the tenant info
+     */
+    public void putTenant(TenantInfo tenant) {
+        tenants.put(tenant.getId(), tenant);
+    }
+
+    /**
+     * Removes a tenant, after which the client reports it as unknown.
+     * @param tenantId the unique tenant ID
+     */
+    public void removeTenant(String tenantId) {
+        tenants.remove(tenantId);
+    }
+
+    /**
+     * @return the number of lookups made against this client
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+}
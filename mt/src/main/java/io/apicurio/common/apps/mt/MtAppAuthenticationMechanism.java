@@ -17,25 +17,32 @@
 package io.apicurio.common.apps.mt;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiConsumer;
 
-import javax.enterprise.context.control.ActivateRequestContext;
 import javax.inject.Inject;
 
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.slf4j.Logger;
 
 import io.apicurio.common.apps.auth.authn.AppAuthenticationMechanism;
+import io.apicurio.common.apps.mt.metrics.TenantMetrics;
 import io.quarkus.security.ForbiddenException;
 import io.quarkus.security.identity.IdentityProviderManager;
 import io.quarkus.security.identity.SecurityIdentity;
+import io.quarkus.vertx.http.runtime.security.QuarkusHttpUser;
 import io.smallrye.mutiny.Uni;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
 import io.vertx.core.http.HttpServerRequest;
 import io.vertx.ext.web.RoutingContext;
 
 /**
  * A version of the application authentication mechanism that is multi-tenant aware. If the app is configured
  * for multi-tenancy, this auth mechanism will do all the Tenant Context work. This includes: 1) Resolving the
- * tenantId 2) Loading the tenant info 3) Authorizing the user to access the tenant 4) Configuring the
- * TenantContext
+ * tenantId (rejecting tenants known not to exist) 2) Loading the tenant info 3) Authorizing the user to access the tenant
+ * 4) Enforcing the tenant's rate limit, request quota and concurrency limit 5) Configuring the TenantContext
  *
  * @author eric.wittmann@gmail.com
  */
@@ -57,38 +64,235 @@ public abstract class MtAppAuthenticationMechanism extends AppAuthenticationMech
     TenantAuthorizer tenantAuthorizer;
 
     @Inject
-    TenantContext tenantContext;
+    TenantIdFilter tenantIdFilter;
+
+    @Inject
+    TenantRateLimiter tenantRateLimiter;
+
+    @Inject
+    TenantBulkhead tenantBulkhead;
+
+    @Inject
+    TenantMetrics tenantMetrics;
+
+    @Inject
+    TenantUsageTracker tenantUsageTracker;
+
+    @ConfigProperty(name = "app.authn.enabled", defaultValue = "false")
+    boolean authnEnabled;
 
     /**
+     * Builds a non-blocking chain: limit the client's rate, resolve the tenant, load its info (from the
+     * cache, or fetched off the event loop), enforce its limits, authenticate and authorize the resolved
+     * identity and then charge the tenant's rate limit, request quota and concurrency limit.  Steps that may complete on another thread are
+     * resumed on the request's Vert.x context.
      * @see io.apicurio.common.apps.auth.authn.AppAuthenticationMechanism#authenticate(io.vertx.ext.web.RoutingContext,
      *      io.quarkus.security.identity.IdentityProviderManager)
      */
     @Override
-    @ActivateRequestContext
     public Uni<SecurityIdentity> authenticate(RoutingContext context, IdentityProviderManager identityProviderManager) {
-        Uni<SecurityIdentity> identity = super.authenticate(context, identityProviderManager);
-
-        if (mtProperties.isMultitenancyEnabled()) {
-            log.info("Multitenancy is enabled!");
-            HttpServerRequest request = context.request();
-            Optional<String> tenantId = tenantIdResolver.resolveTenantId(request.absoluteURI(),
-                    (headerName) -> request.getHeader(headerName),
-                    () -> request.host());
-            if (tenantId.isEmpty()) {
-                log.warn("Multi-tenancy is enabled but the tenantId could not be resolved.");
-                throw new ForbiddenException("Could not resolve tenant ID.");
-            }
-            Optional<TenantInfo> info = tenantInfoLoader.loadInfo(tenantId.get());
-            if (info.isEmpty()) {
-                throw new ForbiddenException("Unknown tenant: " + tenantId.get());
-            }
-            if (mtProperties.isMultitenancyAuthorizationEnabled()) {
-                tenantAuthorizer.authorizeTenant(info.get(), identity);
+        if (!mtProperties.isMultitenancyEnabled()) {
+            return super.authenticate(context, identityProviderManager);
+        }
+
+        HttpServerRequest request = context.request();
+        // Unauthenticated requests can only be limited per client, not per (claimed) tenant
+        long clientRetryAfter = tenantRateLimiter.tryAcquireForClient(clientAddress(request));
+        if (clientRetryAfter != TenantRateLimiter.ADMITTED) {
+            setRateLimitedHandler(context);
+            return Uni.createFrom().failure(new TenantRateLimitedException("Request rate limit exceeded for client.", clientRetryAfter));
+        }
+
+        Optional<String> resolved = tenantIdResolver.resolveTenantId(request.absoluteURI(),
+                (headerName) -> request.getHeader(headerName),
+                () -> request.host());
+        if (resolved.isEmpty()) {
+            log.warn("Multi-tenancy is enabled but the tenantId could not be resolved.");
+            return Uni.createFrom().failure(new ForbiddenException("Could not resolve tenant ID."));
+        }
+        String tenantId = resolved.get();
+        // Reject tenants that certainly do not exist before any I/O
+        boolean known = tenantIdFilter.mightExist(tenantId);
+        if (!known && !tenantIdFilter.tryProbe(tenantId, clientAddress(request))) {
+            return Uni.createFrom().failure(new ForbiddenException("Unknown tenant: " + tenantId));
+        }
+        Context vertxContext = Vertx.currentContext();
+
+        CompletableFuture<Optional<TenantInfo>> loading = tenantInfoLoader.loadInfoAsync(tenantId).toCompletableFuture();
+        Uni<Optional<TenantInfo>> info = Uni.createFrom().completionStage(loading)
+                .onFailure(CompletionException.class).transform(Throwable::getCause)
+                .onFailure().transform(e -> {
+                    // Fail closed: a tenant whose info cannot be loaded (or makes no sense) is not served
+                    log.warn("Unable to load tenant {}: {}", tenantId, e.getMessage());
+                    return new ForbiddenException("Unable to load tenant: " + tenantId);
+                });
+        if (!loading.isDone()) {
+            info = resumeOn(info, vertxContext);
+        }
+        return info
+                .onItem().transform(found -> {
+                    TenantInfo tenantInfo = found.orElseThrow(() -> new ForbiddenException("Unknown tenant: " + tenantId));
+                    if (tenantInfo.getStatus() != null && tenantInfo.getStatus() != TenantStatus.READY) {
+                        throw new ForbiddenException("Tenant is not ready: " + tenantId);
+                    }
+                    if (!known) {
+                        tenantIdFilter.add(tenantId);
+                    }
+                    return tenantInfo;
+                })
+                .onItem().transformToUni(tenantInfo -> {
+                    recordMetrics(context, tenantInfo);
+                    return super.authenticate(context, identityProviderManager)
+                            .onItem().invoke(identity -> {
+                                if (mtProperties.isMultitenancyAuthorizationEnabled()) {
+                                    tenantAuthorizer.authorizeTenant(tenantInfo, identity);
+                                }
+                                if (isAuthenticated(identity)) {
+                                    limitRate(context, tenantInfo);
+                                    chargeQuota(context, tenantInfo);
+                                }
+                            })
+                            .onItem().transformToUni(identity -> {
+                                Uni<Void> permitted = isAuthenticated(identity)
+                                        ? limitConcurrency(context, tenantInfo, vertxContext)
+                                        : Uni.createFrom().voidItem();
+                                return permitted.replaceWith(identity);
+                            })
+                            .onItem().invoke(identity -> setTenantInfo(context, tenantInfo, vertxContext));
+                });
+    }
+
+    /**
+     * Records the request in the tenant's metrics once it ends.
+     */
+    private void recordMetrics(RoutingContext context, TenantInfo info) {
+        String tenantId = info.getId();
+        long start = System.nanoTime();
+        context.addEndHandler(ignored -> tenantMetrics.recordRequest(tenantId, System.nanoTime() - start));
+    }
+
+    /**
+     * Charges the request to the tenant's request quota (kept in memory, no I/O), only once the request
+     * is authenticated and authorized, so that requests without valid credentials cannot use it up.
+     * @throws TenantQuotaExceededException if the tenant has used up its request quota for the current window
+     */
+    private void chargeQuota(RoutingContext context, TenantInfo info) {
+        if (!mtProperties.isUsageEnabled()) {
+            return;
+        }
+        try {
+            tenantUsageTracker.recordRequest(info);
+        } catch (TenantQuotaExceededException e) {
+            setRateLimitedHandler(context);
+            throw e;
+        }
+    }
+
+    /**
+     * Caps the number of requests the tenant has in progress, only once the request is authenticated
+     * and authorized, so that requests without valid credentials cannot take a tenant's permits.  The
+     * permit is released when the request ends, or earlier through {@link TenantBulkhead#releasePermit(RoutingContext)}.
+     * Completes once the request may proceed.
+     */
+    private Uni<Void> limitConcurrency(RoutingContext context, TenantInfo info, Context vertxContext) {
+        CompletableFuture<TenantBulkhead.Permit> permit = tenantBulkhead.acquire(info.getId(), info.getLimits())
+                .toCompletableFuture();
+        context.addEndHandler(ignored -> permit.thenAccept(p -> {
+            if (p != null) {
+                p.release();
             }
-            tenantContext.setTenantInfo(info.get());
+        }));
+        if (!permit.isDone() || permit.isCompletedExceptionally()) {
+            setRateLimitedHandler(context);
+        }
+        Uni<Void> permitted = Uni.createFrom().completionStage(permit)
+                .onFailure(CompletionException.class).transform(Throwable::getCause)
+                .onItem().invoke(p -> {
+                    if (p != null) {
+                        context.put(TenantBulkhead.PERMIT_KEY, p);
+                    }
+                })
+                .replaceWithVoid();
+        if (!permit.isDone()) {
+            // Resume on the request's context once another request of the tenant hands over its permit
+            permitted = resumeOn(permitted, vertxContext);
         }
+        return permitted;
+    }
 
-        return identity;
+    /**
+     * Takes a token from the tenant's rate limit bucket, only once the request is authenticated and
+     * authorized, so that requests without valid credentials cannot use up a tenant's rate.
+     * @throws TenantRateLimitedException if the tenant is over its rate limit
+     */
+    private void limitRate(RoutingContext context, TenantInfo info) {
+        long retryAfter = tenantRateLimiter.tryAcquire(info.getId(), info.getLimits());
+        if (retryAfter != TenantRateLimiter.ADMITTED) {
+            setRateLimitedHandler(context);
+            throw new TenantRateLimitedException("Request rate limit exceeded for tenant: " + info.getId(), retryAfter);
+        }
+    }
+
+    /**
+     * @return true if the request was authenticated, or if authentication is disabled (in which case
+     *         there is nothing better to go by)
+     */
+    private boolean isAuthenticated(SecurityIdentity identity) {
+        return !authnEnabled || (identity != null && !identity.isAnonymous());
+    }
+
+    private static String clientAddress(HttpServerRequest request) {
+        return request.remoteAddress() == null ? null : request.remoteAddress().host();
+    }
+
+    /**
+     * Emits the items of the given Uni on the given Vert.x context (if any) instead of on the thread
+     * that completed it.
+     */
+    private static <T> Uni<T> resumeOn(Uni<T> uni, Context vertxContext) {
+        if (vertxContext == null) {
+            return uni;
+        }
+        return uni.emitOn(task -> vertxContext.runOnContext(v -> task.run()));
+    }
+
+    /**
+     * Makes the tenant available to the rest of the request: on the routing context, from where
+     * {@link io.apicurio.common.apps.mt.context.TenantContextFilter} binds it to the thread that runs
+     * the JAX-RS resource, and on the request's Vert.x context if it is a duplicated context.
+     */
+    private static void setTenantInfo(RoutingContext context, TenantInfo info, Context vertxContext) {
+        context.put(TenantContext.TENANT_INFO_KEY, info);
+        if (TenantContext.isDuplicatedContext(vertxContext)) {
+            vertxContext.putLocal(TenantContext.TENANT_INFO_KEY, info);
+        }
+    }
+
+    /**
+     * Responds to a {@link TenantRateLimitedException} or a {@link TenantQuotaExceededException} with a
+     * 429 and a Retry-After header.
+     */
+    private void setRateLimitedHandler(RoutingContext context) {
+        BiConsumer<RoutingContext, Throwable> failureHandler = context.get(QuarkusHttpUser.AUTH_FAILURE_HANDLER);
+        BiConsumer<RoutingContext, Throwable> rateLimitedHandler = (ctx, ex) -> {
+            if (ex instanceof TenantRateLimitedException) {
+                ctx.response()
+                        .setStatusCode(429)
+                        .putHeader("Retry-After", String.valueOf(((TenantRateLimitedException) ex).getRetryAfterSeconds()))
+                        .end();
+            } else if (ex instanceof TenantQuotaExceededException) {
+                long retryAfter = ((TenantQuotaExceededException) ex).getRetryAfterSeconds();
+                if (retryAfter > 0) {
+                    ctx.response().putHeader("Retry-After", String.valueOf(retryAfter));
+                }
+                ctx.response().setStatusCode(429).end();
+            } else if (failureHandler != null) {
+                failureHandler.accept(ctx, ex);
+            } else {
+                ctx.fail(ex);
+            }
+        };
+        context.put(QuarkusHttpUser.AUTH_FAILURE_HANDLER, rateLimitedHandler);
     }
 
 }
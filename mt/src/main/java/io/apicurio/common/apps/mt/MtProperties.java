@@ -38,6 +38,22 @@ public class MtProperties {
     @ConfigProperty(name = "app.multitenancy.authorization.enabled", defaultValue = "true")
     boolean mtAuthorizationEnabled;
 
+    @Inject
+    @ConfigProperty(name = "app.multitenancy.authorization.org-claim", defaultValue = "rh-org-id")
+    String mtAuthorizationOrgClaim;
+
+    @Inject
+    @ConfigProperty(name = "app.multitenancy.authorization.allow-unowned", defaultValue = "false")
+    boolean mtAuthorizationAllowUnowned;
+
+    @Inject
+    @ConfigProperty(name = "app.multitenancy.authorization.cache.max-size", defaultValue = "10000")
+    Integer mtAuthorizationCacheMaxSize;
+
+    @Inject
+    @ConfigProperty(name = "app.multitenancy.authorization.cache.ttl-seconds", defaultValue = "300")
+    Long mtAuthorizationCacheTtlSeconds;
+
     @Inject
     @ConfigProperty(name = "app.multitenancy.types.context-path.enabled", defaultValue = "true")
     boolean mtContextPathEnabled;
@@ -78,6 +94,86 @@ public class MtProperties {
     @ConfigProperty(name = "app.multitenancy.reaper.period-seconds", defaultValue = "10800")
     Long reaperPeriodSeconds;
 
+    @Inject
+    @ConfigProperty(name = "app.multitenancy.reaper.enabled", defaultValue = "true")
+    boolean reaperEnabled;
+
+    @Inject
+    @ConfigProperty(name = "app.multitenancy.reaper.batch-size", defaultValue = "100")
+    Integer reaperBatchSize;
+
+    @Inject
+    @ConfigProperty(name = "app.multitenancy.reaper.batch-delay-ms", defaultValue = "100")
+    Long reaperBatchDelayMs;
+
+    @Inject
+    @ConfigProperty(name = "app.multitenancy.reaper.max-tenants", defaultValue = "100")
+    Integer reaperMaxTenants;
+
+    @Inject
+    @ConfigProperty(name = "app.multitenancy.rate-limit.enabled", defaultValue = "true")
+    boolean rateLimitEnabled;
+
+    @Inject
+    @ConfigProperty(name = "app.multitenancy.rate-limit.max-tenants", defaultValue = "10000")
+    Integer rateLimitMaxTenants;
+
+    @Inject
+    @ConfigProperty(name = "app.multitenancy.rate-limit.idle-seconds", defaultValue = "600")
+    Long rateLimitIdleSeconds;
+
+    @Inject
+    @ConfigProperty(name = "app.multitenancy.rate-limit.client.rate", defaultValue = "0")
+    Long clientRateLimit;
+
+    @Inject
+    @ConfigProperty(name = "app.multitenancy.rate-limit.client.burst", defaultValue = "0")
+    Long clientRateLimitBurst;
+
+    @Inject
+    @ConfigProperty(name = "app.multitenancy.bulkhead.max-concurrent-requests")
+    Optional<Integer> bulkheadMaxConcurrentRequests;
+
+    @Inject
+    @ConfigProperty(name = "app.multitenancy.bulkhead.queue-size", defaultValue = "10")
+    Integer bulkheadQueueSize;
+
+    @Inject
+    @ConfigProperty(name = "app.multitenancy.bulkhead.queue-timeout-ms", defaultValue = "100")
+    Long bulkheadQueueTimeoutMs;
+
+    @Inject
+    @ConfigProperty(name = "app.multitenancy.tenant-filter.enabled", defaultValue = "false")
+    boolean tenantFilterEnabled;
+
+    @Inject
+    @ConfigProperty(name = "app.multitenancy.tenant-filter.refresh-seconds", defaultValue = "300")
+    Long tenantFilterRefreshSeconds;
+
+    @Inject
+    @ConfigProperty(name = "app.multitenancy.tenant-filter.false-positive-rate", defaultValue = "0.01")
+    Double tenantFilterFalsePositiveRate;
+
+    @Inject
+    @ConfigProperty(name = "app.multitenancy.tenant-filter.probes-per-second", defaultValue = "10")
+    Integer tenantFilterProbesPerSecond;
+
+    @Inject
+    @ConfigProperty(name = "app.multitenancy.usage.enabled", defaultValue = "false")
+    boolean usageEnabled;
+
+    @Inject
+    @ConfigProperty(name = "app.multitenancy.usage.flush-seconds", defaultValue = "30")
+    Long usageFlushSeconds;
+
+    @Inject
+    @ConfigProperty(name = "app.multitenancy.usage.batch-size", defaultValue = "500")
+    Integer usageBatchSize;
+
+    @Inject
+    @ConfigProperty(name = "app.multitenancy.usage.request-window-seconds", defaultValue = "3600")
+    Long usageRequestWindowSeconds;
+
     @Inject
     @ConfigProperty(name = "app.tenant.manager.url")
     Optional<String> tenantManagerUrl;
@@ -98,6 +194,30 @@ public class MtProperties {
     @ConfigProperty(name = "app.tenant.manager.auth.client-secret")
     Optional<String> tenantManagerClientSecret;
 
+    @Inject
+    @ConfigProperty(name = "app.tenant.manager.cache.max-size", defaultValue = "10000")
+    Long tenantManagerCacheMaxSize;
+
+    @Inject
+    @ConfigProperty(name = "app.tenant.manager.cache.ttl-seconds", defaultValue = "60")
+    Long tenantManagerCacheTtlSeconds;
+
+    @Inject
+    @ConfigProperty(name = "app.tenant.manager.cache.stale-seconds", defaultValue = "300")
+    Long tenantManagerCacheStaleSeconds;
+
+    @Inject
+    @ConfigProperty(name = "app.tenant.manager.cache.negative-ttl-seconds", defaultValue = "10")
+    Long tenantManagerCacheNegativeTtlSeconds;
+
+    @Inject
+    @ConfigProperty(name = "app.tenant.manager.load.threads", defaultValue = "8")
+    Integer tenantManagerLoadThreads;
+
+    @Inject
+    @ConfigProperty(name = "app.tenant.manager.load.queue-size", defaultValue = "1000")
+    Integer tenantManagerLoadQueueSize;
+
     @PostConstruct
     void init() {
         this.reaperEvery.orElseThrow(() -> new IllegalArgumentException("Missing required configuration property 'app.multitenancy.reaper.every'"));
@@ -117,6 +237,34 @@ public class MtProperties {
         return mtAuthorizationEnabled;
     }
 
+    /**
+     * @return the token claim holding the organization of the user
+     */
+    public String getMultitenancyAuthorizationOrgClaim() {
+        return mtAuthorizationOrgClaim;
+    }
+
+    /**
+     * @return true if tenants with neither an owner nor an organization are open to every authenticated user
+     */
+    public boolean isMultitenancyAuthorizationAllowUnowned() {
+        return mtAuthorizationAllowUnowned;
+    }
+
+    /**
+     * @return the maximum number of cached tenant authorization decisions
+     */
+    public int getMultitenancyAuthorizationCacheMaxSize() {
+        return mtAuthorizationCacheMaxSize;
+    }
+
+    /**
+     * @return how long a tenant authorization decision is cached (at most, it never outlives the token)
+     */
+    public Duration getMultitenancyAuthorizationCacheTtl() {
+        return Duration.ofSeconds(mtAuthorizationCacheTtlSeconds);
+    }
+
     /**
      * @return true if multitenancy context paths are enabled
      */
@@ -173,10 +321,164 @@ public class MtProperties {
         return tenantIdRequestHeader;
     }
 
+    /**
+     * @return the minimum time between two runs of the tenant reaper (across the cluster)
+     */
     public Duration getReaperPeriod() {
         return Duration.ofSeconds(reaperPeriodSeconds);
     }
 
+    /**
+     * @return how often each node checks whether the tenant reaper is due, e.g. "3h" or "PT10M"
+     */
+    public Duration getReaperEvery() {
+        String every = reaperEvery.get().trim();
+        if (Character.isDigit(every.charAt(0))) {
+            every = every.toUpperCase().endsWith("D") ? "P" + every : "PT" + every;
+        }
+        return Duration.parse(every);
+    }
+
+    /**
+     * @return true if the tenant reaper is enabled
+     */
+    public boolean isReaperEnabled() {
+        return reaperEnabled;
+    }
+
+    /**
+     * @return the maximum number of rows the tenant reaper deletes per statement
+     */
+    public int getReaperBatchSize() {
+        return reaperBatchSize;
+    }
+
+    /**
+     * @return the minimum pause of the tenant reaper between two batches
+     */
+    public Duration getReaperBatchDelay() {
+        return Duration.ofMillis(reaperBatchDelayMs);
+    }
+
+    /**
+     * @return the maximum number of tenants the tenant reaper purges per run
+     */
+    public int getReaperMaxTenants() {
+        return reaperMaxTenants;
+    }
+
+    /**
+     * @return true if tenant request rate limits are enforced
+     */
+    public boolean isRateLimitEnabled() {
+        return rateLimitEnabled;
+    }
+
+    /**
+     * @return the maximum number of tenants tracked by the rate limiter
+     */
+    public int getRateLimitMaxTenants() {
+        return rateLimitMaxTenants;
+    }
+
+    /**
+     * @return how long a tenant's rate limit state is kept without requests
+     */
+    public Duration getRateLimitIdleTimeout() {
+        return Duration.ofSeconds(rateLimitIdleSeconds);
+    }
+
+    /**
+     * @return the requests per second allowed per client address before authentication (0 disables it)
+     */
+    public long getClientRateLimit() {
+        return clientRateLimit;
+    }
+
+    /**
+     * @return the burst allowed per client address before authentication (at least the rate)
+     */
+    public long getClientRateLimitBurst() {
+        return clientRateLimitBurst;
+    }
+
+    /**
+     * @return the default number of requests a tenant may have in progress at once (empty means unlimited)
+     */
+    public Optional<Integer> getBulkheadMaxConcurrentRequests() {
+        return bulkheadMaxConcurrentRequests;
+    }
+
+    /**
+     * @return the number of requests of a tenant that may wait for one of its requests to complete
+     */
+    public int getBulkheadQueueSize() {
+        return bulkheadQueueSize;
+    }
+
+    /**
+     * @return how long a request may wait for one of its tenant's requests to complete
+     */
+    public Duration getBulkheadQueueTimeout() {
+        return Duration.ofMillis(bulkheadQueueTimeoutMs);
+    }
+
+    /**
+     * @return true if requests for tenants missing from the tenant filter are rejected
+     */
+    public boolean isTenantFilterEnabled() {
+        return tenantFilterEnabled;
+    }
+
+    /**
+     * @return how often the tenant filter is rebuilt from the tenant manager
+     */
+    public Duration getTenantFilterRefreshPeriod() {
+        return Duration.ofSeconds(tenantFilterRefreshSeconds);
+    }
+
+    /**
+     * @return the false positive rate the tenant filter is sized for
+     */
+    public double getTenantFilterFalsePositiveRate() {
+        return tenantFilterFalsePositiveRate;
+    }
+
+    /**
+     * @return how many tenants missing from the tenant filter each client may have looked up per second anyway
+     */
+    public int getTenantFilterProbesPerSecond() {
+        return tenantFilterProbesPerSecond;
+    }
+
+    /**
+     * @return true if tenant usage is tracked (and request and storage quotas enforced)
+     */
+    public boolean isUsageEnabled() {
+        return usageEnabled;
+    }
+
+    /**
+     * @return how often the tenant usage tracked in memory is written to the database
+     */
+    public Duration getUsageFlushPeriod() {
+        return Duration.ofSeconds(usageFlushSeconds);
+    }
+
+    /**
+     * @return the maximum number of tenants whose usage is written per statement batch
+     */
+    public int getUsageBatchSize() {
+        return usageBatchSize;
+    }
+
+    /**
+     * @return the period over which the requests of a tenant are counted against its request quota
+     */
+    public Duration getUsageRequestWindow() {
+        return Duration.ofSeconds(usageRequestWindowSeconds);
+    }
+
     /**
      * @return the tenantManagerUrl
      */
@@ -211,4 +513,46 @@ public class MtProperties {
     public Optional<String> getTenantManagerClientSecret() {
         return tenantManagerClientSecret;
     }
+
+    /**
+     * @return the maximum number of tenants kept in the tenant info cache
+     */
+    public long getTenantManagerCacheMaxSize() {
+        return tenantManagerCacheMaxSize;
+    }
+
+    /**
+     * @return how long a loaded tenant info is considered fresh
+     */
+    public Duration getTenantManagerCacheTtl() {
+        return Duration.ofSeconds(tenantManagerCacheTtlSeconds);
+    }
+
+    /**
+     * @return how long after it expires a tenant info may still be served while it is refreshed
+     */
+    public Duration getTenantManagerCacheStalePeriod() {
+        return Duration.ofSeconds(tenantManagerCacheStaleSeconds);
+    }
+
+    /**
+     * @return how long an unknown tenant is remembered as unknown
+     */
+    public Duration getTenantManagerCacheNegativeTtl() {
+        return Duration.ofSeconds(tenantManagerCacheNegativeTtlSeconds);
+    }
+
+    /**
+     * @return the maximum number of tenants fetched from the tenant manager at the same time
+     */
+    public int getTenantManagerLoadThreads() {
+        return tenantManagerLoadThreads;
+    }
+
+    /**
+     * @return the maximum number of tenant fetches waiting for a thread, further fetches are rejected
+     */
+    public int getTenantManagerLoadQueueSize() {
+        return tenantManagerLoadQueueSize;
+    }
 }
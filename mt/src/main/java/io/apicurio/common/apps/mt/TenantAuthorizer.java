@@ -16,20 +16,182 @@
 
 package io.apicurio.common.apps.mt;
 
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.json.JsonString;
+
+import org.eclipse.microprofile.jwt.JsonWebToken;
 
+import io.quarkus.security.ForbiddenException;
 import io.quarkus.security.identity.SecurityIdentity;
-import io.smallrye.mutiny.Uni;
 
 /**
- * TODO document
+ * Decides whether an authenticated user may access a tenant.  Access is granted to the tenant's owner
+ * and to the members of the tenant's organization (as found in the app.multitenancy.authorization.org-claim
+ * claim of the user's token).  Tenants with neither an owner nor an organization are closed to everyone,
+ * unless app.multitenancy.authorization.allow-unowned is enabled.  Requests without an authenticated
+ * identity (authentication disabled) are not checked.
+ * <p>
+ * Decisions are cached per (principal, organization, tenant), so that a repeated request costs a single
+ * map lookup.  A
+ * decision expires with the user's token (and after app.multitenancy.authorization.cache.ttl-seconds at
+ * the latest), and is discarded as soon as the tenant's owner or organization changes.
+ *
  * @author eric.wittmann@gmail.com
  */
 @ApplicationScoped
 public class TenantAuthorizer {
 
-    public void authorizeTenant(TenantInfo info, Uni<SecurityIdentity> identity) {
-        // TODO implement this!
+    @Inject
+    MtProperties mtProperties;
+
+    private final ConcurrentHashMap<DecisionKey, Decision> decisions = new ConcurrentHashMap<>();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private String orgClaim;
+    private boolean allowUnowned;
+    private int maxSize;
+    private long ttlNanos;
+
+    @PostConstruct
+    void init() {
+        orgClaim = mtProperties.getMultitenancyAuthorizationOrgClaim();
+        allowUnowned = mtProperties.isMultitenancyAuthorizationAllowUnowned();
+        maxSize = mtProperties.getMultitenancyAuthorizationCacheMaxSize();
+        ttlNanos = mtProperties.getMultitenancyAuthorizationCacheTtl().toNanos();
+    }
+
+    /**
+     * Checks that the (resolved) identity may access the tenant.  Called on the event loop, so it
+     * must not block.
+     * @param info the tenant
+     * @param identity the authenticated identity
+     * @throws io.quarkus.security.ForbiddenException if access is denied
+     */
+    public void authorizeTenant(TenantInfo info, SecurityIdentity identity) {
+        if (identity == null || identity.isAnonymous()) {
+            return;
+        }
+        String principal = identity.getPrincipal().getName();
+        JsonWebToken token = identity.getPrincipal() instanceof JsonWebToken ? (JsonWebToken) identity.getPrincipal() : null;
+        String orgId = token == null ? null : claimValue(token.getClaim(orgClaim));
+        DecisionKey key = new DecisionKey(principal, orgId, info.getId());
+        long now = System.nanoTime();
+        Decision decision = decisions.get(key);
+        if (decision == null || now - decision.expiresAt >= 0 || !decision.isFor(info)) {
+            decision = decide(info, token, principal, orgId, now);
+            if (decisions.size() >= maxSize) {
+                sweep(now);
+            }
+            decisions.put(key, decision);
+        }
+        if (!decision.allowed) {
+            throw new ForbiddenException("User " + principal + " is not authorized to access tenant " + info.getId());
+        }
+    }
+
+    /**
+     * Discards the cached decisions about a tenant, e.g. after its owner or organization changed.
+     * (Changes are also detected automatically when the tenant info is reloaded.)
+     * @param tenantId the unique tenant ID
+     */
+    public void invalidateTenant(String tenantId) {
+        decisions.keySet().removeIf(key -> key.tenantId.equals(tenantId));
+    }
+
+    private Decision decide(TenantInfo info, JsonWebToken token, String principal, String orgId, long now) {
+        long expiresAt = now + ttlNanos;
+        if (token != null && token.getExpirationTime() > 0) {
+            long remainingMillis = TimeUnit.SECONDS.toMillis(token.getExpirationTime()) - System.currentTimeMillis();
+            expiresAt = Math.min(expiresAt, now + TimeUnit.MILLISECONDS.toNanos(remainingMillis));
+        }
+        boolean allowed = (allowUnowned && info.getOwner() == null && info.getOrgId() == null)
+                || (info.getOwner() != null && info.getOwner().equals(principal))
+                || (info.getOrgId() != null && info.getOrgId().equals(orgId));
+        return new Decision(info, allowed, expiresAt);
+    }
+
+    private static String claimValue(Object claim) {
+        if (claim == null) {
+            return null;
+        }
+        return claim instanceof JsonString ? ((JsonString) claim).getString() : claim.toString();
+    }
+
+    /**
+     * Makes room in the cache: drops the expired decisions, or all of them if none had expired.
+     */
+    private void sweep(long now) {
+        if (!sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            decisions.values().removeIf(decision -> now - decision.expiresAt >= 0);
+            if (decisions.size() >= maxSize) {
+                decisions.clear();
+            }
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    private static class DecisionKey {
+
+        final String principal;
+        final String orgId;
+        final String tenantId;
+        final int hash;
+
+        DecisionKey(String principal, String orgId, String tenantId) {
+            this.principal = principal;
+            this.orgId = orgId;
+            this.tenantId = tenantId;
+            this.hash = 31 * (31 * principal.hashCode() + Objects.hashCode(orgId)) + tenantId.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof DecisionKey)) {
+                return false;
+            }
+            DecisionKey other = (DecisionKey) obj;
+            return hash == other.hash && principal.equals(other.principal) && Objects.equals(orgId, other.orgId)
+                    && tenantId.equals(other.tenantId);
+        }
+    }
+
+    private static class Decision {
+
+        final TenantInfo info;
+        final boolean allowed;
+        final long expiresAt;
+
+        Decision(TenantInfo info, boolean allowed, long expiresAt) {
+            this.info = info;
+            this.allowed = allowed;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * True if the decision was made for the given tenant info (or an identical one).
+         */
+        boolean isFor(TenantInfo other) {
+            return info == other
+                    || (Objects.equals(info.getOwner(), other.getOwner()) && Objects.equals(info.getOrgId(), other.getOrgId()));
+        }
     }
 
 }
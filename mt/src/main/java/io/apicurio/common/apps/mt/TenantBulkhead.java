@@ -0,0 +1,244 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.mt;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * Caps the number of requests each tenant may have in progress at once, so that a tenant with slow
+ * requests cannot hold all worker threads and database connections.  The cap comes from the tenant's
+ * {@link TenantLimits}, or app.multitenancy.bulkhead.max-concurrent-requests if the tenant has none.
+ * <p>
+ * A request over the cap waits in a short per-tenant queue (app.multitenancy.bulkhead.queue-size) for
+ * at most app.multitenancy.bulkhead.queue-timeout-ms.  If the queue is full or the wait times out, the
+ * request is rejected.  Waiting never blocks a thread: a queued request is resumed when one of its
+ * tenant's requests completes and hands over its permit.
+ * <p>
+ * A request that waits for an event rather than doing work (such as a long-poll for config changes)
+ * should give its permit back while parked, using {@link #releasePermit(RoutingContext)}.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+@ApplicationScoped
+public class TenantBulkhead {
+
+    /**
+     * The routing context key under which the permit of the current request is stored.
+     */
+    public static final String PERMIT_KEY = TenantBulkhead.class.getName() + ".permit";
+
+    private static final long IDLE_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    @Inject
+    MtProperties mtProperties;
+
+    @Inject
+    Instance<MeterRegistry> meterRegistry;
+
+    private final ConcurrentHashMap<String, Compartment> compartments = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep = new AtomicLong();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder queued = new LongAdder();
+    private int queueSize;
+    private long queueTimeoutNanos;
+
+    @PostConstruct
+    void init() {
+        queueSize = mtProperties.getBulkheadQueueSize();
+        queueTimeoutNanos = mtProperties.getBulkheadQueueTimeout().toNanos();
+        nextSweep.set(System.nanoTime() + IDLE_NANOS);
+        if (meterRegistry.isResolvable()) {
+            MeterRegistry registry = meterRegistry.get();
+            FunctionCounter.builder("apicurio.tenant.requests.bulkhead.queued", queued, LongAdder::sum)
+                    .description("Requests that had to wait for another request of their tenant to complete")
+                    .register(registry);
+            FunctionCounter.builder("apicurio.tenant.requests.bulkhead.rejected", rejected, LongAdder::sum)
+                    .description("Requests rejected because their tenant had too many requests in progress")
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Acquires a permit for a request of the given tenant.  The returned stage is already complete
+     * unless the request has to wait; it fails with a {@link TenantRateLimitedException} if the request
+     * is rejected.  The permit must be released when the request completes.
+     * @param tenantId the unique tenant ID
+     * @param limits the tenant's limits (may be null)
+     * @return the permit, or null if the tenant's concurrency is not limited
+     */
+    public CompletionStage<Permit> acquire(String tenantId, TenantLimits limits) {
+        int limit = limitOf(limits);
+        if (limit <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long now = System.nanoTime();
+        if (now - nextSweep.get() > 0) {
+            sweep(now);
+        }
+        Compartment compartment = compartments.computeIfAbsent(tenantId, id -> new Compartment());
+        compartment.limit = limit;
+        compartment.lastUsed = now;
+
+        if (compartment.tryIncrement()) {
+            return CompletableFuture.completedFuture(new Permit(compartment));
+        }
+        if (compartment.waiting.incrementAndGet() > queueSize) {
+            compartment.waiting.decrementAndGet();
+            rejected.increment();
+            return CompletableFuture.failedFuture(rejection(tenantId));
+        }
+        queued.increment();
+        CompletableFuture<Permit> waiter = new CompletableFuture<>();
+        compartment.waiters.add(waiter);
+        // A permit may have been released while queueing
+        if (compartment.tryIncrement() && !waiter.complete(new Permit(compartment))) {
+            // Another request handed its permit over already, give ours back
+            compartment.release();
+        }
+        waiter.orTimeout(queueTimeoutNanos, TimeUnit.NANOSECONDS);
+        return waiter.handle((permit, error) -> {
+            compartment.waiting.decrementAndGet();
+            compartment.waiters.remove(waiter);
+            if (error instanceof TimeoutException) {
+                rejected.increment();
+                throw rejection(tenantId);
+            }
+            if (error != null) {
+                throw new IllegalStateException(error);
+            }
+            return permit;
+        });
+    }
+
+    /**
+     * Releases the permit held by the given request (if any) before the request ends.  Used by requests
+     * that are about to be parked, so that they do not count against their tenant's concurrency limit
+     * while waiting.
+     * @param context the routing context of the request
+     */
+    public static void releasePermit(RoutingContext context) {
+        Permit permit = context.get(PERMIT_KEY);
+        if (permit != null) {
+            permit.release();
+        }
+    }
+
+    private int limitOf(TenantLimits limits) {
+        if (limits != null && limits.getMaxConcurrentRequests() != null) {
+            return limits.getMaxConcurrentRequests();
+        }
+        return mtProperties.getBulkheadMaxConcurrentRequests().orElse(0);
+    }
+
+    private TenantRateLimitedException rejection(String tenantId) {
+        return new TenantRateLimitedException("Too many concurrent requests for tenant: " + tenantId, queueTimeoutNanos);
+    }
+
+    /**
+     * Removes the compartments of tenants that have had no requests for a while.
+     */
+    private void sweep(long now) {
+        long scheduled = nextSweep.get();
+        if (!nextSweep.compareAndSet(scheduled, now + IDLE_NANOS / 2)) {
+            return;
+        }
+        compartments.values().removeIf(compartment -> now - compartment.lastUsed > IDLE_NANOS
+                && compartment.inFlight.get() == 0 && compartment.waiters.isEmpty());
+    }
+
+    /**
+     * The right to process one request.  Releasing it more than once has no effect.
+     */
+    public static class Permit {
+
+        private final Compartment compartment;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Permit(Compartment compartment) {
+            this.compartment = compartment;
+        }
+
+        /**
+         * Releases the permit, resuming a waiting request of the same tenant if there is one.
+         */
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                compartment.release();
+            }
+        }
+    }
+
+    static class Compartment {
+
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger waiting = new AtomicInteger();
+        final Queue<CompletableFuture<Permit>> waiters = new ConcurrentLinkedQueue<>();
+        volatile int limit;
+        volatile long lastUsed;
+
+        boolean tryIncrement() {
+            while (true) {
+                int current = inFlight.get();
+                if (current >= limit) {
+                    return false;
+                }
+                if (inFlight.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Hands the permit over to the first waiting request, or returns it.
+         */
+        void release() {
+            while (true) {
+                CompletableFuture<Permit> waiter;
+                while ((waiter = waiters.poll()) != null) {
+                    if (waiter.complete(new Permit(this))) {
+                        return;
+                    }
+                }
+                inFlight.decrementAndGet();
+                // A request may have queued after the poll above, but before the decrement
+                if (waiters.isEmpty() || !tryIncrement()) {
+                    return;
+                }
+            }
+        }
+    }
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2021 Red Hat
+ * Copyright 2022 Red Hat
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -13,42 +13,185 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-
 package io.apicurio.common.apps.mt;
 
-import javax.annotation.PostConstruct;
-import javax.enterprise.context.RequestScoped;
-import javax.inject.Inject;
+import javax.inject.Singleton;
 
-import org.slf4j.Logger;
+import io.quarkus.arc.Arc;
+import io.quarkus.arc.ArcContainer;
+import io.quarkus.arc.InjectableContext.ContextState;
+import io.quarkus.arc.ManagedContext;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
 
 /**
+ * Gives access to the tenant of the current request (or task).  The tenant is looked up for every
+ * statement the storage runs, so this is a plain singleton (no client proxy, no CDI context lookup)
+ * backed by thread-locals, and by the Vert.x context when running on a duplicated (per-request)
+ * Vert.x context.  Work done outside of a request, e.g. by a scheduler, runs as the default tenant
+ * unless a tenant has been bound to the thread (see {@link #bind(TenantInfo)} and
+ * {@link io.apicurio.common.apps.mt.context.TenantAwareExecutor}).
+ * <p>
+ * The tenant is looked up, in order, from an explicit thread binding (always undone in a
+ * try/finally), from the duplicated Vert.x context, and from a request binding (see
+ * {@link #bindToRequest(TenantInfo)}).  A request binding is only honoured while the CDI request
+ * context it was made in is still the active one on the thread: a request that returns without
+ * unbinding (e.g. a suspended {@code AsyncResponse}) cannot leak its tenant into later work.
+ *
  * @author eric.wittmann@gmail.com
  */
-@RequestScoped
+@Singleton
 public class TenantContext {
 
-    private static final String DEFAULT_TENANT_ID = "_";
+    public static final String DEFAULT_TENANT_ID = "_";
 
-    @Inject
-    Logger log;
+    /**
+     * The key of the tenant info in the Vert.x context locals and in the routing context data.
+     */
+    public static final String TENANT_INFO_KEY = TenantContext.class.getName();
 
-    private TenantInfo info;
+    private static final ThreadLocal<TenantInfo> CURRENT = new ThreadLocal<>();
 
-    @PostConstruct
-    void init() {
-    }
+    private static final ThreadLocal<RequestBinding> REQUEST = new ThreadLocal<>();
 
+    /**
+     * Vert.x 4.1 has no public API that tells a duplicated context from a root (event loop) context.
+     * Locals of a root context are shared by every request on that event loop, so they are never used.
+     */
+    private static final Class<?> DUPLICATED_CONTEXT_CLASS = duplicatedContextClass();
+
+    /**
+     * Sets the tenant of the current request: on the Vert.x context if it is a duplicated context,
+     * otherwise on the current thread for the duration of the active CDI request context (see
+     * {@link #bindToRequest(TenantInfo)}).  Outside of a request there is nothing that would undo
+     * the binding, so work done on behalf of a tenant there must use {@link #bind(TenantInfo)} in a
+     * try/finally block instead.
+     * @param info the tenant info, or null for the default tenant
+     * @throws IllegalStateException if a tenant is set outside of a request
+     */
     public void setTenantInfo(TenantInfo info) {
-        log.debug("Setting info: " + info + " on " + this);
-        this.info = info;
+        Context context = Vertx.currentContext();
+        if (isDuplicatedContext(context)) {
+            if (info == null) {
+                context.removeLocal(TENANT_INFO_KEY);
+            } else {
+                context.putLocal(TENANT_INFO_KEY, info);
+            }
+        } else if (info == null || activeRequestState() != null) {
+            bindToRequest(info);
+        } else {
+            throw new IllegalStateException("No active request to set the tenant on, use TenantContext.bind() "
+                    + "in a try/finally block instead: " + info.getId());
+        }
+    }
+
+    /**
+     * @return the info of the current tenant, or null if running as the default tenant
+     */
+    public TenantInfo getTenantInfo() {
+        return current();
     }
 
     public String getTenantId() {
+        TenantInfo info = current();
         if (info == null) {
             return DEFAULT_TENANT_ID;
         }
         return info.getId();
     }
 
+    /**
+     * @return the info of the current tenant, or null if running as the default tenant
+     */
+    public static TenantInfo current() {
+        TenantInfo info = CURRENT.get();
+        if (info != null) {
+            return info;
+        }
+        Context context = Vertx.currentContext();
+        if (isDuplicatedContext(context)) {
+            info = context.getLocal(TENANT_INFO_KEY);
+            if (info != null) {
+                return info;
+            }
+        }
+        RequestBinding binding = REQUEST.get();
+        if (binding == null) {
+            return null;
+        }
+        if (binding.request != activeRequestState()) {
+            REQUEST.remove();
+            return null;
+        }
+        return binding.info;
+    }
+
+    /**
+     * Binds the given tenant to the current thread for the duration of the active CDI request
+     * context.  The binding is ignored (and dropped) as soon as that request context is no longer
+     * the active one on the thread, so it does not need to be undone on every code path.
+     * @param info the tenant info, or null to unbind
+     */
+    public static void bindToRequest(TenantInfo info) {
+        ContextState request = activeRequestState();
+        if (info == null || request == null) {
+            REQUEST.remove();
+        } else {
+            REQUEST.set(new RequestBinding(info, request));
+        }
+    }
+
+    /**
+     * Binds the given tenant to the current thread.  The thread binding takes precedence over the
+     * Vert.x context, and must be undone (in a finally block) by binding the returned (previous)
+     * tenant again.
+     * @param info the tenant info, or null to unbind
+     * @return the tenant previously bound to the current thread, or null
+     */
+    public static TenantInfo bind(TenantInfo info) {
+        TenantInfo previous = CURRENT.get();
+        if (info == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(info);
+        }
+        return previous;
+    }
+
+    /**
+     * @param context a Vert.x context, or null
+     * @return true if the given context is a duplicated (per-request) context
+     */
+    public static boolean isDuplicatedContext(Context context) {
+        return context != null && context.getClass() == DUPLICATED_CONTEXT_CLASS;
+    }
+
+    private static ContextState activeRequestState() {
+        ArcContainer container = Arc.container();
+        if (container == null) {
+            return null;
+        }
+        ManagedContext requestContext = container.requestContext();
+        return requestContext.isActive() ? requestContext.getState() : null;
+    }
+
+    private static Class<?> duplicatedContextClass() {
+        try {
+            return Class.forName("io.vertx.core.impl.DuplicatedContext", false, Context.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static class RequestBinding {
+
+        final TenantInfo info;
+        final ContextState request;
+
+        RequestBinding(TenantInfo info, ContextState request) {
+            this.info = info;
+            this.request = request;
+        }
+    }
+
 }
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.mt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+
+import io.apicurio.common.apps.util.BloomFilter;
+import io.apicurio.common.apps.util.HashUtil;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Rejects requests for tenants that certainly do not exist (or are no longer READY) without any I/O.
+ * Each node keeps a {@link BloomFilter} of the READY tenant IDs, rebuilt from the tenant manager every
+ * app.multitenancy.tenant-filter.refresh-seconds.  A tenant missing from the filter is normally rejected
+ * right away; since the filter lags behind tenant creation, such tenants are looked up anyway if they
+ * are in the tenant info cache (which costs no I/O), or within a budget of
+ * app.multitenancy.tenant-filter.probes-per-second lookups per client, and added to the filter if they
+ * turn out to be READY.  The budget is kept per client (in a fixed number of slots, by hash of the
+ * client address), so that a client scanning for tenant IDs only spends its own budget.
+ * <p>
+ * Enabled with app.multitenancy.tenant-filter.enabled (requires a tenant manager).  Until the first
+ * build completes, or if it fails, no tenant is rejected.  The filter is published as the
+ * apicurio.tenant.filter.tenants, apicurio.tenant.filter.bytes and apicurio.tenant.filter.false-positive-rate
+ * gauges, and rejections are counted by apicurio.tenant.filter.rejected.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+@ApplicationScoped
+public class TenantIdFilter {
+
+    private static final int PAGE_SIZE = 1000;
+    private static final int MIN_EXPECTED_TENANTS = 1024;
+    private static final int PROBE_SLOTS = 1024;
+
+    @Inject
+    Logger log;
+
+    @Inject
+    MtProperties mtProperties;
+
+    @Inject
+    TenantInfoLoader tenantInfoLoader;
+
+    @Inject
+    Instance<MeterRegistry> meterRegistry;
+
+    private volatile BloomFilter filter;
+    private final LongAdder rejected = new LongAdder();
+    private final AtomicLongArray probeWindows = new AtomicLongArray(PROBE_SLOTS);
+    private final AtomicIntegerArray probes = new AtomicIntegerArray(PROBE_SLOTS);
+    private int probesPerSecond;
+    private ScheduledExecutorService rebuilder;
+
+    @PostConstruct
+    void init() {
+        if (!mtProperties.isTenantFilterEnabled()) {
+            return;
+        }
+        if (tenantInfoLoader.getTenantManagerClient() == null) {
+            log.warn("The tenant filter requires a tenant manager, it is disabled.");
+            return;
+        }
+        probesPerSecond = mtProperties.getTenantFilterProbesPerSecond();
+        if (meterRegistry.isResolvable()) {
+            MeterRegistry registry = meterRegistry.get();
+            Gauge.builder("apicurio.tenant.filter.tenants", this, f -> f.filter == null ? 0 : f.filter.size())
+                    .description("Tenants in the tenant filter")
+                    .register(registry);
+            Gauge.builder("apicurio.tenant.filter.bytes", this, f -> f.filter == null ? 0 : f.filter.sizeInBytes())
+                    .description("Size of the tenant filter")
+                    .baseUnit("bytes")
+                    .register(registry);
+            Gauge.builder("apicurio.tenant.filter.false-positive-rate", this, f -> f.filter == null ? 0 : f.filter.expectedFalsePositiveRate())
+                    .description("Expected rate of unknown tenants not rejected by the tenant filter")
+                    .register(registry);
+            FunctionCounter.builder("apicurio.tenant.filter.rejected", rejected, LongAdder::sum)
+                    .description("Requests rejected because their tenant is not in the tenant filter")
+                    .register(registry);
+        }
+        long refresh = mtProperties.getTenantFilterRefreshPeriod().toMillis();
+        rebuilder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tenant-filter-rebuilder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        rebuilder.scheduleWithFixedDelay(this::rebuild, 0, refresh, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void destroy() {
+        if (rebuilder != null) {
+            rebuilder.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns false if the given tenant is certainly not READY, true if it might be (or if the filter
+     * is disabled or not built yet).
+     * @param tenantId the unique tenant ID
+     */
+    public boolean mightExist(String tenantId) {
+        BloomFilter current = filter;
+        return current == null || current.mightContain(tenantId);
+    }
+
+    /**
+     * Returns true if a tenant missing from the filter may be looked up anyway (if it is cached, or within
+     * the client's budget of lookups per second), otherwise counts the request as rejected and returns false.
+     * @param tenantId the unique tenant ID
+     * @param client the address of the client (may be null)
+     */
+    public boolean tryProbe(String tenantId, String client) {
+        if (tenantInfoLoader.isCached(tenantId)) {
+            return true;
+        }
+        int slot = (int) (HashUtil.hash64(client == null ? "" : client) & (PROBE_SLOTS - 1));
+        long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+        long window = probeWindows.get(slot);
+        if (window != second && probeWindows.compareAndSet(slot, window, second)) {
+            probes.set(slot, 0);
+        }
+        if (probes.incrementAndGet(slot) <= probesPerSecond) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * Adds a tenant found to be READY (e.g. created since the last rebuild).
+     * @param tenantId the unique tenant ID
+     */
+    public void add(String tenantId) {
+        BloomFilter current = filter;
+        if (current != null) {
+            current.add(tenantId);
+        }
+    }
+
+    /**
+     * Rebuilds the filter from the list of READY tenants.
+     */
+    public void rebuild() {
+        try {
+            TenantManagerClient client = tenantInfoLoader.getTenantManagerClient();
+            List<String> tenantIds = new ArrayList<>();
+            List<TenantInfo> page;
+            do {
+                page = client.listTenants(TenantStatus.READY, tenantIds.size(), PAGE_SIZE);
+                page.forEach(tenant -> tenantIds.add(tenant.getId()));
+            } while (page.size() == PAGE_SIZE);
+
+            // Leave room for the tenants created until the next rebuild
+            int expected = Math.max(MIN_EXPECTED_TENANTS, tenantIds.size() + tenantIds.size() / 4);
+            BloomFilter rebuilt = new BloomFilter(expected, mtProperties.getTenantFilterFalsePositiveRate());
+            tenantIds.forEach(rebuilt::add);
+            rebuilt.add(TenantContext.DEFAULT_TENANT_ID);
+            filter = rebuilt;
+            log.debug("Tenant filter rebuilt with {} tenants ({} bytes).", tenantIds.size(), rebuilt.sizeInBytes());
+        } catch (Exception e) {
+            log.warn("Error rebuilding the tenant filter, keeping the previous one.", e);
+        }
+    }
+
+}
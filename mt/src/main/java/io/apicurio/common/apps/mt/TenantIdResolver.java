@@ -15,6 +15,8 @@
  */
 package io.apicurio.common.apps.mt;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -27,6 +29,7 @@ import javax.inject.Inject;
 
 import org.slf4j.Logger;
 
+import io.apicurio.common.apps.util.TinyLfuCache;
 import io.quarkus.runtime.StartupEvent;
 
 /**
@@ -37,7 +40,12 @@ import io.quarkus.runtime.StartupEvent;
 @ApplicationScoped
 public class TenantIdResolver {
 
-    private static final int TENANT_ID_POSITION = 2;
+    private static final int MAX_CACHED_HOSTS = 10000;
+    /**
+     * Cached for hosts that do not match the subdomain pattern.
+     */
+    private static final String NO_TENANT = "";
+    private static final TenantIdStrategy[] NO_STRATEGIES = new TenantIdStrategy[0];
 
     @Inject
     Logger log;
@@ -48,6 +56,13 @@ public class TenantIdResolver {
     Pattern subdomainNamePattern;
     String multitenancyBasePath;
 
+    /**
+     * The enabled resolution strategies, in priority order.  Built once at startup so that
+     * resolving a tenant does not need to consult the configuration.
+     */
+    private TenantIdStrategy[] strategies = NO_STRATEGIES;
+    private TinyLfuCache<String, String> subdomainCache;
+
     void init(@Observes StartupEvent ev) {
         if (mtProperties.isMultitenancyEnabled()) {
             log.info("Application running with multitenancy enabled");
@@ -57,19 +72,38 @@ public class TenantIdResolver {
         if (mtProperties.isMultitenancySubdomainEnabled()) {
             this.subdomainNamePattern = Pattern.compile(mtProperties.getSubdomainMultitenancyPattern());
         }
+
+        List<TenantIdStrategy> enabled = new ArrayList<>();
+        if (mtProperties.isMultitenancyEnabled()) {
+            if (mtProperties.isMultitenancyRequestHeaderEnabled()) {
+                String headerName = mtProperties.getTenantIdRequestHeader();
+                enabled.add((uri, headerProvider, serverNameProvider) -> emptyToNull(headerProvider.apply(headerName)));
+            }
+            if (mtProperties.isMultitenancySubdomainEnabled()) {
+                TenantIdStrategy subdomainStrategy = createSubdomainStrategy();
+                if (subdomainStrategy != null) {
+                    enabled.add(subdomainStrategy);
+                }
+            }
+            if (mtProperties.isMultitenancyContextPathEnabled()) {
+                enabled.add((uri, headerProvider, serverNameProvider) -> tenantIdFromPath(uri));
+            }
+        }
+        strategies = enabled.toArray(NO_STRATEGIES);
     }
 
     /**
      * Resolves the tenant ID from the inbound HTTP request.  The tenantId can potentially be located in one
      * of the following locations:
      *
-     * 1) In the context path:  https://app.example.org/t/{tenantId}/apis/app/v1/search
-     * 2) In a request header:  https://app.example.org/apis/app/v1/search + header X-Tenant-Id: {tenantId}
-     * 3) In a subdomain:       https://{tenantId}.app.example.org/apis/app/v1/search
+     * 1) In a request header:  https://app.example.org/apis/app/v1/search + header X-Tenant-Id: {tenantId}
+     * 2) In a subdomain:       https://{tenantId}.app.example.org/apis/app/v1/search
+     * 3) In the context path:  https://app.example.org/t/{tenantId}/apis/app/v1/search
      *
      * Configuration options exist to enable/disable checking each of these locations.  Additional configuration
-     * options exist to modify the specific behavior of each approach.  For example, for (2) it is possible to
-     * configure the name of the request header.
+     * options exist to modify the specific behavior of each approach.  For example, for (1) it is possible to
+     * configure the name of the request header.  The enabled locations are checked in the order above, and
+     * the first one that yields a tenantId wins.
      *
      * @param uri the incoming HTTP request URI
      * @param headerProvider a function that provides access to HTTP request headers
@@ -77,57 +111,96 @@ public class TenantIdResolver {
      * @return The resolved tenant ID
      */
     public Optional<String> resolveTenantId(String uri, Function<String, String> headerProvider, Supplier<String> serverNameProvider) {
-        String tenantId = null;
-        if (mtProperties.isMultitenancyEnabled()) {
-            log.trace("Resolving tenantId...");
-
-            // Resolve tenantId from context path (if enabled)
-            if (mtProperties.isMultitenancyContextPathEnabled()) {
-                log.trace("Resolving tenantId from path: {}", uri);
-                if (uri.startsWith(multitenancyBasePath)) {
-                    String[] tokens = uri.split("/");
-                    tenantId = tokens[TENANT_ID_POSITION];
-                } else {
-                    log.warn("Context-path multi-tenancy enabled.  Detected unmatched path.");
-                }
+        for (TenantIdStrategy strategy : strategies) {
+            String tenantId = strategy.resolve(uri, headerProvider, serverNameProvider);
+            if (tenantId != null) {
+                return Optional.of(tenantId);
             }
+        }
+        log.trace("Unable to resolve tenantId for: {}", uri);
+        return Optional.empty();
+    }
 
-            // Resolve tenantId from domain name (if enabled)
-            if (mtProperties.isMultitenancySubdomainEnabled()) {
-                log.trace("Resolving tenantId from subdomain.");
-
-                // Get the domain name from the request (configurable to either get it from a request header or the request's server name).
-                String domain = null;
-                String domainLocation = mtProperties.getSubdomainMultitenancyLocation();
-                if (domainLocation.equals("header")) {
-                    String domainHeaderName = mtProperties.getSubdomainMultitenancyHeaderName();
-                    domain = headerProvider.apply(domainHeaderName);
-                } else if (domainLocation.equals("serverName")) {
-                    domain = serverNameProvider.get();
-                } else {
-                    log.warn("Unknown domain location: " + domainLocation);
-                    domain = "";
-                }
+    private TenantIdStrategy createSubdomainStrategy() {
+        // Get the domain name from the request (configurable to either get it from a request header or the request's server name).
+        String domainLocation = mtProperties.getSubdomainMultitenancyLocation();
+        subdomainCache = new TinyLfuCache<>(MAX_CACHED_HOSTS, MAX_CACHED_HOSTS, (domain, tenantId) -> 1);
+        if (domainLocation.equals("header")) {
+            String domainHeaderName = mtProperties.getSubdomainMultitenancyHeaderName();
+            return (uri, headerProvider, serverNameProvider) -> tenantIdFromDomain(headerProvider.apply(domainHeaderName));
+        } else if (domainLocation.equals("serverName")) {
+            return (uri, headerProvider, serverNameProvider) -> tenantIdFromDomain(serverNameProvider.get());
+        } else {
+            log.warn("Unknown domain location: " + domainLocation + ".  Subdomain multi-tenancy will not be used.");
+            return null;
+        }
+    }
 
-                // Now try to match the domain name against the subdomain pattern to extract the tenantId.
-                // E.g. 12345.example.org where "12345" is the tenantId
-                Matcher matcher = this.subdomainNamePattern.matcher(domain);
-                if (matcher.matches()) {
-                    tenantId = matcher.group(1);
-                } else {
-                    log.warn("Subdomain multi-tenancy enabled.  Detected unmatched domain: " + domain);
-                }
+    /**
+     * Matches the domain name against the subdomain pattern to extract the tenantId.  E.g. 12345.example.org
+     * where "12345" is the tenantId.  Results are cached by domain.
+     */
+    private String tenantIdFromDomain(String domain) {
+        if (domain == null) {
+            return null;
+        }
+        String tenantId = subdomainCache.getIfPresent(domain);
+        if (tenantId == null) {
+            Matcher matcher = this.subdomainNamePattern.matcher(domain);
+            if (matcher.matches()) {
+                tenantId = matcher.group(1);
+            } else {
+                log.debug("Subdomain multi-tenancy enabled.  Detected unmatched domain: {}", domain);
+                tenantId = NO_TENANT;
             }
+            subdomainCache.put(domain, tenantId);
+        }
+        return tenantId == NO_TENANT ? null : tenantId;
+    }
 
-            // Resolve tenantId from request header (if enabled)
-            if (mtProperties.isMultitenancyRequestHeaderEnabled()) {
-                String headerName = mtProperties.getTenantIdRequestHeader();
-                log.trace("Resolving tenantId from request header named: {}", headerName);
-                tenantId = headerProvider.apply(headerName);
+    /**
+     * Extracts the tenantId from a path of the form /{basePath}/{tenantId}/...  The URI may also be
+     * absolute (scheme://authority/path).  The path is scanned in place rather than split.
+     */
+    String tenantIdFromPath(String uri) {
+        if (uri == null) {
+            return null;
+        }
+        int pathStart = 0;
+        int scheme = uri.indexOf("://");
+        if (scheme > 0 && scheme < uri.indexOf('/')) {
+            pathStart = uri.indexOf('/', scheme + 3);
+            if (pathStart < 0) {
+                return null;
+            }
+        }
+        if (!uri.startsWith(multitenancyBasePath, pathStart)) {
+            log.trace("Context-path multi-tenancy enabled.  Detected unmatched path: {}", uri);
+            return null;
+        }
+        int start = pathStart + multitenancyBasePath.length();
+        int end = start;
+        int length = uri.length();
+        while (end < length) {
+            char c = uri.charAt(end);
+            if (c == '/' || c == '?' || c == '#') {
+                break;
             }
+            end++;
         }
+        return end > start ? uri.substring(start, end) : null;
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
 
-        return Optional.ofNullable(tenantId);
+    /**
+     * A single way of resolving the tenantId from a request.  Returns null if it does not apply.
+     */
+    @FunctionalInterface
+    private interface TenantIdStrategy {
+        String resolve(String uri, Function<String, String> headerProvider, Supplier<String> serverNameProvider);
     }
 
 }
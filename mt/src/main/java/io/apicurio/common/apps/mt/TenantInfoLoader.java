@@ -17,23 +17,237 @@
 package io.apicurio.common.apps.mt;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+
+import io.apicurio.common.apps.util.TinyLfuCache;
 
 /**
+ * Loads tenant information from the tenant manager, with a cache in front of it so that
+ * authenticating a request does not normally cost a remote call:
+ * <ul>
+ *   <li>loaded tenants are fresh for a TTL, after which they are still served (stale) for a
+ *       further period while a background refresh fetches the new value</li>
+ *   <li>concurrent misses for the same tenant share a single remote call</li>
+ *   <li>unknown tenants are remembered (for a shorter TTL) so that requests for them do not
+ *       each reach the tenant manager</li>
+ *   <li>if a refresh fails, the last known value is served</li>
+ *   <li>fetches run on a bounded pool with a bounded queue, so that lookups of many random
+ *       tenant ids cannot spawn threads without limit; fetches beyond the queue fail</li>
+ * </ul>
+ * The tenant manager is reached through a {@link TenantManagerClient} bean if the application
+ * provides one, otherwise through an {@link HttpTenantManagerClient} if a tenant manager URL is
+ * configured.  With neither, every tenant is reported as READY.
+ *
  * @author eric.wittmann@gmail.com
  */
 @ApplicationScoped
 public class TenantInfoLoader {
 
+    @Inject
+    Logger log;
+
+    @Inject
+    MtProperties mtProperties;
+
+    @Inject
+    Instance<TenantManagerClient> tenantManagerClients;
+
+    private TenantManagerClient client;
+    private TinyLfuCache<String, CachedTenant> cache;
+    private final ConcurrentHashMap<String, CompletableFuture<Optional<TenantInfo>>> inFlight = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor loadExecutor;
+
+    private long ttlNanos;
+    private long staleNanos;
+    private long negativeTtlNanos;
+
+    @PostConstruct
+    void init() {
+        if (tenantManagerClients.isResolvable()) {
+            client = tenantManagerClients.get();
+        } else if (mtProperties.getTenantManagerUrl().isPresent()) {
+            client = new HttpTenantManagerClient(mtProperties);
+        } else {
+            log.debug("No tenant manager configured, all tenants are assumed to be READY.");
+            return;
+        }
+        ttlNanos = mtProperties.getTenantManagerCacheTtl().toNanos();
+        staleNanos = mtProperties.getTenantManagerCacheStalePeriod().toNanos();
+        negativeTtlNanos = mtProperties.getTenantManagerCacheNegativeTtl().toNanos();
+        long maxSize = mtProperties.getTenantManagerCacheMaxSize();
+        cache = new TinyLfuCache<>(maxSize, maxSize, (tenantId, tenant) -> 1);
+        int threads = Math.max(1, mtProperties.getTenantManagerLoadThreads());
+        loadExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, mtProperties.getTenantManagerLoadQueueSize())), runnable -> {
+                    Thread thread = new Thread(runnable, "tenant-info-loader");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        loadExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    void destroy() {
+        if (loadExecutor != null) {
+            loadExecutor.shutdownNow();
+        }
+        if (client instanceof AutoCloseable && !tenantManagerClients.isResolvable()) {
+            try {
+                ((AutoCloseable) client).close();
+            } catch (Exception e) {
+                log.warn("Error closing the tenant manager client.", e);
+            }
+        }
+    }
+
+    /**
+     * Returns the information about a tenant, blocking if it has to be fetched.
+     * @param tenantId the unique tenant ID
+     * @return the tenant info, or empty if the tenant is unknown
+     */
     public Optional<TenantInfo> loadInfo(String tenantId) {
-        // TODO Load the tenant info from the tenant manager
+        try {
+            return loadInfoAsync(tenantId).toCompletableFuture().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the information about a tenant.  The returned stage is already complete unless the
+     * tenant has to be fetched from the tenant manager.
+     * @param tenantId the unique tenant ID
+     * @return the tenant info, or empty if the tenant is unknown
+     */
+    public CompletionStage<Optional<TenantInfo>> loadInfoAsync(String tenantId) {
+        if (client == null) {
+            return CompletableFuture.completedFuture(Optional.of(readyTenant(tenantId)));
+        }
+        CachedTenant cached = cache.getIfPresent(tenantId);
+        if (cached != null) {
+            long now = System.nanoTime();
+            if (now - cached.expiresAt < 0) {
+                return CompletableFuture.completedFuture(cached.info);
+            }
+            if (now - cached.staleUntil < 0) {
+                // Serve the stale value and refresh in the background
+                load(tenantId);
+                return CompletableFuture.completedFuture(cached.info);
+            }
+        }
+        return load(tenantId);
+    }
+
+    /**
+     * Returns true if the information about a tenant (or the fact that it does not exist) is cached, so
+     * that it can be returned without fetching it.
+     * @param tenantId the unique tenant ID
+     */
+    public boolean isCached(String tenantId) {
+        if (client == null) {
+            return true;
+        }
+        CachedTenant cached = cache.getIfPresent(tenantId);
+        return cached != null && System.nanoTime() - cached.staleUntil < 0;
+    }
+
+    /**
+     * @return the client used to reach the tenant manager, or null if none is configured
+     */
+    public TenantManagerClient getTenantManagerClient() {
+        return client;
+    }
+
+    /**
+     * Removes a tenant from the cache, so that the next request for it goes to the tenant manager.
+     * @param tenantId the unique tenant ID
+     */
+    public void invalidate(String tenantId) {
+        if (cache != null) {
+            cache.invalidate(tenantId);
+        }
+    }
+
+    /**
+     * Fetches a tenant from the tenant manager, joining a fetch already in progress for the
+     * same tenant if there is one.
+     */
+    private CompletableFuture<Optional<TenantInfo>> load(String tenantId) {
+        CompletableFuture<Optional<TenantInfo>> future = new CompletableFuture<>();
+        CompletableFuture<Optional<TenantInfo>> existing = inFlight.putIfAbsent(tenantId, future);
+        if (existing != null) {
+            return existing;
+        }
+        long stamp = cache.stamp();
+        try {
+            loadExecutor.execute(() -> fetch(tenantId, future, stamp));
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(tenantId, future);
+            future.completeExceptionally(new RejectedExecutionException("Too many tenants are being loaded from the tenant manager."));
+        }
+        return future;
+    }
+
+    private void fetch(String tenantId, CompletableFuture<Optional<TenantInfo>> future, long stamp) {
+        Optional<TenantInfo> info;
+        try {
+            info = client.getTenant(tenantId);
+        } catch (RuntimeException e) {
+            inFlight.remove(tenantId, future);
+            CachedTenant previous = cache.getIfPresent(tenantId);
+            if (previous != null) {
+                log.warn("Error loading tenant {} from the tenant manager, using the last known value.", tenantId, e);
+                future.complete(previous.info);
+            } else {
+                future.completeExceptionally(e);
+            }
+            return;
+        }
+        long now = System.nanoTime();
+        long expiresAt = now + (info.isPresent() ? ttlNanos : negativeTtlNanos);
+        long staleUntil = info.isPresent() ? expiresAt + staleNanos : expiresAt;
+        cache.putIfValid(tenantId, new CachedTenant(info, expiresAt, staleUntil), stamp);
+        inFlight.remove(tenantId, future);
+        future.complete(info);
+    }
+
+    private static TenantInfo readyTenant(String tenantId) {
         TenantInfo info = new TenantInfo();
         info.setId(tenantId);
         info.setOrgId(null);
         info.setOwner(null);
         info.setStatus(TenantStatus.READY);
-        return Optional.of(info);
+        return info;
+    }
+
+    private static class CachedTenant {
+        final Optional<TenantInfo> info;
+        final long expiresAt;
+        final long staleUntil;
+
+        CachedTenant(Optional<TenantInfo> info, long expiresAt, long staleUntil) {
+            this.info = info;
+            this.expiresAt = expiresAt;
+            this.staleUntil = staleUntil;
+        }
     }
 
 }
@@ -21,4 +21,170 @@ package io.apicurio.common.apps.mt;
  */
 public class TenantLimits {
 
+    private Long requestRate;
+    private Long requestBurst;
+    private Integer maxConcurrentRequests;
+    private Integer schedulingWeight;
+    private Long maxStorageBytes;
+    private Long maxEntities;
+    private Long maxRequests;
+
+    /**
+     * Constructor.
+     * @param requestRate the sustained number of requests per second allowed for the tenant
+     * @param requestBurst the number of requests the tenant may make at once, above the sustained rate
+     */
+    public TenantLimits(Long requestRate, Long requestBurst) {
+        this.requestRate = requestRate;
+        this.requestBurst = requestBurst;
+    }
+
+    /**
+     * Constructor.
+     * @param requestRate the sustained number of requests per second allowed for the tenant
+     * @param requestBurst the number of requests the tenant may make at once, above the sustained rate
+     * @param maxConcurrentRequests the number of requests of the tenant that may be in progress at once
+     */
+    public TenantLimits(Long requestRate, Long requestBurst, Integer maxConcurrentRequests) {
+        this.requestRate = requestRate;
+        this.requestBurst = requestBurst;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    /**
+     * Constructor.
+     */
+    public TenantLimits() {
+    }
+
+    /**
+     * @return the sustained number of requests per second allowed, or null if unlimited
+     */
+    public Long getRequestRate() {
+        return requestRate;
+    }
+
+    /**
+     * @param requestRate the requestRate to set
+     */
+    public void setRequestRate(Long requestRate) {
+        this.requestRate = requestRate;
+    }
+
+    /**
+     * @return the number of requests that may be made in a burst, or null to allow one second's worth
+     */
+    public Long getRequestBurst() {
+        return requestBurst;
+    }
+
+    /**
+     * @param requestBurst the requestBurst to set
+     */
+    public void setRequestBurst(Long requestBurst) {
+        this.requestBurst = requestBurst;
+    }
+
+    /**
+     * @return the number of requests that may be in progress at once, or null to use the default
+     */
+    public Integer getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    /**
+     * @param maxConcurrentRequests the maxConcurrentRequests to set
+     */
+    public void setMaxConcurrentRequests(Integer maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    /**
+     * @return the tenant's share of blocking work relative to other tenants, or null for the default (1)
+     */
+    public Integer getSchedulingWeight() {
+        return schedulingWeight;
+    }
+
+    /**
+     * @param schedulingWeight the schedulingWeight to set
+     */
+    public void setSchedulingWeight(Integer schedulingWeight) {
+        this.schedulingWeight = schedulingWeight;
+    }
+
+    /**
+     * @return the number of bytes the tenant may store, or null if unlimited
+     */
+    public Long getMaxStorageBytes() {
+        return maxStorageBytes;
+    }
+
+    /**
+     * @param maxStorageBytes the maxStorageBytes to set
+     */
+    public void setMaxStorageBytes(Long maxStorageBytes) {
+        this.maxStorageBytes = maxStorageBytes;
+    }
+
+    /**
+     * @return the number of entities the tenant may store, or null if unlimited
+     */
+    public Long getMaxEntities() {
+        return maxEntities;
+    }
+
+    /**
+     * @param maxEntities the maxEntities to set
+     */
+    public void setMaxEntities(Long maxEntities) {
+        this.maxEntities = maxEntities;
+    }
+
+    /**
+     * @return the number of requests the tenant may make per quota window
+     *         (app.multitenancy.usage.request-window-seconds), or null if unlimited
+     */
+    public Long getMaxRequests() {
+        return maxRequests;
+    }
+
+    /**
+     * @param maxRequests the maxRequests to set
+     */
+    public void setMaxRequests(Long maxRequests) {
+        this.maxRequests = maxRequests;
+    }
+
+    /**
+     * Checks the given usage (plus an amount about to be added) against the tenant's storage quotas.
+     * @param usage the tenant's current usage
+     * @param storageBytes the number of bytes about to be stored
+     * @param entities the number of entities about to be stored
+     * @return true if storing that much more would exceed one of the quotas
+     */
+    public boolean isStorageQuotaExceeded(TenantUsage usage, long storageBytes, long entities) {
+        return (maxStorageBytes != null && usage.getStorageBytes() + storageBytes > maxStorageBytes)
+                || (maxEntities != null && usage.getEntities() + entities > maxEntities);
+    }
+
+    /**
+     * @param usage the tenant's current usage
+     * @param window the current quota window
+     * @return true if the tenant has used up its request quota for the given window
+     */
+    public boolean isRequestQuotaExceeded(TenantUsage usage, long window) {
+        return maxRequests != null && usage.getRequests(window) >= maxRequests;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "TenantLimits [requestRate=" + requestRate + ", requestBurst=" + requestBurst
+                + ", maxConcurrentRequests=" + maxConcurrentRequests + ", schedulingWeight=" + schedulingWeight + ", maxStorageBytes=" + maxStorageBytes
+                + ", maxEntities=" + maxEntities + ", maxRequests=" + maxRequests + "]";
+    }
+
 }
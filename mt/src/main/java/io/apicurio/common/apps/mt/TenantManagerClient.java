@@ -0,0 +1,56 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.mt;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Client used by the {@link TenantInfoLoader} to fetch tenant information from the tenant manager.
+ * An application can provide its own implementation as a CDI bean, otherwise an HTTP client is
+ * created when a tenant manager URL is configured.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+public interface TenantManagerClient {
+
+    /**
+     * Fetches the information about a single tenant.
+     * @param tenantId the unique tenant ID
+     * @return the tenant info, or empty if the tenant manager does not know the tenant
+     * @throws RuntimeException if the tenant manager could not be reached
+     */
+    public Optional<TenantInfo> getTenant(String tenantId);
+
+    /**
+     * Lists the tenants with the given status, a page at a time.
+     * @param status the tenant status
+     * @param offset the number of tenants to skip
+     * @param limit the maximum number of tenants to return
+     * @throws RuntimeException if the tenant manager could not be reached
+     */
+    public List<TenantInfo> listTenants(TenantStatus status, int offset, int limit);
+
+    /**
+     * Updates the status of a tenant, e.g. to DELETED once its data has been purged.
+     * @param tenantId the unique tenant ID
+     * @param status the new status
+     * @throws RuntimeException if the tenant manager could not be reached
+     */
+    public void updateTenantStatus(String tenantId, TenantStatus status);
+
+}
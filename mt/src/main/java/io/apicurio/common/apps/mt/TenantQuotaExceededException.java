@@ -0,0 +1,55 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apicurio.common.apps.mt;
+
+/**
+ * Thrown when a write is rejected because it would take its tenant over its storage quota, or when a
+ * request is rejected because its tenant has used up its request quota (answered with a 429).
+ *
+ * @author eric.wittmann@gmail.com
+ */
+public class TenantQuotaExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = -2905472617204588417L;
+
+    private final long retryAfterSeconds;
+
+    /**
+     * Constructor.
+     * @param message the error message
+     */
+    public TenantQuotaExceededException(String message) {
+        this(message, 0);
+    }
+
+    /**
+     * Constructor.
+     * @param message the error message
+     * @param retryAfterSeconds the number of seconds after which the quota allows more, or 0 if unknown
+     */
+    public TenantQuotaExceededException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * @return the number of seconds after which the quota allows more, or 0 if unknown
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.mt;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thrown when a request is rejected because its tenant exceeded its request rate or concurrency limit.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+public class TenantRateLimitedException extends RuntimeException {
+
+    private static final long serialVersionUID = 6415327842358431175L;
+
+    private final long retryAfterNanos;
+
+    /**
+     * Constructor.
+     * @param message the error message
+     * @param retryAfterNanos the time until the tenant may make another request
+     */
+    public TenantRateLimitedException(String message, long retryAfterNanos) {
+        super(message);
+        this.retryAfterNanos = retryAfterNanos;
+    }
+
+    /**
+     * @return the number of whole seconds (at least 1) a client should wait before retrying
+     */
+    public long getRetryAfterSeconds() {
+        return Math.max(1, (retryAfterNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+    }
+
+}
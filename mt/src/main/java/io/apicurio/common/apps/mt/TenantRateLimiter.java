@@ -0,0 +1,296 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.mt;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Enforces the request rate limits of each tenant (see {@link TenantLimits}), and optionally a
+ * rate limit per client address for requests that are not authenticated yet.
+ * <p>
+ * Each tenant (or client) has a token bucket that refills at the request rate and holds up to the
+ * burst.  The bucket is implemented as a single "theoretical arrival time" that is advanced with a
+ * CAS for every admitted request (the generic cell rate algorithm), so checking a request is
+ * lock-free and does not allocate.
+ * <p>
+ * Tenant buckets are only charged once the request is authenticated, so that requests naming a
+ * tenant cannot use up its rate without valid credentials.  Limiting unauthenticated traffic is
+ * the job of the client buckets (app.multitenancy.rate-limit.client.rate, disabled by default).
+ * <p>
+ * Buckets are kept for at most app.multitenancy.rate-limit.max-tenants tenants (and as many
+ * clients).  Buckets not used for app.multitenancy.rate-limit.idle-seconds are evicted (an idle
+ * bucket is full, so evicting it loses nothing but its counters).  When the limit is reached the
+ * least recently used tenth of the buckets is evicted at once, so that the cost of finding them
+ * is shared by the many new buckets that then fit.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+@ApplicationScoped
+public class TenantRateLimiter {
+
+    /**
+     * Returned by {@link #tryAcquire(String, TenantLimits)} when the request is admitted.
+     */
+    public static final long ADMITTED = 0;
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Inject
+    MtProperties mtProperties;
+
+    @Inject
+    Instance<MeterRegistry> meterRegistry;
+
+    private Buckets tenantBuckets;
+    private Buckets clientBuckets;
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    @PostConstruct
+    void init() {
+        long idleNanos = mtProperties.getRateLimitIdleTimeout().toNanos();
+        int maxTenants = mtProperties.getRateLimitMaxTenants();
+        tenantBuckets = new Buckets(maxTenants, idleNanos);
+        clientBuckets = new Buckets(maxTenants, idleNanos);
+        if (meterRegistry.isResolvable()) {
+            MeterRegistry registry = meterRegistry.get();
+            FunctionCounter.builder("apicurio.tenant.requests.admitted", admitted, LongAdder::sum)
+                    .description("Requests admitted by the tenant rate limiter")
+                    .register(registry);
+            FunctionCounter.builder("apicurio.tenant.requests.rejected", rejected, LongAdder::sum)
+                    .description("Requests rejected by the tenant rate limiter")
+                    .register(registry);
+            Gauge.builder("apicurio.tenant.rate-limiter.tenants", tenantBuckets.map, Map::size)
+                    .description("Number of tenants tracked by the rate limiter")
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Takes a token from the tenant's bucket.  Must only be called for authenticated requests.
+     * @param tenantId the unique tenant ID
+     * @param limits the tenant's limits (may be null, meaning unlimited)
+     * @return {@link #ADMITTED} if the request may proceed, otherwise the number of nanoseconds
+     *         until a token will be available
+     */
+    public long tryAcquire(String tenantId, TenantLimits limits) {
+        if (!mtProperties.isRateLimitEnabled() || limits == null || limits.getRequestRate() == null
+                || limits.getRequestRate() <= 0) {
+            return ADMITTED;
+        }
+        long rate = limits.getRequestRate();
+        long burst = limits.getRequestBurst() == null ? rate : Math.max(1, limits.getRequestBurst());
+        long wait = tenantBuckets.tryAcquire(tenantId, rate, burst);
+        if (wait == ADMITTED) {
+            admitted.increment();
+        } else {
+            rejected.increment();
+        }
+        return wait;
+    }
+
+    /**
+     * Takes a token from the bucket of the client (e.g. the remote address) of a request that is
+     * not authenticated yet.
+     * @param client identifies the client
+     * @return {@link #ADMITTED} if the request may proceed, otherwise the number of nanoseconds
+     *         until a token will be available
+     */
+    public long tryAcquireForClient(String client) {
+        long rate = mtProperties.getClientRateLimit();
+        if (!mtProperties.isRateLimitEnabled() || rate <= 0 || client == null) {
+            return ADMITTED;
+        }
+        long burst = Math.max(rate, mtProperties.getClientRateLimitBurst());
+        return clientBuckets.tryAcquire(client, rate, burst);
+    }
+
+    /**
+     * Returns the number of admitted and rejected requests of each tenant currently tracked
+     * by the limiter, as a two element array.
+     */
+    public Map<String, long[]> getRequestCounts() {
+        Map<String, long[]> rval = new HashMap<>();
+        tenantBuckets.map.forEach((tenantId, bucket) -> rval.put(tenantId, new long[] { bucket.admitted.sum(), bucket.rejected.sum() }));
+        return rval;
+    }
+
+    /**
+     * @return the number of tenants currently tracked by the limiter
+     */
+    int getTrackedTenants() {
+        return tenantBuckets.map.size();
+    }
+
+    /**
+     * The buckets of one kind of key (tenants or clients), with their eviction.
+     */
+    private static class Buckets {
+
+        final ConcurrentHashMap<String, TokenBucket> map = new ConcurrentHashMap<>();
+        final int maxSize;
+        final long idleNanos;
+        final AtomicLong nextSweep;
+        final AtomicBoolean evicting = new AtomicBoolean();
+
+        Buckets(int maxSize, long idleNanos) {
+            this.maxSize = maxSize;
+            this.idleNanos = idleNanos;
+            this.nextSweep = new AtomicLong(System.nanoTime() + idleNanos);
+        }
+
+        long tryAcquire(String key, long rate, long burst) {
+            long now = System.nanoTime();
+            TokenBucket bucket = map.get(key);
+            if (bucket == null || !bucket.hasLimits(rate, burst)) {
+                bucket = newBucket(key, bucket, rate, burst, now);
+            }
+            if (now - nextSweep.get() > 0) {
+                sweep(now);
+            }
+            long wait = bucket.tryAcquire(now);
+            if (wait == ADMITTED) {
+                bucket.admitted.increment();
+            } else {
+                bucket.rejected.increment();
+            }
+            return wait;
+        }
+
+        private TokenBucket newBucket(String key, TokenBucket existing, long rate, long burst, long now) {
+            if (existing == null && map.size() >= maxSize) {
+                evict(now);
+            }
+            TokenBucket bucket = new TokenBucket(rate, burst, now);
+            if (existing != null) {
+                // The limits changed, keep the counters
+                bucket.admitted.add(existing.admitted.sum());
+                bucket.rejected.add(existing.rejected.sum());
+                return map.replace(key, existing, bucket) ? bucket : map.getOrDefault(key, bucket);
+            }
+            TokenBucket raced = map.putIfAbsent(key, bucket);
+            return raced == null ? bucket : raced;
+        }
+
+        /**
+         * Evicts the buckets that have not been used for the idle timeout.
+         */
+        private void sweep(long now) {
+            long scheduled = nextSweep.get();
+            if (!nextSweep.compareAndSet(scheduled, now + idleNanos / 2)) {
+                return;
+            }
+            map.values().removeIf(bucket -> now - bucket.lastUsed > idleNanos);
+        }
+
+        /**
+         * Evicts idle buckets, and if that is not enough the least recently used tenth of them.  Only
+         * one thread evicts at a time, the others go on (the map may briefly exceed its size).
+         */
+        private void evict(long now) {
+            if (!evicting.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                map.values().removeIf(bucket -> now - bucket.lastUsed > idleNanos);
+                if (map.size() < maxSize) {
+                    return;
+                }
+                long[] ages = map.values().stream().mapToLong(bucket -> now - bucket.lastUsed).toArray();
+                if (ages.length == 0) {
+                    return;
+                }
+                Arrays.sort(ages);
+                long minAge = ages[ages.length - Math.max(1, ages.length / 10)];
+                map.values().removeIf(bucket -> now - bucket.lastUsed >= minAge);
+            } finally {
+                evicting.set(false);
+            }
+        }
+    }
+
+    private static class TokenBucket {
+
+        /**
+         * Only record the last use time if it moved by more than this, to avoid a volatile write
+         * on every request.
+         */
+        private static final long LAST_USED_RESOLUTION = TimeUnit.MILLISECONDS.toNanos(100);
+
+        final long rate;
+        final long burst;
+        /**
+         * Nanoseconds between two tokens.
+         */
+        final long interval;
+        /**
+         * How far ahead of now the theoretical arrival time may be (the bucket capacity).
+         */
+        final long tolerance;
+        final AtomicLong arrivalTime;
+        final LongAdder admitted = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        volatile long lastUsed;
+
+        TokenBucket(long rate, long burst, long now) {
+            this.rate = rate;
+            this.burst = burst;
+            this.interval = Math.max(1, NANOS_PER_SECOND / rate);
+            this.tolerance = interval * burst;
+            this.arrivalTime = new AtomicLong(now);
+            this.lastUsed = now;
+        }
+
+        boolean hasLimits(long rate, long burst) {
+            return this.rate == rate && this.burst == burst;
+        }
+
+        long tryAcquire(long now) {
+            if (now - lastUsed > LAST_USED_RESOLUTION) {
+                lastUsed = now;
+            }
+            while (true) {
+                long current = arrivalTime.get();
+                long next = Math.max(current, now) + interval;
+                long ahead = next - now;
+                if (ahead > tolerance) {
+                    return ahead - tolerance;
+                }
+                if (arrivalTime.compareAndSet(current, next)) {
+                    return ADMITTED;
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apicurio.common.apps.mt;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The usage of a single tenant: stored bytes, stored entities and requests made.  Each value is the
+ * total last read from the database plus what this node has recorded since, which is kept in a
+ * {@link LongAdder} so that recording usage on the write path is contention free.  The recorded amounts
+ * are periodically drained and written to the database (see {@link TenantUsageTracker}).
+ * <p>
+ * Requests are counted per quota window (a number identifying a period of time, see
+ * {@link TenantUsageTracker#currentRequestWindow()}).  Only the count of the latest window is kept:
+ * recording a request in a later window starts over from zero.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+public class TenantUsage {
+
+    private final String tenantId;
+
+    private final AtomicLong storedBytes = new AtomicLong();
+    private final AtomicLong storedEntities = new AtomicLong();
+
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder entities = new LongAdder();
+    private final AtomicReference<RequestWindow> requestWindow = new AtomicReference<>(new RequestWindow(0));
+
+    /**
+     * Constructor.
+     * @param tenantId the tenant
+     */
+    public TenantUsage(String tenantId) {
+        this.tenantId = tenantId;
+    }
+
+    /**
+     * @return the tenantId
+     */
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    /**
+     * @return the number of bytes stored by the tenant
+     */
+    public long getStorageBytes() {
+        return storedBytes.get() + bytes.sum();
+    }
+
+    /**
+     * @return the number of entities stored by the tenant
+     */
+    public long getEntities() {
+        return storedEntities.get() + entities.sum();
+    }
+
+    /**
+     * @return the number of requests made by the tenant in the latest known quota window
+     */
+    public long getRequests() {
+        return requestWindow.get().total();
+    }
+
+    /**
+     * @param window the current quota window
+     * @return the number of requests made by the tenant in the given window
+     */
+    public long getRequests(long window) {
+        RequestWindow current = requestWindow.get();
+        // A later window than ours means another node's clock is ahead, its count is as good as ours
+        return current.window >= window ? current.total() : 0;
+    }
+
+    /**
+     * @return the latest known quota window
+     */
+    public long getRequestWindow() {
+        return requestWindow.get().window;
+    }
+
+    /**
+     * Records a change of the tenant's stored data.
+     * @param storageBytes the number of bytes added (or removed, if negative)
+     * @param entities the number of entities added (or removed, if negative)
+     */
+    public void recordStorage(long storageBytes, long entities) {
+        if (storageBytes != 0) {
+            this.bytes.add(storageBytes);
+        }
+        if (entities != 0) {
+            this.entities.add(entities);
+        }
+    }
+
+    /**
+     * Records a request made by the tenant.
+     * @param window the current quota window
+     */
+    public void recordRequest(long window) {
+        requestWindow(window).recorded.increment();
+    }
+
+    /**
+     * Replaces the totals with the ones read from the database.  Usage recorded on this node and not
+     * written yet is kept.  The stored request count is ignored if it belongs to an earlier window than
+     * the latest one known to this node.
+     * @param storageBytes the stored bytes
+     * @param entities the stored entities
+     * @param requests the requests made in the given window
+     * @param window the quota window of the requests
+     */
+    public void setStoredTotals(long storageBytes, long entities, long requests, long window) {
+        storedBytes.set(storageBytes);
+        storedEntities.set(entities);
+        RequestWindow current = requestWindow(window);
+        if (current.window == window) {
+            current.stored.set(requests);
+        }
+    }
+
+    /**
+     * Takes the usage recorded since the last call, to be written to the database.  The drained amounts
+     * are counted as stored right away (so the totals never dip), and must be given back with
+     * {@link #undrain(Delta)} if writing them fails.  Requests recorded in a window that ended before
+     * they were drained are not written, they no longer count against the quota.
+     * @return the drained amounts
+     */
+    public Delta drain() {
+        RequestWindow window = requestWindow.get();
+        Delta delta = new Delta(bytes.sum(), entities.sum(), window.recorded.sum(), window.window);
+        storedBytes.addAndGet(delta.storageBytes);
+        storedEntities.addAndGet(delta.entities);
+        window.stored.addAndGet(delta.requests);
+        // Subtracting (rather than resetting) never loses usage recorded concurrently
+        bytes.add(-delta.storageBytes);
+        entities.add(-delta.entities);
+        window.recorded.add(-delta.requests);
+        return delta;
+    }
+
+    /**
+     * Gives back amounts that could not be written to the database.
+     * @param delta amounts returned by {@link #drain()}
+     */
+    public void undrain(Delta delta) {
+        bytes.add(delta.storageBytes);
+        entities.add(delta.entities);
+        storedBytes.addAndGet(-delta.storageBytes);
+        storedEntities.addAndGet(-delta.entities);
+        RequestWindow window = requestWindow.get();
+        if (window.window == delta.requestWindow) {
+            window.recorded.add(delta.requests);
+            window.stored.addAndGet(-delta.requests);
+        }
+    }
+
+    /**
+     * @return the request counts of the given window, or of a later one if this node already knows one
+     */
+    private RequestWindow requestWindow(long window) {
+        while (true) {
+            RequestWindow current = requestWindow.get();
+            if (current.window >= window) {
+                return current;
+            }
+            RequestWindow next = new RequestWindow(window);
+            if (requestWindow.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "TenantUsage [tenantId=" + tenantId + ", storageBytes=" + getStorageBytes() + ", entities="
+                + getEntities() + ", requests=" + getRequests() + "]";
+    }
+
+    /**
+     * Usage recorded by this node and not yet written to the database.
+     */
+    public static class Delta {
+
+        private final long storageBytes;
+        private final long entities;
+        private final long requests;
+        private final long requestWindow;
+
+        Delta(long storageBytes, long entities, long requests, long requestWindow) {
+            this.storageBytes = storageBytes;
+            this.entities = entities;
+            this.requests = requests;
+            this.requestWindow = requestWindow;
+        }
+
+        /**
+         * @return the storageBytes
+         */
+        public long getStorageBytes() {
+            return storageBytes;
+        }
+
+        /**
+         * @return the entities
+         */
+        public long getEntities() {
+            return entities;
+        }
+
+        /**
+         * @return the requests
+         */
+        public long getRequests() {
+            return requests;
+        }
+
+        /**
+         * @return the quota window of the requests
+         */
+        public long getRequestWindow() {
+            return requestWindow;
+        }
+
+        /**
+         * @return true if there is nothing to write
+         */
+        public boolean isEmpty() {
+            return storageBytes == 0 && entities == 0 && requests == 0;
+        }
+    }
+
+    /**
+     * The requests of one quota window: the count last read from the database, and what this node has
+     * recorded since.
+     */
+    private static class RequestWindow {
+
+        final long window;
+        final AtomicLong stored = new AtomicLong();
+        final LongAdder recorded = new LongAdder();
+
+        RequestWindow(long window) {
+            this.window = window;
+        }
+
+        long total() {
+            return stored.get() + recorded.sum();
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apicurio.common.apps.mt;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+/**
+ * Keeps the usage of every tenant in memory, so that quotas can be checked without touching the
+ * database.  Applications record storage changes with {@link #recordStorage(String, long, long)} and
+ * check quotas before writing with {@link #checkStorageQuota(TenantInfo, long, long)}; requests are
+ * recorded (and their quota, which applies per app.multitenancy.usage.request-window-seconds,
+ * enforced) by {@link MtAppAuthenticationMechanism}.  The usage is written
+ * to the database, and the totals recorded by other nodes read back, by
+ * io.apicurio.common.apps.storage.sql.AbstractTenantUsageWriter.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+@ApplicationScoped
+public class TenantUsageTracker {
+
+    @Inject
+    MtProperties mtProperties;
+
+    private final ConcurrentHashMap<String, TenantUsage> usages = new ConcurrentHashMap<>();
+
+    /**
+     * @param tenantId the tenant
+     * @return the usage of the given tenant
+     */
+    public TenantUsage getUsage(String tenantId) {
+        TenantUsage usage = usages.get(tenantId);
+        if (usage == null) {
+            usage = usages.computeIfAbsent(tenantId, TenantUsage::new);
+        }
+        return usage;
+    }
+
+    /**
+     * @return the usage of all tenants known to this node
+     */
+    public Collection<TenantUsage> getUsages() {
+        return Collections.unmodifiableCollection(usages.values());
+    }
+
+    /**
+     * Records a change of a tenant's stored data.
+     * @param tenantId the tenant
+     * @param storageBytes the number of bytes added (or removed, if negative)
+     * @param entities the number of entities added (or removed, if negative)
+     */
+    public void recordStorage(String tenantId, long storageBytes, long entities) {
+        getUsage(tenantId).recordStorage(storageBytes, entities);
+    }
+
+    /**
+     * Checks that storing the given amount of data would not take the tenant over its storage quotas.
+     * @param tenant the tenant, or null for the default tenant (which has no quotas)
+     * @param storageBytes the number of bytes about to be stored
+     * @param entities the number of entities about to be stored
+     * @throws TenantQuotaExceededException if a quota would be exceeded
+     */
+    public void checkStorageQuota(TenantInfo tenant, long storageBytes, long entities) throws TenantQuotaExceededException {
+        if (tenant == null || tenant.getLimits() == null) {
+            return;
+        }
+        if (tenant.getLimits().isStorageQuotaExceeded(getUsage(tenant.getId()), storageBytes, entities)) {
+            throw new TenantQuotaExceededException("Storage quota exceeded for tenant: " + tenant.getId());
+        }
+    }
+
+    /**
+     * Records a request of the given tenant, unless it has used up its request quota for the current
+     * quota window.
+     * @param tenant the tenant
+     * @throws TenantQuotaExceededException if the tenant has used up its request quota
+     */
+    public void recordRequest(TenantInfo tenant) throws TenantQuotaExceededException {
+        long now = System.currentTimeMillis();
+        long windowMillis = mtProperties.getUsageRequestWindow().toMillis();
+        long window = now / windowMillis;
+        TenantUsage usage = getUsage(tenant.getId());
+        if (tenant.getLimits() != null && tenant.getLimits().isRequestQuotaExceeded(usage, window)) {
+            long retryAfter = ((window + 1) * windowMillis - now + 999) / 1000;
+            throw new TenantQuotaExceededException("Request quota exceeded for tenant: " + tenant.getId(), retryAfter);
+        }
+        usage.recordRequest(window);
+    }
+
+    /**
+     * @return the current quota window, a number that changes every
+     *         app.multitenancy.usage.request-window-seconds
+     */
+    public long currentRequestWindow() {
+        return System.currentTimeMillis() / mtProperties.getUsageRequestWindow().toMillis();
+    }
+
+}
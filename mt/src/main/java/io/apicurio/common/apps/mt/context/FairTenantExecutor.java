@@ -0,0 +1,367 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.mt.context;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.apicurio.common.apps.mt.TenantContext;
+import io.apicurio.common.apps.mt.TenantInfo;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Shares a fixed number of slots for blocking work (app.multitenancy.fair-scheduling.parallelism) fairly
+ * between tenants, instead of first come first served.  Work waiting for a slot is queued per tenant, and
+ * the queues are served by deficit round-robin: each tenant with queued work gets, in turn, a number of
+ * slots proportional to its {@link io.apicurio.common.apps.mt.TenantLimits#getSchedulingWeight() weight}
+ * (1 by default).  A burst from one tenant therefore only delays that tenant's own work.
+ * <p>
+ * Work can be submitted in two ways:
+ * <ul>
+ *   <li>{@link #execute(Runnable)} runs the task on the executor's own threads, as the submitting tenant</li>
+ *   <li>{@link #callInTurn(String, TenantInfo, Callable)} waits for a slot and runs the task on the calling
+ *       thread, which keeps thread-bound state such as the JTA transaction (this is how storage work is
+ *       scheduled).  {@link #acquireTurn(String, TenantInfo)} does the same for work spanning several
+ *       calls, such as a transaction, which must not wait for a slot again while holding locks.</li>
+ * </ul>
+ * Each tenant may have at most app.multitenancy.fair-scheduling.max-queued-per-tenant tasks waiting,
+ * further tasks are rejected.  A caller waiting for its turn blocks its own thread (typically a worker
+ * thread shared by all tenants), so each tenant may only have app.multitenancy.fair-scheduling.max-waiting-callers-per-tenant
+ * callers waiting at once, which keeps a burst from one tenant from parking every worker thread, and
+ * callers give up after app.multitenancy.fair-scheduling.wait-timeout-ms.  Enabled with
+ * app.multitenancy.fair-scheduling.enabled (and multi-tenancy).
+ *
+ * @author eric.wittmann@gmail.com
+ */
+@ApplicationScoped
+public class FairTenantExecutor implements Executor {
+
+    @ConfigProperty(name = "app.multitenancy.enabled", defaultValue = "false")
+    boolean multitenancyEnabled;
+
+    @ConfigProperty(name = "app.multitenancy.fair-scheduling.enabled", defaultValue = "false")
+    boolean fairSchedulingEnabled;
+
+    @ConfigProperty(name = "app.multitenancy.fair-scheduling.parallelism", defaultValue = "16")
+    int parallelism;
+
+    @ConfigProperty(name = "app.multitenancy.fair-scheduling.max-queued-per-tenant", defaultValue = "1000")
+    int maxQueuedPerTenant;
+
+    @ConfigProperty(name = "app.multitenancy.fair-scheduling.max-waiting-callers-per-tenant", defaultValue = "16")
+    int maxWaitingCallersPerTenant;
+
+    @ConfigProperty(name = "app.multitenancy.fair-scheduling.wait-timeout-ms", defaultValue = "30000")
+    long waitTimeoutMillis;
+
+    @Inject
+    Instance<MeterRegistry> meterRegistry;
+
+    /**
+     * True on threads that hold a slot, so that nested work does not wait for a second one.
+     */
+    private static final ThreadLocal<Boolean> HOLDS_SLOT = new ThreadLocal<>();
+
+    private static final Runnable NO_TURN = () -> {
+    };
+
+    private final Map<String, TenantQueue> queues = new HashMap<>();
+    /**
+     * Tenants with queued work, in round-robin order.
+     */
+    private final ArrayDeque<TenantQueue> active = new ArrayDeque<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private int inUse;
+    private ExecutorService workers;
+
+    @PostConstruct
+    void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "fair-tenant-executor-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (isEnabled() && meterRegistry.isResolvable()) {
+            Gauge.builder("apicurio.tenant.scheduling.queued", queued, AtomicInteger::get)
+                    .description("Blocking tasks waiting for their tenant's turn")
+                    .register(meterRegistry.get());
+        }
+    }
+
+    @PreDestroy
+    void destroy() {
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * @return true if fair scheduling is enabled
+     */
+    public boolean isEnabled() {
+        return multitenancyEnabled && fairSchedulingEnabled;
+    }
+
+    /**
+     * Runs the task on one of the executor's threads, as the current tenant, when the tenant's turn comes.
+     * @see java.util.concurrent.Executor#execute(java.lang.Runnable)
+     */
+    @Override
+    public void execute(Runnable command) {
+        TenantInfo tenant = TenantContextProvider.currentTenantInfo();
+        Runnable task = TenantAwareExecutor.wrap(command);
+        if (!isEnabled()) {
+            workers.execute(task);
+            return;
+        }
+        enqueue(tenantId(tenant), weight(tenant), () -> workers.execute(() -> {
+            HOLDS_SLOT.set(Boolean.TRUE);
+            try {
+                task.run();
+            } finally {
+                HOLDS_SLOT.remove();
+                release();
+            }
+        }));
+    }
+
+    /**
+     * Waits for the tenant's turn, then runs the task on the calling thread.
+     * @param tenantId the unique tenant ID
+     * @param tenant the tenant info (for its weight), may be null
+     * @param task the task
+     * @return the result of the task
+     * @throws RejectedExecutionException if the tenant has too many callers waiting, or the wait times out
+     */
+    public <T> T callInTurn(String tenantId, TenantInfo tenant, Callable<T> task) throws Exception {
+        Runnable turn = acquireTurn(tenantId, tenant);
+        try {
+            return callWithTurn(task);
+        } finally {
+            turn.run();
+        }
+    }
+
+    /**
+     * Waits for the tenant's turn and takes a slot, which the caller must give back by running the
+     * returned action (more than once has no effect, and it may be run on any thread).  Meanwhile the
+     * caller should run its work with {@link #callWithTurn(Callable)}.  Nothing is taken if fair
+     * scheduling is disabled or the calling thread already holds a slot.
+     * @param tenantId the unique tenant ID
+     * @param tenant the tenant info (for its weight), may be null
+     * @return gives the slot back
+     * @throws RejectedExecutionException if the tenant has too many callers waiting, or the wait times out
+     */
+    public Runnable acquireTurn(String tenantId, TenantInfo tenant) throws InterruptedException {
+        if (!isEnabled() || HOLDS_SLOT.get() != null) {
+            return NO_TURN;
+        }
+        CompletableFuture<Void> turn = new CompletableFuture<>();
+        enqueue(tenantId, weight(tenant), new WaitingCaller(() -> {
+            if (!turn.complete(null)) {
+                // The caller stopped waiting, hand the slot on
+                release();
+            }
+        }));
+        try {
+            turn.get(waitTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // The slot may have been granted meanwhile, in which case the caller goes ahead
+            if (turn.complete(null)) {
+                throw new RejectedExecutionException("Timed out waiting for the turn of tenant " + tenantId);
+            }
+        } catch (InterruptedException e) {
+            // Give the slot back if it was granted meanwhile
+            if (!turn.complete(null)) {
+                release();
+            }
+            Thread.currentThread().interrupt();
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        AtomicBoolean released = new AtomicBoolean();
+        return () -> {
+            if (released.compareAndSet(false, true)) {
+                release();
+            }
+        };
+    }
+
+    /**
+     * Runs a task on the calling thread, which holds a slot (see {@link #acquireTurn(String, TenantInfo)}),
+     * so that the work it does in turn does not wait for another slot.
+     * @param task the task
+     * @return the result of the task
+     */
+    public <T> T callWithTurn(Callable<T> task) throws Exception {
+        Boolean held = HOLDS_SLOT.get();
+        HOLDS_SLOT.set(Boolean.TRUE);
+        try {
+            return task.call();
+        } finally {
+            if (held == null) {
+                HOLDS_SLOT.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the number of tasks waiting, by tenant (tenants with no waiting task are omitted)
+     */
+    public synchronized Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> rval = new HashMap<>();
+        queues.forEach((tenantId, queue) -> rval.put(tenantId, queue.tasks.size()));
+        return rval;
+    }
+
+    private void enqueue(String tenantId, int weight, Runnable start) {
+        Runnable next;
+        synchronized (this) {
+            TenantQueue queue = queues.get(tenantId);
+            if (queue == null) {
+                queue = new TenantQueue(tenantId);
+                queues.put(tenantId, queue);
+                active.addLast(queue);
+            }
+            if (queue.tasks.size() >= maxQueuedPerTenant) {
+                throw new RejectedExecutionException("Too many tasks queued for tenant " + tenantId);
+            }
+            if (start instanceof WaitingCaller) {
+                if (queue.waitingCallers >= maxWaitingCallersPerTenant) {
+                    throw new RejectedExecutionException("Too many callers waiting for the turn of tenant " + tenantId);
+                }
+                queue.waitingCallers++;
+            }
+            queue.weight = weight;
+            queue.tasks.addLast(start);
+            queued.incrementAndGet();
+            next = dispatch();
+        }
+        if (next != null) {
+            next.run();
+        }
+    }
+
+    private void release() {
+        Runnable next;
+        synchronized (this) {
+            inUse--;
+            next = dispatch();
+        }
+        if (next != null) {
+            next.run();
+        }
+    }
+
+    /**
+     * Takes a slot and picks the task to start in it, by deficit round-robin (every task costs 1).
+     * Only one task is started per call: every start is matched by a release, which dispatches again.
+     * @return the task to start (outside of the lock), or null if no slot or no task is available
+     */
+    private Runnable dispatch() {
+        if (inUse >= parallelism || active.isEmpty()) {
+            return null;
+        }
+        TenantQueue queue = active.peekFirst();
+        while (queue.deficit < 1) {
+            // The tenant at the head has used up its quantum: top it up and give the next tenant its turn
+            queue.deficit += queue.weight;
+            active.addLast(active.pollFirst());
+            queue = active.peekFirst();
+        }
+        Runnable task = queue.tasks.pollFirst();
+        if (task instanceof WaitingCaller) {
+            queue.waitingCallers--;
+        }
+        queue.deficit--;
+        queued.decrementAndGet();
+        if (queue.tasks.isEmpty()) {
+            active.pollFirst();
+            queues.remove(queue.tenantId);
+        }
+        inUse++;
+        return task;
+    }
+
+    private static String tenantId(TenantInfo tenant) {
+        return tenant == null ? TenantContext.DEFAULT_TENANT_ID : tenant.getId();
+    }
+
+    private static int weight(TenantInfo tenant) {
+        if (tenant == null || tenant.getLimits() == null || tenant.getLimits().getSchedulingWeight() == null) {
+            return 1;
+        }
+        return Math.max(1, tenant.getLimits().getSchedulingWeight());
+    }
+
+    private static class TenantQueue {
+
+        final String tenantId;
+        final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        int weight = 1;
+        int deficit;
+        /**
+         * Number of the queued tasks that are callers blocking their thread.
+         */
+        int waitingCallers;
+
+        TenantQueue(String tenantId) {
+            this.tenantId = tenantId;
+        }
+    }
+
+    /**
+     * Grants the turn to a caller that blocks its thread while waiting for it.
+     */
+    private static class WaitingCaller implements Runnable {
+
+        private final Runnable grant;
+
+        WaitingCaller(Runnable grant) {
+            this.grant = grant;
+        }
+
+        @Override
+        public void run() {
+            grant.run();
+        }
+    }
+
+}
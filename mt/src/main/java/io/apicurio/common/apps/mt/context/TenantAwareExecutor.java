@@ -0,0 +1,97 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.mt.context;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+import org.eclipse.microprofile.context.spi.ThreadContextController;
+
+import io.apicurio.common.apps.mt.TenantInfo;
+
+/**
+ * An {@link Executor} that runs tasks as the tenant that submitted them.  It wraps any executor
+ * (a thread pool, a Mutiny worker pool, a thread-per-task executor, ...), which allows blocking
+ * storage calls to be moved off the event loop or fanned out in parallel without losing the tenant.
+ * <pre>
+ * Executor executor = TenantAwareExecutor.wrap(workerPool);
+ * CompletableFuture.supplyAsync(() -&gt; storage.getConfigProperties(), executor);
+ * </pre>
+ *
+ * @author eric.wittmann@gmail.com
+ */
+public class TenantAwareExecutor implements Executor {
+
+    private final Executor delegate;
+
+    /**
+     * Wraps the given executor.
+     * @param delegate the executor that runs the tasks
+     */
+    public static TenantAwareExecutor wrap(Executor delegate) {
+        return new TenantAwareExecutor(delegate);
+    }
+
+    /**
+     * Constructor.
+     * @param delegate the executor that runs the tasks
+     */
+    public TenantAwareExecutor(Executor delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * @see java.util.concurrent.Executor#execute(java.lang.Runnable)
+     */
+    @Override
+    public void execute(Runnable command) {
+        delegate.execute(wrap(command));
+    }
+
+    /**
+     * Wraps a task so that it runs as the current tenant, on whatever thread it ends up on.
+     * @param task the task
+     */
+    public static Runnable wrap(Runnable task) {
+        TenantInfo tenant = TenantContextProvider.currentTenantInfo();
+        return () -> {
+            ThreadContextController controller = TenantContextProvider.begin(tenant);
+            try {
+                task.run();
+            } finally {
+                controller.endContext();
+            }
+        };
+    }
+
+    /**
+     * Wraps a task so that it runs as the current tenant, on whatever thread it ends up on.
+     * @param task the task
+     */
+    public static <V> Callable<V> wrap(Callable<V> task) {
+        TenantInfo tenant = TenantContextProvider.currentTenantInfo();
+        return () -> {
+            ThreadContextController controller = TenantContextProvider.begin(tenant);
+            try {
+                return task.call();
+            } finally {
+                controller.endContext();
+            }
+        };
+    }
+
+}
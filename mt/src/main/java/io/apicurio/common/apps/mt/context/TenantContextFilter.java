@@ -0,0 +1,70 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apicurio.common.apps.mt.context;
+
+import javax.annotation.Priority;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.ext.Provider;
+
+import io.apicurio.common.apps.mt.TenantContext;
+import io.apicurio.common.apps.mt.TenantInfo;
+import io.quarkus.vertx.http.runtime.CurrentVertxRequest;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * Binds the tenant resolved by {@link io.apicurio.common.apps.mt.MtAppAuthenticationMechanism} (and
+ * stored on the routing context) to the request running the JAX-RS resource, and unbinds it once the
+ * response has been produced.  The binding is tied to the CDI request context (see
+ * {@link TenantContext#bindToRequest(TenantInfo)}), so a request that never reaches the response
+ * filters, e.g. one that suspends an {@code AsyncResponse}, does not leave its tenant on the worker
+ * thread.  Servlet requests are covered by {@link TenantContextServletFilter}.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+@Provider
+@Priority(Priorities.AUTHENTICATION)
+@ApplicationScoped
+public class TenantContextFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    @Inject
+    CurrentVertxRequest currentRequest;
+
+    /**
+     * @see javax.ws.rs.container.ContainerRequestFilter#filter(javax.ws.rs.container.ContainerRequestContext)
+     */
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        RoutingContext context = currentRequest.getCurrent();
+        TenantInfo info = context == null ? null : context.get(TenantContext.TENANT_INFO_KEY);
+        TenantContext.bindToRequest(info);
+    }
+
+    /**
+     * @see javax.ws.rs.container.ContainerResponseFilter#filter(javax.ws.rs.container.ContainerRequestContext,
+     *      javax.ws.rs.container.ContainerResponseContext)
+     */
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        TenantContext.bindToRequest(null);
+    }
+
+}
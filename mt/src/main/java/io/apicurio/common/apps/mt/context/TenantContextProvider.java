@@ -0,0 +1,77 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.mt.context;
+
+import java.util.Map;
+
+import org.eclipse.microprofile.context.spi.ThreadContextController;
+import org.eclipse.microprofile.context.spi.ThreadContextProvider;
+import org.eclipse.microprofile.context.spi.ThreadContextSnapshot;
+
+import io.apicurio.common.apps.mt.TenantContext;
+import io.apicurio.common.apps.mt.TenantInfo;
+
+/**
+ * Implementation required for context propagation.
+ * This is responsible for moving the current tenant from one thread to another when context-propagation
+ * is being used, so that work offloaded to another thread does not silently run as the default tenant.
+ * <p>
+ * The tenant is bound to the target thread (see {@link TenantContext#bind(TenantInfo)}) for the
+ * duration of the task, and the previous binding is restored afterwards.
+ * Applications enable it by listing it in META-INF/services/org.eclipse.microprofile.context.spi.ThreadContextProvider,
+ * like {@link io.apicurio.common.apps.mt.logging.MdcContextProvider}.  The same snapshots are used by
+ * {@link TenantAwareExecutor}, which works with any executor.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+public class TenantContextProvider implements ThreadContextProvider {
+
+    public static final String TENANT_CONTEXT = "Apicurio Tenant";
+
+    @Override
+    public ThreadContextSnapshot currentContext(Map<String, String> props) {
+        TenantInfo propagate = currentTenantInfo();
+        return () -> begin(propagate);
+    }
+
+    @Override
+    public ThreadContextSnapshot clearedContext(Map<String, String> props) {
+        return () -> begin(null);
+    }
+
+    @Override
+    public String getThreadContextType() {
+        return TENANT_CONTEXT;
+    }
+
+    /**
+     * @return the info of the tenant of the current thread, or null for the default tenant
+     */
+    static TenantInfo currentTenantInfo() {
+        return TenantContext.current();
+    }
+
+    /**
+     * Makes the given tenant the current tenant of the current thread.
+     * @return a controller that restores the previous state
+     */
+    static ThreadContextController begin(TenantInfo info) {
+        TenantInfo previous = TenantContext.bind(info);
+        return () -> TenantContext.bind(previous);
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apicurio.common.apps.mt.context;
+
+import java.io.IOException;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.annotation.WebFilter;
+
+import io.apicurio.common.apps.mt.TenantContext;
+import io.apicurio.common.apps.mt.TenantInfo;
+import io.quarkus.vertx.http.runtime.CurrentVertxRequest;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * Binds the tenant resolved by {@link io.apicurio.common.apps.mt.MtAppAuthenticationMechanism} to
+ * the thread running a servlet request (e.g. a {@code ConfigJsServlet}), which the JAX-RS
+ * {@link TenantContextFilter} does not see.  The binding is undone once the filter chain returns.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+@ApplicationScoped
+@WebFilter(filterName = "TenantContextServletFilter", urlPatterns = "/*", asyncSupported = true)
+public class TenantContextServletFilter implements Filter {
+
+    @Inject
+    CurrentVertxRequest currentRequest;
+
+    /**
+     * @see javax.servlet.Filter#init(javax.servlet.FilterConfig)
+     */
+    @Override
+    public void init(FilterConfig config) throws ServletException {
+    }
+
+    /**
+     * @see javax.servlet.Filter#doFilter(javax.servlet.ServletRequest, javax.servlet.ServletResponse, javax.servlet.FilterChain)
+     */
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        RoutingContext context = currentRequest.getCurrent();
+        TenantInfo info = context == null ? null : context.get(TenantContext.TENANT_INFO_KEY);
+        TenantInfo previous = TenantContext.bind(info);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            TenantContext.bind(previous);
+        }
+    }
+
+    /**
+     * @see javax.servlet.Filter#destroy()
+     */
+    @Override
+    public void destroy() {
+    }
+
+}
@@ -18,6 +18,7 @@ package io.apicurio.common.apps.mt.logging;
 
 import java.util.Map;
 
+import org.eclipse.microprofile.context.spi.ThreadContextController;
 import org.eclipse.microprofile.context.spi.ThreadContextProvider;
 import org.eclipse.microprofile.context.spi.ThreadContextSnapshot;
 import org.slf4j.MDC;
@@ -27,36 +28,89 @@ import org.slf4j.MDC;
  * Implementation required for context propagation.
  * This is responsible for moving the MDC configuration from one thread to another when context-propagation is being used.
  * This is important for having correct log output when multitenancy is enabled
+ * <p>
+ * The propagated MDC is held as an immutable {@link MdcSnapshot} that is shared, rather than copied, by
+ * every thread it is propagated to.  While a propagated task runs, the provider remembers which snapshot
+ * it installed on the thread, so that:
+ * <ul>
+ *   <li>capturing the context again (the next hop of a reactive pipeline) reuses that snapshot, as long as
+ *       the MDC still has exactly its entries</li>
+ *   <li>installing the snapshot that is already installed (a continuation running on the same thread)
+ *       does nothing</li>
+ *   <li>restoring the previous MDC afterwards swaps the previous snapshot back in</li>
+ * </ul>
+ * Outside of propagated tasks (e.g. on the thread that received the request) a new snapshot is taken on
+ * every capture, as before.
  *
  * @author Fabian Martinez
  */
 public class MdcContextProvider implements ThreadContextProvider {
 
+    /**
+     * The snapshot installed on the current thread by this provider (while a propagated task runs).
+     */
+    private static final ThreadLocal<MdcSnapshot> INSTALLED = new ThreadLocal<>();
+
     @Override
     public ThreadContextSnapshot currentContext(Map<String, String> props) {
-        Map<String, String> propagate = MDC.getCopyOfContextMap();
-        return () -> {
-            Map<String, String> old = MDC.getCopyOfContextMap();
-            MDC.setContextMap(propagate);
-            return () -> {
-                MDC.setContextMap(old);
-            };
-        };
+        MdcSnapshot propagate = capture();
+        return () -> install(propagate);
     }
 
     @Override
     public ThreadContextSnapshot clearedContext(Map<String, String> props) {
-        return () -> {
-            Map<String, String> old = MDC.getCopyOfContextMap();
-            MDC.clear();
-            return () -> {
-                MDC.setContextMap(old);
-            };
-        };
+        return () -> install(MdcSnapshot.EMPTY);
     }
 
     @Override
     public String getThreadContextType() {
         return "SLF4J MDC";
     }
+
+    private static MdcSnapshot capture() {
+        Map<String, String> current = MDC.getCopyOfContextMap();
+        MdcSnapshot installed = INSTALLED.get();
+        if (installed != null && installed.matches(current)) {
+            return installed;
+        }
+        return MdcSnapshot.of(current);
+    }
+
+    private static ThreadContextController install(MdcSnapshot snapshot) {
+        Map<String, String> current = MDC.getCopyOfContextMap();
+        MdcSnapshot previous = INSTALLED.get();
+        if (previous == snapshot && snapshot.matches(current)) {
+            // Already installed, just undo any changes made by the task
+            return () -> restore(snapshot, previous, false);
+        }
+        MdcSnapshot old;
+        if (previous != null && previous.matches(current)) {
+            old = previous;
+        } else {
+            if (snapshot.matches(current)) {
+                // The thread already has this MDC (e.g. the task runs on the thread that captured it)
+                INSTALLED.set(snapshot);
+                return () -> restore(snapshot, previous, false);
+            }
+            old = MdcSnapshot.of(current);
+        }
+        snapshot.apply();
+        INSTALLED.set(snapshot);
+        return () -> restore(old, previous, true);
+    }
+
+    /**
+     * Puts the given snapshot back.  If the thread already had it before the task ran, it is only
+     * re-applied if the task changed one of its entries.
+     */
+    private static void restore(MdcSnapshot snapshot, MdcSnapshot previous, boolean replaced) {
+        if (replaced || !snapshot.matchesMdc()) {
+            snapshot.apply();
+        }
+        if (previous == null) {
+            INSTALLED.remove();
+        } else {
+            INSTALLED.set(previous);
+        }
+    }
 }
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.mt.logging;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.slf4j.MDC;
+
+/**
+ * An immutable copy of the MDC of a thread.  Snapshots are shared: the same instance is propagated to
+ * (and installed on) any number of threads.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+final class MdcSnapshot {
+
+    static final MdcSnapshot EMPTY = new MdcSnapshot(Collections.emptyMap());
+
+    /**
+     * Never modified (and never handed out other than to {@link MDC#setContextMap(Map)}, which copies it).
+     */
+    private final Map<String, String> map;
+    private final String[] keys;
+    private final String[] values;
+
+    private MdcSnapshot(Map<String, String> map) {
+        this.map = map;
+        this.keys = new String[map.size()];
+        this.values = new String[map.size()];
+        int i = 0;
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            keys[i] = entry.getKey();
+            values[i] = entry.getValue();
+            i++;
+        }
+    }
+
+    /**
+     * Takes ownership of the given copy of an MDC.
+     */
+    static MdcSnapshot of(Map<String, String> copy) {
+        return copy == null || copy.isEmpty() ? EMPTY : new MdcSnapshot(copy);
+    }
+
+    /**
+     * Returns true if the current thread's MDC has exactly the entries of the snapshot.  Entries added
+     * under new keys count as a difference too, so the MDC has to be copied: slf4j cannot tell its size.
+     */
+    boolean matchesMdc() {
+        return matches(MDC.getCopyOfContextMap());
+    }
+
+    /**
+     * Returns true if the given copy of an MDC has exactly the entries of the snapshot.
+     */
+    boolean matches(Map<String, String> copy) {
+        return copy == null || copy.isEmpty() ? keys.length == 0 : map.equals(copy);
+    }
+
+    /**
+     * Replaces the current thread's MDC with the snapshot.
+     */
+    void apply() {
+        if (keys.length == 0) {
+            MDC.clear();
+        } else {
+            MDC.setContextMap(map);
+        }
+    }
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.mt.metrics;
+
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+/**
+ * Base class for an admin JAX-RS resource that reports the load generated by the busiest tenants
+ * (see {@link TenantMetrics}).  Applications subclass it, annotate the subclass with {@code @Path}
+ * and secure it as an admin-only endpoint.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+public abstract class AbstractTenantMetricsResource {
+
+    @Inject
+    TenantMetrics tenantMetrics;
+
+    /**
+     * Lists the busiest tenants, busiest first, followed by the aggregate of all other tenants.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<TenantMetricsDto> getTopTenants() {
+        return tenantMetrics.getTopTenants();
+    }
+
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.mt.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.apicurio.common.apps.util.SpaceSaving;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * Accounts the requests, request time and database time of each tenant.  Tagging metrics with every
+ * tenant ID would explode their cardinality, so only the heaviest tenants (by number of requests) are
+ * reported individually, and the rest are aggregated into an "other" tenant.  The heaviest tenants
+ * are found with a {@link SpaceSaving} summary that monitors ten times as many tenants as are
+ * reported, so the reported tenants and their counts are exact unless the load is very evenly spread.
+ * <p>
+ * Database time is attributed to a tenant only while it is monitored (which it normally is from its
+ * first request on), otherwise it counts towards "other".
+ * <p>
+ * The top tenants are published as the apicurio.tenant.requests, apicurio.tenant.request.time and
+ * apicurio.tenant.db.time gauges (tagged with "tenant"), refreshed every
+ * app.multitenancy.metrics.refresh-seconds.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+@ApplicationScoped
+public class TenantMetrics {
+
+    public static final String OTHER_TENANTS = "other";
+
+    private static final int REQUEST_TIME = 0;
+    private static final int DB_TIME = 1;
+
+    @ConfigProperty(name = "app.multitenancy.metrics.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @ConfigProperty(name = "app.multitenancy.metrics.top-tenants", defaultValue = "10")
+    int topTenants;
+
+    @ConfigProperty(name = "app.multitenancy.metrics.refresh-seconds", defaultValue = "30")
+    long refreshSeconds;
+
+    @Inject
+    Instance<MeterRegistry> meterRegistry;
+
+    private SpaceSaving<String> heavyHitters;
+    private final LongAdder totalRequests = new LongAdder();
+    private final LongAdder totalRequestNanos = new LongAdder();
+    private final LongAdder totalDbNanos = new LongAdder();
+
+    private ScheduledExecutorService publisher;
+    private MultiGauge requestsGauge;
+    private MultiGauge requestTimeGauge;
+    private MultiGauge dbTimeGauge;
+
+    @PostConstruct
+    void init() {
+        if (!enabled) {
+            return;
+        }
+        heavyHitters = new SpaceSaving<>(topTenants * 10, 2);
+        if (meterRegistry.isResolvable()) {
+            MeterRegistry registry = meterRegistry.get();
+            requestsGauge = MultiGauge.builder("apicurio.tenant.requests")
+                    .description("Requests of the busiest tenants (and of all the others)")
+                    .register(registry);
+            requestTimeGauge = MultiGauge.builder("apicurio.tenant.request.time")
+                    .description("Time spent processing requests of the busiest tenants (and of all the others)")
+                    .baseUnit("seconds")
+                    .register(registry);
+            dbTimeGauge = MultiGauge.builder("apicurio.tenant.db.time")
+                    .description("Time spent in the database for the busiest tenants (and for all the others)")
+                    .baseUnit("seconds")
+                    .register(registry);
+            long refresh = TimeUnit.SECONDS.toMillis(refreshSeconds);
+            publisher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "tenant-metrics-publisher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            publisher.scheduleAtFixedRate(this::publish, refresh, refresh, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    void destroy() {
+        if (publisher != null) {
+            publisher.shutdownNow();
+        }
+    }
+
+    /**
+     * Records a completed request.
+     * @param tenantId the unique tenant ID
+     * @param durationNanos how long the request took
+     */
+    public void recordRequest(String tenantId, long durationNanos) {
+        if (heavyHitters == null) {
+            return;
+        }
+        totalRequests.increment();
+        totalRequestNanos.add(durationNanos);
+        heavyHitters.add(tenantId, 1, REQUEST_TIME, durationNanos);
+    }
+
+    /**
+     * Records time spent in the database.
+     * @param tenantId the unique tenant ID
+     * @param durationNanos how long the database work took
+     */
+    public void recordDbTime(String tenantId, long durationNanos) {
+        if (heavyHitters == null) {
+            return;
+        }
+        totalDbNanos.add(durationNanos);
+        heavyHitters.addValue(tenantId, DB_TIME, durationNanos);
+    }
+
+    /**
+     * Returns the busiest tenants, busiest first, followed by the aggregate of all the other tenants.
+     */
+    public List<TenantMetricsDto> getTopTenants() {
+        List<TenantMetricsDto> rval = new ArrayList<>();
+        if (heavyHitters == null) {
+            return rval;
+        }
+        // Requests recorded while the summary is read can make the tenants add up to more than the
+        // totals read here, so "other" is clamped at zero
+        long requests = totalRequests.sum();
+        long requestNanos = totalRequestNanos.sum();
+        long dbNanos = totalDbNanos.sum();
+        for (SpaceSaving.Entry<String> entry : heavyHitters.top(topTenants)) {
+            long requestTime = entry.getValue(REQUEST_TIME);
+            long dbTime = entry.getValue(DB_TIME);
+            rval.add(new TenantMetricsDto(entry.getKey(), entry.getCount(), entry.getError(),
+                    TimeUnit.NANOSECONDS.toMillis(requestTime), TimeUnit.NANOSECONDS.toMillis(dbTime)));
+            // Only the exact part of the count is known to belong to the tenant, the error belongs
+            // to the tenants whose counter it took over, which are now part of "other"
+            requests -= entry.getCount() - entry.getError();
+            requestNanos -= requestTime;
+            dbNanos -= dbTime;
+        }
+        rval.add(new TenantMetricsDto(OTHER_TENANTS, Math.max(0, requests), 0,
+                TimeUnit.NANOSECONDS.toMillis(Math.max(0, requestNanos)), TimeUnit.NANOSECONDS.toMillis(Math.max(0, dbNanos))));
+        return rval;
+    }
+
+    private void publish() {
+        List<MultiGauge.Row<?>> requests = new ArrayList<>();
+        List<MultiGauge.Row<?>> requestTime = new ArrayList<>();
+        List<MultiGauge.Row<?>> dbTime = new ArrayList<>();
+        for (TenantMetricsDto tenant : getTopTenants()) {
+            Tags tags = Tags.of("tenant", tenant.getTenantId());
+            requests.add(MultiGauge.Row.of(tags, tenant.getRequests()));
+            requestTime.add(MultiGauge.Row.of(tags, tenant.getRequestTimeMillis() / 1000.0));
+            dbTime.add(MultiGauge.Row.of(tags, tenant.getDbTimeMillis() / 1000.0));
+        }
+        requestsGauge.register(requests, true);
+        requestTimeGauge.register(requestTime, true);
+        dbTimeGauge.register(dbTime, true);
+    }
+
+}
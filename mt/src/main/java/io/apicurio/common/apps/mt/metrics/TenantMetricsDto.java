@@ -0,0 +1,124 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.mt.metrics;
+
+/**
+ * The load generated by one tenant (or by all the tenants outside the top tenants).
+ *
+ * @author eric.wittmann@gmail.com
+ */
+public class TenantMetricsDto {
+
+    private String tenantId;
+    private long requests;
+    private long requestsError;
+    private long requestTimeMillis;
+    private long dbTimeMillis;
+
+    /**
+     * Constructor.
+     */
+    public TenantMetricsDto() {
+    }
+
+    /**
+     * Constructor.
+     * @param tenantId the tenant ID (or "other")
+     * @param requests the number of requests
+     * @param requestsError the maximum overestimation of the number of requests
+     * @param requestTimeMillis the total time spent processing requests
+     * @param dbTimeMillis the total time spent in the database
+     */
+    public TenantMetricsDto(String tenantId, long requests, long requestsError, long requestTimeMillis, long dbTimeMillis) {
+        this.tenantId = tenantId;
+        this.requests = requests;
+        this.requestsError = requestsError;
+        this.requestTimeMillis = requestTimeMillis;
+        this.dbTimeMillis = dbTimeMillis;
+    }
+
+    /**
+     * @return the tenantId
+     */
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    /**
+     * @param tenantId the tenantId to set
+     */
+    public void setTenantId(String tenantId) {
+        this.tenantId = tenantId;
+    }
+
+    /**
+     * @return the requests
+     */
+    public long getRequests() {
+        return requests;
+    }
+
+    /**
+     * @param requests the requests to set
+     */
+    public void setRequests(long requests) {
+        this.requests = requests;
+    }
+
+    /**
+     * @return the requestsError
+     */
+    public long getRequestsError() {
+        return requestsError;
+    }
+
+    /**
+     * @param requestsError the requestsError to set
+     */
+    public void setRequestsError(long requestsError) {
+        this.requestsError = requestsError;
+    }
+
+    /**
+     * @return the requestTimeMillis
+     */
+    public long getRequestTimeMillis() {
+        return requestTimeMillis;
+    }
+
+    /**
+     * @param requestTimeMillis the requestTimeMillis to set
+     */
+    public void setRequestTimeMillis(long requestTimeMillis) {
+        this.requestTimeMillis = requestTimeMillis;
+    }
+
+    /**
+     * @return the dbTimeMillis
+     */
+    public long getDbTimeMillis() {
+        return dbTimeMillis;
+    }
+
+    /**
+     * @param dbTimeMillis the dbTimeMillis to set
+     */
+    public void setDbTimeMillis(long dbTimeMillis) {
+        this.dbTimeMillis = dbTimeMillis;
+    }
+
+}
@@ -0,0 +1,17 @@
+package io.apicurio.common.apps.auth.authn;
+
+/**
+ * Gives tests in other packages access to the configuration of an {@link AppAuthenticationMechanism}
+ * built by hand.
+ */
+public class TestAuthenticationMechanisms {
+
+    /**
+     * Enables authentication through {@link AppAuthenticationMechanism#customAuthentication}.
+     */
+    public static void enableAuthentication(AppAuthenticationMechanism mechanism) {
+        mechanism.authEnabled = true;
+        mechanism.basicAuthEnabled = false;
+    }
+
+}
@@ -0,0 +1,390 @@
+package io.apicurio.common.apps.mt;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import org.eclipse.microprofile.jwt.Claims;
+import org.eclipse.microprofile.jwt.JsonWebToken;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import io.apicurio.common.apps.auth.authn.TestAuthenticationMechanisms;
+import io.apicurio.common.apps.mt.metrics.TenantMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.security.AuthenticationFailedException;
+import io.quarkus.security.ForbiddenException;
+import io.quarkus.security.identity.IdentityProviderManager;
+import io.quarkus.security.identity.SecurityIdentity;
+import io.quarkus.security.runtime.QuarkusSecurityIdentity;
+import io.quarkus.vertx.http.runtime.security.QuarkusHttpUser;
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.web.RoutingContext;
+
+public class MtAppAuthenticationMechanismTest {
+
+    private LocalTenantManagerClient client;
+    private TenantInfoLoader loader;
+    private TenantUsageTracker usageTracker;
+    private TestMechanism mechanism;
+
+    @BeforeEach
+    public void setUp() {
+        MtProperties properties = TenantInfoLoaderTest.mtProperties(2, 100);
+        properties.multitenancyEnabled = true;
+        properties.mtRequestHeaderEnabled = true;
+        properties.tenantIdRequestHeader = "X-Tenant-Id";
+        properties.nameMultitenancyBasePath = "t";
+        properties.mtAuthorizationEnabled = true;
+        properties.mtAuthorizationOrgClaim = "org_id";
+        properties.mtAuthorizationCacheMaxSize = 100;
+        properties.mtAuthorizationCacheTtlSeconds = 300L;
+        properties.rateLimitEnabled = true;
+        properties.rateLimitMaxTenants = 100;
+        properties.rateLimitIdleSeconds = 600L;
+        properties.clientRateLimit = 0L;
+        properties.clientRateLimitBurst = 0L;
+        properties.bulkheadMaxConcurrentRequests = Optional.empty();
+        properties.bulkheadQueueSize = 10;
+        properties.bulkheadQueueTimeoutMs = 10000L;
+        properties.tenantFilterEnabled = false;
+        properties.usageEnabled = true;
+        properties.usageRequestWindowSeconds = 3600L;
+
+        client = new LocalTenantManagerClient();
+        loader = new TenantInfoLoader();
+        loader.log = LoggerFactory.getLogger(TenantInfoLoader.class);
+        loader.mtProperties = properties;
+        loader.tenantManagerClients = new TestInstance<>(client);
+        loader.init();
+
+        TenantIdResolver resolver = new TenantIdResolver();
+        resolver.log = LoggerFactory.getLogger(TenantIdResolver.class);
+        resolver.mtProperties = properties;
+        resolver.init(null);
+
+        TenantAuthorizer authorizer = new TenantAuthorizer();
+        authorizer.mtProperties = properties;
+        authorizer.init();
+
+        TenantIdFilter filter = new TenantIdFilter();
+        filter.log = LoggerFactory.getLogger(TenantIdFilter.class);
+        filter.mtProperties = properties;
+        filter.tenantInfoLoader = loader;
+        filter.meterRegistry = TestInstance.<MeterRegistry>empty();
+
+        TenantRateLimiter limiter = new TenantRateLimiter();
+        limiter.mtProperties = properties;
+        limiter.meterRegistry = TestInstance.<MeterRegistry>empty();
+        limiter.init();
+
+        TenantBulkhead bulkhead = new TenantBulkhead();
+        bulkhead.mtProperties = properties;
+        bulkhead.meterRegistry = TestInstance.<MeterRegistry>empty();
+        bulkhead.init();
+
+        usageTracker = new TenantUsageTracker();
+        usageTracker.mtProperties = properties;
+
+        mechanism = new TestMechanism();
+        mechanism.log = LoggerFactory.getLogger(MtAppAuthenticationMechanism.class);
+        mechanism.mtProperties = properties;
+        mechanism.tenantIdResolver = resolver;
+        mechanism.tenantInfoLoader = loader;
+        mechanism.tenantAuthorizer = authorizer;
+        mechanism.tenantIdFilter = filter;
+        mechanism.tenantRateLimiter = limiter;
+        mechanism.tenantBulkhead = bulkhead;
+        mechanism.tenantMetrics = new TenantMetrics();
+        mechanism.tenantUsageTracker = usageTracker;
+        mechanism.authnEnabled = true;
+        TestAuthenticationMechanisms.enableAuthentication(mechanism);
+        mechanism.identity = identity("alice", "org1");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        loader.destroy();
+    }
+
+    @Test
+    public void testTenantIsResolved() throws Exception {
+        client.putTenant(tenant("t1", TenantStatus.READY, new TenantLimits()));
+        TestRequest request = new TestRequest("t1");
+        Assertions.assertEquals("alice", authenticate(request).getPrincipal().getName());
+        Assertions.assertEquals("t1", ((TenantInfo) request.data.get(TenantContext.TENANT_INFO_KEY)).getId());
+    }
+
+    @Test
+    public void testMissingTenantIdIsRejected() {
+        assertFails(ForbiddenException.class, new TestRequest(null));
+    }
+
+    @Test
+    public void testUnknownTenantIsRejected() {
+        TestRequest request = new TestRequest("unknown");
+        assertFails(ForbiddenException.class, request);
+        Assertions.assertNull(request.data.get(TenantContext.TENANT_INFO_KEY));
+    }
+
+    @Test
+    public void testLoaderFailureIsForbidden() {
+        loader.destroy();
+        loader.tenantManagerClients = new TestInstance<>(new LocalTenantManagerClient() {
+            @Override
+            public Optional<TenantInfo> getTenant(String tenantId) {
+                throw new IllegalStateException("Tenant manager unavailable");
+            }
+        });
+        loader.init();
+        // Fails closed, as a 403
+        assertFails(ForbiddenException.class, new TestRequest("t1"));
+    }
+
+    @Test
+    public void testTenantNotReadyIsRejected() {
+        client.putTenant(tenant("t1", TenantStatus.TO_BE_DELETED, new TenantLimits()));
+        assertFails(ForbiddenException.class, new TestRequest("t1"));
+    }
+
+    @Test
+    public void testRateLimitedIs429WithRetryAfter() throws Exception {
+        client.putTenant(tenant("t1", TenantStatus.READY, new TenantLimits(1L, 1L)));
+        authenticate(new TestRequest("t1"));
+
+        TestRequest limited = new TestRequest("t1");
+        TenantRateLimitedException e = assertFails(TenantRateLimitedException.class, limited);
+        limited.failAuthentication(e);
+        Assertions.assertEquals(429, limited.statusCode);
+        Assertions.assertEquals(String.valueOf(e.getRetryAfterSeconds()), limited.responseHeaders.get("Retry-After"));
+        Assertions.assertTrue(e.getRetryAfterSeconds() >= 1);
+        Assertions.assertTrue(limited.ended);
+    }
+
+    @Test
+    public void testQuotaIsChargedOnlyAfterAuthentication() throws Exception {
+        TenantLimits limits = new TenantLimits();
+        limits.setMaxRequests(1L);
+        client.putTenant(tenant("t1", TenantStatus.READY, limits));
+
+        // Anonymous requests go through (to be denied later if the resource is protected), uncharged
+        mechanism.identity = null;
+        Assertions.assertNull(authenticate(new TestRequest("t1")));
+        // Invalid credentials
+        mechanism.identity = null;
+        mechanism.failure = new AuthenticationFailedException();
+        assertFails(AuthenticationFailedException.class, new TestRequest("t1"));
+        // Not authorized to access the tenant
+        mechanism.failure = null;
+        mechanism.identity = identity("bob", "org2");
+        assertFails(ForbiddenException.class, new TestRequest("t1"));
+        Assertions.assertEquals(0, usageTracker.getUsage("t1").getRequests(usageTracker.currentRequestWindow()));
+
+        mechanism.identity = identity("alice", "org1");
+        authenticate(new TestRequest("t1"));
+        Assertions.assertEquals(1, usageTracker.getUsage("t1").getRequests(usageTracker.currentRequestWindow()));
+
+        TestRequest overQuota = new TestRequest("t1");
+        TenantQuotaExceededException e = assertFails(TenantQuotaExceededException.class, overQuota);
+        overQuota.failAuthentication(e);
+        Assertions.assertEquals(429, overQuota.statusCode);
+        Assertions.assertNotNull(overQuota.responseHeaders.get("Retry-After"));
+    }
+
+    @Test
+    public void testBulkheadPermitIsReleasedOnFailure() throws Exception {
+        client.putTenant(tenant("t1", TenantStatus.READY, new TenantLimits(null, null, 1)));
+        TestRequest first = new TestRequest("t1");
+        authenticate(first);
+        Assertions.assertNotNull(first.data.get(TenantBulkhead.PERMIT_KEY));
+
+        // A request that fails authorization does not take (or wait for) a permit
+        mechanism.identity = identity("bob", "org2");
+        assertFails(ForbiddenException.class, new TestRequest("t1"));
+        mechanism.identity = identity("alice", "org1");
+
+        // Waits for the permit of the first request, which then fails
+        TestRequest second = new TestRequest("t1");
+        CompletableFuture<SecurityIdentity> waiting = authenticateAsync(second);
+        Assertions.assertFalse(waiting.isDone());
+        first.end();
+        Assertions.assertNotNull(waiting.get(10, TimeUnit.SECONDS));
+        Assertions.assertNotNull(second.data.get(TenantBulkhead.PERMIT_KEY));
+
+        // A request that ends (e.g. the client goes away) while waiting gives the permit back once it gets it
+        TestRequest abandoned = new TestRequest("t1");
+        CompletableFuture<SecurityIdentity> abandonedWaiting = authenticateAsync(abandoned);
+        Assertions.assertFalse(abandonedWaiting.isDone());
+        abandoned.end();
+        second.end();
+        abandonedWaiting.get(10, TimeUnit.SECONDS);
+
+        TestRequest third = new TestRequest("t1");
+        Assertions.assertTrue(authenticateAsync(third).isDone());
+        third.end();
+    }
+
+    private SecurityIdentity authenticate(TestRequest request) throws Exception {
+        return authenticateAsync(request).get(10, TimeUnit.SECONDS);
+    }
+
+    private CompletableFuture<SecurityIdentity> authenticateAsync(TestRequest request) {
+        return mechanism.authenticate(request.context, null).subscribeAsCompletionStage();
+    }
+
+    private <T extends Throwable> T assertFails(Class<T> expected, TestRequest request) {
+        CompletableFuture<SecurityIdentity> result = authenticateAsync(request);
+        Throwable e = Assertions.assertThrows(Exception.class, () -> result.get(10, TimeUnit.SECONDS)).getCause();
+        Assertions.assertTrue(expected.isInstance(e), "Unexpected failure: " + e);
+        return expected.cast(e);
+    }
+
+    private static TenantInfo tenant(String tenantId, TenantStatus status, TenantLimits limits) {
+        return new TenantInfo(tenantId, "alice", "org1", status, limits);
+    }
+
+    private static SecurityIdentity identity(String principal, String orgId) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(Claims.exp.name(), System.currentTimeMillis() / 1000 + 3600);
+        claims.put("org_id", orgId);
+        JsonWebToken token = new JsonWebToken() {
+            @Override
+            public String getName() {
+                return principal;
+            }
+
+            @Override
+            public Set<String> getClaimNames() {
+                return claims.keySet();
+            }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public <T> T getClaim(String claimName) {
+                return (T) claims.get(claimName);
+            }
+        };
+        return QuarkusSecurityIdentity.builder().setPrincipal(token).build();
+    }
+
+    private static class TestMechanism extends MtAppAuthenticationMechanism {
+
+        volatile SecurityIdentity identity;
+        volatile RuntimeException failure;
+
+        @Override
+        public Uni<SecurityIdentity> customAuthentication(RoutingContext context, IdentityProviderManager identityProviderManager) {
+            if (failure != null) {
+                return Uni.createFrom().failure(failure);
+            }
+            return Uni.createFrom().item(identity);
+        }
+    }
+
+    /**
+     * The parts of a request (routing context, request and response) the mechanism uses.
+     */
+    private static class TestRequest {
+
+        final Map<String, String> headers = new HashMap<>();
+        final Map<String, Object> data = new HashMap<>();
+        final List<Handler<Void>> endHandlers = new ArrayList<>();
+        final Map<String, String> responseHeaders = new HashMap<>();
+        int statusCode = 200;
+        boolean ended;
+        final RoutingContext context;
+
+        TestRequest(String tenantId) {
+            if (tenantId != null) {
+                headers.put("X-Tenant-Id", tenantId);
+            }
+            HttpServerResponse response = proxy(HttpServerResponse.class, (self, name, args) -> {
+                switch (name) {
+                    case "setStatusCode":
+                        statusCode = (Integer) args[0];
+                        return self;
+                    case "putHeader":
+                        responseHeaders.put(args[0].toString(), args[1].toString());
+                        return self;
+                    case "end":
+                        ended = true;
+                        return null;
+                    default:
+                        throw new UnsupportedOperationException(name);
+                }
+            });
+            HttpServerRequest request = proxy(HttpServerRequest.class, (self, name, args) -> {
+                switch (name) {
+                    case "absoluteURI":
+                        return "http://localhost/apis/app/v1";
+                    case "getHeader":
+                        return headers.get(args[0].toString());
+                    case "host":
+                        return "localhost";
+                    case "remoteAddress":
+                        return null;
+                    default:
+                        throw new UnsupportedOperationException(name);
+                }
+            });
+            context = proxy(RoutingContext.class, (self, name, args) -> {
+                switch (name) {
+                    case "request":
+                        return request;
+                    case "response":
+                        return response;
+                    case "get":
+                        return data.get(args[0]);
+                    case "put":
+                        data.put((String) args[0], args[1]);
+                        return self;
+                    case "addEndHandler":
+                        @SuppressWarnings("unchecked")
+                        Handler<Void> handler = (Handler<Void>) args[0];
+                        endHandlers.add(handler);
+                        return endHandlers.size();
+                    default:
+                        throw new UnsupportedOperationException(name);
+                }
+            });
+        }
+
+        /**
+         * Responds as Quarkus does when authentication fails.
+         */
+        void failAuthentication(Throwable e) {
+            @SuppressWarnings("unchecked")
+            BiConsumer<RoutingContext, Throwable> handler = (BiConsumer<RoutingContext, Throwable>) data.get(QuarkusHttpUser.AUTH_FAILURE_HANDLER);
+            handler.accept(context, e);
+        }
+
+        void end() {
+            endHandlers.forEach(handler -> handler.handle(null));
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> T proxy(Class<T> type, ProxyHandler handler) {
+            return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+                    (self, method, args) -> handler.invoke(self, method.getName(), args));
+        }
+    }
+
+    @FunctionalInterface
+    private interface ProxyHandler {
+        Object invoke(Object self, String name, Object[] args);
+    }
+
+}
@@ -0,0 +1,100 @@
+package io.apicurio.common.apps.mt;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.microprofile.jwt.Claims;
+import org.eclipse.microprofile.jwt.JsonWebToken;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.quarkus.security.ForbiddenException;
+import io.quarkus.security.identity.SecurityIdentity;
+import io.quarkus.security.runtime.QuarkusSecurityIdentity;
+
+public class TenantAuthorizerTest {
+
+    @Test
+    public void testOwnerAndOrganization() {
+        TenantAuthorizer authorizer = authorizer(false);
+        TenantInfo info = new TenantInfo("t1", "alice", "org1", TenantStatus.READY, null);
+
+        authorizer.authorizeTenant(info, identity("alice", "org2"));
+        authorizer.authorizeTenant(info, identity("bob", "org1"));
+        Assertions.assertThrows(ForbiddenException.class, () -> authorizer.authorizeTenant(info, identity("bob", "org2")));
+        Assertions.assertThrows(ForbiddenException.class, () -> authorizer.authorizeTenant(info, identity("bob", null)));
+    }
+
+    @Test
+    public void testUnownedTenantsAreClosedByDefault() {
+        TenantInfo unowned = new TenantInfo("t1", null, null, TenantStatus.READY, null);
+        Assertions.assertThrows(ForbiddenException.class, () -> authorizer(false).authorizeTenant(unowned, identity("bob", "org1")));
+        authorizer(true).authorizeTenant(unowned, identity("bob", "org1"));
+    }
+
+    @Test
+    public void testDecisionDependsOnOrganizationClaim() {
+        TenantAuthorizer authorizer = authorizer(false);
+        TenantInfo info = new TenantInfo("t1", "alice", "org1", TenantStatus.READY, null);
+
+        authorizer.authorizeTenant(info, identity("bob", "org1"));
+        // Same principal, but a token of another organization: the cached decision does not apply
+        Assertions.assertThrows(ForbiddenException.class, () -> authorizer.authorizeTenant(info, identity("bob", "org2")));
+        authorizer.authorizeTenant(info, identity("bob", "org1"));
+    }
+
+    @Test
+    public void testTenantChangesAreDetected() {
+        TenantAuthorizer authorizer = authorizer(false);
+        authorizer.authorizeTenant(new TenantInfo("t1", "alice", "org1", TenantStatus.READY, null), identity("bob", "org1"));
+        TenantInfo moved = new TenantInfo("t1", "alice", "org2", TenantStatus.READY, null);
+        Assertions.assertThrows(ForbiddenException.class, () -> authorizer.authorizeTenant(moved, identity("bob", "org1")));
+    }
+
+    @Test
+    public void testAnonymousIsNotChecked() {
+        TenantAuthorizer authorizer = authorizer(false);
+        TenantInfo info = new TenantInfo("t1", "alice", "org1", TenantStatus.READY, null);
+        authorizer.authorizeTenant(info, null);
+        authorizer.authorizeTenant(info, QuarkusSecurityIdentity.builder().setAnonymous(true).build());
+    }
+
+    private static TenantAuthorizer authorizer(boolean allowUnowned) {
+        MtProperties properties = new MtProperties();
+        properties.mtAuthorizationOrgClaim = "org_id";
+        properties.mtAuthorizationAllowUnowned = allowUnowned;
+        properties.mtAuthorizationCacheMaxSize = 100;
+        properties.mtAuthorizationCacheTtlSeconds = 300L;
+        TenantAuthorizer authorizer = new TenantAuthorizer();
+        authorizer.mtProperties = properties;
+        authorizer.init();
+        return authorizer;
+    }
+
+    private static SecurityIdentity identity(String principal, String orgId) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(Claims.exp.name(), System.currentTimeMillis() / 1000 + 3600);
+        if (orgId != null) {
+            claims.put("org_id", orgId);
+        }
+        JsonWebToken token = new JsonWebToken() {
+            @Override
+            public String getName() {
+                return principal;
+            }
+
+            @Override
+            public Set<String> getClaimNames() {
+                return claims.keySet();
+            }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public <T> T getClaim(String claimName) {
+                return (T) claims.get(claimName);
+            }
+        };
+        return QuarkusSecurityIdentity.builder().setPrincipal(token).build();
+    }
+}
@@ -0,0 +1,115 @@
+package io.apicurio.common.apps.mt;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+public class TenantBulkheadTest {
+
+    @Test
+    public void testLimitPerTenant() throws Exception {
+        TenantBulkhead bulkhead = bulkhead(0, 1000);
+        TenantLimits limits = new TenantLimits(null, null, 2);
+
+        TenantBulkhead.Permit p1 = acquired(bulkhead.acquire("t1", limits));
+        acquired(bulkhead.acquire("t1", limits));
+        assertRejected(bulkhead.acquire("t1", limits).toCompletableFuture());
+        // Other tenants have their own compartment
+        acquired(bulkhead.acquire("t2", limits));
+
+        p1.release();
+        acquired(bulkhead.acquire("t1", limits));
+    }
+
+    @Test
+    public void testWaiterGetsReleasedPermit() throws Exception {
+        TenantBulkhead bulkhead = bulkhead(2, 5000);
+        TenantLimits limits = new TenantLimits(null, null, 1);
+
+        TenantBulkhead.Permit first = acquired(bulkhead.acquire("t1", limits));
+        CompletableFuture<TenantBulkhead.Permit> second = bulkhead.acquire("t1", limits).toCompletableFuture();
+        CompletableFuture<TenantBulkhead.Permit> third = bulkhead.acquire("t1", limits).toCompletableFuture();
+        Assertions.assertFalse(second.isDone());
+        Assertions.assertFalse(third.isDone());
+
+        first.release();
+        // Releasing again has no effect
+        first.release();
+        TenantBulkhead.Permit handedOver = second.get(5, TimeUnit.SECONDS);
+        Assertions.assertNotNull(handedOver);
+        Assertions.assertFalse(third.isDone());
+
+        handedOver.release();
+        third.get(5, TimeUnit.SECONDS).release();
+        acquired(bulkhead.acquire("t1", limits));
+    }
+
+    @Test
+    public void testQueueFull() throws Exception {
+        TenantBulkhead bulkhead = bulkhead(1, 5000);
+        TenantLimits limits = new TenantLimits(null, null, 1);
+
+        acquired(bulkhead.acquire("t1", limits));
+        CompletableFuture<TenantBulkhead.Permit> queued = bulkhead.acquire("t1", limits).toCompletableFuture();
+        Assertions.assertFalse(queued.isDone());
+        assertRejected(bulkhead.acquire("t1", limits).toCompletableFuture());
+    }
+
+    @Test
+    public void testQueueTimeout() throws Exception {
+        TenantBulkhead bulkhead = bulkhead(1, 20);
+        TenantLimits limits = new TenantLimits(null, null, 1);
+
+        TenantBulkhead.Permit first = acquired(bulkhead.acquire("t1", limits));
+        CompletableFuture<TenantBulkhead.Permit> queued = bulkhead.acquire("t1", limits).toCompletableFuture();
+        assertRejected(queued);
+
+        // The timed out request neither holds nor receives a permit, nor takes a queue slot
+        first.release();
+        TenantBulkhead.Permit next = acquired(bulkhead.acquire("t1", limits));
+        CompletableFuture<TenantBulkhead.Permit> waiting = bulkhead.acquire("t1", limits).toCompletableFuture();
+        next.release();
+        Assertions.assertNotNull(waiting.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testUnlimited() throws Exception {
+        TenantBulkhead bulkhead = bulkhead(0, 1000);
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertNull(bulkhead.acquire("t1", null).toCompletableFuture().get());
+            Assertions.assertNull(bulkhead.acquire("t1", new TenantLimits(null, null, null)).toCompletableFuture().get());
+        }
+    }
+
+    private static TenantBulkhead.Permit acquired(CompletionStage<TenantBulkhead.Permit> stage)
+            throws Exception {
+        CompletableFuture<TenantBulkhead.Permit> permit = stage.toCompletableFuture();
+        Assertions.assertTrue(permit.isDone(), "permit should be granted at once");
+        Assertions.assertNotNull(permit.get());
+        return permit.get();
+    }
+
+    private static void assertRejected(CompletableFuture<TenantBulkhead.Permit> permit) throws Exception {
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class, () -> permit.get(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(e.getCause() instanceof TenantRateLimitedException, "cause: " + e.getCause());
+    }
+
+    private static TenantBulkhead bulkhead(int queueSize, long queueTimeoutMs) {
+        MtProperties properties = new MtProperties();
+        properties.bulkheadMaxConcurrentRequests = Optional.empty();
+        properties.bulkheadQueueSize = queueSize;
+        properties.bulkheadQueueTimeoutMs = queueTimeoutMs;
+        TenantBulkhead bulkhead = new TenantBulkhead();
+        bulkhead.mtProperties = properties;
+        bulkhead.meterRegistry = TestInstance.<MeterRegistry>empty();
+        bulkhead.init();
+        return bulkhead;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apicurio.common.apps.mt;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.impl.ContextInternal;
+
+/**
+ * Measures the cost of a single tenant lookup (what the storage does for every statement) with
+ * {@link TenantContext} bound to the thread, stored on a duplicated Vert.x context, unbound (the
+ * default tenant), and with the previous request scoped bean, simulated by a client proxy that
+ * resolves the instance from the thread's request context state on every call (like ArC does).
+ * Run it with the main method (from the IDE, or with the test classpath).
+ *
+ * @author eric.wittmann@gmail.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TenantContextBenchmark {
+
+    private final TenantInfo tenant = new TenantInfo("tenant-1234", "user@example.org", "org-1234", TenantStatus.READY, null);
+    private final TenantContext tenantContext = new TenantContext();
+
+    private Vertx vertx;
+    private Context duplicatedContext;
+    private RequestScopedTenantContext requestScoped;
+
+    @Setup
+    public void setup() {
+        vertx = Vertx.vertx();
+        duplicatedContext = ((ContextInternal) vertx.getOrCreateContext()).duplicate();
+        duplicatedContext.putLocal(TenantContext.TENANT_INFO_KEY, tenant);
+        requestScoped = new RequestScopedTenantContext();
+        RequestScopedTenantContext.activate(tenant);
+        TenantContext.bind(null);
+    }
+
+    @TearDown
+    public void teardown() {
+        TenantContext.bind(null);
+        RequestScopedTenantContext.STATE.remove();
+        vertx.close();
+    }
+
+    @Benchmark
+    public String threadLocal() {
+        TenantContext.bind(tenant);
+        return tenantContext.getTenantId();
+    }
+
+    @Benchmark
+    public String duplicatedContextLookup() {
+        TenantInfo info = TenantContext.isDuplicatedContext(duplicatedContext)
+                ? duplicatedContext.getLocal(TenantContext.TENANT_INFO_KEY) : null;
+        return info == null ? TenantContext.DEFAULT_TENANT_ID : info.getId();
+    }
+
+    @Benchmark
+    public String unbound() {
+        return tenantContext.getTenantId();
+    }
+
+    @Benchmark
+    public String requestScopedProxy() {
+        return requestScoped.isActive() ? requestScoped.getTenantId() : TenantContext.DEFAULT_TENANT_ID;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TenantContextBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    /**
+     * Stands in for the client proxy of the previous request scoped TenantContext: every call looks up
+     * the active request context of the thread, then the bean instance in it.
+     */
+    static class RequestScopedTenantContext {
+
+        static final ThreadLocal<Map<String, Object>> STATE = new ThreadLocal<>();
+        static final String BEAN_ID = "io.apicurio.common.apps.mt.TenantContext_Bean";
+
+        static void activate(TenantInfo info) {
+            Map<String, Object> state = new HashMap<>();
+            state.put(BEAN_ID, new Delegate(info));
+            STATE.set(state);
+        }
+
+        boolean isActive() {
+            return STATE.get() != null;
+        }
+
+        String getTenantId() {
+            Map<String, Object> state = STATE.get();
+            if (state == null) {
+                throw new IllegalStateException("No active request context");
+            }
+            return ((Delegate) state.get(BEAN_ID)).getTenantId();
+        }
+
+        static class Delegate {
+
+            private final TenantInfo info;
+
+            Delegate(TenantInfo info) {
+                this.info = info;
+            }
+
+            String getTenantId() {
+                return info == null ? TenantContext.DEFAULT_TENANT_ID : info.getId();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+package io.apicurio.common.apps.mt;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TenantContextTest {
+
+    private final TenantInfo t1 = new TenantInfo("t1", "alice", "org1", TenantStatus.READY, null);
+    private final TenantInfo t2 = new TenantInfo("t2", "bob", "org2", TenantStatus.READY, null);
+
+    @AfterEach
+    public void unbind() {
+        TenantContext.bind(null);
+        TenantContext.bindToRequest(null);
+    }
+
+    @Test
+    public void testBindAndRestore() {
+        Assertions.assertNull(TenantContext.current());
+
+        Assertions.assertNull(TenantContext.bind(t1));
+        Assertions.assertSame(t1, TenantContext.current());
+        TenantInfo previous = TenantContext.bind(t2);
+        Assertions.assertSame(t1, previous);
+        Assertions.assertSame(t2, TenantContext.current());
+
+        TenantContext.bind(previous);
+        Assertions.assertSame(t1, TenantContext.current());
+        TenantContext.bind(null);
+        Assertions.assertNull(TenantContext.current());
+    }
+
+    @Test
+    public void testRequestBindingNeedsActiveRequest() {
+        // No CDI request context is active on this thread, so the request binding must not stick
+        TenantContext.bindToRequest(t1);
+        Assertions.assertNull(TenantContext.current());
+        Assertions.assertEquals(TenantContext.DEFAULT_TENANT_ID, new TenantContext().getTenantId());
+    }
+
+    @Test
+    public void testExplicitBindingWins() {
+        TenantContext.bindToRequest(t1);
+        TenantInfo previous = TenantContext.bind(t2);
+        try {
+            Assertions.assertSame(t2, TenantContext.current());
+        } finally {
+            TenantContext.bind(previous);
+        }
+        Assertions.assertNull(TenantContext.current());
+    }
+
+    @Test
+    public void testSetTenantInfoDoesNotLeakIntoPooledThreads() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            TenantContext tenantContext = new TenantContext();
+            // No request (and no duplicated Vert.x context) on a pool thread: nothing could undo the binding
+            ExecutionException e = Assertions.assertThrows(ExecutionException.class,
+                    () -> pool.submit(() -> tenantContext.setTenantInfo(t1)).get());
+            Assertions.assertTrue(e.getCause() instanceof IllegalStateException, e.getCause().toString());
+            Assertions.assertNull(pool.submit(TenantContext::current).get());
+            Assertions.assertEquals(TenantContext.DEFAULT_TENANT_ID, pool.submit(tenantContext::getTenantId).get());
+
+            // Unsetting is always allowed
+            pool.submit(() -> tenantContext.setTenantInfo(null)).get();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+package io.apicurio.common.apps.mt;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+public class TenantIdFilterTest {
+
+    private LocalTenantManagerClient client;
+    private TenantInfoLoader loader;
+    private TenantIdFilter filter;
+
+    @BeforeEach
+    public void setUp() {
+        client = new LocalTenantManagerClient();
+        for (int i = 0; i < 100; i++) {
+            client.putTenant(TenantInfoLoaderTest.tenant("tenant-" + i, TenantStatus.READY));
+        }
+        client.putTenant(TenantInfoLoaderTest.tenant("deleted", TenantStatus.DELETED));
+
+        MtProperties properties = TenantInfoLoaderTest.mtProperties(8, 100);
+        properties.tenantFilterEnabled = true;
+        properties.tenantFilterRefreshSeconds = 3600L;
+        properties.tenantFilterFalsePositiveRate = 0.01;
+        properties.tenantFilterProbesPerSecond = 2;
+
+        loader = new TenantInfoLoader();
+        loader.log = LoggerFactory.getLogger(TenantInfoLoader.class);
+        loader.mtProperties = properties;
+        loader.tenantManagerClients = new TestInstance<>(client);
+        loader.init();
+
+        filter = new TenantIdFilter();
+        filter.log = LoggerFactory.getLogger(TenantIdFilter.class);
+        filter.mtProperties = properties;
+        filter.tenantInfoLoader = loader;
+        filter.meterRegistry = TestInstance.<MeterRegistry>empty();
+        filter.init();
+        filter.rebuild();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        filter.destroy();
+        loader.destroy();
+    }
+
+    @Test
+    public void testReadyTenantsPass() {
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertTrue(filter.mightExist("tenant-" + i));
+        }
+        Assertions.assertTrue(filter.mightExist(TenantContext.DEFAULT_TENANT_ID));
+        int passed = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (filter.mightExist("unknown-" + i)) {
+                passed++;
+            }
+        }
+        // The filter has room for 1024 tenants at 1% false positives, and holds about 100
+        Assertions.assertTrue(passed < 10, "unknown tenants passed: " + passed);
+    }
+
+    @Test
+    public void testProbeBudgetIsPerClient() {
+        int probed = 0;
+        for (int i = 0; i < 100; i++) {
+            if (filter.tryProbe("unknown-" + i, "10.0.0.1")) {
+                probed++;
+            }
+        }
+        // At most two per second (the burst may straddle two seconds)
+        Assertions.assertTrue(probed >= 2 && probed <= 4, "probed: " + probed);
+        // Another client still has its own budget, e.g. for a tenant created since the last rebuild
+        Assertions.assertTrue(filter.tryProbe("new-tenant", "10.0.0.2"));
+    }
+
+    @Test
+    public void testCachedTenantsNeedNoBudget() {
+        client.putTenant(TenantInfoLoaderTest.tenant("new-tenant", TenantStatus.READY));
+        loader.loadInfo("new-tenant");
+        for (int i = 0; i < 100; i++) {
+            filter.tryProbe("unknown-" + i, "10.0.0.1");
+        }
+        Assertions.assertTrue(filter.tryProbe("new-tenant", "10.0.0.1"));
+
+        filter.add("new-tenant");
+        Assertions.assertTrue(filter.mightExist("new-tenant"));
+    }
+}
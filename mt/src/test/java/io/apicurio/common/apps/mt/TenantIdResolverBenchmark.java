@@ -0,0 +1,97 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.mt;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the cost of resolving the tenantId of a request with each resolution strategy.
+ * Run it with the main method (from the IDE, or with the test classpath), adding
+ * -prof gc to the JMH arguments to also see allocations.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TenantIdResolverBenchmark {
+
+    @Param({ "context-path", "subdomain", "request-header" })
+    String type;
+
+    private TenantIdResolver resolver;
+    private String uri;
+    private Function<String, String> headerProvider;
+    private Supplier<String> serverNameProvider;
+
+    @Setup
+    public void setup() {
+        MtProperties properties = new MtProperties();
+        properties.multitenancyEnabled = true;
+        properties.mtContextPathEnabled = type.equals("context-path");
+        properties.mtSubdomainEnabled = type.equals("subdomain");
+        properties.mtRequestHeaderEnabled = type.equals("request-header");
+        properties.nameMultitenancyBasePath = "t";
+        properties.subdomainMultitenancyLocation = "header";
+        properties.subdomainMultitenancyHeaderName = "Host";
+        properties.subdomainMultitenancyPattern = "(\\w[\\w\\d\\-]*)\\.localhost\\.local";
+        properties.tenantIdRequestHeader = "X-Tenant-Id";
+
+        resolver = new TenantIdResolver();
+        resolver.log = LoggerFactory.getLogger(TenantIdResolver.class);
+        resolver.mtProperties = properties;
+        resolver.init(null);
+
+        uri = "http://tenant-1234.localhost.local/t/tenant-1234/apis/registry/v2/search/artifacts?limit=20";
+        Map<String, String> headers = Map.of("Host", "tenant-1234.localhost.local", "X-Tenant-Id", "tenant-1234");
+        headerProvider = headers::get;
+        serverNameProvider = () -> "tenant-1234.localhost.local";
+    }
+
+    @Benchmark
+    public Optional<String> resolveTenantId() {
+        return resolver.resolveTenantId(uri, headerProvider, serverNameProvider);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TenantIdResolverBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,112 @@
+package io.apicurio.common.apps.mt;
+
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+public class TenantIdResolverTest {
+
+    private static final String HOST_PATTERN = "(\\w[\\w\\d\\-]*)\\.localhost\\.local";
+
+    @Test
+    public void testRequestHeader() {
+        TenantIdResolver resolver = resolver(true, false, false);
+        Assertions.assertEquals(Optional.of("t1"), resolve(resolver, "/apis/app/v1", Map.of("X-Tenant-Id", "t1")));
+        Assertions.assertEquals(Optional.empty(), resolve(resolver, "/apis/app/v1", Map.of("X-Tenant-Id", "")));
+        Assertions.assertEquals(Optional.empty(), resolve(resolver, "/apis/app/v1", Map.of()));
+    }
+
+    @Test
+    public void testSubdomain() {
+        TenantIdResolver resolver = resolver(false, true, false);
+        Assertions.assertEquals(Optional.of("t1"), resolve(resolver, "/apis/app/v1", Map.of("Host", "t1.localhost.local")));
+        // Served from the cache the second time
+        Assertions.assertEquals(Optional.of("t1"), resolve(resolver, "/apis/app/v1", Map.of("Host", "t1.localhost.local")));
+        Assertions.assertEquals(Optional.empty(), resolve(resolver, "/apis/app/v1", Map.of()));
+    }
+
+    @Test
+    public void testNonMatchingHost() {
+        TenantIdResolver resolver = resolver(false, true, false);
+        Assertions.assertEquals(Optional.empty(), resolve(resolver, "/apis/app/v1", Map.of("Host", "app.example.org")));
+        // The miss is cached too
+        Assertions.assertEquals(Optional.empty(), resolve(resolver, "/apis/app/v1", Map.of("Host", "app.example.org")));
+        Assertions.assertEquals(Optional.empty(), resolve(resolver, "/apis/app/v1", Map.of("Host", "t1.localhost.local.evil")));
+    }
+
+    @Test
+    public void testContextPath() {
+        TenantIdResolver resolver = resolver(false, false, true);
+        Assertions.assertEquals(Optional.of("t1"), resolve(resolver, "/t/t1/apis/app/v1", Map.of()));
+        Assertions.assertEquals(Optional.of("t1"), resolve(resolver, "/t/t1", Map.of()));
+        Assertions.assertEquals(Optional.of("t1"), resolve(resolver, "/t/t1?search=x", Map.of()));
+        Assertions.assertEquals(Optional.of("t1"), resolve(resolver, "http://app.example.org/t/t1/apis", Map.of()));
+        Assertions.assertEquals(Optional.empty(), resolve(resolver, "/apis/app/v1", Map.of()));
+        Assertions.assertEquals(Optional.empty(), resolve(resolver, "/tt/t1/apis", Map.of()));
+        Assertions.assertEquals(Optional.empty(), resolve(resolver, "http://app.example.org", Map.of()));
+    }
+
+    @Test
+    public void testTrailingSlash() {
+        TenantIdResolver resolver = resolver(false, false, true);
+        Assertions.assertEquals(Optional.of("t1"), resolve(resolver, "/t/t1/", Map.of()));
+        Assertions.assertEquals(Optional.of("t1"), resolve(resolver, "http://app.example.org/t/t1/", Map.of()));
+    }
+
+    @Test
+    public void testBasePathWithoutTenant() {
+        TenantIdResolver resolver = resolver(false, false, true);
+        Assertions.assertEquals(Optional.empty(), resolve(resolver, "/t", Map.of()));
+        Assertions.assertEquals(Optional.empty(), resolve(resolver, "/t/", Map.of()));
+        Assertions.assertEquals(Optional.empty(), resolve(resolver, "/t//apis", Map.of()));
+        Assertions.assertEquals(Optional.empty(), resolve(resolver, "/t/?search=x", Map.of()));
+    }
+
+    @Test
+    public void testPrecedence() {
+        TenantIdResolver resolver = resolver(true, true, true);
+        Map<String, String> headers = Map.of("X-Tenant-Id", "header", "Host", "subdomain.localhost.local");
+        // Request header, then subdomain, then context path: the first one that yields a tenant wins
+        Assertions.assertEquals(Optional.of("header"), resolve(resolver, "/t/path/apis", headers));
+        Assertions.assertEquals(Optional.of("subdomain"),
+                resolve(resolver, "/t/path/apis", Map.of("Host", "subdomain.localhost.local")));
+        Assertions.assertEquals(Optional.of("path"), resolve(resolver, "/t/path/apis", Map.of("Host", "app.example.org")));
+        Assertions.assertEquals(Optional.empty(), resolve(resolver, "/apis", Map.of("Host", "app.example.org")));
+    }
+
+    @Test
+    public void testMultitenancyDisabled() {
+        TenantIdResolver resolver = resolver(true, true, true);
+        resolver.mtProperties.multitenancyEnabled = false;
+        resolver.init(null);
+        Assertions.assertEquals(Optional.empty(),
+                resolve(resolver, "/t/path/apis", Map.of("X-Tenant-Id", "header", "Host", "subdomain.localhost.local")));
+    }
+
+    private static Optional<String> resolve(TenantIdResolver resolver, String uri, Map<String, String> headers) {
+        return resolver.resolveTenantId(uri, headers::get, () -> headers.get("Host"));
+    }
+
+    private static TenantIdResolver resolver(boolean header, boolean subdomain, boolean contextPath) {
+        MtProperties properties = new MtProperties();
+        properties.multitenancyEnabled = true;
+        properties.mtRequestHeaderEnabled = header;
+        properties.mtSubdomainEnabled = subdomain;
+        properties.mtContextPathEnabled = contextPath;
+        properties.nameMultitenancyBasePath = "t";
+        properties.subdomainMultitenancyLocation = "header";
+        properties.subdomainMultitenancyHeaderName = "Host";
+        properties.subdomainMultitenancyPattern = HOST_PATTERN;
+        properties.tenantIdRequestHeader = "X-Tenant-Id";
+
+        TenantIdResolver resolver = new TenantIdResolver();
+        resolver.log = LoggerFactory.getLogger(TenantIdResolver.class);
+        resolver.mtProperties = properties;
+        resolver.init(null);
+        return resolver;
+    }
+
+}
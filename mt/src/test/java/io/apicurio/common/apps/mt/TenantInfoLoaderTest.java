@@ -0,0 +1,162 @@
+package io.apicurio.common.apps.mt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.apicurio.rest.client.error.ApicurioRestClientException;
+
+public class TenantInfoLoaderTest {
+
+    private final List<TenantInfoLoader> loaders = new ArrayList<>();
+
+    @AfterEach
+    public void destroy() {
+        loaders.forEach(TenantInfoLoader::destroy);
+    }
+
+    @Test
+    public void testLoadedTenantsAreCached() {
+        LocalTenantManagerClient client = new LocalTenantManagerClient();
+        client.putTenant(tenant("t1", TenantStatus.READY));
+        TenantInfoLoader loader = loader(client, 8, 100);
+
+        Assertions.assertEquals("t1", loader.loadInfo("t1").get().getId());
+        Assertions.assertEquals("t1", loader.loadInfo("t1").get().getId());
+        Assertions.assertEquals(1, client.getRequestCount());
+
+        loader.invalidate("t1");
+        loader.loadInfo("t1");
+        Assertions.assertEquals(2, client.getRequestCount());
+    }
+
+    @Test
+    public void testUnknownTenantsAreCached() {
+        LocalTenantManagerClient client = new LocalTenantManagerClient();
+        TenantInfoLoader loader = loader(client, 8, 100);
+
+        Assertions.assertTrue(loader.loadInfo("missing").isEmpty());
+        Assertions.assertTrue(loader.loadInfo("missing").isEmpty());
+        Assertions.assertEquals(1, client.getRequestCount());
+    }
+
+    @Test
+    public void testConcurrentMissesShareOneFetch() throws Exception {
+        BlockingClient client = new BlockingClient();
+        client.putTenant(tenant("t1", TenantStatus.READY));
+        TenantInfoLoader loader = loader(client, 8, 100);
+
+        List<CompletableFuture<Optional<TenantInfo>>> loads = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            loads.add(loader.loadInfoAsync("t1").toCompletableFuture());
+        }
+        Assertions.assertTrue(client.started.await(5, TimeUnit.SECONDS));
+        client.release.countDown();
+        for (CompletableFuture<Optional<TenantInfo>> load : loads) {
+            Assertions.assertEquals("t1", load.get(5, TimeUnit.SECONDS).get().getId());
+        }
+        Assertions.assertEquals(1, client.getRequestCount());
+    }
+
+    @Test
+    public void testFetchesBeyondTheQueueAreRejected() throws Exception {
+        BlockingClient client = new BlockingClient();
+        TenantInfoLoader loader = loader(client, 1, 2);
+
+        CompletableFuture<Optional<TenantInfo>> running = loader.loadInfoAsync("random-1").toCompletableFuture();
+        Assertions.assertTrue(client.started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Optional<TenantInfo>> queued1 = loader.loadInfoAsync("random-2").toCompletableFuture();
+        CompletableFuture<Optional<TenantInfo>> queued2 = loader.loadInfoAsync("random-3").toCompletableFuture();
+        CompletableFuture<Optional<TenantInfo>> rejected = loader.loadInfoAsync("random-4").toCompletableFuture();
+
+        ExecutionException error = Assertions.assertThrows(ExecutionException.class, () -> rejected.get(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(error.getCause() instanceof RejectedExecutionException);
+
+        client.release.countDown();
+        Assertions.assertTrue(running.get(5, TimeUnit.SECONDS).isEmpty());
+        Assertions.assertTrue(queued1.get(5, TimeUnit.SECONDS).isEmpty());
+        Assertions.assertTrue(queued2.get(5, TimeUnit.SECONDS).isEmpty());
+        // A rejected tenant is not remembered, it is fetched the next time
+        Assertions.assertTrue(loader.loadInfo("random-4").isEmpty());
+    }
+
+    @Test
+    public void testWithoutTenantManagerAllTenantsAreReady() {
+        TenantInfoLoader loader = loader(null, 8, 100);
+        Assertions.assertEquals(TenantStatus.READY, loader.loadInfo("any").get().getStatus());
+    }
+
+    @Test
+    public void testTenantManagerStatusIsRequired() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode ready = mapper.readTree("{\"tenantId\":\"t1\",\"status\":\"READY\"}");
+        JsonNode missing = mapper.readTree("{\"tenantId\":\"t1\"}");
+        JsonNode unknown = mapper.readTree("{\"tenantId\":\"t1\",\"status\":\"SUSPENDED\"}");
+
+        Assertions.assertEquals(TenantStatus.READY, HttpTenantManagerClient.toTenantInfo(ready).getStatus());
+        ApicurioRestClientException error = Assertions.assertThrows(ApicurioRestClientException.class,
+                () -> HttpTenantManagerClient.toTenantInfo(missing));
+        Assertions.assertTrue(error.getMessage().contains("without a status"));
+        error = Assertions.assertThrows(ApicurioRestClientException.class, () -> HttpTenantManagerClient.toTenantInfo(unknown));
+        Assertions.assertTrue(error.getMessage().contains("SUSPENDED"));
+    }
+
+    static TenantInfo tenant(String id, TenantStatus status) {
+        return new TenantInfo(id, "owner", "org", status, null);
+    }
+
+    static MtProperties mtProperties(int loadThreads, int loadQueueSize) {
+        MtProperties properties = new MtProperties();
+        properties.tenantManagerUrl = Optional.empty();
+        properties.tenantManagerCacheMaxSize = 1000L;
+        properties.tenantManagerCacheTtlSeconds = 60L;
+        properties.tenantManagerCacheStaleSeconds = 300L;
+        properties.tenantManagerCacheNegativeTtlSeconds = 10L;
+        properties.tenantManagerLoadThreads = loadThreads;
+        properties.tenantManagerLoadQueueSize = loadQueueSize;
+        return properties;
+    }
+
+    private TenantInfoLoader loader(TenantManagerClient client, int loadThreads, int loadQueueSize) {
+        TenantInfoLoader loader = new TenantInfoLoader();
+        loader.log = LoggerFactory.getLogger(TenantInfoLoader.class);
+        loader.mtProperties = mtProperties(loadThreads, loadQueueSize);
+        loader.tenantManagerClients = client == null ? TestInstance.empty() : new TestInstance<>(client);
+        loader.init();
+        loaders.add(loader);
+        return loader;
+    }
+
+    /**
+     * Blocks every lookup until released.
+     */
+    private static class BlockingClient extends LocalTenantManagerClient {
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public Optional<TenantInfo> getTenant(String tenantId) {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return super.getTenant(tenantId);
+        }
+    }
+}
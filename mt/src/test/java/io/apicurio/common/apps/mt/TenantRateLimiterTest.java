@@ -0,0 +1,102 @@
+package io.apicurio.common.apps.mt;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+public class TenantRateLimiterTest {
+
+    @Test
+    public void testBurstThenReject() {
+        TenantRateLimiter limiter = limiter(100, 0, 0);
+        TenantLimits limits = new TenantLimits(10L, 5L);
+
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertEquals(TenantRateLimiter.ADMITTED, limiter.tryAcquire("t1", limits));
+        }
+        long wait = limiter.tryAcquire("t1", limits);
+        Assertions.assertNotEquals(TenantRateLimiter.ADMITTED, wait);
+        Assertions.assertTrue(wait > 0 && wait <= TimeUnit.MILLISECONDS.toNanos(100), "wait: " + wait);
+        // Other tenants have their own bucket
+        Assertions.assertEquals(TenantRateLimiter.ADMITTED, limiter.tryAcquire("t2", limits));
+
+        long[] counts = limiter.getRequestCounts().get("t1");
+        Assertions.assertEquals(5, counts[0]);
+        Assertions.assertEquals(1, counts[1]);
+    }
+
+    @Test
+    public void testBucketRefills() throws Exception {
+        TenantRateLimiter limiter = limiter(100, 0, 0);
+        TenantLimits limits = new TenantLimits(100L, 1L);
+        Assertions.assertEquals(TenantRateLimiter.ADMITTED, limiter.tryAcquire("t1", limits));
+        Assertions.assertNotEquals(TenantRateLimiter.ADMITTED, limiter.tryAcquire("t1", limits));
+        Thread.sleep(30);
+        Assertions.assertEquals(TenantRateLimiter.ADMITTED, limiter.tryAcquire("t1", limits));
+    }
+
+    @Test
+    public void testUnlimitedTenants() {
+        TenantRateLimiter limiter = limiter(100, 0, 0);
+        for (int i = 0; i < 1000; i++) {
+            Assertions.assertEquals(TenantRateLimiter.ADMITTED, limiter.tryAcquire("t1", null));
+            Assertions.assertEquals(TenantRateLimiter.ADMITTED, limiter.tryAcquire("t1", new TenantLimits(null, null)));
+        }
+        Assertions.assertTrue(limiter.getRequestCounts().isEmpty());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedInBatches() throws Exception {
+        TenantRateLimiter limiter = limiter(100, 0, 0);
+        TenantLimits limits = new TenantLimits(1000L, 1000L);
+        for (int i = 0; i < 100; i++) {
+            limiter.tryAcquire("old-" + i, limits);
+        }
+        Thread.sleep(150);
+        limiter.tryAcquire("old-0", limits);
+
+        limiter.tryAcquire("new-0", limits);
+        // A tenth was evicted at once, making room for the next tenants without another scan
+        Assertions.assertTrue(limiter.getTrackedTenants() <= 91, "tracked: " + limiter.getTrackedTenants());
+        Assertions.assertTrue(limiter.getRequestCounts().containsKey("old-0"), "recently used tenant was evicted");
+        Assertions.assertTrue(limiter.getRequestCounts().containsKey("new-0"));
+
+        for (int i = 1; i < 1000; i++) {
+            limiter.tryAcquire("new-" + i, limits);
+        }
+        Assertions.assertTrue(limiter.getTrackedTenants() <= 101, "tracked: " + limiter.getTrackedTenants());
+    }
+
+    @Test
+    public void testClientLimit() {
+        TenantRateLimiter limiter = limiter(100, 2, 2);
+        Assertions.assertEquals(TenantRateLimiter.ADMITTED, limiter.tryAcquireForClient("10.0.0.1"));
+        Assertions.assertEquals(TenantRateLimiter.ADMITTED, limiter.tryAcquireForClient("10.0.0.1"));
+        Assertions.assertNotEquals(TenantRateLimiter.ADMITTED, limiter.tryAcquireForClient("10.0.0.1"));
+        Assertions.assertEquals(TenantRateLimiter.ADMITTED, limiter.tryAcquireForClient("10.0.0.2"));
+        // Client buckets do not count as tenants
+        Assertions.assertTrue(limiter.getRequestCounts().isEmpty());
+
+        TenantRateLimiter disabled = limiter(100, 0, 0);
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertEquals(TenantRateLimiter.ADMITTED, disabled.tryAcquireForClient("10.0.0.1"));
+        }
+    }
+
+    private static TenantRateLimiter limiter(int maxTenants, long clientRate, long clientBurst) {
+        MtProperties properties = new MtProperties();
+        properties.rateLimitEnabled = true;
+        properties.rateLimitMaxTenants = maxTenants;
+        properties.rateLimitIdleSeconds = 600L;
+        properties.clientRateLimit = clientRate;
+        properties.clientRateLimitBurst = clientBurst;
+        TenantRateLimiter limiter = new TenantRateLimiter();
+        limiter.mtProperties = properties;
+        limiter.meterRegistry = TestInstance.<MeterRegistry>empty();
+        limiter.init();
+        return limiter;
+    }
+}
@@ -0,0 +1,95 @@
+package io.apicurio.common.apps.mt;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TenantUsageTest {
+
+    @Test
+    public void testDrainAndUndrain() {
+        TenantUsage usage = new TenantUsage("t1");
+        usage.recordStorage(100, 2);
+        usage.recordRequest(7);
+        usage.recordRequest(7);
+
+        TenantUsage.Delta delta = usage.drain();
+        Assertions.assertEquals(100, delta.getStorageBytes());
+        Assertions.assertEquals(2, delta.getEntities());
+        Assertions.assertEquals(2, delta.getRequests());
+        Assertions.assertEquals(7, delta.getRequestWindow());
+        // Drained usage still counts
+        Assertions.assertEquals(100, usage.getStorageBytes());
+        Assertions.assertEquals(2, usage.getRequests(7));
+        Assertions.assertTrue(usage.drain().isEmpty());
+
+        // A failed write gives the usage back, so that the next flush writes it
+        usage.recordStorage(10, 1);
+        usage.undrain(delta);
+        Assertions.assertEquals(110, usage.getStorageBytes());
+        Assertions.assertEquals(3, usage.getEntities());
+        Assertions.assertEquals(2, usage.getRequests(7));
+        TenantUsage.Delta retry = usage.drain();
+        Assertions.assertEquals(110, retry.getStorageBytes());
+        Assertions.assertEquals(3, retry.getEntities());
+        Assertions.assertEquals(2, retry.getRequests());
+    }
+
+    @Test
+    public void testRequestsStartOverInEachWindow() {
+        TenantUsage usage = new TenantUsage("t1");
+        usage.recordRequest(1);
+        usage.recordRequest(1);
+        Assertions.assertEquals(2, usage.getRequests(1));
+        Assertions.assertEquals(0, usage.getRequests(2));
+
+        usage.recordRequest(2);
+        Assertions.assertEquals(1, usage.getRequests(2));
+        Assertions.assertEquals(2, usage.getRequestWindow());
+
+        // Requests of an earlier window are not given back once a later window has started
+        TenantUsage.Delta delta = usage.drain();
+        usage.recordRequest(3);
+        usage.undrain(delta);
+        Assertions.assertEquals(1, usage.getRequests(3));
+    }
+
+    @Test
+    public void testStoredTotals() {
+        TenantUsage usage = new TenantUsage("t1");
+        usage.recordRequest(5);
+        usage.setStoredTotals(1000, 10, 40, 5);
+        Assertions.assertEquals(1000, usage.getStorageBytes());
+        Assertions.assertEquals(10, usage.getEntities());
+        Assertions.assertEquals(41, usage.getRequests(5));
+
+        // Totals of an earlier window do not count against the current one
+        usage.setStoredTotals(1000, 10, 500, 4);
+        Assertions.assertEquals(41, usage.getRequests(5));
+
+        // Another node already counts a later window
+        usage.setStoredTotals(1000, 10, 3, 6);
+        Assertions.assertEquals(3, usage.getRequests(6));
+    }
+
+    @Test
+    public void testRequestQuota() {
+        TenantUsageTracker tracker = new TenantUsageTracker();
+        tracker.mtProperties = new MtProperties();
+        tracker.mtProperties.usageRequestWindowSeconds = 3600L;
+        TenantLimits limits = new TenantLimits();
+        limits.setMaxRequests(3L);
+        TenantInfo tenant = new TenantInfo("t1", null, null, TenantStatus.READY, limits);
+
+        for (int i = 0; i < 3; i++) {
+            tracker.recordRequest(tenant);
+        }
+        TenantQuotaExceededException e = Assertions.assertThrows(TenantQuotaExceededException.class,
+                () -> tracker.recordRequest(tenant));
+        Assertions.assertTrue(e.getRetryAfterSeconds() > 0 && e.getRetryAfterSeconds() <= 3600);
+        Assertions.assertEquals(3, tracker.getUsage("t1").getRequests(tracker.currentRequestWindow()));
+
+        // The quota is per window: the same usage does not count against the next one
+        Assertions.assertFalse(limits.isRequestQuotaExceeded(tracker.getUsage("t1"), tracker.currentRequestWindow() + 1));
+    }
+
+}
@@ -0,0 +1,149 @@
+package io.apicurio.common.apps.mt.context;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.apicurio.common.apps.mt.TenantInfo;
+import io.apicurio.common.apps.mt.TenantLimits;
+import io.apicurio.common.apps.mt.TenantStatus;
+import io.apicurio.common.apps.mt.TestInstance;
+import io.micrometer.core.instrument.MeterRegistry;
+
+public class FairTenantExecutorTest {
+
+    private final List<FairTenantExecutor> executors = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+        executors.forEach(FairTenantExecutor::destroy);
+    }
+
+    @Test
+    public void testDeficitRoundRobinOrder() throws Exception {
+        FairTenantExecutor executor = executor(1, 16, 5000);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        Runnable hold = executor.acquireTurn("holder", null);
+
+        TenantInfo heavy = tenant("a", 2);
+        for (int i = 0; i < 4; i++) {
+            callInTurn(executor, "a", heavy, order);
+        }
+        callInTurn(executor, "b", null, order);
+        callInTurn(executor, "b", null, order);
+        callInTurn(executor, "c", null, order);
+
+        hold.run();
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+        // "a" has twice the weight of the others, so it gets two turns per round
+        Assertions.assertEquals(List.of("a", "a", "b", "c", "a", "a", "b"), order);
+        Assertions.assertTrue(executor.getQueueDepths().isEmpty());
+    }
+
+    @Test
+    public void testWaitingCallersPerTenantAreBounded() throws Exception {
+        FairTenantExecutor executor = executor(1, 1, 5000);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        Runnable hold = executor.acquireTurn("holder", null);
+
+        callInTurn(executor, "a", null, order);
+        Assertions.assertThrows(RejectedExecutionException.class, () -> executor.callInTurn("a", null, () -> null));
+        // Other tenants are not affected
+        callInTurn(executor, "b", null, order);
+
+        hold.run();
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+        Assertions.assertEquals(List.of("a", "b"), order);
+    }
+
+    @Test
+    public void testWaitTimesOut() throws Exception {
+        FairTenantExecutor executor = executor(1, 16, 50);
+        Runnable hold = executor.acquireTurn("holder", null);
+        Assertions.assertThrows(RejectedExecutionException.class, () -> executor.callInTurn("a", null, () -> null));
+        hold.run();
+        // Releasing twice has no effect
+        hold.run();
+
+        // The abandoned turn is handed on, the slot is free again
+        Assertions.assertEquals("done", executor.callInTurn("a", null, () -> "done"));
+        Runnable first = executor.acquireTurn("a", null);
+        Assertions.assertThrows(RejectedExecutionException.class, () -> executor.acquireTurn("b", null));
+        first.run();
+    }
+
+    @Test
+    public void testNestedWorkDoesNotWaitForAnotherTurn() throws Exception {
+        FairTenantExecutor executor = executor(1, 16, 1000);
+        String result = executor.callInTurn("a", null, () -> executor.callInTurn("b", null, () -> "nested"));
+        Assertions.assertEquals("nested", result);
+
+        Runnable turn = executor.acquireTurn("a", null);
+        try {
+            Assertions.assertEquals("work", executor.callWithTurn(() -> executor.callInTurn("a", null, () -> "work")));
+        } finally {
+            turn.run();
+        }
+    }
+
+    /**
+     * Calls in turn from a new thread, once the previous call is queued.
+     */
+    private void callInTurn(FairTenantExecutor executor, String tenantId, TenantInfo tenant, List<String> order) throws Exception {
+        int queued = totalQueued(executor);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                executor.callInTurn(tenantId, tenant, () -> order.add(tenantId));
+            } catch (Throwable t) {
+                error.set(t);
+            }
+        });
+        threads.add(thread);
+        thread.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (totalQueued(executor) == queued && error.get() == null) {
+            Assertions.assertTrue(System.currentTimeMillis() < deadline, "call was not queued");
+            Thread.sleep(1);
+        }
+        Assertions.assertNull(error.get());
+    }
+
+    private static int totalQueued(FairTenantExecutor executor) {
+        return executor.getQueueDepths().values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    private static TenantInfo tenant(String tenantId, int weight) {
+        TenantLimits limits = new TenantLimits();
+        limits.setSchedulingWeight(weight);
+        return new TenantInfo(tenantId, "owner", "org", TenantStatus.READY, limits);
+    }
+
+    private FairTenantExecutor executor(int parallelism, int maxWaitingCallers, long waitTimeoutMillis) {
+        FairTenantExecutor executor = new FairTenantExecutor();
+        executor.multitenancyEnabled = true;
+        executor.fairSchedulingEnabled = true;
+        executor.parallelism = parallelism;
+        executor.maxQueuedPerTenant = 1000;
+        executor.maxWaitingCallersPerTenant = maxWaitingCallers;
+        executor.waitTimeoutMillis = waitTimeoutMillis;
+        executor.meterRegistry = TestInstance.<MeterRegistry>empty();
+        executor.init();
+        executors.add(executor);
+        return executor;
+    }
+}
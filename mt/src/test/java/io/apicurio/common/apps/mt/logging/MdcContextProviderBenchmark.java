@@ -0,0 +1,136 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.mt.logging;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.microprofile.context.spi.ThreadContextController;
+import org.eclipse.microprofile.context.spi.ThreadContextProvider;
+import org.eclipse.microprofile.context.spi.ThreadContextSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.MDC;
+
+/**
+ * Compares the cost (time and, with -prof gc, allocations) of propagating the MDC through a chain of
+ * context-propagating hops with the snapshot based {@link MdcContextProvider} and with the previous,
+ * copying implementation.  Run it with the main method (from the IDE, or with the test classpath).
+ *
+ * @author eric.wittmann@gmail.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MdcContextProviderBenchmark {
+
+    private static final Map<String, String> PROPS = Collections.emptyMap();
+
+    @Param({ "snapshot", "copying" })
+    String provider;
+
+    private ThreadContextProvider contextProvider;
+
+    @Setup
+    public void setup() {
+        contextProvider = provider.equals("snapshot") ? new MdcContextProvider() : new CopyingMdcContextProvider();
+        MDC.clear();
+        MDC.put("tenantId", "tenant-1234");
+        MDC.put("requestId", "6f1c2e4a-8f1e-4d2b-9c3a-1b2c3d4e5f60");
+        MDC.put("principal", "user@example.org");
+        MDC.put("path", "/apis/registry/v2/search/artifacts");
+    }
+
+    /**
+     * A single hop: capture on one thread, run the continuation, restore.
+     */
+    @Benchmark
+    public void singleHop() {
+        ThreadContextSnapshot snapshot = contextProvider.currentContext(PROPS);
+        ThreadContextController controller = snapshot.begin();
+        controller.endContext();
+    }
+
+    /**
+     * Three nested hops, each capturing the context installed by the previous one (as in a reactive
+     * pipeline whose stages run one after the other).
+     */
+    @Benchmark
+    public void threeHops() {
+        ThreadContextController first = contextProvider.currentContext(PROPS).begin();
+        ThreadContextController second = contextProvider.currentContext(PROPS).begin();
+        ThreadContextController third = contextProvider.currentContext(PROPS).begin();
+        third.endContext();
+        second.endContext();
+        first.endContext();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(MdcContextProviderBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    /**
+     * The previous implementation, which copies the MDC on every capture and every apply.
+     */
+    static class CopyingMdcContextProvider implements ThreadContextProvider {
+
+        @Override
+        public ThreadContextSnapshot currentContext(Map<String, String> props) {
+            Map<String, String> propagate = MDC.getCopyOfContextMap();
+            return () -> {
+                Map<String, String> old = MDC.getCopyOfContextMap();
+                MDC.setContextMap(propagate);
+                return () -> {
+                    MDC.setContextMap(old);
+                };
+            };
+        }
+
+        @Override
+        public ThreadContextSnapshot clearedContext(Map<String, String> props) {
+            return () -> {
+                Map<String, String> old = MDC.getCopyOfContextMap();
+                MDC.clear();
+                return () -> {
+                    MDC.setContextMap(old);
+                };
+            };
+        }
+
+        @Override
+        public String getThreadContextType() {
+            return "SLF4J MDC";
+        }
+    }
+
+}
@@ -0,0 +1,88 @@
+package io.apicurio.common.apps.mt.logging;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.eclipse.microprofile.context.spi.ThreadContextController;
+import org.eclipse.microprofile.context.spi.ThreadContextSnapshot;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+
+public class MdcContextProviderTest {
+
+    private final MdcContextProvider provider = new MdcContextProvider();
+
+    @AfterEach
+    public void clearMdc() {
+        MDC.clear();
+    }
+
+    @Test
+    public void testPropagatesAndRestores() {
+        MDC.put("tenantId", "t1");
+        ThreadContextSnapshot captured = provider.currentContext(Collections.emptyMap());
+        MDC.clear();
+        MDC.put("other", "x");
+
+        ThreadContextController controller = captured.begin();
+        Assertions.assertEquals("t1", MDC.get("tenantId"));
+        Assertions.assertNull(MDC.get("other"));
+        controller.endContext();
+
+        Assertions.assertEquals("x", MDC.get("other"));
+        Assertions.assertNull(MDC.get("tenantId"));
+    }
+
+    @Test
+    public void testKeysAddedToClearedContextArePropagated() {
+        ThreadContextController cleared = provider.clearedContext(Collections.emptyMap()).begin();
+        MDC.put("tenantId", "t1");
+        ThreadContextSnapshot nextHop = provider.currentContext(Collections.emptyMap());
+        cleared.endContext();
+        Assertions.assertNull(MDC.get("tenantId"));
+
+        ThreadContextController controller = nextHop.begin();
+        Assertions.assertEquals("t1", MDC.get("tenantId"));
+        controller.endContext();
+    }
+
+    @Test
+    public void testKeysAddedToPropagatedContextArePropagated() {
+        MDC.put("requestId", "r1");
+        ThreadContextSnapshot captured = provider.currentContext(Collections.emptyMap());
+        MDC.clear();
+
+        ThreadContextController controller = captured.begin();
+        MDC.put("tenantId", "t1");
+        ThreadContextSnapshot nextHop = provider.currentContext(Collections.emptyMap());
+        controller.endContext();
+        Assertions.assertNull(MDC.get("requestId"));
+
+        ThreadContextController next = nextHop.begin();
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        Assertions.assertEquals("r1", mdc.get("requestId"));
+        Assertions.assertEquals("t1", mdc.get("tenantId"));
+        next.endContext();
+    }
+
+    @Test
+    public void testUnchangedContextIsReused() {
+        MDC.put("tenantId", "t1");
+        ThreadContextSnapshot captured = provider.currentContext(Collections.emptyMap());
+        MDC.clear();
+
+        ThreadContextController controller = captured.begin();
+        ThreadContextSnapshot nextHop = provider.currentContext(Collections.emptyMap());
+        // A continuation on the same thread installs the same snapshot, and leaves the MDC alone
+        ThreadContextController nested = nextHop.begin();
+        Assertions.assertEquals("t1", MDC.get("tenantId"));
+        MDC.put("extra", "e");
+        nested.endContext();
+        Assertions.assertNull(MDC.get("extra"));
+        Assertions.assertEquals("t1", MDC.get("tenantId"));
+        controller.endContext();
+        Assertions.assertNull(MDC.get("tenantId"));
+    }
+}
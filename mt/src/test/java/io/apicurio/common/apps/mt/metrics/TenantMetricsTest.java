@@ -0,0 +1,66 @@
+package io.apicurio.common.apps.mt.metrics;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.apicurio.common.apps.mt.TestInstance;
+import io.micrometer.core.instrument.MeterRegistry;
+
+public class TenantMetricsTest {
+
+    @Test
+    public void testTopTenantsAndOther() {
+        TenantMetrics metrics = metrics(1);
+        long millis = TimeUnit.MILLISECONDS.toNanos(1);
+        for (int i = 0; i < 5; i++) {
+            metrics.recordRequest("t1", 2 * millis);
+        }
+        for (int i = 0; i < 3; i++) {
+            metrics.recordRequest("t2", millis);
+        }
+        metrics.recordDbTime("t1", 4 * millis);
+        metrics.recordDbTime("t2", millis);
+
+        List<TenantMetricsDto> top = metrics.getTopTenants();
+        Assertions.assertEquals(2, top.size());
+        Assertions.assertEquals("t1", top.get(0).getTenantId());
+        Assertions.assertEquals(5, top.get(0).getRequests());
+        Assertions.assertEquals(10, top.get(0).getRequestTimeMillis());
+        Assertions.assertEquals(4, top.get(0).getDbTimeMillis());
+        Assertions.assertEquals(TenantMetrics.OTHER_TENANTS, top.get(1).getTenantId());
+        Assertions.assertEquals(3, top.get(1).getRequests());
+        Assertions.assertEquals(3, top.get(1).getRequestTimeMillis());
+        Assertions.assertEquals(1, top.get(1).getDbTimeMillis());
+    }
+
+    @Test
+    public void testOtherIncludesTheErrorOfTakenOverCounters() {
+        // 10 counters in a single stripe: t0..t9 fill it, then "hot" takes over the lightest counter
+        TenantMetrics metrics = metrics(1);
+        for (int i = 0; i < 10; i++) {
+            metrics.recordRequest("t" + i, 0);
+        }
+        for (int i = 0; i < 5; i++) {
+            metrics.recordRequest("hot", 0);
+        }
+        List<TenantMetricsDto> top = metrics.getTopTenants();
+        Assertions.assertEquals("hot", top.get(0).getTenantId());
+        Assertions.assertEquals(6, top.get(0).getRequests());
+        Assertions.assertEquals(1, top.get(0).getRequestsError());
+        // 15 requests in total, of which 5 certainly belong to "hot"
+        Assertions.assertEquals(10, top.get(1).getRequests());
+    }
+
+    private static TenantMetrics metrics(int topTenants) {
+        TenantMetrics metrics = new TenantMetrics();
+        metrics.enabled = true;
+        metrics.topTenants = topTenants;
+        metrics.refreshSeconds = 30;
+        metrics.meterRegistry = TestInstance.<MeterRegistry>empty();
+        metrics.init();
+        return metrics;
+    }
+}
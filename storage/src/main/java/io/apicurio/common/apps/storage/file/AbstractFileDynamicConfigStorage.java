@@ -0,0 +1,721 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.storage.file;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.event.Event;
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+
+import io.apicurio.common.apps.config.DynamicConfigChangeListener;
+import io.apicurio.common.apps.config.DynamicConfigChangedEvent;
+import io.apicurio.common.apps.config.DynamicConfigPropertyDto;
+import io.apicurio.common.apps.config.DynamicConfigStorage;
+import io.apicurio.common.apps.mt.TenantContext;
+import io.apicurio.common.apps.storage.exceptions.NotFoundException;
+import io.apicurio.common.apps.storage.exceptions.StorageException;
+import io.apicurio.common.apps.util.CompactStringMap;
+
+/**
+ * A {@link DynamicConfigStorage} backed by a local file, for deployments without a database.
+ * Applications subclass it (as they do {@link io.apicurio.common.apps.storage.sql.AbstractSqlStorage})
+ * to make it a bean.
+ * <p>
+ * All properties are held in memory as an immutable snapshot, so reads are lock-free lookups.
+ * Changes are appended to a log file, one line per change:
+ * <pre>
+ * SET &lt;tab&gt; tenantId &lt;tab&gt; name &lt;tab&gt; value
+ * DEL &lt;tab&gt; tenantId &lt;tab&gt; name
+ * </pre>
+ * (with tabs, newlines and backslashes in the fields escaped as \t, \n, \r and \\).  Writes are
+ * group-committed: concurrent writes are appended and forced to disk together, and a write only
+ * returns once it is durable.  When enough superseded records have accumulated, the log is
+ * compacted by atomically replacing it with one SET record per live property.
+ * <p>
+ * The log is read through a memory-mapped buffer, and the file is watched (using a
+ * {@link WatchService}) so that edits made by other processes are picked up and reported as
+ * remote changes.  Own writes are told apart from external edits by the file's size and a
+ * running checksum of its content.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+public abstract class AbstractFileDynamicConfigStorage implements DynamicConfigStorage {
+
+    private static final String SET = "SET";
+    private static final String DEL = "DEL";
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    @Inject
+    protected Logger log;
+
+    @Inject
+    protected TenantContext tenantContext;
+
+    @Inject
+    Event<DynamicConfigChangedEvent> configChangedEvent;
+
+    @ConfigProperty(name = "app.config.file.path", defaultValue = "data/dynamic-config.log")
+    String logFilePath;
+
+    @ConfigProperty(name = "app.config.file.compaction.threshold", defaultValue = "10000")
+    long compactionThreshold;
+
+    @ConfigProperty(name = "app.config.file.watch.enabled", defaultValue = "true")
+    boolean watchEnabled;
+
+    private final List<DynamicConfigChangeListener> configChangeListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Immutable snapshot of all properties, by tenant id.  Replaced (never modified) on every change.
+     */
+    private volatile Map<String, Map<String, String>> snapshot = Collections.emptyMap();
+
+    /**
+     * Guards the log file and the replacement of the snapshot.
+     */
+    private final Object lock = new Object();
+    private Path logFile;
+    private FileChannel channel;
+    private long expectedSize;
+    private CRC32 expectedChecksum = new CRC32();
+    private long liveRecords;
+    private long logRecords;
+
+    /**
+     * Writes are only queued while the storage is running: {@link #running} is cleared, and the
+     * queue drained for the last time, while holding the queue's monitor.
+     */
+    private final BlockingQueue<PendingWrite> writeQueue = new LinkedBlockingQueue<>();
+    private Thread writerThread;
+    private WatchService watchService;
+    private Thread watchThread;
+    private volatile boolean running;
+
+    @PostConstruct
+    void initFileStorage() {
+        logFile = Paths.get(logFilePath).toAbsolutePath();
+        log.info("Dynamic config file: {}", logFile);
+        try {
+            Files.createDirectories(logFile.getParent());
+            synchronized (lock) {
+                snapshot = load();
+                openChannel();
+            }
+        } catch (IOException e) {
+            throw new StorageException("Error loading dynamic config from: " + logFile, e);
+        }
+        running = true;
+        writerThread = new Thread(this::writeLoop, "dynamic-config-file-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        if (watchEnabled) {
+            startWatching();
+        }
+    }
+
+    @PreDestroy
+    void closeFileStorage() {
+        synchronized (writeQueue) {
+            running = false;
+        }
+        if (writerThread != null) {
+            writerThread.interrupt();
+        }
+        try {
+            if (watchService != null) {
+                watchService.close();
+            }
+            synchronized (lock) {
+                if (channel != null) {
+                    channel.close();
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Error closing dynamic config file.", e);
+        }
+    }
+
+    /**
+     * @see io.apicurio.common.apps.config.DynamicConfigStorage#getCurrentTenantId()
+     */
+    @Override
+    public String getCurrentTenantId() {
+        return tenantContext.getTenantId();
+    }
+
+    /**
+     * @see io.apicurio.common.apps.config.DynamicConfigStorage#getConfigProperty(java.lang.String)
+     */
+    @Override
+    public DynamicConfigPropertyDto getConfigProperty(String propertyName) {
+        String value = tenantProperties(tenantContext.getTenantId()).get(propertyName);
+        return value == null ? null : new DynamicConfigPropertyDto(propertyName, value);
+    }
+
+    /**
+     * @see io.apicurio.common.apps.config.DynamicConfigStorage#getConfigProperties()
+     */
+    @Override
+    public List<DynamicConfigPropertyDto> getConfigProperties() {
+        return tenantProperties(tenantContext.getTenantId()).entrySet().stream()
+                .map(entry -> new DynamicConfigPropertyDto(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @see io.apicurio.common.apps.config.DynamicConfigStorage#setConfigProperty(io.apicurio.common.apps.config.DynamicConfigPropertyDto)
+     */
+    @Override
+    public void setConfigProperty(DynamicConfigPropertyDto property) {
+        log.debug("Setting a config property with name: {}  and value: {}", property.getName(), property.getValue());
+        String tenantId = tenantContext.getTenantId();
+        String oldValue = write(new PendingWrite(tenantId, property.getName(), property.getValue()));
+        if (!Objects.equals(oldValue, property.getValue())) {
+            fireConfigPropertyChanged(new DynamicConfigChangedEvent(tenantId, property.getName(), oldValue, property.getValue(), false));
+        }
+    }
+
+    /**
+     * @see io.apicurio.common.apps.config.DynamicConfigStorage#deleteConfigProperty(java.lang.String)
+     */
+    @Override
+    public void deleteConfigProperty(String propertyName) {
+        log.debug("Deleting a config property from storage: {}", propertyName);
+        String tenantId = tenantContext.getTenantId();
+        String oldValue = write(new PendingWrite(tenantId, propertyName, null));
+        fireConfigPropertyChanged(new DynamicConfigChangedEvent(tenantId, propertyName, oldValue, null, false));
+    }
+
+    /**
+     * @see io.apicurio.common.apps.config.DynamicConfigStorage#addConfigChangeListener(io.apicurio.common.apps.config.DynamicConfigChangeListener)
+     */
+    @Override
+    public void addConfigChangeListener(DynamicConfigChangeListener listener) {
+        configChangeListeners.add(listener);
+    }
+
+    /**
+     * @see io.apicurio.common.apps.config.DynamicConfigStorage#removeConfigChangeListener(io.apicurio.common.apps.config.DynamicConfigChangeListener)
+     */
+    @Override
+    public void removeConfigChangeListener(DynamicConfigChangeListener listener) {
+        configChangeListeners.remove(listener);
+    }
+
+    /**
+     * Notifies registered listeners and CDI observers that a dynamic config property has changed.
+     * @param event the change event
+     */
+    protected void fireConfigPropertyChanged(DynamicConfigChangedEvent event) {
+        log.debug("Dynamic config property changed: {}", event);
+        for (DynamicConfigChangeListener listener : configChangeListeners) {
+            try {
+                listener.onConfigPropertyChanged(event);
+            } catch (Exception e) {
+                log.warn("Error notifying config change listener.", e);
+            }
+        }
+        configChangedEvent.fire(event);
+    }
+
+    private Map<String, String> tenantProperties(String tenantId) {
+        Map<String, String> properties = snapshot.get(tenantId);
+        return properties == null ? Collections.emptyMap() : properties;
+    }
+
+    /**
+     * Queues a write for the writer thread and waits until it is durable.
+     * @return the previous value of the property
+     */
+    private String write(PendingWrite write) {
+        synchronized (writeQueue) {
+            if (!running) {
+                throw new StorageException("Dynamic config file storage is closed.");
+            }
+            writeQueue.add(write);
+        }
+        try {
+            return write.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof StorageException) {
+                throw (StorageException) e.getCause();
+            }
+            throw new StorageException(e.getCause());
+        }
+    }
+
+    private void writeLoop() {
+        while (running) {
+            List<PendingWrite> batch = new ArrayList<>();
+            try {
+                batch.add(writeQueue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            writeQueue.drainTo(batch, MAX_BATCH_SIZE - 1);
+            try {
+                commit(batch);
+            } catch (Exception e) {
+                log.error("Error writing dynamic config file.", e);
+                StorageException error = new StorageException("Error writing dynamic config file.", e);
+                batch.forEach(write -> write.result.completeExceptionally(error));
+            }
+        }
+        // Fail anything still queued (nothing can be queued once running is cleared)
+        List<PendingWrite> remaining = new ArrayList<>();
+        synchronized (writeQueue) {
+            running = false;
+            writeQueue.drainTo(remaining);
+        }
+        remaining.forEach(write -> write.result.completeExceptionally(new StorageException("Dynamic config file storage is closed.")));
+    }
+
+    /**
+     * Appends a batch of writes to the log with a single force, then publishes them in a new snapshot.
+     * The batch has succeeded once it is durable: a failed compaction is only logged (the log stays
+     * as it was, and compaction is tried again after the next batch).
+     */
+    private void commit(List<PendingWrite> batch) throws IOException {
+        synchronized (lock) {
+            Map<String, Map<String, String>> changed = new HashMap<>();
+            List<PendingWrite> accepted = new ArrayList<>(batch.size());
+            long liveDelta = 0;
+            ByteArrayOutputStream records = new ByteArrayOutputStream();
+            for (PendingWrite write : batch) {
+                Map<String, String> properties = changed.computeIfAbsent(write.tenantId,
+                        tenantId -> new HashMap<>(tenantProperties(tenantId)));
+                String oldValue = properties.get(write.name);
+                if (write.value == null && oldValue == null) {
+                    write.result.completeExceptionally(new NotFoundException("Property value not currently set: " + write.name));
+                    continue;
+                }
+                if (write.value == null) {
+                    properties.remove(write.name);
+                    liveDelta--;
+                    writeRecord(records, DEL, write.tenantId, write.name, null);
+                } else {
+                    if (oldValue == null) {
+                        liveDelta++;
+                    }
+                    properties.put(write.name, write.value);
+                    writeRecord(records, SET, write.tenantId, write.name, write.value);
+                }
+                write.oldValue = oldValue;
+                accepted.add(write);
+            }
+            if (accepted.isEmpty()) {
+                return;
+            }
+
+            byte[] bytes = records.toByteArray();
+            append(bytes);
+            liveRecords += liveDelta;
+            logRecords += accepted.size();
+
+            publish(changed);
+            if (logRecords - liveRecords > compactionThreshold) {
+                try {
+                    compact();
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Error compacting dynamic config file, will retry after the next write.", e);
+                }
+            }
+        }
+        batch.forEach(write -> write.result.complete(write.oldValue));
+    }
+
+    /**
+     * Appends the given records and forces them to disk.  On failure the log is truncated back to
+     * its previous size, so that a partially written record is not left for the next append to
+     * be concatenated onto.
+     */
+    private void append(byte[] bytes) throws IOException {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            try {
+                channel.truncate(expectedSize);
+                channel.force(false);
+            } catch (IOException truncateError) {
+                e.addSuppressed(truncateError);
+            }
+            throw e;
+        }
+        expectedSize += bytes.length;
+        expectedChecksum.update(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Replaces the snapshot with one in which the given tenants' properties are replaced.
+     */
+    private void publish(Map<String, Map<String, String>> changedTenants) {
+        Map<String, Map<String, String>> newSnapshot = new HashMap<>(snapshot);
+        changedTenants.forEach((tenantId, properties) -> {
+            if (properties.isEmpty()) {
+                newSnapshot.remove(tenantId);
+            } else {
+                newSnapshot.put(tenantId, CompactStringMap.copyOf(properties));
+            }
+        });
+        snapshot = Collections.unmodifiableMap(newSnapshot);
+    }
+
+    /**
+     * Rewrites the log with a single record per live property and atomically replaces the old log.
+     * The compacted file is written and moved into place before the channel is swapped: if anything
+     * fails, the current log and channel are left as they are.
+     */
+    private void compact() throws IOException {
+        log.debug("Compacting dynamic config file ({} records, {} live).", logRecords, liveRecords);
+        Path tmp = logFile.resolveSibling(logFile.getFileName() + ".compact");
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        long count = 0;
+        for (Map.Entry<String, Map<String, String>> tenant : snapshot.entrySet()) {
+            for (Map.Entry<String, String> property : tenant.getValue().entrySet()) {
+                writeRecord(records, SET, tenant.getKey(), property.getKey(), property.getValue());
+                count++;
+            }
+        }
+        byte[] bytes = records.toByteArray();
+        Files.deleteIfExists(tmp);
+        // The channel opened on the compacted file keeps pointing at it once it has been moved
+        FileChannel compacted = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                compacted.write(buffer);
+            }
+            compacted.force(true);
+            Files.move(tmp, logFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            try {
+                compacted.close();
+                Files.deleteIfExists(tmp);
+            } catch (IOException closeError) {
+                e.addSuppressed(closeError);
+            }
+            throw e;
+        }
+        FileChannel previous = channel;
+        channel = compacted;
+        expectedSize = bytes.length;
+        try {
+            previous.close();
+        } catch (IOException e) {
+            log.debug("Error closing the log replaced by compaction.", e);
+        }
+        expectedChecksum = new CRC32();
+        expectedChecksum.update(bytes, 0, bytes.length);
+        liveRecords = count;
+        logRecords = count;
+    }
+
+    private void openChannel() throws IOException {
+        channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        expectedSize = channel.size();
+    }
+
+    /**
+     * Reads the whole log (memory-mapped) and returns the resulting snapshot.  A last line without a
+     * trailing newline is kept (and the newline added) if it is a valid record, e.g. when the file
+     * was edited by hand.  Otherwise it is taken to be a partially written record (from a crash in
+     * the middle of an append) and truncated away.
+     */
+    private Map<String, Map<String, String>> load() throws IOException {
+        Map<String, Map<String, String>> properties = new HashMap<>();
+        long records = 0;
+        CRC32 checksum = new CRC32();
+        if (Files.exists(logFile)) {
+            try (FileChannel in = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long size = in.size();
+                if (size > Integer.MAX_VALUE) {
+                    throw new StorageException("Dynamic config file too large: " + logFile);
+                }
+                long validLength = 0;
+                boolean unterminated = false;
+                if (size > 0) {
+                    MappedByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                    int start = 0;
+                    for (int i = 0; i < size; i++) {
+                        if (buffer.get(i) == '\n') {
+                            byte[] line = new byte[i - start];
+                            buffer.position(start);
+                            buffer.get(line);
+                            applyRecord(properties, new String(line, StandardCharsets.UTF_8));
+                            records++;
+                            start = i + 1;
+                        }
+                    }
+                    validLength = start;
+                    if (start < size) {
+                        byte[] line = new byte[(int) size - start];
+                        buffer.position(start);
+                        buffer.get(line);
+                        if (applyRecord(properties, new String(line, StandardCharsets.UTF_8))) {
+                            records++;
+                            validLength = size;
+                            unterminated = true;
+                        }
+                    }
+                    buffer.position(0).limit((int) validLength);
+                    checksum.update(buffer);
+                }
+                if (validLength < size) {
+                    log.warn("Truncating incomplete last record of dynamic config file: {}", logFile);
+                    in.truncate(validLength);
+                    in.force(true);
+                } else if (unterminated) {
+                    // Terminate the last record, so that the next append starts on a fresh line
+                    in.write(ByteBuffer.wrap(new byte[] { '\n' }), size);
+                    in.force(true);
+                    checksum.update('\n');
+                }
+            }
+        }
+        Map<String, Map<String, String>> rval = new HashMap<>();
+        long live = 0;
+        for (Map.Entry<String, Map<String, String>> tenant : properties.entrySet()) {
+            if (!tenant.getValue().isEmpty()) {
+                rval.put(tenant.getKey(), CompactStringMap.copyOf(tenant.getValue()));
+                live += tenant.getValue().size();
+            }
+        }
+        liveRecords = live;
+        logRecords = records;
+        expectedChecksum = checksum;
+        return Collections.unmodifiableMap(rval);
+    }
+
+    /**
+     * Applies a record to the given properties.
+     * @return false if the record is invalid (and was ignored)
+     */
+    private boolean applyRecord(Map<String, Map<String, String>> properties, String line) {
+        if (line.isEmpty()) {
+            return false;
+        }
+        String[] fields = line.split("\t", -1);
+        if (SET.equals(fields[0]) && fields.length == 4) {
+            properties.computeIfAbsent(unescape(fields[1]), key -> new HashMap<>()).put(unescape(fields[2]), unescape(fields[3]));
+            return true;
+        } else if (DEL.equals(fields[0]) && fields.length == 3) {
+            properties.computeIfAbsent(unescape(fields[1]), key -> new HashMap<>()).remove(unescape(fields[2]));
+            return true;
+        } else {
+            log.warn("Ignoring invalid record in dynamic config file: {}", line);
+            return false;
+        }
+    }
+
+    private static void writeRecord(ByteArrayOutputStream out, String op, String tenantId, String name, String value) {
+        StringBuilder line = new StringBuilder(op).append('\t').append(escape(tenantId)).append('\t').append(escape(name));
+        if (value != null) {
+            line.append('\t').append(escape(value));
+        }
+        line.append('\n');
+        byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static String escape(String value) {
+        StringBuilder rval = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': rval.append("\\\\"); break;
+                case '\t': rval.append("\\t"); break;
+                case '\n': rval.append("\\n"); break;
+                case '\r': rval.append("\\r"); break;
+                default: rval.append(c);
+            }
+        }
+        return rval.toString();
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder rval = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char n = value.charAt(++i);
+                switch (n) {
+                    case 't': rval.append('\t'); break;
+                    case 'n': rval.append('\n'); break;
+                    case 'r': rval.append('\r'); break;
+                    default: rval.append(n);
+                }
+            } else {
+                rval.append(c);
+            }
+        }
+        return rval.toString();
+    }
+
+    private void startWatching() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            logFile.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            log.warn("Unable to watch dynamic config file, external changes will not be detected.", e);
+            return;
+        }
+        watchThread = new Thread(() -> {
+            while (running) {
+                WatchKey key;
+                try {
+                    key = watchService.take();
+                } catch (InterruptedException | ClosedWatchServiceException e) {
+                    break;
+                }
+                boolean relevant = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || logFile.getFileName().equals(event.context())) {
+                        relevant = true;
+                    }
+                }
+                key.reset();
+                if (relevant) {
+                    try {
+                        reloadIfChangedExternally();
+                    } catch (Exception e) {
+                        log.warn("Error reloading dynamic config file.", e);
+                    }
+                }
+            }
+        }, "dynamic-config-file-watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    /**
+     * Reloads the log if it was changed by someone else, and fires remote change events for
+     * every property that differs from the previous snapshot.
+     */
+    void reloadIfChangedExternally() throws IOException {
+        List<DynamicConfigChangedEvent> events = new ArrayList<>();
+        synchronized (lock) {
+            if (!Files.exists(logFile) || isOwnContent()) {
+                // Our own write (or compaction)
+                return;
+            }
+            log.info("Dynamic config file changed externally, reloading: {}", logFile);
+            Map<String, Map<String, String>> previous = snapshot;
+            Map<String, Map<String, String>> current = load();
+            channel.close();
+            openChannel();
+            snapshot = current;
+
+            Set<String> tenants = new HashSet<>(previous.keySet());
+            tenants.addAll(current.keySet());
+            for (String tenantId : tenants) {
+                Map<String, String> before = previous.getOrDefault(tenantId, Collections.emptyMap());
+                Map<String, String> after = current.getOrDefault(tenantId, Collections.emptyMap());
+                Set<String> names = new HashSet<>(before.keySet());
+                names.addAll(after.keySet());
+                for (String name : names) {
+                    String oldValue = before.get(name);
+                    String newValue = after.get(name);
+                    if (!Objects.equals(oldValue, newValue)) {
+                        events.add(new DynamicConfigChangedEvent(tenantId, name, oldValue, newValue, true));
+                    }
+                }
+            }
+        }
+        events.forEach(this::fireConfigPropertyChanged);
+    }
+
+    /**
+     * @return true if the log has the size and content this storage last wrote (an external edit
+     *         may keep the size, e.g. by changing a value from "10" to "20")
+     */
+    private boolean isOwnContent() throws IOException {
+        try (FileChannel in = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size != expectedSize) {
+                return false;
+            }
+            CRC32 checksum = new CRC32();
+            if (size > 0) {
+                checksum.update(in.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            }
+            return checksum.getValue() == expectedChecksum.getValue();
+        }
+    }
+
+    private static class PendingWrite {
+        final String tenantId;
+        final String name;
+        final String value;
+        final CompletableFuture<String> result = new CompletableFuture<>();
+        String oldValue;
+
+        PendingWrite(String tenantId, String name, String value) {
+            this.tenantId = tenantId;
+            this.name = name;
+            this.value = value;
+        }
+    }
+
+}
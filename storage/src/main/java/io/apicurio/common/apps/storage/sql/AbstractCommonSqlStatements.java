@@ -168,4 +168,158 @@ public abstract class AbstractCommonSqlStatements implements CommonSqlStatements
     public String selectTenantIdsByConfigModifiedOn() {
         return "SELECT DISTINCT c.tenantId FROM config c WHERE c.modifiedOn >= ?";
     }
+
+    /**
+     * @see io.apicurio.common.apps.storage.sql.CommonSqlStatements#selectConfigPropertiesByModifiedOn()
+     */
+    @Override
+    public String selectConfigPropertiesByModifiedOn() {
+        return "SELECT c.* FROM config c WHERE c.modifiedOn >= ?";
+    }
+
+    /**
+     * @see io.apicurio.common.apps.storage.sql.CommonSqlStatements#selectConfigPropertiesPage()
+     */
+    @Override
+    public String selectConfigPropertiesPage() {
+        return "SELECT c.* FROM config c WHERE (c.tenantId, c.pname) > (?, ?) ORDER BY c.tenantId, c.pname LIMIT ?";
+    }
+
+    /**
+     * @see io.apicurio.common.apps.storage.sql.CommonSqlStatements#selectConfigPropertiesWithDefaults()
+     */
+    @Override
+    public String selectConfigPropertiesWithDefaults() {
+        return "SELECT c.* FROM config c WHERE c.tenantId = ? OR c.tenantId = ? "
+                + "ORDER BY CASE WHEN c.tenantId = ? THEN 0 ELSE 1 END";
+    }
+
+    /**
+     * @see io.apicurio.common.apps.storage.sql.CommonSqlStatements#selectConfigPropertiesByTenantIds(int)
+     */
+    @Override
+    public String selectConfigPropertiesByTenantIds(int tenantCount) {
+        StringBuilder sql = new StringBuilder("SELECT c.* FROM config c WHERE c.tenantId IN (");
+        for (int i = 0; i < tenantCount; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        return sql.append(")").toString();
+    }
+
+    /**
+     * @see io.apicurio.common.apps.storage.sql.CommonSqlStatements#selectRecentlyModifiedConfigTenantIds()
+     */
+    @Override
+    public String selectRecentlyModifiedConfigTenantIds() {
+        return "SELECT c.tenantId FROM config c GROUP BY c.tenantId ORDER BY MAX(c.modifiedOn) DESC LIMIT ?";
+    }
+
+    /**
+     * @see io.apicurio.common.apps.storage.sql.CommonSqlStatements#selectConfigPropertyByNameWithDefaults()
+     */
+    @Override
+    public String selectConfigPropertyByNameWithDefaults() {
+        return "SELECT c.* FROM config c WHERE (c.tenantId = ? OR c.tenantId = ?) AND c.pname = ? "
+                + "ORDER BY CASE WHEN c.tenantId = ? THEN 0 ELSE 1 END";
+    }
+
+    /**
+     * @see io.apicurio.common.apps.storage.sql.CommonSqlStatements#upsertConfigProperty()
+     */
+    @Override
+    public String upsertConfigProperty() {
+        if ("postgresql".equals(dbType())) {
+            return "INSERT INTO config (tenantId, pname, pvalue, modifiedOn) VALUES (?, ?, ?, ?) "
+                    + "ON CONFLICT (tenantId, pname) DO UPDATE SET pvalue = EXCLUDED.pvalue, modifiedOn = EXCLUDED.modifiedOn";
+        } else if ("h2".equals(dbType()) ) {
+            return "MERGE INTO config (tenantId, pname, pvalue, modifiedOn) KEY (tenantId, pname) VALUES (?, ?, ?, ?)";
+        } else {
+            throw new StorageException("Unsupported DB type: " + dbType());
+        }
+    }
+
+    /**
+     * @see io.apicurio.common.apps.storage.sql.CommonSqlStatements#selectConfigPropertyNamesByTenantId()
+     */
+    @Override
+    public String selectConfigPropertyNamesByTenantId() {
+        return "SELECT c.pname FROM config c WHERE c.tenantId = ? ORDER BY c.pname LIMIT ?";
+    }
+
+    /**
+     * @see io.apicurio.common.apps.storage.sql.CommonSqlStatements#selectLease()
+     */
+    @Override
+    public String selectLease() {
+        return "SELECT a.prop_value FROM apicurio a WHERE a.prop_name = ?";
+    }
+
+    /**
+     * @see io.apicurio.common.apps.storage.sql.CommonSqlStatements#insertLease()
+     */
+    @Override
+    public String insertLease() {
+        return "INSERT INTO apicurio (prop_name, prop_value) VALUES (?, ?)";
+    }
+
+    /**
+     * @see io.apicurio.common.apps.storage.sql.CommonSqlStatements#updateLease()
+     */
+    @Override
+    public String updateLease() {
+        return "UPDATE apicurio SET prop_value = ? WHERE prop_name = ? AND prop_value = ?";
+    }
+
+    /**
+     * @see io.apicurio.common.apps.storage.sql.CommonSqlStatements#tenantUsageInitialization()
+     */
+    @Override
+    public List<String> tenantUsageInitialization() {
+        DdlParser parser = new DdlParser();
+        // Shipped with this module, not with the application (unlike the rest of the DDL)
+        try (InputStream input = AbstractCommonSqlStatements.class.getResourceAsStream("tenant-usage/" + dbType() + ".ddl")) {
+            if (input == null) {
+                throw new StorageException("Unsupported DB type: " + dbType());
+            }
+            return parser.parse(input);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @see io.apicurio.common.apps.storage.sql.CommonSqlStatements#selectTenantUsage()
+     */
+    @Override
+    public String selectTenantUsage() {
+        return "SELECT u.tenantId, u.storageBytes, u.entities, u.requests, u.requestsWindow FROM tenant_usage u";
+    }
+
+    /**
+     * @see io.apicurio.common.apps.storage.sql.CommonSqlStatements#upsertTenantUsage()
+     */
+    @Override
+    public String upsertTenantUsage() {
+        if ("postgresql".equals(dbType())) {
+            return "INSERT INTO tenant_usage (tenantId, storageBytes, entities, requests, requestsWindow, modifiedOn) VALUES (?, ?, ?, ?, ?, ?) "
+                    + "ON CONFLICT (tenantId) DO UPDATE SET storageBytes = tenant_usage.storageBytes + EXCLUDED.storageBytes, "
+                    + "entities = tenant_usage.entities + EXCLUDED.entities, "
+                    + "requests = CASE WHEN tenant_usage.requestsWindow = EXCLUDED.requestsWindow THEN tenant_usage.requests + EXCLUDED.requests "
+                    + "WHEN tenant_usage.requestsWindow < EXCLUDED.requestsWindow THEN EXCLUDED.requests ELSE tenant_usage.requests END, "
+                    + "requestsWindow = GREATEST(tenant_usage.requestsWindow, EXCLUDED.requestsWindow), "
+                    + "modifiedOn = EXCLUDED.modifiedOn";
+        } else if ("h2".equals(dbType()) ) {
+            return "MERGE INTO tenant_usage (tenantId, storageBytes, entities, requests, requestsWindow, modifiedOn) KEY (tenantId) "
+                    + "SELECT n.tenantId, COALESCE(u.storageBytes, 0) + n.storageBytes, COALESCE(u.entities, 0) + n.entities, "
+                    + "CASE WHEN u.requestsWindow = n.requestsWindow THEN u.requests + n.requests "
+                    + "WHEN u.requestsWindow > n.requestsWindow THEN u.requests ELSE n.requests END, "
+                    + "GREATEST(COALESCE(u.requestsWindow, n.requestsWindow), n.requestsWindow), n.modifiedOn "
+                    + "FROM (SELECT CAST(? AS VARCHAR(128)) AS tenantId, CAST(? AS BIGINT) AS storageBytes, CAST(? AS BIGINT) AS entities, "
+                    + "CAST(? AS BIGINT) AS requests, CAST(? AS BIGINT) AS requestsWindow, CAST(? AS BIGINT) AS modifiedOn) n "
+                    + "LEFT JOIN tenant_usage u ON u.tenantId = n.tenantId";
+        } else {
+            throw new StorageException("Unsupported DB type: " + dbType());
+        }
+    }
+
 }
@@ -17,23 +17,61 @@
 package io.apicurio.common.apps.storage.sql;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.event.Event;
+import javax.enterprise.event.Observes;
+import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
 import javax.transaction.Transactional;
 
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.slf4j.Logger;
 
+import io.apicurio.common.apps.config.DynamicConfigChangeListener;
+import io.apicurio.common.apps.config.DynamicConfigChangedEvent;
 import io.apicurio.common.apps.config.DynamicConfigPropertyDto;
 import io.apicurio.common.apps.config.DynamicConfigStorage;
+import io.apicurio.common.apps.config.TenantDynamicConfigPropertyDto;
 import io.apicurio.common.apps.mt.TenantContext;
 import io.apicurio.common.apps.storage.exceptions.NotFoundException;
 import io.apicurio.common.apps.storage.sql.jdbi.Handle;
 import io.apicurio.common.apps.storage.sql.jdbi.HandleFactory;
+import io.apicurio.common.apps.storage.sql.jdbi.PreparedBatch;
+import io.apicurio.common.apps.storage.sql.jdbi.Query;
 import io.apicurio.common.apps.storage.sql.jdbi.mappers.DynamicConfigPropertyDtoMapper;
+import io.apicurio.common.apps.storage.sql.jdbi.mappers.TenantDynamicConfigPropertyDtoMapper;
+import io.apicurio.common.apps.util.CompactStringMap;
+import io.apicurio.common.apps.util.TinyLfuCache;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.runtime.StartupEvent;
 
 /**
  * @author eric.wittmann@gmail.com
@@ -52,12 +90,137 @@ public abstract class AbstractSqlStorage<S extends CommonSqlStatements> implemen
     @Inject
     protected TenantContext tenantContext;
 
+    @Inject
+    Event<DynamicConfigChangedEvent> configChangedEvent;
+
+    private final List<DynamicConfigChangeListener> configChangeListeners = new CopyOnWriteArrayList<>();
+
     @ConfigProperty(name = "app.sql.init", defaultValue = "true")
     boolean initDB;
 
     @ConfigProperty(name = "quarkus.datasource.jdbc.url")
     String jdbcUrl;
 
+    @ConfigProperty(name = "app.config.inheritance.enabled", defaultValue = "false")
+    boolean configInheritanceEnabled;
+
+    @ConfigProperty(name = "app.config.cache.enabled", defaultValue = "false")
+    boolean configCacheEnabled;
+
+    @ConfigProperty(name = "app.config.cache.max-tenants", defaultValue = "10000")
+    long configCacheMaxTenants;
+
+    @ConfigProperty(name = "app.config.cache.max-bytes", defaultValue = "67108864")
+    long configCacheMaxBytes;
+
+    @ConfigProperty(name = "app.config.cache.warm-up.chunk-size", defaultValue = "100")
+    int configWarmUpChunkSize;
+
+    @ConfigProperty(name = "app.config.cache.warm-up.parallelism", defaultValue = "4")
+    int configWarmUpParallelism;
+
+    @ConfigProperty(name = "app.config.remote-changes.poll-seconds", defaultValue = "0")
+    long remoteChangesPollSeconds;
+
+    @Inject
+    Instance<MeterRegistry> meterRegistry;
+
+    @Inject
+    Instance<TransactionSynchronizationRegistry> txSyncRegistry;
+
+    /**
+     * Cache of all dynamic config properties of a tenant (as immutable {@link CompactStringMap}
+     * snapshots), keyed by tenant id.  Null when caching is disabled.
+     */
+    private TinyLfuCache<String, Map<String, String>> configCache;
+    private DistributionSummary configCacheTenantOccupancy;
+
+    /**
+     * Cached config of the default tenant, which all other tenants inherit from when config
+     * inheritance is enabled.  Null when not (yet) loaded.
+     */
+    private volatile Map<String, String> globalConfig;
+    private volatile long globalConfigGeneration;
+    private final Object globalConfigLock = new Object();
+
+    /**
+     * Last modification time of the config rows this node wrote (or already reported as changed by
+     * another node), by tenant and property, so that they are not reported as remote changes.  Only
+     * tracked while the poller runs, and pruned to the polling window on every poll.
+     */
+    private final ConcurrentHashMap<String, Long> knownConfigVersions = new ConcurrentHashMap<>();
+    private volatile long remoteChangesCheckedAt;
+    private volatile ScheduledExecutorService remoteChangesPoller;
+
+    @PostConstruct
+    void initConfigCache() {
+        if (!configCacheEnabled) {
+            return;
+        }
+        configCache = new TinyLfuCache<>(configCacheMaxTenants, configCacheMaxBytes, AbstractSqlStorage::estimateConfigSize);
+        if (meterRegistry.isResolvable()) {
+            MeterRegistry registry = meterRegistry.get();
+            Gauge.builder("apicurio.config.cache.tenants", configCache, TinyLfuCache::size)
+                    .description("Number of tenants with cached dynamic config properties")
+                    .register(registry);
+            Gauge.builder("apicurio.config.cache.size", configCache, TinyLfuCache::weightedSize)
+                    .description("Estimated size of all cached dynamic config properties")
+                    .baseUnit("bytes")
+                    .register(registry);
+            FunctionCounter.builder("apicurio.config.cache.hits", configCache, TinyLfuCache::hitCount)
+                    .register(registry);
+            FunctionCounter.builder("apicurio.config.cache.misses", configCache, TinyLfuCache::missCount)
+                    .register(registry);
+            FunctionCounter.builder("apicurio.config.cache.evictions", configCache, TinyLfuCache::evictionCount)
+                    .register(registry);
+            // Tagging a gauge per tenant would explode metric cardinality, so per-tenant occupancy
+            // is reported as a distribution (see getConfigCacheOccupancy() for the exact values).
+            configCacheTenantOccupancy = DistributionSummary.builder("apicurio.config.cache.tenant.occupancy")
+                    .description("Estimated size of the cached dynamic config properties of a single tenant")
+                    .baseUnit("bytes")
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Starts polling for config properties changed by other nodes, every
+     * app.config.remote-changes.poll-seconds (0, the default, disables it).
+     */
+    public void startRemoteConfigChangesPoller(@Observes StartupEvent ev) {
+        if (remoteChangesPollSeconds <= 0) {
+            return;
+        }
+        remoteChangesCheckedAt = System.currentTimeMillis();
+        remoteChangesPoller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "config-remote-changes");
+            thread.setDaemon(true);
+            return thread;
+        });
+        remoteChangesPoller.scheduleWithFixedDelay(this::pollRemoteConfigChanges, remoteChangesPollSeconds,
+                remoteChangesPollSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    void stopRemoteConfigChangesPoller() {
+        if (remoteChangesPoller != null) {
+            remoteChangesPoller.shutdownNow();
+        }
+    }
+
+    private void pollRemoteConfigChanges() {
+        try {
+            long now = System.currentTimeMillis();
+            // Overlap with the previous poll, so rows committed late (or stamped by a node whose clock is
+            // behind) are not missed; rows already reported are skipped
+            long since = remoteChangesCheckedAt - TimeUnit.SECONDS.toMillis(remoteChangesPollSeconds);
+            detectRemoteConfigChanges(Instant.ofEpochMilli(since));
+            remoteChangesCheckedAt = now;
+        } catch (Exception e) {
+            log.warn("Error detecting config properties changed by other nodes.", e);
+        }
+    }
+
     /**
      * @return the expected version of the DB
      */
@@ -69,7 +232,8 @@ public abstract class AbstractSqlStorage<S extends CommonSqlStatements> implemen
      */
     protected void doInitialize() {
         log.info("    JDBC URL: " + jdbcUrl);
-        handles.withHandle((handle) -> {
+        // Every shard has its own copy of the schema
+        handles.withEachShard((handle) -> {
             if (initDB) {
                 if (!isDatabaseInitialized(handle)) {
                     log.info("Database not initialized.");
@@ -193,16 +357,31 @@ public abstract class AbstractSqlStorage<S extends CommonSqlStatements> implemen
         }
     }
 
+    /**
+     * @see io.apicurio.common.apps.config.DynamicConfigStorage#getCurrentTenantId()
+     */
+    @Override
+    public String getCurrentTenantId() {
+        return tenantContext.getTenantId();
+    }
+
     /**
      * @see io.apicurio.common.apps.config.DynamicConfigStorage#getConfigProperties()
      */
     @Override
     public List<DynamicConfigPropertyDto> getConfigProperties() {
         log.debug("Getting all config properties.");
+        final String tenantId = tenantContext.getTenantId();
+        if (configCache != null) {
+            return toDtos(getCachedConfigProperties(tenantId));
+        }
+        if (inheritsGlobalConfig(tenantId)) {
+            return toDtos(loadConfigPropertiesWithDefaults(tenantId, null));
+        }
         return handles.withHandle( handle -> {
             String sql = sqlStatements.selectConfigProperties();
             return handle.createQuery(sql)
-                    .bind(0, tenantContext.getTenantId())
+                    .bind(0, tenantId)
                     .map(DynamicConfigPropertyDtoMapper.instance)
                     .list()
                     .stream()
@@ -218,13 +397,45 @@ public abstract class AbstractSqlStorage<S extends CommonSqlStatements> implemen
     @Override
     public DynamicConfigPropertyDto getConfigProperty(String propertyName) {
         log.debug("Selecting a single config property: {}", propertyName);
+        final String tenantId = tenantContext.getTenantId();
+        if (configCache != null) {
+            String value = getCachedConfigProperty(tenantId, propertyName);
+            if (value == null) {
+                throw new NotFoundException("Dynamic configuration property not found: " + propertyName);
+            }
+            return new DynamicConfigPropertyDto(propertyName, value);
+        }
+        if (inheritsGlobalConfig(tenantId) && !handles.isColocated(tenantId, TenantContext.DEFAULT_TENANT_ID)) {
+            // Tenant value first, then the global one (which is on another shard)
+            String value = handles.withHandle(handle -> selectConfigPropertyValue(handle, tenantId, propertyName));
+            if (value == null) {
+                value = handles.withHandle(TenantContext.DEFAULT_TENANT_ID,
+                        handle -> selectConfigPropertyValue(handle, TenantContext.DEFAULT_TENANT_ID, propertyName));
+            }
+            if (value == null) {
+                throw new NotFoundException("Dynamic configuration property not found: " + propertyName);
+            }
+            return new DynamicConfigPropertyDto(propertyName, value);
+        }
         return handles.withHandle( handle -> {
-            String sql = sqlStatements.selectConfigPropertyByName();
-            Optional<DynamicConfigPropertyDto> res = handle.createQuery(sql)
-                    .bind(0, tenantContext.getTenantId())
-                    .bind(1, propertyName)
-                    .map(DynamicConfigPropertyDtoMapper.instance)
-                    .findOne();
+            Optional<DynamicConfigPropertyDto> res;
+            if (inheritsGlobalConfig(tenantId)) {
+                // Tenant value first, then the global one
+                res = handle.createQuery(sqlStatements.selectConfigPropertyByNameWithDefaults())
+                        .bind(0, tenantId)
+                        .bind(1, TenantContext.DEFAULT_TENANT_ID)
+                        .bind(2, propertyName)
+                        .bind(3, tenantId)
+                        .map(DynamicConfigPropertyDtoMapper.instance)
+                        .findFirst();
+            } else {
+                String sql = sqlStatements.selectConfigPropertyByName();
+                res = handle.createQuery(sql)
+                        .bind(0, tenantId)
+                        .bind(1, propertyName)
+                        .map(DynamicConfigPropertyDtoMapper.instance)
+                        .findOne();
+            }
             return res.orElseThrow(() -> new NotFoundException("Dynamic configuration property not found: " + propertyName));
         });
     }
@@ -236,28 +447,37 @@ public abstract class AbstractSqlStorage<S extends CommonSqlStatements> implemen
     @Transactional
     public void setConfigProperty(DynamicConfigPropertyDto property) {
         log.debug("Setting a config property with name: {}  and value: {}", property.getName(), property.getValue());
-        handles.withHandle( handle -> {
+        final String tenantId = tenantContext.getTenantId();
+        final long now = System.currentTimeMillis();
+        String oldValue = handles.withHandle( handle -> {
             String propertyName = property.getName();
             String propertyValue = property.getValue();
 
+            // Read the current value so that listeners can be told what changed
+            String currentValue = selectConfigPropertyValue(handle, tenantId, propertyName);
+
             // First delete the property row from the table
             String sql = sqlStatements.deleteConfigProperty();
             handle.createUpdate(sql)
-                  .bind(0, tenantContext.getTenantId())
+                  .bind(0, tenantId)
                   .bind(1, property.getName())
                   .execute();
 
             // Then create the row again with the new value
             sql = sqlStatements.insertConfigProperty();
             handle.createUpdate(sql)
-                  .bind(0, tenantContext.getTenantId())
+                  .bind(0, tenantId)
                   .bind(1, propertyName)
                   .bind(2, propertyValue)
-                  .bind(3, java.lang.System.currentTimeMillis())
+                  .bind(3, now)
                   .execute();
 
-            return null;
+            return currentValue;
         });
+        rememberConfigVersion(tenantId, property.getName(), now);
+        if (!Objects.equals(oldValue, property.getValue())) {
+            fireConfigPropertyChanged(new DynamicConfigChangedEvent(tenantId, property.getName(), oldValue, property.getValue(), false));
+        }
     }
 
     /**
@@ -267,28 +487,533 @@ public abstract class AbstractSqlStorage<S extends CommonSqlStatements> implemen
     @Transactional
     public void deleteConfigProperty(String propertyName) {
         log.debug("Deleting a config property from storage: {}", propertyName);
-        handles.withHandle(handle -> {
+        final String tenantId = tenantContext.getTenantId();
+        String oldValue = handles.withHandle(handle -> {
+            String currentValue = selectConfigPropertyValue(handle, tenantId, propertyName);
+
             String sql = sqlStatements.deleteConfigProperty();
             int rows = handle.createUpdate(sql)
-                    .bind(0, tenantContext.getTenantId())
+                    .bind(0, tenantId)
                     .bind(1, propertyName)
                     .execute();
             if (rows == 0) {
                 throw new NotFoundException("Property value not currently set: " + propertyName);
             }
-            return null;
+            return currentValue;
+        });
+        fireConfigPropertyChanged(new DynamicConfigChangedEvent(tenantId, propertyName, oldValue, null, false));
+    }
+
+    /**
+     * Loads the config of the most recently active tenants (see {@link #getRecentlyActiveTenantIds(int)})
+     * into the config cache.  Tenants are loaded in chunks, one query per chunk, with a bounded number
+     * of chunks loaded in parallel.  Does nothing if the config cache is disabled.
+     * @see io.apicurio.common.apps.config.DynamicConfigStorage#warmUp(int)
+     */
+    @Override
+    public int warmUp(int maxTenants) {
+        if (configCache == null) {
+            log.debug("Config cache is disabled, skipping warm-up.");
+            return 0;
+        }
+        List<String> tenantIds = new ArrayList<>(getRecentlyActiveTenantIds((int) Math.min(maxTenants, configCacheMaxTenants)));
+        if (configInheritanceEnabled) {
+            getGlobalConfig();
+            tenantIds.remove(TenantContext.DEFAULT_TENANT_ID);
+        }
+        log.info("Warming up the config cache for {} tenants.", tenantIds.size());
+
+        List<Callable<Integer>> chunks = new ArrayList<>();
+        for (int i = 0; i < tenantIds.size(); i += configWarmUpChunkSize) {
+            List<String> chunk = tenantIds.subList(i, Math.min(i + configWarmUpChunkSize, tenantIds.size()));
+            chunks.add(() -> warmUpChunk(chunk));
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, configWarmUpParallelism), r -> {
+            Thread thread = new Thread(r, "config-warm-up-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        int loaded = 0;
+        try {
+            for (Future<Integer> result : executor.invokeAll(chunks)) {
+                try {
+                    loaded += result.get();
+                } catch (ExecutionException e) {
+                    log.warn("Error warming up the config cache.", e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+        log.info("Config cache warm-up loaded {} tenants.", loaded);
+        return loaded;
+    }
+
+    /**
+     * Returns the ids of (up to) the given number of tenants, most recently active first.  Used to
+     * decide which tenants to warm up.  By default tenants are ranked by the last modification of
+     * their config; applications that track tenant activity should override this.  If the storage is
+     * sharded, the tenants of the shards are interleaved.
+     * @param limit the maximum number of tenant ids to return
+     */
+    protected List<String> getRecentlyActiveTenantIds(int limit) {
+        List<List<String>> perShard = handles.withEachShard( handle -> {
+            String sql = sqlStatements.selectRecentlyModifiedConfigTenantIds();
+            return handle.createQuery(sql)
+                    .bind(0, limit)
+                    .mapTo(String.class)
+                    .list();
+        });
+        if (perShard.size() == 1) {
+            return perShard.get(0);
+        }
+        List<String> rval = new ArrayList<>();
+        for (int i = 0; rval.size() < limit; i++) {
+            boolean more = false;
+            for (List<String> tenantIds : perShard) {
+                if (i < tenantIds.size() && rval.size() < limit) {
+                    rval.add(tenantIds.get(i));
+                    more = true;
+                }
+            }
+            if (!more) {
+                break;
+            }
+        }
+        return rval;
+    }
+
+    /**
+     * Loads the config of the given tenants with a single query and puts it in the config cache.
+     */
+    private int warmUpChunk(List<String> tenantIds) {
+        long stamp = configCache.stamp();
+        Map<String, Map<String, String>> configs = new HashMap<>();
+        tenantIds.forEach(tenantId -> configs.put(tenantId, new HashMap<>()));
+        for (List<String> shardTenantIds : handles.groupByShard(tenantIds)) {
+            handles.withHandle(shardTenantIds.get(0), handle -> {
+                Query query = handle.createQuery(sqlStatements.selectConfigPropertiesByTenantIds(shardTenantIds.size()));
+                for (int i = 0; i < shardTenantIds.size(); i++) {
+                    query.bind(i, shardTenantIds.get(i));
+                }
+                query.map(TenantDynamicConfigPropertyDtoMapper.instance)
+                        .list()
+                        .forEach(dto -> configs.get(dto.getTenantId()).put(dto.getName(), dto.getValue()));
+                return null;
+            });
+        }
+        configs.forEach((tenantId, properties) -> {
+            Map<String, String> config = immutableConfig(properties);
+            if (configCacheTenantOccupancy != null) {
+                configCacheTenantOccupancy.record(estimateConfigSize(tenantId, config));
+            }
+            configCache.putIfValid(tenantId, config, stamp);
+        });
+        return configs.size();
+    }
+
+    /**
+     * True if the given tenant's config should be layered on top of the global config (the config of
+     * the default tenant).
+     */
+    private boolean inheritsGlobalConfig(String tenantId) {
+        return configInheritanceEnabled && !TenantContext.DEFAULT_TENANT_ID.equals(tenantId);
+    }
+
+    private static List<DynamicConfigPropertyDto> toDtos(Map<String, String> properties) {
+        return properties.entrySet().stream()
+                .map(entry -> new DynamicConfigPropertyDto(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns all (effective) config properties of the given tenant, from the cache if possible.
+     */
+    private Map<String, String> getCachedConfigProperties(String tenantId) {
+        if (!inheritsGlobalConfig(tenantId)) {
+            return configCache.get(tenantId, this::loadConfigProperties);
+        }
+        Map<String, String> overrides = configCache.get(tenantId, this::loadTenantOverrides);
+        Map<String, String> global = getGlobalConfig();
+        if (overrides.isEmpty()) {
+            return global;
+        }
+        Map<String, String> rval = new HashMap<>(global);
+        rval.putAll(overrides);
+        return rval;
+    }
+
+    /**
+     * Returns the (effective) value of a single config property of the given tenant, from the cache
+     * if possible.
+     */
+    private String getCachedConfigProperty(String tenantId, String propertyName) {
+        if (!inheritsGlobalConfig(tenantId)) {
+            return configCache.get(tenantId, this::loadConfigProperties).get(propertyName);
+        }
+        String value = configCache.get(tenantId, this::loadTenantOverrides).get(propertyName);
+        return value != null ? value : getGlobalConfig().get(propertyName);
+    }
+
+    private Map<String, String> loadConfigProperties(String tenantId) {
+        log.debug("Loading all config properties of tenant {} into the cache.", tenantId);
+        Map<String, String> rval = immutableConfig(selectConfigProperties(tenantId));
+        if (configCacheTenantOccupancy != null) {
+            configCacheTenantOccupancy.record(estimateConfigSize(tenantId, rval));
+        }
+        return rval;
+    }
+
+    private Map<String, String> selectConfigProperties(String tenantId) {
+        return handles.withHandle(tenantId, handle -> {
+            Map<String, String> rval = new HashMap<>();
+            handle.createQuery(sqlStatements.selectConfigProperties())
+                    .bind(0, tenantId)
+                    .map(DynamicConfigPropertyDtoMapper.instance)
+                    .list()
+                    .forEach(dto -> rval.put(dto.getName(), dto.getValue()));
+            return rval;
+        });
+    }
+
+    /**
+     * Loads the properties set on the given tenant itself (not inherited from the global config).  If
+     * the global config is not cached yet, both layers are read with a single query and the global
+     * config is cached as a side effect.
+     */
+    private Map<String, String> loadTenantOverrides(String tenantId) {
+        if (globalConfig != null) {
+            return loadConfigProperties(tenantId);
+        }
+        log.debug("Loading all config properties of tenant {} and global config into the cache.", tenantId);
+        long generation = globalConfigGeneration;
+        Map<String, String> global = new HashMap<>();
+        Map<String, String> overrides = loadConfigPropertiesWithDefaults(tenantId, global);
+        setGlobalConfig(generation, immutableConfig(global));
+        Map<String, String> rval = immutableConfig(overrides);
+        if (configCacheTenantOccupancy != null) {
+            configCacheTenantOccupancy.record(estimateConfigSize(tenantId, rval));
+        }
+        return rval;
+    }
+
+    /**
+     * Reads the global config and the given tenant's config in a single query (two queries if they
+     * are on different shards).
+     * @param tenantId the tenant
+     * @param global if not null, receives the global layer and the returned map only contains the
+     *        tenant's own properties, otherwise the returned map is the merged view
+     */
+    private Map<String, String> loadConfigPropertiesWithDefaults(String tenantId, Map<String, String> global) {
+        if (!handles.isColocated(tenantId, TenantContext.DEFAULT_TENANT_ID)) {
+            Map<String, String> defaults = selectConfigProperties(TenantContext.DEFAULT_TENANT_ID);
+            Map<String, String> overrides = selectConfigProperties(tenantId);
+            if (global != null) {
+                global.putAll(defaults);
+                return overrides;
+            }
+            defaults.putAll(overrides);
+            return defaults;
+        }
+        return handles.withHandle(tenantId, handle -> {
+            Map<String, String> rval = new HashMap<>();
+            // Rows are ordered global first, so tenant values override global ones
+            handle.createQuery(sqlStatements.selectConfigPropertiesWithDefaults())
+                    .bind(0, tenantId)
+                    .bind(1, TenantContext.DEFAULT_TENANT_ID)
+                    .bind(2, TenantContext.DEFAULT_TENANT_ID)
+                    .map(TenantDynamicConfigPropertyDtoMapper.instance)
+                    .list()
+                    .forEach(dto -> {
+                        if (global != null && TenantContext.DEFAULT_TENANT_ID.equals(dto.getTenantId())) {
+                            global.put(dto.getName(), dto.getValue());
+                        } else {
+                            rval.put(dto.getName(), dto.getValue());
+                        }
+                    });
+            return rval;
+        });
+    }
+
+    /**
+     * Returns the cached global config (the config of the default tenant), loading it if needed.
+     * It is shared by all tenants, tenant cache entries only hold their own overrides.
+     */
+    private Map<String, String> getGlobalConfig() {
+        Map<String, String> global = globalConfig;
+        if (global == null) {
+            long generation = globalConfigGeneration;
+            global = loadConfigProperties(TenantContext.DEFAULT_TENANT_ID);
+            setGlobalConfig(generation, global);
+        }
+        return global;
+    }
+
+    private void setGlobalConfig(long expectedGeneration, Map<String, String> global) {
+        synchronized (globalConfigLock) {
+            // Do not cache a value that was loaded before the last invalidation
+            if (globalConfigGeneration == expectedGeneration) {
+                globalConfig = global;
+            }
+        }
+    }
+
+    private void invalidateGlobalConfig() {
+        synchronized (globalConfigLock) {
+            globalConfigGeneration++;
+            globalConfig = null;
+        }
+    }
+
+    private static Map<String, String> immutableConfig(Map<String, String> properties) {
+        return CompactStringMap.copyOf(properties);
+    }
+
+    private void evictConfig(String tenantId) {
+        if (configInheritanceEnabled && TenantContext.DEFAULT_TENANT_ID.equals(tenantId)) {
+            // Other tenants' entries do not contain global values, so only the shared global map is
+            // stale - and the default tenant's own entry
+            invalidateGlobalConfig();
+        }
+        configCache.invalidate(tenantId);
+    }
+
+    /**
+     * Returns the estimated size (in bytes) of the cached config properties of every tenant currently
+     * in the config cache.  Empty if caching is disabled.
+     */
+    protected Map<String, Long> getConfigCacheOccupancy() {
+        return configCache == null ? Collections.emptyMap() : configCache.weights();
+    }
+
+    /**
+     * Rough estimate of the heap retained by a tenant's cached config properties.
+     */
+    private static long estimateConfigSize(String tenantId, Map<String, String> properties) {
+        long size = 64 + estimateSize(tenantId);
+        if (properties instanceof CompactStringMap) {
+            return size + ((CompactStringMap) properties).estimatedSize();
+        }
+        for (Map.Entry<String, String> entry : properties.entrySet()) {
+            size += 32 + estimateSize(entry.getKey()) + estimateSize(entry.getValue());
+        }
+        return size;
+    }
+
+    private static long estimateSize(String value) {
+        return value == null ? 0 : 40 + value.length();
+    }
+
+    private String selectConfigPropertyValue(Handle handle, String tenantId, String propertyName) {
+        return handle.createQuery(sqlStatements.selectConfigPropertyByName())
+                .bind(0, tenantId)
+                .bind(1, propertyName)
+                .map(DynamicConfigPropertyDtoMapper.instance)
+                .findOne()
+                .map(DynamicConfigPropertyDto::getValue)
+                .orElse(null);
+    }
+
+    /**
+     * @see io.apicurio.common.apps.config.DynamicConfigStorage#addConfigChangeListener(io.apicurio.common.apps.config.DynamicConfigChangeListener)
+     */
+    @Override
+    public void addConfigChangeListener(DynamicConfigChangeListener listener) {
+        configChangeListeners.add(listener);
+    }
+
+    /**
+     * @see io.apicurio.common.apps.config.DynamicConfigStorage#removeConfigChangeListener(io.apicurio.common.apps.config.DynamicConfigChangeListener)
+     */
+    @Override
+    public void removeConfigChangeListener(DynamicConfigChangeListener listener) {
+        configChangeListeners.remove(listener);
+    }
+
+    /**
+     * Notifies registered listeners and CDI observers that a dynamic config property has changed.  If
+     * called within a transaction, they are notified once (and only if) the transaction commits.
+     * @param event the change event
+     */
+    protected void fireConfigPropertyChanged(DynamicConfigChangedEvent event) {
+        fireConfigPropertiesChanged(Collections.singletonList(event));
+    }
+
+    private void fireConfigPropertiesChanged(List<DynamicConfigChangedEvent> events) {
+        Set<String> tenantIds = events.stream().map(DynamicConfigChangedEvent::getTenantId).collect(Collectors.toSet());
+        if (configCache != null) {
+            tenantIds.forEach(this::evictConfig);
+        }
+        TransactionSynchronizationRegistry registry = txSyncRegistry.isResolvable() ? txSyncRegistry.get() : null;
+        if (registry == null || registry.getTransactionStatus() != Status.STATUS_ACTIVE) {
+            events.forEach(this::notifyConfigPropertyChanged);
+            return;
+        }
+        registry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                // A concurrent read may have re-loaded the not yet committed state in the meantime
+                if (configCache != null) {
+                    tenantIds.forEach(AbstractSqlStorage.this::evictConfig);
+                }
+                if (status == Status.STATUS_COMMITTED) {
+                    events.forEach(AbstractSqlStorage.this::notifyConfigPropertyChanged);
+                }
+            }
         });
     }
 
+    private void notifyConfigPropertyChanged(DynamicConfigChangedEvent event) {
+        log.debug("Dynamic config property changed: {}", event);
+        for (DynamicConfigChangeListener listener : configChangeListeners) {
+            try {
+                listener.onConfigPropertyChanged(event);
+            } catch (Exception e) {
+                log.warn("Error notifying config change listener.", e);
+            }
+        }
+        configChangedEvent.fire(event);
+    }
+
+    private void rememberConfigVersion(String tenantId, String propertyName, long modifiedOn) {
+        // Without the poller nothing would ever prune the entry
+        if (remoteChangesPoller != null) {
+            knownConfigVersions.put(versionKey(tenantId, propertyName), modifiedOn);
+        }
+    }
+
+    /**
+     * @param propertyName the property, or null for the time of the last bulk write of the tenant
+     */
+    private static String versionKey(String tenantId, String propertyName) {
+        return propertyName == null ? tenantId : tenantId + '\n' + propertyName;
+    }
+
+    /**
+     * Detects config properties that were changed by other nodes since the given instant and fires a
+     * (remote) change event for each of them.  Called every app.config.remote-changes.poll-seconds, and
+     * may also be called by applications (e.g. from the job that refreshes their own caches).  Several
+     * properties of the same tenant detected by the same call are reported with a single bulk event
+     * (see {@link DynamicConfigChangedEvent#isBulk()}).  Changes already reported, and (while the
+     * poller runs) changes made by this node, are skipped.  Note that the previous value of a remotely
+     * changed property is not known, and that deleted properties cannot be detected this way.
+     * @param since only detect properties modified at or after this instant
+     * @return the changed properties
+     */
+    protected List<TenantDynamicConfigPropertyDto> detectRemoteConfigChanges(Instant since) {
+        log.debug("Detecting config properties modified since: {}", since);
+        List<TenantDynamicConfigPropertyDto> changed = new ArrayList<>();
+        handles.withEachShard( handle -> {
+            String sql = sqlStatements.selectConfigPropertiesByModifiedOn();
+            return handle.createQuery(sql)
+                    .bind(0, since.toEpochMilli())
+                    .map(TenantDynamicConfigPropertyDtoMapper.instance)
+                    .list();
+        }).forEach(rows -> rows.forEach(dto -> {
+            Long known = knownConfigVersions.put(versionKey(dto.getTenantId(), dto.getName()), dto.getModifiedOn());
+            Long bulk = knownConfigVersions.get(versionKey(dto.getTenantId(), null));
+            if ((known == null || known < dto.getModifiedOn()) && (bulk == null || bulk < dto.getModifiedOn())) {
+                changed.add(dto);
+            }
+        }));
+        // Rows older than the window cannot be returned again
+        knownConfigVersions.values().removeIf(modifiedOn -> modifiedOn < since.toEpochMilli());
+        if (!changed.isEmpty()) {
+            // Several changes of the same tenant (e.g. an import) are reported with a single bulk event
+            Map<String, List<TenantDynamicConfigPropertyDto>> byTenant = changed.stream()
+                    .collect(Collectors.groupingBy(TenantDynamicConfigPropertyDto::getTenantId));
+            fireConfigPropertiesChanged(byTenant.values().stream()
+                    .map(rows -> rows.size() == 1
+                            ? new DynamicConfigChangedEvent(rows.get(0).getTenantId(), rows.get(0).getName(), null, rows.get(0).getValue(), true)
+                            : new DynamicConfigChangedEvent(rows.get(0).getTenantId(), true))
+                    .collect(Collectors.toList()));
+        }
+        return changed;
+    }
+
+    /**
+     * Returns a page of config properties across all tenants, ordered by tenant id and then property
+     * name, starting strictly after the given position.  Pages are found by key (not by offset), with a
+     * row-value predicate the database can answer with a range seek on the (tenantId, pname) primary
+     * key, so reading all properties page by page has constant cost per page and constant memory.  If the
+     * storage is sharded, a page is read from every shard and the pages are merged.
+     * @param afterTenantId tenant id of the last property of the previous page (empty string to start)
+     * @param afterName name of the last property of the previous page (empty string to start)
+     * @param pageSize the maximum number of properties to return
+     */
+    public List<TenantDynamicConfigPropertyDto> getConfigPropertiesPage(String afterTenantId, String afterName, int pageSize) {
+        log.debug("Getting a page of config properties after: {}/{}", afterTenantId, afterName);
+        List<List<TenantDynamicConfigPropertyDto>> perShard = handles.withEachShard( handle -> {
+            String sql = sqlStatements.selectConfigPropertiesPage();
+            return handle.createQuery(sql)
+                    .bind(0, afterTenantId)
+                    .bind(1, afterName)
+                    .bind(2, pageSize)
+                    .map(TenantDynamicConfigPropertyDtoMapper.instance)
+                    .list();
+        });
+        if (perShard.size() == 1) {
+            return perShard.get(0);
+        }
+        return perShard.stream()
+                .flatMap(List::stream)
+                .sorted(Comparator.comparing(TenantDynamicConfigPropertyDto::getTenantId)
+                        .thenComparing(TenantDynamicConfigPropertyDto::getName))
+                .limit(pageSize)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Creates or replaces the given config properties (which may belong to any tenants) using a
+     * single batched statement.  The properties are stamped with the current time, so other nodes
+     * see them through {@link #detectRemoteConfigChanges(Instant)}; on this node a single bulk change
+     * event is fired per tenant once the transaction commits.  If the storage is sharded, one batch is
+     * written per shard (a transaction spanning several shards requires XA datasources).
+     * @param properties the properties to write
+     */
+    @Transactional
+    public void upsertConfigProperties(List<TenantDynamicConfigPropertyDto> properties) {
+        log.debug("Upserting a batch of {} config properties.", properties.size());
+        final long now = System.currentTimeMillis();
+        Map<String, List<TenantDynamicConfigPropertyDto>> byTenant = properties.stream()
+                .collect(Collectors.groupingBy(TenantDynamicConfigPropertyDto::getTenantId));
+        for (List<String> tenantIds : handles.groupByShard(byTenant.keySet())) {
+            handles.withHandle(tenantIds.get(0), handle -> {
+                PreparedBatch batch = handle.prepareBatch(sqlStatements.upsertConfigProperty());
+                for (String tenantId : tenantIds) {
+                    for (TenantDynamicConfigPropertyDto property : byTenant.get(tenantId)) {
+                        batch.bind(0, property.getTenantId())
+                             .bind(1, property.getName())
+                             .bind(2, property.getValue())
+                             .bind(3, now)
+                             .add();
+                    }
+                }
+                return batch.execute();
+            });
+        }
+        byTenant.keySet().forEach(tenantId -> rememberConfigVersion(tenantId, null, now));
+        fireConfigPropertiesChanged(byTenant.keySet().stream()
+                .map(tenantId -> new DynamicConfigChangedEvent(tenantId, false))
+                .collect(Collectors.toList()));
+    }
+
     protected List<String> getTenantsWithStaleConfigProperties(Instant since) {
         log.debug("Getting all tenant IDs with stale config properties.");
-        return handles.withHandle( handle -> {
+        return handles.withEachShard( handle -> {
             String sql = sqlStatements.selectTenantIdsByConfigModifiedOn();
             return handle.createQuery(sql)
                     .bind(0, since.toEpochMilli())
                     .mapTo(String.class)
                     .list();
-        });
+        }).stream().flatMap(List::stream).collect(Collectors.toList());
     }
 
 }
@@ -0,0 +1,320 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.storage.sql;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.event.Observes;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+
+import io.apicurio.common.apps.mt.MtProperties;
+import io.apicurio.common.apps.mt.TenantContext;
+import io.apicurio.common.apps.mt.TenantInfo;
+import io.apicurio.common.apps.mt.TenantInfoLoader;
+import io.apicurio.common.apps.mt.TenantManagerClient;
+import io.apicurio.common.apps.mt.TenantStatus;
+import io.apicurio.common.apps.storage.exceptions.StorageException;
+import io.apicurio.common.apps.storage.sql.jdbi.Handle;
+import io.apicurio.common.apps.storage.sql.jdbi.HandleFactory;
+import io.apicurio.common.apps.storage.sql.jdbi.PreparedBatch;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.runtime.StartupEvent;
+
+/**
+ * Purges the data of tenants the tenant manager has marked as TO_BE_DELETED, then marks them DELETED.
+ * Applications enable it by subclassing it as an application scoped bean, overriding
+ * {@link #deleteTenantData(Handle, String, int)} to purge their own tables (the config table is purged
+ * by default).
+ * <p>
+ * The reaper is built to stay out of the way of production traffic:
+ * <ul>
+ *   <li>data is deleted in batches of at most app.multitenancy.reaper.batch-size rows, each in its own
+ *       short transaction, so locks are held briefly and the transaction log stays small</li>
+ *   <li>it pauses between batches for app.multitenancy.reaper.batch-delay-ms, or for as long as the
+ *       batch took if that is longer (so it never keeps the database busy more than half the time)</li>
+ *   <li>at most app.multitenancy.reaper.max-tenants tenants are purged per run</li>
+ *   <li>only one node of the cluster runs it at a time, and at most once per
+ *       app.multitenancy.reaper.period-seconds, thanks to a lease row in the apicurio table</li>
+ * </ul>
+ * Every node checks whether a run is due every app.multitenancy.reaper.every.  Progress is published as
+ * the apicurio.tenant.reaper.tenants, apicurio.tenant.reaper.rows and apicurio.tenant.reaper.runs
+ * counters and the apicurio.tenant.reaper.pending gauge.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+public abstract class AbstractTenantReaper {
+
+    private static final String LEASE_NAME = "tenant_reaper_lease";
+    private static final long LEASE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    @Inject
+    protected Logger log;
+
+    @Inject
+    protected MtProperties mtProperties;
+
+    @Inject
+    protected HandleFactory handles;
+
+    @Inject
+    protected CommonSqlStatements sqlStatements;
+
+    @Inject
+    TenantInfoLoader tenantInfoLoader;
+
+    @Inject
+    Instance<MeterRegistry> meterRegistry;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final LongAdder purgedTenants = new LongAdder();
+    private final LongAdder deletedRows = new LongAdder();
+    private final LongAdder runs = new LongAdder();
+    private final AtomicInteger pendingTenants = new AtomicInteger();
+    private ScheduledExecutorService scheduler;
+    private String lease;
+
+    public void onStart(@Observes StartupEvent ev) {
+        if (!mtProperties.isMultitenancyEnabled() || !mtProperties.isReaperEnabled()) {
+            return;
+        }
+        if (tenantInfoLoader.getTenantManagerClient() == null) {
+            log.info("No tenant manager configured, the tenant reaper is disabled.");
+            return;
+        }
+        if (meterRegistry.isResolvable()) {
+            MeterRegistry registry = meterRegistry.get();
+            FunctionCounter.builder("apicurio.tenant.reaper.tenants", purgedTenants, LongAdder::sum)
+                    .description("Deleted tenants whose data has been purged")
+                    .register(registry);
+            FunctionCounter.builder("apicurio.tenant.reaper.rows", deletedRows, LongAdder::sum)
+                    .description("Rows deleted by the tenant reaper")
+                    .register(registry);
+            FunctionCounter.builder("apicurio.tenant.reaper.runs", runs, LongAdder::sum)
+                    .description("Runs of the tenant reaper on this node")
+                    .register(registry);
+            Gauge.builder("apicurio.tenant.reaper.pending", pendingTenants, AtomicInteger::get)
+                    .description("Tenants left to purge in the current run of the tenant reaper")
+                    .register(registry);
+        }
+        long every = mtProperties.getReaperEvery().toMillis();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tenant-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::run, every, every, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Purges the tenants marked as TO_BE_DELETED, if this node gets the lease.
+     */
+    public void run() {
+        try {
+            if (!acquireLease()) {
+                log.debug("Tenant reaper not due, or running on another node.");
+                return;
+            }
+            runs.increment();
+            try {
+                reap();
+            } finally {
+                // Keep the lease until the next run is due, so that no node runs again before then
+                releaseLease(System.currentTimeMillis() + mtProperties.getReaperPeriod().toMillis());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Error running the tenant reaper.", e);
+        }
+    }
+
+    private void reap() throws InterruptedException {
+        TenantManagerClient client = tenantInfoLoader.getTenantManagerClient();
+        List<TenantInfo> tenants = client.listTenants(TenantStatus.TO_BE_DELETED, 0, mtProperties.getReaperMaxTenants());
+        log.info("Tenant reaper found {} tenants to purge.", tenants.size());
+        pendingTenants.set(tenants.size());
+        for (TenantInfo tenant : tenants) {
+            String tenantId = tenant.getId();
+            if (TenantContext.DEFAULT_TENANT_ID.equals(tenantId)) {
+                pendingTenants.decrementAndGet();
+                continue;
+            }
+            long rows = purge(tenantId);
+            client.updateTenantStatus(tenantId, TenantStatus.DELETED);
+            tenantInfoLoader.invalidate(tenantId);
+            purgedTenants.increment();
+            pendingTenants.decrementAndGet();
+            log.info("Tenant reaper purged tenant {} ({} rows).", tenantId, rows);
+        }
+        pendingTenants.set(0);
+    }
+
+    /**
+     * Deletes the tenant's data batch by batch, pausing between batches and renewing the lease.
+     */
+    private long purge(String tenantId) throws InterruptedException {
+        int batchSize = mtProperties.getReaperBatchSize();
+        long delayMillis = mtProperties.getReaperBatchDelay().toMillis();
+        long total = 0;
+        while (true) {
+            long start = System.nanoTime();
+            int deleted = handles.withHandle(tenantId, handle -> deleteTenantData(handle, tenantId, batchSize));
+            if (deleted == 0) {
+                return total;
+            }
+            total += deleted;
+            deletedRows.add(deleted);
+            long tookMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            Thread.sleep(Math.max(delayMillis, tookMillis));
+            if (!renewLease()) {
+                throw new IllegalStateException("Tenant reaper lost its lease.");
+            }
+        }
+    }
+
+    /**
+     * Deletes (at most) one batch of the tenant's data.  Called repeatedly until it returns 0.  The default
+     * implementation deletes the tenant's config properties, applications override it to purge their own
+     * tables first (and then call super).
+     * @param handle the handle to use
+     * @param tenantId the tenant being purged
+     * @param batchSize the maximum number of rows to delete
+     * @return the number of rows deleted
+     */
+    protected int deleteTenantData(Handle handle, String tenantId, int batchSize) {
+        List<String> names = handle.createQuery(sqlStatements.selectConfigPropertyNamesByTenantId())
+                .bind(0, tenantId)
+                .bind(1, batchSize)
+                .mapTo(String.class)
+                .list();
+        if (names.isEmpty()) {
+            return 0;
+        }
+        if (names.size() < batchSize) {
+            // Last batch, remove whatever is left
+            return handle.createUpdate(sqlStatements.deleteAllConfigProperties())
+                    .bind(0, tenantId)
+                    .execute();
+        }
+        PreparedBatch batch = handle.prepareBatch(sqlStatements.deleteConfigProperty());
+        for (String name : names) {
+            batch.bind(0, tenantId)
+                 .bind(1, name)
+                 .add();
+        }
+        int[] counts = batch.execute();
+        int deleted = 0;
+        for (int count : counts) {
+            deleted += Math.max(count, 0);
+        }
+        return deleted;
+    }
+
+    /**
+     * Takes the lease if it is free (never taken, or expired).
+     */
+    private boolean acquireLease() {
+        long now = System.currentTimeMillis();
+        String value = leaseValue(now + LEASE_MILLIS);
+        return handles.withHandle(TenantContext.DEFAULT_TENANT_ID, handle -> {
+            String current = handle.createQuery(sqlStatements.selectLease())
+                    .bind(0, LEASE_NAME)
+                    .mapTo(String.class)
+                    .findOne()
+                    .orElse(null);
+            if (current == null) {
+                try {
+                    handle.createUpdate(sqlStatements.insertLease())
+                            .bind(0, LEASE_NAME)
+                            .bind(1, value)
+                            .execute();
+                } catch (StorageException e) {
+                    if (sqlStatements.isPrimaryKeyViolation(e)) {
+                        // Another node inserted it first
+                        return false;
+                    }
+                    throw e;
+                }
+            } else {
+                if (leaseExpiry(current) > now) {
+                    return false;
+                }
+                if (!compareAndSetLease(handle, current, value)) {
+                    return false;
+                }
+            }
+            lease = value;
+            return true;
+        });
+    }
+
+    private boolean renewLease() {
+        String value = leaseValue(System.currentTimeMillis() + LEASE_MILLIS);
+        return handles.withHandle(TenantContext.DEFAULT_TENANT_ID, handle -> {
+            if (!compareAndSetLease(handle, lease, value)) {
+                return false;
+            }
+            lease = value;
+            return true;
+        });
+    }
+
+    private void releaseLease(long until) {
+        String value = leaseValue(until);
+        handles.withHandle(TenantContext.DEFAULT_TENANT_ID, handle -> compareAndSetLease(handle, lease, value));
+    }
+
+    private boolean compareAndSetLease(Handle handle, String expected, String value) {
+        return handle.createUpdate(sqlStatements.updateLease())
+                .bind(0, value)
+                .bind(1, LEASE_NAME)
+                .bind(2, expected)
+                .execute() == 1;
+    }
+
+    private String leaseValue(long until) {
+        return nodeId + "|" + until;
+    }
+
+    private static long leaseExpiry(String value) {
+        try {
+            return Long.parseLong(value.substring(value.lastIndexOf('|') + 1));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.apicurio.common.apps.storage.sql;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.event.Observes;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+
+import io.apicurio.common.apps.mt.MtProperties;
+import io.apicurio.common.apps.mt.TenantContext;
+import io.apicurio.common.apps.mt.TenantUsage;
+import io.apicurio.common.apps.mt.TenantUsageTracker;
+import io.apicurio.common.apps.storage.sql.jdbi.Handle;
+import io.apicurio.common.apps.storage.sql.jdbi.HandleFactory;
+import io.apicurio.common.apps.storage.sql.jdbi.PreparedBatch;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.runtime.StartupEvent;
+
+/**
+ * Writes the tenant usage tracked in memory by {@link TenantUsageTracker} to the tenant_usage table
+ * (write-behind), so that usage is never counted on the write path and quota checks never touch the
+ * database.  Applications enable it by subclassing it as an application scoped bean (and setting
+ * app.multitenancy.usage.enabled).  The tenant_usage table is created at startup, on every shard, if
+ * it does not exist yet (see {@link CommonSqlStatements#tenantUsageInitialization()}); the DDL ships
+ * with this module as tenant-usage/h2.ddl and tenant-usage/postgresql.ddl, for databases managed by
+ * hand.
+ * The requests column holds the requests made in the quota window stored in requestsWindow (see
+ * {@link TenantUsageTracker#currentRequestWindow()}), and starts over when a later window is written.
+ * <ul>
+ *   <li>every app.multitenancy.usage.flush-seconds, the usage recorded on this node since the last flush
+ *       is added to the stored totals with batched upserts (app.multitenancy.usage.batch-size tenants per
+ *       batch), then the totals (including what other nodes wrote) are read back</li>
+ *   <li>usage that could not be written is kept, and written with the next flush</li>
+ *   <li>at startup the stored totals are loaded, then corrected with the usage counted by
+ *       {@link #countUsage(Handle)} (which applications may override to count their own data)</li>
+ *   <li>the usage recorded since the last flush is written when the application shuts down</li>
+ * </ul>
+ * Usage recorded on a node that dies before flushing is lost, until the next reconciliation.
+ * Progress is published as the apicurio.tenant.usage.writes and apicurio.tenant.usage.flush.errors
+ * counters and the apicurio.tenant.usage.tenants gauge.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+public abstract class AbstractTenantUsageWriter {
+
+    @Inject
+    protected Logger log;
+
+    @Inject
+    protected MtProperties mtProperties;
+
+    @Inject
+    protected HandleFactory handles;
+
+    @Inject
+    protected CommonSqlStatements sqlStatements;
+
+    @Inject
+    protected TenantUsageTracker usageTracker;
+
+    @Inject
+    Instance<MeterRegistry> meterRegistry;
+
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder flushErrors = new LongAdder();
+    private ScheduledExecutorService scheduler;
+
+    public void onStart(@Observes StartupEvent ev) {
+        if (!mtProperties.isMultitenancyEnabled() || !mtProperties.isUsageEnabled()) {
+            return;
+        }
+        if (meterRegistry.isResolvable()) {
+            MeterRegistry registry = meterRegistry.get();
+            FunctionCounter.builder("apicurio.tenant.usage.writes", writes, LongAdder::sum)
+                    .description("Tenant usage rows written to the database")
+                    .register(registry);
+            FunctionCounter.builder("apicurio.tenant.usage.flush.errors", flushErrors, LongAdder::sum)
+                    .description("Failed attempts to write tenant usage to the database")
+                    .register(registry);
+            Gauge.builder("apicurio.tenant.usage.tenants", usageTracker, t -> t.getUsages().size())
+                    .description("Tenants whose usage is tracked on this node")
+                    .register(registry);
+        }
+        createTable();
+        reconcile();
+        long every = mtProperties.getUsageFlushPeriod().toMillis();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tenant-usage-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::run, every, every, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            try {
+                scheduler.awaitTermination(5, TimeUnit.SECONDS);
+                flush();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("Error writing tenant usage on shutdown.", e);
+            }
+        }
+    }
+
+    /**
+     * Writes the recorded usage and reads the totals back.
+     */
+    public void run() {
+        try {
+            flush();
+            loadTotals();
+        } catch (Exception e) {
+            log.error("Error writing tenant usage.", e);
+        }
+    }
+
+    /**
+     * Creates the tenant_usage table on every shard if it does not exist yet.  A failure (e.g. a
+     * database user without DDL rights) is logged, the table must then be created by hand.
+     */
+    protected void createTable() {
+        List<String> statements = sqlStatements.tenantUsageInitialization();
+        try {
+            handles.withEachShard(handle -> {
+                statements.forEach(statement -> handle.createUpdate(statement).execute());
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("Error creating the tenant_usage table, please create it using the tenant-usage DDL scripts.", e);
+        }
+    }
+
+    /**
+     * Loads the stored totals, then records the difference between the usage counted by
+     * {@link #countUsage(Handle)} and the stored totals, so that it is written with the next flush.
+     */
+    protected void reconcile() {
+        loadTotals();
+        Collection<TenantUsage> counted = handles.withHandle(TenantContext.DEFAULT_TENANT_ID, this::countUsage);
+        for (TenantUsage actual : counted) {
+            TenantUsage usage = usageTracker.getUsage(actual.getTenantId());
+            long bytes = actual.getStorageBytes() - usage.getStorageBytes();
+            long entities = actual.getEntities() - usage.getEntities();
+            if (bytes != 0 || entities != 0) {
+                log.info("Correcting the usage of tenant {} by {} bytes and {} entities.", actual.getTenantId(), bytes, entities);
+                usage.recordStorage(bytes, entities);
+            }
+        }
+        log.info("Loaded the usage of {} tenants.", usageTracker.getUsages().size());
+    }
+
+    /**
+     * Counts the data actually stored by each tenant, to correct drift in the stored totals (e.g. usage
+     * recorded by a node that died before writing it).  Counting is expensive and only done at startup.
+     * The default implementation counts nothing (the stored totals are trusted), applications override
+     * it to count their own tables.  Only the storage bytes and entities of the returned usages are used.
+     * @param handle the handle to use
+     * @return the usage of the tenants that were counted
+     */
+    protected Collection<TenantUsage> countUsage(Handle handle) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Adds the usage recorded since the last flush to the stored totals, in batches.
+     */
+    protected void flush() {
+        int batchSize = mtProperties.getUsageBatchSize();
+        List<TenantUsage> usages = new ArrayList<>(batchSize);
+        List<TenantUsage.Delta> deltas = new ArrayList<>(batchSize);
+        for (TenantUsage usage : usageTracker.getUsages()) {
+            TenantUsage.Delta delta = usage.drain();
+            if (delta.isEmpty()) {
+                continue;
+            }
+            usages.add(usage);
+            deltas.add(delta);
+            if (usages.size() == batchSize) {
+                write(usages, deltas);
+                usages.clear();
+                deltas.clear();
+            }
+        }
+        if (!usages.isEmpty()) {
+            write(usages, deltas);
+        }
+    }
+
+    private void write(List<TenantUsage> usages, List<TenantUsage.Delta> deltas) {
+        final long now = System.currentTimeMillis();
+        try {
+            handles.withHandle(TenantContext.DEFAULT_TENANT_ID, handle -> {
+                PreparedBatch batch = handle.prepareBatch(sqlStatements.upsertTenantUsage());
+                for (int i = 0; i < usages.size(); i++) {
+                    TenantUsage.Delta delta = deltas.get(i);
+                    batch.bind(0, usages.get(i).getTenantId())
+                         .bind(1, delta.getStorageBytes())
+                         .bind(2, delta.getEntities())
+                         .bind(3, delta.getRequests())
+                         .bind(4, delta.getRequestWindow())
+                         .bind(5, now)
+                         .add();
+                }
+                return batch.execute();
+            });
+            writes.add(usages.size());
+        } catch (Exception e) {
+            flushErrors.increment();
+            for (int i = 0; i < usages.size(); i++) {
+                usages.get(i).undrain(deltas.get(i));
+            }
+            log.warn("Error writing the usage of {} tenants, will retry with the next flush.", usages.size(), e);
+        }
+    }
+
+    /**
+     * Reads the stored totals, which include the usage written by other nodes.
+     */
+    private void loadTotals() {
+        handles.withHandle(TenantContext.DEFAULT_TENANT_ID, handle -> {
+            handle.createQuery(sqlStatements.selectTenantUsage())
+                    .map(rs -> {
+                        TenantUsage usage = usageTracker.getUsage(rs.getString("tenantId"));
+                        usage.setStoredTotals(rs.getLong("storageBytes"), rs.getLong("entities"), rs.getLong("requests"),
+                                rs.getLong("requestsWindow"));
+                        return usage;
+                    })
+                    .list();
+            return null;
+        });
+    }
+
+}
@@ -83,5 +83,43 @@ public interface CommonSqlStatements {
 
     public String selectTenantIdsByConfigModifiedOn();
 
+    public String selectConfigPropertiesByModifiedOn();
+
+    public String selectConfigPropertiesPage();
+
+    public String selectConfigPropertiesWithDefaults();
+
+    public String selectConfigPropertiesByTenantIds(int tenantCount);
+
+    public String selectRecentlyModifiedConfigTenantIds();
+
+    public String selectConfigPropertyByNameWithDefaults();
+
+    public String upsertConfigProperty();
+
+    public String selectConfigPropertyNamesByTenantId();
+
+    public String selectLease();
+
+    public String insertLease();
+
+    public String updateLease();
+
+
+    /*
+     * The next few statements support tenant usage accounting.
+     */
+
+    /**
+     * Returns the DDL statements that create the tenant_usage table if it does not exist yet.  They
+     * are safe to run against both new and existing databases.
+     * @return the DDL statements
+     */
+    public List<String> tenantUsageInitialization();
+
+    public String selectTenantUsage();
+
+    public String upsertTenantUsage();
+
 
 }
@@ -37,4 +37,11 @@ public interface Handle extends Closeable {
      */
     Update createUpdate(String sql);
 
+    /**
+     * Create a new batch from the given SQL.
+     * @param sql a SQL update statement
+     * @return a new PreparedBatch object created from the SQL
+     */
+    PreparedBatch prepareBatch(String sql);
+
 }
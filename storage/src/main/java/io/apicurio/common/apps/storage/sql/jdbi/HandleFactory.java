@@ -18,54 +18,253 @@ package io.apicurio.common.apps.storage.sql.jdbi;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
 
 import io.agroal.api.AgroalDataSource;
 import io.apicurio.common.apps.core.AppException;
+import io.apicurio.common.apps.mt.TenantContext;
+import io.apicurio.common.apps.mt.TenantInfo;
+import io.apicurio.common.apps.mt.context.FairTenantExecutor;
+import io.apicurio.common.apps.mt.metrics.TenantMetrics;
 import io.apicurio.common.apps.storage.exceptions.AlreadyExistsException;
 import io.apicurio.common.apps.storage.exceptions.StorageException;
 import io.apicurio.common.apps.storage.sql.CommonSqlStatements;
+import io.apicurio.common.apps.storage.sql.shard.TenantShard;
+import io.apicurio.common.apps.storage.sql.shard.TenantShardMigration;
+import io.apicurio.common.apps.storage.sql.shard.TenantShardRouter;
 
 /**
+ * Opens handles on the database.  If the storage is sharded (see {@link TenantShardRouter}), handles
+ * are opened on the shard of the current tenant, or of the tenant given explicitly.
+ *
  * @author eric.wittmann@gmail.com
  */
 @ApplicationScoped
 public class HandleFactory {
 
+    /**
+     * The transaction resource under which the turn held by a transaction is kept.
+     */
+    private static final Object TURN_KEY = HandleFactory.class.getName() + ".turn";
+
     @Inject
     AgroalDataSource dataSource;
 
     @Inject
     CommonSqlStatements sqlStatements;
 
-    private <R, X extends Exception> R _withHandle(HandleCallback<R, X> callback) throws X, SQLException {
+    @Inject
+    TenantContext tenantContext;
+
+    @Inject
+    TenantMetrics tenantMetrics;
+
+    @Inject
+    TenantShardRouter shardRouter;
+
+    @Inject
+    FairTenantExecutor fairExecutor;
+
+    @Inject
+    Instance<TransactionSynchronizationRegistry> txSyncRegistry;
+
+    private <R, X extends Exception> R _withHandle(String tenantId, HandleCallback<R, X> callback) throws X, SQLException {
+        if (!shardRouter.isEnabled()) {
+            return _withHandle(tenantId, dataSource, callback);
+        }
+        TenantShard shard = shardRouter.acquire(tenantId);
+        long start = System.nanoTime();
+        try {
+            return _withHandle(tenantId, shard.getDataSource(), callback);
+        } finally {
+            shard.record(System.nanoTime() - start);
+            shardRouter.release(tenantId);
+        }
+    }
+
+    private <R, X extends Exception> R _withHandle(String tenantId, AgroalDataSource dataSource, HandleCallback<R, X> callback) throws X, SQLException {
+        long start = System.nanoTime();
         try (Connection connection = dataSource.getConnection()) {
             Handle handleImpl = new HandleImpl(connection);
             return callback.withHandle(handleImpl);
+        } finally {
+            tenantMetrics.recordDbTime(tenantId, System.nanoTime() - start);
         }
     }
 
+    /**
+     * Work done outside of a request (e.g. at startup) is attributed to the default tenant.
+     */
+    private String currentTenantId() {
+        return tenantContext.getTenantId();
+    }
+
+    /**
+     * The info of the given tenant if it is the current one (for its scheduling weight).
+     */
+    private TenantInfo currentTenantInfo(String tenantId) {
+        TenantInfo info = tenantContext.getTenantInfo();
+        return info != null && info.getId().equals(tenantId) ? info : null;
+    }
+
+    /**
+     * Does database work on behalf of the current tenant.
+     * @param callback the work
+     */
     public <R, X extends Exception> R withHandle(HandleCallback<R, X> callback) throws X, AppException, StorageException, AlreadyExistsException {
+        return withHandle(currentTenantId(), callback);
+    }
+
+    /**
+     * Does database work on behalf of the given tenant, which need not be the current one.
+     * @param tenantId the unique tenant ID
+     * @param callback the work
+     */
+    public <R, X extends Exception> R withHandle(String tenantId, HandleCallback<R, X> callback) throws X, AppException, StorageException, AlreadyExistsException {
         try {
-            return _withHandle(callback);
-        } catch (SQLException e) {
-            if (sqlStatements.isPrimaryKeyViolation(e) || sqlStatements.isForeignKeyViolation(e)) {
-                throw new AlreadyExistsException(e);
-            } else {
-                throw new StorageException(e);
+            if (fairExecutor.isEnabled()) {
+                // Wait for the tenant's turn, so that a burst from one tenant does not starve the others
+                return withTurn(tenantId, () -> _withHandle(tenantId, callback));
             }
-        } catch (StorageException e) {
-            if (sqlStatements.isPrimaryKeyViolation(e) || sqlStatements.isForeignKeyViolation(e)) {
-                throw new AlreadyExistsException(e);
-            } else {
+            return _withHandle(tenantId, callback);
+        } catch (Exception e) {
+            throw mapException(e);
+        }
+    }
+
+    /**
+     * Runs database work in the tenant's turn.  Within a transaction, the turn is taken by the first
+     * unit of work and kept until the transaction completes: waiting for another turn while holding
+     * the transaction's locks could deadlock against the work holding the slots.
+     */
+    private <R> R withTurn(String tenantId, Callable<R> work) throws Exception {
+        TransactionSynchronizationRegistry registry = txSyncRegistry.isResolvable() ? txSyncRegistry.get() : null;
+        if (registry == null || registry.getTransactionStatus() != Status.STATUS_ACTIVE) {
+            return fairExecutor.callInTurn(tenantId, currentTenantInfo(tenantId), work);
+        }
+        if (registry.getResource(TURN_KEY) == null) {
+            Runnable turn = fairExecutor.acquireTurn(tenantId, currentTenantInfo(tenantId));
+            try {
+                registry.registerInterposedSynchronization(new Synchronization() {
+                    @Override
+                    public void beforeCompletion() {
+                    }
+
+                    @Override
+                    public void afterCompletion(int status) {
+                        turn.run();
+                    }
+                });
+            } catch (RuntimeException e) {
+                turn.run();
                 throw e;
             }
-        } catch (AppException e) {
-            throw e;
+            registry.putResource(TURN_KEY, turn);
+        }
+        return fairExecutor.callWithTurn(work);
+    }
+
+    /**
+     * Does the same database work on every shard (or once, if the storage is not sharded), e.g. to
+     * initialize the schema or to query across tenants.
+     * @param callback the work
+     * @return the result of each shard, in shard order
+     */
+    public <R, X extends Exception> List<R> withEachShard(HandleCallback<R, X> callback) throws X, AppException, StorageException, AlreadyExistsException {
+        List<R> rval = new ArrayList<>();
+        try {
+            if (!shardRouter.isEnabled()) {
+                rval.add(_withHandle(currentTenantId(), dataSource, callback));
+                return rval;
+            }
+            for (TenantShard shard : shardRouter.getShards()) {
+                long start = System.nanoTime();
+                try (Connection connection = shard.getDataSource().getConnection()) {
+                    rval.add(callback.withHandle(new HandleImpl(connection)));
+                } finally {
+                    shard.record(System.nanoTime() - start);
+                }
+            }
+            return rval;
         } catch (Exception e) {
-            throw new StorageException(e);
+            throw mapException(e);
+        }
+    }
+
+    /**
+     * Groups the given tenants by shard, so that work on many tenants can be done with one handle
+     * per shard.  A single group if the storage is not sharded.
+     * @param tenantIds the unique tenant IDs
+     */
+    public Collection<List<String>> groupByShard(Collection<String> tenantIds) {
+        if (!shardRouter.isEnabled()) {
+            return List.of(new ArrayList<>(tenantIds));
+        }
+        Map<TenantShard, List<String>> rval = new LinkedHashMap<>();
+        tenantIds.forEach(tenantId -> rval.computeIfAbsent(shardRouter.shardOf(tenantId), shard -> new ArrayList<>()).add(tenantId));
+        return rval.values();
+    }
+
+    /**
+     * True if the data of both tenants is in the same database, so that a single query can read both.
+     * @param tenantId1 a unique tenant ID
+     * @param tenantId2 another unique tenant ID
+     */
+    public boolean isColocated(String tenantId1, String tenantId2) {
+        return !shardRouter.isEnabled() || shardRouter.shardOf(tenantId1) == shardRouter.shardOf(tenantId2);
+    }
+
+    /**
+     * Moves a tenant to another shard, online.  The tenant's data is copied by the given migration while
+     * its work goes on, and its work is only put on hold to copy the changes made during the copy and to
+     * switch it over.  If the copy fails, the tenant stays where it was.
+     * @param tenantId the unique tenant ID
+     * @param shardName the name of the datasource of the target shard
+     * @param migration copies the tenant's data
+     * @see TenantShardRouter#move(String, String, TenantShardMigration)
+     */
+    public void moveTenant(String tenantId, String shardName, TenantShardMigration migration) throws AppException, StorageException {
+        if (!shardRouter.isEnabled()) {
+            throw new StorageException("Storage is not sharded (app.storage.shards is not configured).");
+        }
+        try {
+            shardRouter.move(tenantId, shardName, migration);
+        } catch (Exception e) {
+            throw mapException(e);
+        }
+    }
+
+    private AppException mapException(Exception e) {
+        if (e instanceof SQLException) {
+            SQLException sqlException = (SQLException) e;
+            if (sqlStatements.isPrimaryKeyViolation(sqlException) || sqlStatements.isForeignKeyViolation(sqlException)) {
+                return new AlreadyExistsException(e);
+            } else {
+                return new StorageException(e);
+            }
+        } else if (e instanceof StorageException) {
+            StorageException storageException = (StorageException) e;
+            if (sqlStatements.isPrimaryKeyViolation(storageException) || sqlStatements.isForeignKeyViolation(storageException)) {
+                return new AlreadyExistsException(e);
+            } else {
+                return storageException;
+            }
+        } else if (e instanceof AppException) {
+            return (AppException) e;
+        } else {
+            return new StorageException(e);
         }
     }
 
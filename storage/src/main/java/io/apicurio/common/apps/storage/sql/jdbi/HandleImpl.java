@@ -65,4 +65,12 @@ public class HandleImpl implements Handle {
         return update;
     }
 
+    /**
+     * @see io.apicurio.common.apps.storage.sql.jdbi.Handle#prepareBatch(java.lang.String)
+     */
+    @Override
+    public PreparedBatch prepareBatch(String sql) {
+        return new PreparedBatchImpl(connection, sql);
+    }
+
 }
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.storage.sql.jdbi;
+
+/**
+ * A statement executed once per set of bound parameters, sent to the DB as a single JDBC batch.
+ * Bind the parameters of a row and call {@link #add()}, then {@link #execute()} once all rows
+ * have been added.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+public interface PreparedBatch extends Sql<PreparedBatch> {
+
+    /**
+     * Adds the currently bound parameters as a row of the batch and clears them for the next row.
+     */
+    public PreparedBatch add();
+
+    /**
+     * @return the number of rows in the batch
+     */
+    public int size();
+
+    /**
+     * Executes the batch.
+     * @return the update counts, one per row
+     */
+    public int[] execute();
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.storage.sql.jdbi;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.apicurio.common.apps.storage.exceptions.StorageException;
+
+/**
+ * @author eric.wittmann@gmail.com
+ */
+public class PreparedBatchImpl extends SqlImpl<PreparedBatch> implements PreparedBatch {
+
+    private final List<List<SqlParam>> rows = new ArrayList<>();
+
+    /**
+     * Constructor.
+     * @param connection a DB connection
+     * @param sql a SQL statement
+     */
+    public PreparedBatchImpl(Connection connection, String sql) {
+        super(connection, sql);
+    }
+
+    /**
+     * @see io.apicurio.common.apps.storage.sql.jdbi.PreparedBatch#add()
+     */
+    @Override
+    public PreparedBatch add() {
+        rows.add(new ArrayList<>(parameters));
+        parameters.clear();
+        return this;
+    }
+
+    /**
+     * @see io.apicurio.common.apps.storage.sql.jdbi.PreparedBatch#size()
+     */
+    @Override
+    public int size() {
+        return rows.size();
+    }
+
+    /**
+     * @see io.apicurio.common.apps.storage.sql.jdbi.PreparedBatch#execute()
+     */
+    @Override
+    public int[] execute() {
+        if (rows.isEmpty()) {
+            return new int[0];
+        }
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (List<SqlParam> row : rows) {
+                row.forEach(param -> param.bindTo(statement));
+                statement.addBatch();
+            }
+            return statement.executeBatch();
+        } catch (SQLException e) {
+            throw new StorageException(e);
+        }
+    }
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.storage.sql.jdbi.mappers;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import io.apicurio.common.apps.config.TenantDynamicConfigPropertyDto;
+import io.apicurio.common.apps.storage.sql.jdbi.RowMapper;
+
+/**
+ * @author eric.wittmann@gmail.com
+ */
+public class TenantDynamicConfigPropertyDtoMapper implements RowMapper<TenantDynamicConfigPropertyDto> {
+
+    public static final TenantDynamicConfigPropertyDtoMapper instance = new TenantDynamicConfigPropertyDtoMapper();
+
+    /**
+     * Constructor.
+     */
+    private TenantDynamicConfigPropertyDtoMapper() {
+    }
+
+    /**
+     * @see io.apicurio.common.apps.storage.sql.jdbi.RowMapper#map(java.sql.ResultSet)
+     */
+    @Override
+    public TenantDynamicConfigPropertyDto map(ResultSet rs) throws SQLException {
+        String tenantId = rs.getString("tenantId");
+        String name = rs.getString("pname");
+        String value = rs.getString("pvalue");
+        long modifiedOn = rs.getLong("modifiedOn");
+        return new TenantDynamicConfigPropertyDto(tenantId, name, value, modifiedOn);
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.storage.sql.shard;
+
+import java.util.Arrays;
+import java.util.List;
+
+import io.apicurio.common.apps.util.HashUtil;
+
+/**
+ * A consistent-hash ring of shards.  Every shard is placed on the ring at a number of pseudo-random
+ * points (virtual nodes), and a key belongs to the shard owning the first point at or after the key's
+ * hash.  Adding or removing a shard therefore only moves the keys of about 1/N of the ring, and the
+ * virtual nodes keep the keys evenly spread.  Keys and points are hashed with {@link HashUtil#hash64(String)},
+ * which is stable across JVMs, so every node maps each tenant to the same shard.  Immutable.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+class ConsistentHashRing<S> {
+
+    private final long[] points;
+    private final Object[] owners;
+
+    /**
+     * Constructor.
+     * @param shards the shards, each identified by its name
+     * @param names the names of the shards (same order as the shards)
+     * @param virtualNodes number of points of each shard on the ring
+     */
+    ConsistentHashRing(List<S> shards, List<String> names, int virtualNodes) {
+        int count = shards.size() * virtualNodes;
+        long[] keys = new long[count];
+        int[] order = new int[count];
+        for (int s = 0; s < shards.size(); s++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                int i = s * virtualNodes + v;
+                keys[i] = HashUtil.hash64(names.get(s) + "#" + v);
+                order[i] = s;
+            }
+        }
+        // Sort the points (and their owners along with them)
+        Integer[] idx = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            idx[i] = i;
+        }
+        Arrays.sort(idx, (a, b) -> Long.compare(keys[a], keys[b]));
+        this.points = new long[count];
+        this.owners = new Object[count];
+        for (int i = 0; i < count; i++) {
+            this.points[i] = keys[idx[i]];
+            this.owners[i] = shards.get(order[idx[i]]);
+        }
+    }
+
+    /**
+     * Returns the shard owning the given key.
+     * @param key the key (e.g. a tenant ID)
+     */
+    @SuppressWarnings("unchecked")
+    S get(String key) {
+        int i = Arrays.binarySearch(points, HashUtil.hash64(key));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return (S) owners[i == points.length ? 0 : i];
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.storage.sql.shard;
+
+import java.util.concurrent.TimeUnit;
+
+import io.agroal.api.AgroalDataSource;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * One database of a sharded storage: a named Agroal datasource (with its own connection pool) and
+ * the metrics of the work done on it.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+public class TenantShard {
+
+    private final String name;
+    private final AgroalDataSource dataSource;
+    private final Timer timer;
+
+    /**
+     * Constructor.
+     * @param name the name of the datasource
+     * @param dataSource the datasource
+     * @param timer times the work done on the shard (may be null)
+     */
+    TenantShard(String name, AgroalDataSource dataSource, Timer timer) {
+        this.name = name;
+        this.dataSource = dataSource;
+        this.timer = timer;
+    }
+
+    /**
+     * @return the name of the datasource
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the datasource
+     */
+    public AgroalDataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * Records work done on the shard.
+     * @param durationNanos how long the work took
+     */
+    public void record(long durationNanos) {
+        if (timer != null) {
+            timer.record(durationNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
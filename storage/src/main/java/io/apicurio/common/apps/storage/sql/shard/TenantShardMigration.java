@@ -0,0 +1,66 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.storage.sql.shard;
+
+import java.time.Instant;
+
+import io.apicurio.common.apps.storage.sql.jdbi.Handle;
+
+/**
+ * Copies the data of a tenant from one shard to another, see
+ * {@link io.apicurio.common.apps.storage.sql.jdbi.HandleFactory#moveTenant(String, String, TenantShardMigration)}.
+ * Only the application knows which tables hold tenant data, so it provides the migration.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+public interface TenantShardMigration {
+
+    /**
+     * Copies all data of the tenant from the source shard to the target shard.  Called while the
+     * tenant's work goes on, so the data may change during the copy (see
+     * {@link #copyChanges(String, Handle, Handle, Instant)}).  The target should not hold any data of
+     * the tenant (left-overs of a failed move must be replaced).
+     * @param tenantId the tenant being moved
+     * @param source a handle on the tenant's current shard
+     * @param target a handle on the tenant's new shard
+     */
+    void copy(String tenantId, Handle source, Handle target) throws Exception;
+
+    /**
+     * Brings the target shard up to date with the changes made to the tenant's data since the copy
+     * started, including deletions.  Called while the tenant's database work is on hold, so this
+     * should be quick: migrations whose tables record when rows were modified should only copy those
+     * rows.  By default the whole copy is done again.
+     * @param tenantId the tenant being moved
+     * @param source a handle on the tenant's current shard
+     * @param target a handle on the tenant's new shard
+     * @param since when the copy started (all changes made later were made by work that started later)
+     */
+    default void copyChanges(String tenantId, Handle source, Handle target, Instant since) throws Exception {
+        copy(tenantId, source, target);
+    }
+
+    /**
+     * Deletes the data of the tenant from its previous shard, once the tenant has been switched
+     * over to the new one.  Does nothing by default (the data is left behind).
+     * @param tenantId the tenant that was moved
+     * @param source a handle on the tenant's previous shard
+     */
+    default void cleanup(String tenantId, Handle source) throws Exception {
+    }
+
+}
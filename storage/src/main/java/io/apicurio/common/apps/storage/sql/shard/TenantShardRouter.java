@@ -0,0 +1,402 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.storage.sql.shard;
+
+import java.sql.Connection;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+
+import io.agroal.api.AgroalDataSource;
+import io.apicurio.common.apps.storage.exceptions.StorageException;
+import io.apicurio.common.apps.storage.sql.jdbi.HandleImpl;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.agroal.runtime.DataSources;
+
+/**
+ * Maps tenants to shards, i.e. to one of several named Agroal datasources, so that the tenants of a
+ * deployment can be spread over several databases.  Sharding is enabled by listing the datasources in
+ * app.storage.shards (use &lt;default&gt; for the default datasource), e.g.:
+ * <pre>
+ * app.storage.shards=shard1,shard2
+ * quarkus.datasource.shard1.jdbc.url=jdbc:h2:mem:shard1
+ * quarkus.datasource.shard2.jdbc.url=jdbc:h2:mem:shard2
+ * </pre>
+ * A tenant is placed on a consistent-hash ring of the shards (app.storage.shards.virtual-nodes points
+ * per shard), unless it is explicitly assigned to a shard in app.storage.shards.assignments (a list of
+ * tenantId=shard entries) or at runtime.  Each shard has its own connection pool, and its work is timed
+ * by the apicurio.storage.shard.time timer (tagged with "shard").
+ * <p>
+ * A tenant can be moved to another shard online (see {@link #move(String, String, TenantShardMigration)}):
+ * its data is copied while its work goes on, and its work is only put on hold to copy the changes made
+ * in the meantime and switch it over.  Draining the tenant's work in progress before a hold may take
+ * at most app.storage.shards.move-timeout-ms, and work put on hold waits for at most
+ * app.storage.shards.move-wait-timeout-ms.  Runtime assignments are only known to this node, applications running more
+ * than one node must propagate them (see {@link #assign(String, String)}) and persist them in the
+ * configuration.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+@ApplicationScoped
+public class TenantShardRouter {
+
+    private static final long DRAIN_POLL_MILLIS = 1;
+
+    @Inject
+    Logger log;
+
+    @ConfigProperty(name = "app.storage.shards")
+    Optional<List<String>> shardNames;
+
+    @ConfigProperty(name = "app.storage.shards.virtual-nodes", defaultValue = "160")
+    int virtualNodes;
+
+    @ConfigProperty(name = "app.storage.shards.assignments")
+    Optional<List<String>> configuredAssignments;
+
+    @ConfigProperty(name = "app.storage.shards.move-timeout-ms", defaultValue = "5000")
+    long moveTimeoutMillis;
+
+    @ConfigProperty(name = "app.storage.shards.move-wait-timeout-ms", defaultValue = "30000")
+    long moveWaitTimeoutMillis;
+
+    @Inject
+    Instance<MeterRegistry> meterRegistry;
+
+    private Map<String, TenantShard> shards = Collections.emptyMap();
+    private ConsistentHashRing<TenantShard> ring;
+
+    /**
+     * Tenants that do not (only) follow the ring: explicitly assigned or being moved.
+     */
+    private final ConcurrentHashMap<String, Assignment> assignments = new ConcurrentHashMap<>();
+
+    /**
+     * Number of handles each tenant currently holds, so that a move can wait for them to be released.
+     * Entries are removed when they drop to zero.
+     */
+    private final ConcurrentHashMap<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() {
+        if (shardNames.isEmpty() || shardNames.get().isEmpty()) {
+            return;
+        }
+        Map<String, AgroalDataSource> dataSources = new LinkedHashMap<>();
+        for (String name : shardNames.get()) {
+            dataSources.put(name.trim(), DataSources.fromName(name.trim()));
+        }
+        init(dataSources, meterRegistry.isResolvable() ? meterRegistry.get() : null);
+    }
+
+    /**
+     * Sets up the shards on the given datasources.
+     * @param dataSources the datasources, by name, in configuration order
+     * @param registry the meter registry (may be null)
+     */
+    void init(Map<String, AgroalDataSource> dataSources, MeterRegistry registry) {
+        Map<String, TenantShard> byName = new LinkedHashMap<>();
+        for (Map.Entry<String, AgroalDataSource> entry : dataSources.entrySet()) {
+            String shardName = entry.getKey();
+            AgroalDataSource dataSource = entry.getValue();
+            Timer timer = null;
+            if (registry != null) {
+                timer = Timer.builder("apicurio.storage.shard.time")
+                        .description("Time spent in the database, by shard")
+                        .tag("shard", shardName)
+                        .register(registry);
+                Gauge.builder("apicurio.storage.shard.connections.active", dataSource, ds -> ds.getMetrics().activeCount())
+                        .description("Connections in use, by shard (requires datasource metrics)")
+                        .tag("shard", shardName)
+                        .register(registry);
+            }
+            byName.put(shardName, new TenantShard(shardName, dataSource, timer));
+        }
+        shards = Collections.unmodifiableMap(byName);
+        List<TenantShard> list = new ArrayList<>(byName.values());
+        ring = new ConsistentHashRing<>(list, new ArrayList<>(byName.keySet()), virtualNodes);
+
+        configuredAssignments.ifPresent(entries -> entries.forEach(entry -> {
+            int idx = entry.indexOf('=');
+            if (idx <= 0) {
+                throw new IllegalArgumentException("Invalid tenant shard assignment (expected tenantId=shard): " + entry);
+            }
+            assign(entry.substring(0, idx).trim(), entry.substring(idx + 1).trim());
+        }));
+        log.info("Storage is sharded over {} datasources: {}", shards.size(), shards.keySet());
+    }
+
+    /**
+     * @return true if app.storage.shards is configured
+     */
+    public boolean isEnabled() {
+        return ring != null;
+    }
+
+    /**
+     * @return the shards, in configuration order
+     */
+    public List<TenantShard> getShards() {
+        return new ArrayList<>(shards.values());
+    }
+
+    /**
+     * Returns the shard the given tenant is currently on.
+     * @param tenantId the unique tenant ID
+     */
+    public TenantShard shardOf(String tenantId) {
+        Assignment assignment = assignments.get(tenantId);
+        return assignment != null ? assignment.shard : ring.get(tenantId);
+    }
+
+    /**
+     * Returns the tenants that are not placed by the ring (explicitly assigned or moved), with the
+     * names of their shards.
+     */
+    public Map<String, String> getAssignments() {
+        Map<String, String> rval = new HashMap<>();
+        assignments.forEach((tenantId, assignment) -> rval.put(tenantId, assignment.shard.getName()));
+        return rval;
+    }
+
+    /**
+     * Assigns the given tenant to a shard, without moving any data.  Used to restore assignments
+     * persisted elsewhere, or to tell other nodes about a move.
+     * @param tenantId the unique tenant ID
+     * @param shardName the name of the shard's datasource
+     */
+    public void assign(String tenantId, String shardName) {
+        TenantShard shard = getShard(shardName);
+        assignments.compute(tenantId, (id, current) -> {
+            if (current != null && current.target != null) {
+                throw new StorageException("Tenant " + tenantId + " is being moved to another shard.");
+            }
+            return new Assignment(shard, null, null);
+        });
+    }
+
+    /**
+     * Acquires the shard of the given tenant for a unit of database work.  If the tenant is being
+     * moved, waits for the move to complete.  Must be followed by {@link #release(String)}.
+     * @param tenantId the unique tenant ID
+     */
+    public TenantShard acquire(String tenantId) {
+        for (;;) {
+            AtomicInteger count = inFlight.computeIfAbsent(tenantId, id -> new AtomicInteger());
+            count.incrementAndGet();
+            if (inFlight.get(tenantId) != count) {
+                // Removed by a concurrent release, register again
+                count.decrementAndGet();
+                continue;
+            }
+            // Only read the assignment once registered, so that a move either sees us or we see it
+            Assignment assignment = assignments.get(tenantId);
+            if (assignment == null) {
+                return ring.get(tenantId);
+            }
+            if (assignment.moving == null) {
+                return assignment.shard;
+            }
+            release(tenantId);
+            awaitMove(tenantId, assignment.moving);
+        }
+    }
+
+    /**
+     * Releases the shard acquired by {@link #acquire(String)}.
+     * @param tenantId the unique tenant ID
+     */
+    public void release(String tenantId) {
+        AtomicInteger count = inFlight.get(tenantId);
+        if (count.decrementAndGet() == 0) {
+            inFlight.remove(tenantId, count);
+        }
+    }
+
+    /**
+     * Moves a tenant to another shard, online.  The tenant's data is copied by the given migration while
+     * its work goes on on its current shard.  Then its work is put on hold, the changes made during the
+     * copy are copied and the tenant is switched over to the new shard, where its work resumes.  Finally
+     * its data is cleaned up from the previous shard.  If a copy fails, the tenant stays where it was.
+     * <p>
+     * The work in progress is drained before the copy starts too (briefly putting new work on hold), so
+     * that every change made after the start of the copy is made by work that started after it.
+     * @param tenantId the unique tenant ID
+     * @param shardName the name of the datasource of the target shard
+     * @param migration copies the tenant's data
+     * @return false if the tenant already is on the target shard
+     */
+    public boolean move(String tenantId, String shardName, TenantShardMigration migration) throws Exception {
+        TenantShard target = getShard(shardName);
+        TenantShard source = shardOf(tenantId);
+        if (source == target) {
+            return false;
+        }
+        Assignment copying = new Assignment(source, null, target);
+        assignments.compute(tenantId, (id, current) -> {
+            if (current != null && current.target != null) {
+                throw new StorageException("Tenant " + tenantId + " is already being moved to another shard.");
+            }
+            if (current != null && current.shard != source) {
+                throw new StorageException("Tenant " + tenantId + " was assigned to another shard.");
+            }
+            return copying;
+        });
+        log.info("Moving tenant {} from shard {} to shard {}.", tenantId, source, target);
+        try {
+            hold(tenantId, copying);
+            Instant since = Instant.now();
+            resume(tenantId, copying);
+            try (Connection from = source.getDataSource().getConnection(); Connection to = target.getDataSource().getConnection()) {
+                migration.copy(tenantId, new HandleImpl(from), new HandleImpl(to));
+            }
+            CompletableFuture<Void> held = hold(tenantId, copying);
+            try (Connection from = source.getDataSource().getConnection(); Connection to = target.getDataSource().getConnection()) {
+                migration.copyChanges(tenantId, new HandleImpl(from), new HandleImpl(to), since);
+            }
+            assignments.put(tenantId, new Assignment(target, null, null));
+            held.complete(null);
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            abortMove(tenantId, source);
+            throw e;
+        }
+        log.info("Tenant {} moved to shard {}.", tenantId, target);
+        try (Connection from = source.getDataSource().getConnection()) {
+            migration.cleanup(tenantId, new HandleImpl(from));
+        }
+        return true;
+    }
+
+    /**
+     * Puts the new work of a tenant that is being moved on hold, and waits for its work in progress to
+     * complete.
+     * @return completed to resume the tenant's work
+     */
+    private CompletableFuture<Void> hold(String tenantId, Assignment copying) throws InterruptedException {
+        CompletableFuture<Void> held = new CompletableFuture<>();
+        assignments.put(tenantId, new Assignment(copying.shard, held, copying.target));
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(moveTimeoutMillis);
+        for (;;) {
+            AtomicInteger count = inFlight.get(tenantId);
+            if (count == null || count.get() == 0) {
+                return held;
+            }
+            if (System.nanoTime() - deadline > 0) {
+                throw new StorageException("Timed out waiting for the database work of tenant " + tenantId + " to complete.");
+            }
+            Thread.sleep(DRAIN_POLL_MILLIS);
+        }
+    }
+
+    /**
+     * Resumes the work of a tenant that is being moved, on its current shard.
+     */
+    private void resume(String tenantId, Assignment copying) {
+        Assignment held = assignments.put(tenantId, copying);
+        if (held != null && held.moving != null) {
+            held.moving.complete(null);
+        }
+    }
+
+    /**
+     * Cancels a move, the tenant stays on its current shard.
+     */
+    private void abortMove(String tenantId, TenantShard source) {
+        Assignment current = assignments.get(tenantId);
+        if (current == null || current.target == null) {
+            return;
+        }
+        if (ring.get(tenantId) == source) {
+            assignments.remove(tenantId, current);
+        } else {
+            assignments.replace(tenantId, current, new Assignment(source, null, null));
+        }
+        if (current.moving != null) {
+            current.moving.complete(null);
+        }
+        log.warn("Move of tenant {} aborted, it stays on shard {}.", tenantId, source);
+    }
+
+    /**
+     * Returns the shard with the given datasource name.
+     * @param shardName the name of the shard's datasource
+     */
+    public TenantShard getShard(String shardName) {
+        TenantShard shard = shards.get(shardName);
+        if (shard == null) {
+            throw new StorageException("Unknown shard: " + shardName);
+        }
+        return shard;
+    }
+
+    private void awaitMove(String tenantId, CompletableFuture<Void> move) {
+        try {
+            move.get(moveWaitTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new StorageException("Timed out waiting for tenant " + tenantId + " to move to another shard.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException(e);
+        } catch (ExecutionException e) {
+            throw new StorageException(e.getCause());
+        }
+    }
+
+    private static class Assignment {
+
+        final TenantShard shard;
+        /**
+         * Completed when the tenant's work may resume, null unless its work is on hold.
+         */
+        final CompletableFuture<Void> moving;
+        /**
+         * The shard the tenant is being moved to, null unless it is being moved.
+         */
+        final TenantShard target;
+
+        Assignment(TenantShard shard, CompletableFuture<Void> moving, TenantShard target) {
+            this.shard = shard;
+            this.moving = moving;
+            this.target = target;
+        }
+    }
+
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.storage.sql.transfer;
+
+/**
+ * Supported formats for bulk export/import of dynamic config properties.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+public enum ConfigTransferFormat {
+
+    /**
+     * One JSON object per line, with fields tenantId, name, value and modifiedOn.
+     */
+    NDJSON,
+
+    /**
+     * RFC 4180 CSV with a header row and columns tenantId, name, value and modifiedOn.
+     */
+    CSV
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.storage.sql.transfer;
+
+/**
+ * Progress of a bulk config export or import.  Every progress reported by a transfer marks a
+ * point that has been fully written (exported properties are flushed, imported properties are
+ * committed), so it can be persisted and passed back to resume an interrupted transfer.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+public class ConfigTransferProgress {
+
+    public static final ConfigTransferProgress START = new ConfigTransferProgress(0, "", "");
+
+    private final long records;
+    private final String lastTenantId;
+    private final String lastName;
+
+    /**
+     * Constructor.
+     * @param records number of records transferred so far
+     * @param lastTenantId tenant id of the last transferred record
+     * @param lastName property name of the last transferred record
+     */
+    public ConfigTransferProgress(long records, String lastTenantId, String lastName) {
+        this.records = records;
+        this.lastTenantId = lastTenantId;
+        this.lastName = lastName;
+    }
+
+    /**
+     * @return the number of records transferred so far
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * @return the tenant id of the last transferred record
+     */
+    public String getLastTenantId() {
+        return lastTenantId;
+    }
+
+    /**
+     * @return the property name of the last transferred record
+     */
+    public String getLastName() {
+        return lastName;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "ConfigTransferProgress [records=" + records + ", lastTenantId=" + lastTenantId + ", lastName="
+                + lastName + "]";
+    }
+
+}
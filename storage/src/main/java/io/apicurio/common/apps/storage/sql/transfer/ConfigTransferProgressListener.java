@@ -0,0 +1,33 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.storage.sql.transfer;
+
+/**
+ * Notified after each batch of a bulk config export or import has been written.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+@FunctionalInterface
+public interface ConfigTransferProgressListener {
+
+    /**
+     * Called after a batch was written.
+     * @param progress the progress so far (can be used to resume the transfer)
+     */
+    public void onProgress(ConfigTransferProgress progress);
+
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.storage.sql.transfer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.apicurio.common.apps.config.TenantDynamicConfigPropertyDto;
+import io.apicurio.common.apps.storage.sql.AbstractSqlStorage;
+
+/**
+ * Streams the dynamic config properties of all tenants to (export) or from (import) NDJSON or
+ * CSV.  Exports read the config table in pages ordered by (tenantId, name); imports write
+ * batches of upserts, each in its own transaction.  Only one batch is held in memory at a time.
+ * <p>
+ * Progress is reported after every batch.  To resume an interrupted export, append to the same
+ * output and pass the last reported progress to {@link #exportTo(Writer, ConfigTransferFormat, ConfigTransferProgress)}.
+ * To resume an interrupted import, pass the last reported progress to
+ * {@link #importFrom(Reader, ConfigTransferFormat, ConfigTransferProgress)} with the same input:
+ * the records already imported are skipped (re-importing them would be harmless anyway, since
+ * imports are upserts).
+ * <p>
+ * The modifiedOn value of imported records is ignored, imported properties are stamped with the
+ * time of the import.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+public class DynamicConfigTransfer {
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private static final String[] CSV_HEADER = { "tenantId", "name", "value", "modifiedOn" };
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private final AbstractSqlStorage<?> storage;
+    private final int batchSize;
+    private final ConfigTransferProgressListener listener;
+
+    /**
+     * Constructor.
+     * @param storage the storage to export from/import into
+     */
+    public DynamicConfigTransfer(AbstractSqlStorage<?> storage) {
+        this(storage, DEFAULT_BATCH_SIZE, progress -> {});
+    }
+
+    /**
+     * Constructor.
+     * @param storage the storage to export from/import into
+     * @param batchSize number of properties read or written per DB round trip
+     * @param listener notified after every batch
+     */
+    public DynamicConfigTransfer(AbstractSqlStorage<?> storage, int batchSize, ConfigTransferProgressListener listener) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.storage = storage;
+        this.batchSize = batchSize;
+        this.listener = listener;
+    }
+
+    /**
+     * Exports the config properties of all tenants.
+     * @param writer where to write the properties (not closed)
+     * @param format the output format
+     * @param resumeFrom progress of a previous, interrupted export to continue, or null to start from the beginning
+     * @return the final progress
+     */
+    public ConfigTransferProgress exportTo(Writer writer, ConfigTransferFormat format, ConfigTransferProgress resumeFrom) throws IOException {
+        ConfigTransferProgress progress = resumeFrom == null ? ConfigTransferProgress.START : resumeFrom;
+        if (resumeFrom == null && format == ConfigTransferFormat.CSV) {
+            writeCsvRecord(writer, CSV_HEADER);
+        }
+        JsonGenerator generator = null;
+        if (format == ConfigTransferFormat.NDJSON) {
+            generator = mapper.getFactory().createGenerator(writer);
+            generator.setRootValueSeparator(null);
+        }
+        List<TenantDynamicConfigPropertyDto> page;
+        do {
+            page = storage.getConfigPropertiesPage(progress.getLastTenantId(), progress.getLastName(), batchSize);
+            if (page.isEmpty()) {
+                break;
+            }
+            for (TenantDynamicConfigPropertyDto property : page) {
+                if (generator != null) {
+                    writeJsonRecord(generator, property);
+                } else {
+                    writeCsvRecord(writer, property.getTenantId(), property.getName(), property.getValue(),
+                            String.valueOf(property.getModifiedOn()));
+                }
+            }
+            if (generator != null) {
+                generator.flush();
+            }
+            writer.flush();
+            TenantDynamicConfigPropertyDto last = page.get(page.size() - 1);
+            progress = new ConfigTransferProgress(progress.getRecords() + page.size(), last.getTenantId(), last.getName());
+            listener.onProgress(progress);
+        } while (page.size() == batchSize);
+        return progress;
+    }
+
+    /**
+     * Imports config properties (of any number of tenants), creating or replacing them.
+     * @param reader where to read the properties from (not closed)
+     * @param format the input format
+     * @param resumeFrom progress of a previous, interrupted import of the same input, or null to start from the beginning
+     * @return the final progress
+     */
+    public ConfigTransferProgress importFrom(Reader reader, ConfigTransferFormat format, ConfigTransferProgress resumeFrom) throws IOException {
+        ConfigTransferProgress progress = resumeFrom == null ? ConfigTransferProgress.START : resumeFrom;
+        Iterator<TenantDynamicConfigPropertyDto> records = format == ConfigTransferFormat.NDJSON
+                ? readJsonRecords(reader) : readCsvRecords(new BufferedReader(reader));
+
+        long skip = progress.getRecords();
+        long count = 0;
+        List<TenantDynamicConfigPropertyDto> batch = new ArrayList<>(batchSize);
+        try {
+            while (hasNext(records)) {
+                TenantDynamicConfigPropertyDto property = next(records);
+                count++;
+                if (count <= skip) {
+                    continue;
+                }
+                if (property.getTenantId() == null || property.getName() == null || property.getValue() == null) {
+                    throw new IOException("Invalid config property at record " + count + ": " + property);
+                }
+                batch.add(property);
+                if (batch.size() == batchSize) {
+                    progress = flush(batch, count);
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (!batch.isEmpty()) {
+            progress = flush(batch, count);
+        }
+        return progress;
+    }
+
+    private ConfigTransferProgress flush(List<TenantDynamicConfigPropertyDto> batch, long count) {
+        storage.upsertConfigProperties(batch);
+        TenantDynamicConfigPropertyDto last = batch.get(batch.size() - 1);
+        ConfigTransferProgress progress = new ConfigTransferProgress(count, last.getTenantId(), last.getName());
+        batch.clear();
+        listener.onProgress(progress);
+        return progress;
+    }
+
+    private static void writeJsonRecord(JsonGenerator generator, TenantDynamicConfigPropertyDto property) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("tenantId", property.getTenantId());
+        generator.writeStringField("name", property.getName());
+        generator.writeStringField("value", property.getValue());
+        generator.writeNumberField("modifiedOn", property.getModifiedOn());
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    private static Iterator<TenantDynamicConfigPropertyDto> readJsonRecords(Reader reader) throws IOException {
+        MappingIterator<TenantDynamicConfigPropertyDto> iterator = mapper.readerFor(TenantDynamicConfigPropertyDto.class)
+                .readValues(reader);
+        return iterator;
+    }
+
+    private static boolean hasNext(Iterator<TenantDynamicConfigPropertyDto> records) throws IOException {
+        if (records instanceof MappingIterator) {
+            return ((MappingIterator<TenantDynamicConfigPropertyDto>) records).hasNextValue();
+        }
+        return records.hasNext();
+    }
+
+    private static TenantDynamicConfigPropertyDto next(Iterator<TenantDynamicConfigPropertyDto> records) throws IOException {
+        if (records instanceof MappingIterator) {
+            return ((MappingIterator<TenantDynamicConfigPropertyDto>) records).nextValue();
+        }
+        return records.next();
+    }
+
+    private static void writeCsvRecord(Writer writer, String... fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            String field = fields[i] == null ? "" : fields[i];
+            if (field.indexOf(',') >= 0 || field.indexOf('"') >= 0 || field.indexOf('\n') >= 0 || field.indexOf('\r') >= 0) {
+                writer.write('"');
+                writer.write(field.replace("\"", "\"\""));
+                writer.write('"');
+            } else {
+                writer.write(field);
+            }
+        }
+        writer.write("\r\n");
+    }
+
+    /**
+     * Reads CSV records (skipping the header row and blank lines), throwing an {@link UncheckedIOException}
+     * on read errors.
+     */
+    private static Iterator<TenantDynamicConfigPropertyDto> readCsvRecords(BufferedReader reader) {
+        return new Iterator<TenantDynamicConfigPropertyDto>() {
+            private boolean headerSkipped;
+            private TenantDynamicConfigPropertyDto next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    next = readNext();
+                }
+                return next != null;
+            }
+
+            @Override
+            public TenantDynamicConfigPropertyDto next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                TenantDynamicConfigPropertyDto rval = next;
+                next = null;
+                return rval;
+            }
+
+            private TenantDynamicConfigPropertyDto readNext() {
+                try {
+                    List<String> fields;
+                    while ((fields = readCsvRecord(reader)) != null) {
+                        if (fields.size() == 1 && fields.get(0).isEmpty()) {
+                            continue;
+                        }
+                        if (!headerSkipped) {
+                            headerSkipped = true;
+                            if (CSV_HEADER[0].equals(fields.get(0))) {
+                                continue;
+                            }
+                        }
+                        if (fields.size() < 3) {
+                            throw new IOException("Invalid CSV record (expected at least 3 columns): " + fields);
+                        }
+                        return new TenantDynamicConfigPropertyDto(fields.get(0), fields.get(1), fields.get(2), 0);
+                    }
+                    return null;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Reads a single (possibly multi-line, if quoted) CSV record, or returns null at the end of the input.
+     */
+    private static List<String> readCsvRecord(BufferedReader reader) throws IOException {
+        List<String> fields = new ArrayList<>(CSV_HEADER.length);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean read = false;
+        int c;
+        while ((c = reader.read()) != -1) {
+            read = true;
+            if (quoted) {
+                if (c == '"') {
+                    reader.mark(1);
+                    int n = reader.read();
+                    if (n == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        if (n != -1) {
+                            reader.reset();
+                        }
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+        }
+        if (!read) {
+            return null;
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+}
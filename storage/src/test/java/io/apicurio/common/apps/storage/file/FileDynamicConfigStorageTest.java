@@ -0,0 +1,278 @@
+package io.apicurio.common.apps.storage.file;
+
+import java.lang.annotation.Annotation;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.enterprise.event.Event;
+import javax.enterprise.event.NotificationOptions;
+import javax.enterprise.util.TypeLiteral;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.LoggerFactory;
+
+import io.apicurio.common.apps.config.DynamicConfigChangedEvent;
+import io.apicurio.common.apps.config.DynamicConfigPropertyDto;
+import io.apicurio.common.apps.mt.TenantContext;
+import io.apicurio.common.apps.storage.exceptions.NotFoundException;
+import io.apicurio.common.apps.storage.exceptions.StorageException;
+
+public class FileDynamicConfigStorageTest {
+
+    @TempDir
+    Path dir;
+
+    private final List<TestStorage> opened = new ArrayList<>();
+
+    @AfterEach
+    public void close() {
+        opened.forEach(TestStorage::closeFileStorage);
+    }
+
+    @Test
+    public void testSetGetDelete() {
+        TestStorage storage = open(10000);
+        Assertions.assertNull(storage.getConfigProperty("a"));
+
+        storage.setConfigProperty(new DynamicConfigPropertyDto("a", "1"));
+        storage.setConfigProperty(new DynamicConfigPropertyDto("b", "tab\tnew\nline\\"));
+        Assertions.assertEquals("1", storage.getConfigProperty("a").getValue());
+        Assertions.assertEquals("tab\tnew\nline\\", storage.getConfigProperty("b").getValue());
+        Assertions.assertEquals(2, storage.getConfigProperties().size());
+
+        storage.deleteConfigProperty("a");
+        Assertions.assertNull(storage.getConfigProperty("a"));
+        Assertions.assertThrows(NotFoundException.class, () -> storage.deleteConfigProperty("a"));
+
+        List<DynamicConfigChangedEvent> events = storage.events;
+        Assertions.assertEquals(3, events.size());
+        Assertions.assertEquals("1", events.get(2).getOldValue());
+        Assertions.assertNull(events.get(2).getNewValue());
+        Assertions.assertFalse(events.get(2).isRemote());
+    }
+
+    @Test
+    public void testChangesSurviveRestart() {
+        TestStorage storage = open(10000);
+        storage.setConfigProperty(new DynamicConfigPropertyDto("a", "1"));
+        storage.setConfigProperty(new DynamicConfigPropertyDto("b", "2"));
+        storage.deleteConfigProperty("b");
+        storage.closeFileStorage();
+
+        TestStorage reopened = open(10000);
+        Assertions.assertEquals("1", reopened.getConfigProperty("a").getValue());
+        Assertions.assertNull(reopened.getConfigProperty("b"));
+    }
+
+    @Test
+    public void testConcurrentWritesAreAllDurable() throws Exception {
+        TestStorage storage = open(10000);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                final int n = i;
+                futures.add(executor.submit(() -> storage.setConfigProperty(new DynamicConfigPropertyDto("p" + n, "v" + n))));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        storage.closeFileStorage();
+
+        TestStorage reopened = open(10000);
+        Assertions.assertEquals(200, reopened.getConfigProperties().size());
+        Assertions.assertEquals("v123", reopened.getConfigProperty("p123").getValue());
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        TestStorage storage = open(10);
+        for (int i = 0; i < 100; i++) {
+            storage.setConfigProperty(new DynamicConfigPropertyDto("a", "value-" + i));
+        }
+        storage.setConfigProperty(new DynamicConfigPropertyDto("b", "kept"));
+        // Compacted at least once: far fewer than the 101 records written
+        Assertions.assertTrue(Files.readAllLines(logFile()).size() <= 12);
+        // Compaction is not mistaken for an external edit
+        storage.reloadIfChangedExternally();
+        Assertions.assertTrue(storage.events.stream().noneMatch(DynamicConfigChangedEvent::isRemote));
+        storage.closeFileStorage();
+
+        TestStorage reopened = open(10);
+        Assertions.assertEquals("value-99", reopened.getConfigProperty("a").getValue());
+        Assertions.assertEquals("kept", reopened.getConfigProperty("b").getValue());
+    }
+
+    @Test
+    public void testCompactionFailureDoesNotFailWrites() throws Exception {
+        // A non-empty directory in the way of the compacted file makes every compaction fail
+        Path blocker = dir.resolve("config.log.compact");
+        Files.createDirectory(blocker);
+        Files.createFile(blocker.resolve("file"));
+
+        TestStorage storage = open(10);
+        for (int i = 0; i < 30; i++) {
+            storage.setConfigProperty(new DynamicConfigPropertyDto("a", "value-" + i));
+        }
+        Assertions.assertEquals("value-29", storage.getConfigProperty("a").getValue());
+        Assertions.assertEquals(30, Files.readAllLines(logFile()).size());
+
+        // Compaction succeeds again once the problem is gone
+        Files.delete(blocker.resolve("file"));
+        Files.delete(blocker);
+        storage.setConfigProperty(new DynamicConfigPropertyDto("a", "last"));
+        Assertions.assertEquals(1, Files.readAllLines(logFile()).size());
+        storage.setConfigProperty(new DynamicConfigPropertyDto("b", "kept"));
+        storage.closeFileStorage();
+
+        TestStorage reopened = open(10);
+        Assertions.assertEquals("last", reopened.getConfigProperty("a").getValue());
+        Assertions.assertEquals("kept", reopened.getConfigProperty("b").getValue());
+    }
+
+    @Test
+    public void testWriteAfterCloseFailsFast() {
+        TestStorage storage = open(10000);
+        storage.closeFileStorage();
+        Assertions.assertThrows(StorageException.class,
+                () -> storage.setConfigProperty(new DynamicConfigPropertyDto("a", "1")));
+    }
+
+    @Test
+    public void testIncompleteLastRecordIsTruncated() throws Exception {
+        Files.write(logFile(), "SET\t_\ta\t1\nSET\t_\tb".getBytes(StandardCharsets.UTF_8));
+        TestStorage storage = open(10000);
+        Assertions.assertEquals("1", storage.getConfigProperty("a").getValue());
+        Assertions.assertNull(storage.getConfigProperty("b"));
+
+        // The next append starts on a fresh line
+        storage.setConfigProperty(new DynamicConfigPropertyDto("c", "3"));
+        storage.closeFileStorage();
+        TestStorage reopened = open(10000);
+        Assertions.assertEquals("1", reopened.getConfigProperty("a").getValue());
+        Assertions.assertEquals("3", reopened.getConfigProperty("c").getValue());
+    }
+
+    @Test
+    public void testValidLastRecordWithoutNewlineIsKept() throws Exception {
+        TestStorage storage = open(10000);
+        storage.setConfigProperty(new DynamicConfigPropertyDto("a", "1"));
+
+        // Edited by hand, saved without a final newline
+        Files.write(logFile(), "SET\t_\ta\t1\nSET\t_\tb\t2".getBytes(StandardCharsets.UTF_8));
+        storage.reloadIfChangedExternally();
+        Assertions.assertEquals("2", storage.getConfigProperty("b").getValue());
+        Assertions.assertTrue(storage.events.get(storage.events.size() - 1).isRemote());
+
+        // The next append starts on a fresh line, and is not mistaken for an external edit
+        storage.setConfigProperty(new DynamicConfigPropertyDto("c", "3"));
+        int count = storage.events.size();
+        storage.reloadIfChangedExternally();
+        Assertions.assertEquals(count, storage.events.size());
+        storage.closeFileStorage();
+
+        TestStorage reopened = open(10000);
+        Assertions.assertEquals("1", reopened.getConfigProperty("a").getValue());
+        Assertions.assertEquals("2", reopened.getConfigProperty("b").getValue());
+        Assertions.assertEquals("3", reopened.getConfigProperty("c").getValue());
+    }
+
+    @Test
+    public void testOwnWritesAreNotReportedAsRemote() throws Exception {
+        TestStorage storage = open(10000);
+        storage.setConfigProperty(new DynamicConfigPropertyDto("a", "10"));
+        storage.reloadIfChangedExternally();
+        Assertions.assertEquals(1, storage.events.size());
+        Assertions.assertFalse(storage.events.get(0).isRemote());
+    }
+
+    @Test
+    public void testExternalEditKeepingTheSizeIsDetected() throws Exception {
+        TestStorage storage = open(10000);
+        storage.setConfigProperty(new DynamicConfigPropertyDto("a", "10"));
+        long size = Files.size(logFile());
+
+        String content = new String(Files.readAllBytes(logFile()), StandardCharsets.UTF_8);
+        Files.write(logFile(), content.replace("\t10\n", "\t20\n").getBytes(StandardCharsets.UTF_8));
+        Assertions.assertEquals(size, Files.size(logFile()));
+
+        storage.reloadIfChangedExternally();
+        Assertions.assertEquals("20", storage.getConfigProperty("a").getValue());
+        DynamicConfigChangedEvent event = storage.events.get(storage.events.size() - 1);
+        Assertions.assertTrue(event.isRemote());
+        Assertions.assertEquals("10", event.getOldValue());
+        Assertions.assertEquals("20", event.getNewValue());
+
+        // Appends after the reload are not reported as remote either
+        storage.setConfigProperty(new DynamicConfigPropertyDto("a", "30"));
+        int count = storage.events.size();
+        storage.reloadIfChangedExternally();
+        Assertions.assertEquals(count, storage.events.size());
+    }
+
+    private Path logFile() {
+        return dir.resolve("config.log");
+    }
+
+    private TestStorage open(long compactionThreshold) {
+        TestStorage storage = new TestStorage();
+        storage.log = LoggerFactory.getLogger(TestStorage.class);
+        storage.tenantContext = new TenantContext();
+        storage.configChangedEvent = storage;
+        storage.logFilePath = logFile().toString();
+        storage.compactionThreshold = compactionThreshold;
+        storage.watchEnabled = false;
+        storage.initFileStorage();
+        opened.add(storage);
+        return storage;
+    }
+
+    private static class TestStorage extends AbstractFileDynamicConfigStorage implements Event<DynamicConfigChangedEvent> {
+
+        final List<DynamicConfigChangedEvent> events = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void fire(DynamicConfigChangedEvent event) {
+            events.add(event);
+        }
+
+        @Override
+        public <U extends DynamicConfigChangedEvent> CompletionStage<U> fireAsync(U event) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <U extends DynamicConfigChangedEvent> CompletionStage<U> fireAsync(U event, NotificationOptions options) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Event<DynamicConfigChangedEvent> select(Annotation... qualifiers) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <U extends DynamicConfigChangedEvent> Event<U> select(Class<U> subtype, Annotation... qualifiers) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <U extends DynamicConfigChangedEvent> Event<U> select(TypeLiteral<U> subtype, Annotation... qualifiers) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package io.apicurio.common.apps.storage.sql;
+
+import java.lang.annotation.Annotation;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import javax.enterprise.event.Event;
+import javax.enterprise.event.NotificationOptions;
+import javax.enterprise.util.TypeLiteral;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import io.agroal.api.AgroalDataSource;
+import io.agroal.api.configuration.supplier.AgroalDataSourceConfigurationSupplier;
+import io.apicurio.common.apps.config.DynamicConfigChangedEvent;
+import io.apicurio.common.apps.config.DynamicConfigPropertyDto;
+import io.apicurio.common.apps.config.TenantDynamicConfigPropertyDto;
+import io.apicurio.common.apps.mt.TenantContext;
+import io.apicurio.common.apps.mt.TenantInfo;
+import io.apicurio.common.apps.mt.TenantStatus;
+import io.apicurio.common.apps.storage.exceptions.NotFoundException;
+import io.apicurio.common.apps.storage.sql.jdbi.TestHandleFactory;
+
+public class SqlDynamicConfigStorageTest {
+
+    private AgroalDataSource dataSource;
+    private final List<Integer> tenantIdsQueries = new CopyOnWriteArrayList<>();
+    private final AtomicInteger tenantQueries = new AtomicInteger();
+    private final List<TestStorage> opened = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        dataSource = AgroalDataSource.from(new AgroalDataSourceConfigurationSupplier()
+                .connectionPoolConfiguration(pool -> pool.maxSize(10)
+                        .connectionFactoryConfiguration(factory -> factory
+                                .jdbcUrl("jdbc:h2:mem:config-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1"))));
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE config (tenantId VARCHAR(128) NOT NULL, pname VARCHAR(255) NOT NULL, "
+                    + "pvalue VARCHAR(1024) NOT NULL, modifiedOn BIGINT NOT NULL, PRIMARY KEY (tenantId, pname))");
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        opened.forEach(TestStorage::stopRemoteConfigChangesPoller);
+        dataSource.close();
+    }
+
+    @Test
+    public void testBulkUpsertFiresOneEventPerTenant() {
+        TestStorage storage = open();
+        List<TenantDynamicConfigPropertyDto> batch = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            batch.add(new TenantDynamicConfigPropertyDto("tenant-" + (i % 2), "prop-" + i, "value-" + i, 0));
+        }
+        storage.upsertConfigProperties(batch);
+
+        Assertions.assertEquals(2, storage.events.size());
+        for (DynamicConfigChangedEvent event : storage.events) {
+            Assertions.assertTrue(event.isBulk());
+            Assertions.assertFalse(event.isRemote());
+        }
+        Assertions.assertEquals(List.of("tenant-0", "tenant-1"),
+                storage.events.stream().map(DynamicConfigChangedEvent::getTenantId).sorted().collect(Collectors.toList()));
+
+        // Not reported again as remote changes
+        Assertions.assertTrue(storage.detectRemoteConfigChanges(Instant.ofEpochMilli(0)).isEmpty());
+        Assertions.assertEquals(2, storage.events.size());
+    }
+
+    @Test
+    public void testRemoteChangesAreCoalescedPerTenant() throws Exception {
+        TestStorage storage = open();
+        long now = System.currentTimeMillis();
+        insert("tenant-1", "a", "1", now);
+        insert("tenant-1", "b", "2", now);
+        insert("tenant-2", "a", "3", now);
+
+        Assertions.assertEquals(3, storage.detectRemoteConfigChanges(Instant.ofEpochMilli(now)).size());
+        Assertions.assertEquals(2, storage.events.size());
+        DynamicConfigChangedEvent bulk = event(storage, "tenant-1");
+        Assertions.assertTrue(bulk.isBulk());
+        Assertions.assertTrue(bulk.isRemote());
+        DynamicConfigChangedEvent single = event(storage, "tenant-2");
+        Assertions.assertEquals("a", single.getName());
+        Assertions.assertEquals("3", single.getNewValue());
+        Assertions.assertTrue(single.isRemote());
+    }
+
+    @Test
+    public void testTenantInheritsGlobalValue() {
+        for (boolean cached : new boolean[] { false, true }) {
+            TestStorage storage = open(true, cached);
+            asTenant(null, () -> storage.setConfigProperty(new DynamicConfigPropertyDto("inherit-" + cached, "global")));
+            asTenant("t1", () -> {
+                Assertions.assertEquals("global", storage.getConfigProperty("inherit-" + cached).getValue());
+                Assertions.assertEquals("global", value(storage.getConfigProperties(), "inherit-" + cached));
+            });
+
+            // Changes to the global value are seen by the tenant
+            asTenant(null, () -> storage.setConfigProperty(new DynamicConfigPropertyDto("inherit-" + cached, "changed")));
+            asTenant("t1", () -> Assertions.assertEquals("changed", storage.getConfigProperty("inherit-" + cached).getValue()));
+        }
+    }
+
+    @Test
+    public void testTenantOverrideTakesPrecedence() {
+        for (boolean cached : new boolean[] { false, true }) {
+            TestStorage storage = open(true, cached);
+            String name = "override-" + cached;
+            asTenant(null, () -> storage.setConfigProperty(new DynamicConfigPropertyDto(name, "global")));
+            asTenant("t1", () -> {
+                Assertions.assertEquals("global", storage.getConfigProperty(name).getValue());
+                storage.setConfigProperty(new DynamicConfigPropertyDto(name, "tenant"));
+                Assertions.assertEquals("tenant", storage.getConfigProperty(name).getValue());
+                Assertions.assertEquals("tenant", value(storage.getConfigProperties(), name));
+            });
+            // Other tenants, and the global config itself, are not affected
+            asTenant("t2", () -> Assertions.assertEquals("global", storage.getConfigProperty(name).getValue()));
+            asTenant(null, () -> Assertions.assertEquals("global", storage.getConfigProperty(name).getValue()));
+        }
+    }
+
+    @Test
+    public void testDeletedOverrideFallsBackToGlobalValue() {
+        for (boolean cached : new boolean[] { false, true }) {
+            TestStorage storage = open(true, cached);
+            String name = "fallback-" + cached;
+            asTenant(null, () -> storage.setConfigProperty(new DynamicConfigPropertyDto(name, "global")));
+            asTenant("t1", () -> {
+                storage.setConfigProperty(new DynamicConfigPropertyDto(name, "tenant"));
+                Assertions.assertEquals("tenant", storage.getConfigProperty(name).getValue());
+                storage.deleteConfigProperty(name);
+                Assertions.assertEquals("global", storage.getConfigProperty(name).getValue());
+                Assertions.assertEquals("global", value(storage.getConfigProperties(), name));
+            });
+        }
+    }
+
+    @Test
+    public void testNoInheritanceWhenDisabled() {
+        for (boolean cached : new boolean[] { false, true }) {
+            TestStorage storage = open(false, cached);
+            String name = "disabled-" + cached;
+            asTenant(null, () -> storage.setConfigProperty(new DynamicConfigPropertyDto(name, "global")));
+            asTenant("t1", () -> {
+                Assertions.assertThrows(NotFoundException.class, () -> storage.getConfigProperty(name));
+                Assertions.assertNull(value(storage.getConfigProperties(), name));
+            });
+        }
+    }
+
+    @Test
+    public void testWarmUpLoadsTenantsInChunks() throws Exception {
+        for (int i = 0; i < 12; i++) {
+            insert("tenant-" + i, "a", "value-" + i, i);
+        }
+        TestStorage storage = open(false, true);
+        // The 10 most recently modified tenants, with one IN query per chunk of (at most) 3 tenants
+        Assertions.assertEquals(10, storage.warmUp(10));
+        Assertions.assertEquals(List.of(1, 3, 3, 3), tenantIdsQueries.stream().sorted().collect(Collectors.toList()));
+
+        // Served from the cache
+        tenantQueries.set(0);
+        for (int i = 2; i < 12; i++) {
+            String expected = "value-" + i;
+            asTenant("tenant-" + i, () -> Assertions.assertEquals(expected, storage.getConfigProperty("a").getValue()));
+        }
+        Assertions.assertEquals(0, tenantQueries.get());
+        asTenant("tenant-0", () -> Assertions.assertEquals("value-0", storage.getConfigProperty("a").getValue()));
+        Assertions.assertEquals(1, tenantQueries.get());
+    }
+
+    @Test
+    public void testWarmUpIsLimitedByTheCacheSize() throws Exception {
+        for (int i = 0; i < 12; i++) {
+            insert("tenant-" + i, "a", "value-" + i, i);
+        }
+        TestStorage storage = open(false, true);
+        storage.configCacheMaxTenants = 4;
+        Assertions.assertEquals(4, storage.warmUp(10));
+        Assertions.assertEquals(List.of(1, 3), tenantIdsQueries.stream().sorted().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testWarmUpDoesNothingWithoutCache() throws Exception {
+        insert("tenant-1", "a", "1", 1);
+        TestStorage storage = open(false, false);
+        Assertions.assertEquals(0, storage.warmUp(10));
+        Assertions.assertTrue(tenantIdsQueries.isEmpty());
+    }
+
+    private static String value(List<DynamicConfigPropertyDto> properties, String name) {
+        return properties.stream().filter(dto -> name.equals(dto.getName())).map(DynamicConfigPropertyDto::getValue)
+                .findFirst().orElse(null);
+    }
+
+    private static void asTenant(String tenantId, Runnable task) {
+        TenantInfo previous = TenantContext.bind(tenantId == null ? null : new TenantInfo(tenantId, null, null, TenantStatus.READY, null));
+        try {
+            task.run();
+        } finally {
+            TenantContext.bind(previous);
+        }
+    }
+
+    private static DynamicConfigChangedEvent event(TestStorage storage, String tenantId) {
+        return storage.events.stream().filter(event -> tenantId.equals(event.getTenantId())).findFirst().orElseThrow();
+    }
+
+    private void insert(String tenantId, String name, String value, long modifiedOn) throws Exception {
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement statement = connection.prepareStatement("INSERT INTO config (tenantId, pname, pvalue, modifiedOn) VALUES (?, ?, ?, ?)")) {
+            statement.setString(1, tenantId);
+            statement.setString(2, name);
+            statement.setString(3, value);
+            statement.setLong(4, modifiedOn);
+            statement.executeUpdate();
+        }
+    }
+
+    private TestStorage open() {
+        return open(false, false);
+    }
+
+    private TestStorage open(boolean inheritance, boolean cached) {
+        AbstractCommonSqlStatements sqlStatements = new AbstractCommonSqlStatements() {
+            @Override
+            public String dbType() {
+                return "h2";
+            }
+
+            @Override
+            public String selectConfigPropertiesByTenantIds(int tenantCount) {
+                tenantIdsQueries.add(tenantCount);
+                return super.selectConfigPropertiesByTenantIds(tenantCount);
+            }
+
+            @Override
+            public String selectConfigProperties() {
+                tenantQueries.incrementAndGet();
+                return super.selectConfigProperties();
+            }
+        };
+        TestStorage storage = new TestStorage();
+        storage.log = LoggerFactory.getLogger(AbstractSqlStorage.class);
+        storage.handles = TestHandleFactory.create(dataSource, sqlStatements);
+        storage.sqlStatements = sqlStatements;
+        storage.tenantContext = new TenantContext();
+        storage.configChangedEvent = storage;
+        storage.meterRegistry = TestInstance.empty();
+        storage.txSyncRegistry = TestInstance.empty();
+        storage.configInheritanceEnabled = inheritance;
+        storage.configCacheEnabled = cached;
+        storage.configCacheMaxTenants = 100;
+        storage.configCacheMaxBytes = 1024 * 1024;
+        storage.configWarmUpChunkSize = 3;
+        storage.configWarmUpParallelism = 2;
+        storage.initConfigCache();
+        // Running, but never due during a test
+        storage.remoteChangesPollSeconds = 3600;
+        storage.startRemoteConfigChangesPoller(null);
+        opened.add(storage);
+        return storage;
+    }
+
+    private static class TestStorage extends AbstractSqlStorage<CommonSqlStatements> implements Event<DynamicConfigChangedEvent> {
+
+        final List<DynamicConfigChangedEvent> events = new CopyOnWriteArrayList<>();
+
+        @Override
+        protected int dbVersion() {
+            return 1;
+        }
+
+        @Override
+        public void fire(DynamicConfigChangedEvent event) {
+            events.add(event);
+        }
+
+        @Override
+        public <U extends DynamicConfigChangedEvent> CompletionStage<U> fireAsync(U event) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <U extends DynamicConfigChangedEvent> CompletionStage<U> fireAsync(U event, NotificationOptions options) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Event<DynamicConfigChangedEvent> select(Annotation... qualifiers) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <U extends DynamicConfigChangedEvent> Event<U> select(Class<U> subtype, Annotation... qualifiers) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <U extends DynamicConfigChangedEvent> Event<U> select(TypeLiteral<U> subtype, Annotation... qualifiers) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
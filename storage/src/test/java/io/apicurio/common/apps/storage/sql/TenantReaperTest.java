@@ -0,0 +1,197 @@
+package io.apicurio.common.apps.storage.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import io.agroal.api.AgroalDataSource;
+import io.agroal.api.configuration.supplier.AgroalDataSourceConfigurationSupplier;
+import io.apicurio.common.apps.mt.LocalTenantManagerClient;
+import io.apicurio.common.apps.mt.MtProperties;
+import io.apicurio.common.apps.mt.TenantInfo;
+import io.apicurio.common.apps.mt.TenantInfoLoader;
+import io.apicurio.common.apps.mt.TenantManagerClient;
+import io.apicurio.common.apps.mt.TenantStatus;
+import io.apicurio.common.apps.storage.sql.jdbi.Handle;
+import io.apicurio.common.apps.storage.sql.jdbi.HandleFactory;
+import io.apicurio.common.apps.storage.sql.jdbi.TestHandleFactory;
+
+public class TenantReaperTest {
+
+    private AgroalDataSource dataSource;
+    private HandleFactory handles;
+    private LocalTenantManagerClient client;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        dataSource = AgroalDataSource.from(new AgroalDataSourceConfigurationSupplier()
+                .connectionPoolConfiguration(pool -> pool.maxSize(10)
+                        .connectionFactoryConfiguration(factory -> factory
+                                .jdbcUrl("jdbc:h2:mem:reaper-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1"))));
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE apicurio (prop_name VARCHAR(255) NOT NULL, prop_value VARCHAR(255), PRIMARY KEY (prop_name))");
+            statement.execute("CREATE TABLE config (tenantId VARCHAR(128) NOT NULL, pname VARCHAR(255) NOT NULL, "
+                    + "pvalue VARCHAR(1024) NOT NULL, modifiedOn BIGINT NOT NULL, PRIMARY KEY (tenantId, pname))");
+        }
+        handles = TestHandleFactory.create(dataSource, new AbstractCommonSqlStatements() {
+            @Override
+            public String dbType() {
+                return "h2";
+            }
+        });
+        client = new LocalTenantManagerClient();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Test
+    public void testPurgesInBatches() throws Exception {
+        addTenant("t1", TenantStatus.TO_BE_DELETED, 25);
+        addTenant("t2", TenantStatus.READY, 3);
+        TestReaper reaper = reaper();
+
+        reaper.run();
+
+        Assertions.assertEquals(0, count("t1"));
+        Assertions.assertEquals(3, count("t2"));
+        Assertions.assertEquals(TenantStatus.DELETED, client.getTenant("t1").get().getStatus());
+        Assertions.assertEquals(TenantStatus.READY, client.getTenant("t2").get().getStatus());
+        // Two full batches of 10, then the rest
+        Assertions.assertEquals(3, reaper.batches.get());
+    }
+
+    @Test
+    public void testOnlyOneNodeHoldsTheLease() throws Exception {
+        addTenant("t1", TenantStatus.TO_BE_DELETED, 5);
+        TestReaper other = reaper();
+        TestReaper reaper = new TestReaper() {
+            @Override
+            protected int deleteTenantData(Handle handle, String tenantId, int batchSize) {
+                if (batches.get() == 0) {
+                    // Another node checking while this one is running
+                    other.run();
+                }
+                return super.deleteTenantData(handle, tenantId, batchSize);
+            }
+        };
+        init(reaper);
+
+        reaper.run();
+        Assertions.assertEquals(0, other.batches.get());
+        Assertions.assertEquals(0, count("t1"));
+
+        // The lease is kept until the next run is due, on every node
+        addTenant("t3", TenantStatus.TO_BE_DELETED, 5);
+        reaper.run();
+        other.run();
+        Assertions.assertEquals(5, count("t3"));
+
+        // Once the lease has expired, any node can take it
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.executeUpdate("UPDATE apicurio SET prop_value = 'gone|0'");
+        }
+        other.run();
+        Assertions.assertEquals(0, count("t3"));
+        Assertions.assertEquals(TenantStatus.DELETED, client.getTenant("t3").get().getStatus());
+    }
+
+    private TestReaper reaper() {
+        return init(new TestReaper());
+    }
+
+    private TestReaper init(TestReaper reaper) {
+        reaper.log = LoggerFactory.getLogger(AbstractTenantReaper.class);
+        reaper.handles = handles;
+        reaper.sqlStatements = new AbstractCommonSqlStatements() {
+            @Override
+            public String dbType() {
+                return "h2";
+            }
+        };
+        reaper.mtProperties = new MtProperties() {
+            @Override
+            public int getReaperBatchSize() {
+                return 10;
+            }
+
+            @Override
+            public Duration getReaperBatchDelay() {
+                return Duration.ZERO;
+            }
+
+            @Override
+            public int getReaperMaxTenants() {
+                return 100;
+            }
+
+            @Override
+            public Duration getReaperPeriod() {
+                return Duration.ofHours(1);
+            }
+        };
+        reaper.tenantInfoLoader = new TenantInfoLoader() {
+            @Override
+            public TenantManagerClient getTenantManagerClient() {
+                return client;
+            }
+
+            @Override
+            public void invalidate(String tenantId) {
+            }
+        };
+        return reaper;
+    }
+
+    private void addTenant(String tenantId, TenantStatus status, int properties) throws Exception {
+        client.putTenant(new TenantInfo(tenantId, null, null, status, null));
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement statement = connection.prepareStatement("INSERT INTO config (tenantId, pname, pvalue, modifiedOn) VALUES (?, ?, ?, ?)")) {
+            for (int i = 0; i < properties; i++) {
+                statement.setString(1, tenantId);
+                statement.setString(2, "prop-" + i);
+                statement.setString(3, "value");
+                statement.setLong(4, System.currentTimeMillis());
+                statement.executeUpdate();
+            }
+        }
+    }
+
+    private int count(String tenantId) throws Exception {
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM config WHERE tenantId = ?")) {
+            statement.setString(1, tenantId);
+            try (ResultSet rs = statement.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    private static class TestReaper extends AbstractTenantReaper {
+
+        final AtomicInteger batches = new AtomicInteger();
+
+        @Override
+        protected int deleteTenantData(Handle handle, String tenantId, int batchSize) {
+            int deleted = super.deleteTenantData(handle, tenantId, batchSize);
+            if (deleted > 0) {
+                batches.incrementAndGet();
+            }
+            return deleted;
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+package io.apicurio.common.apps.storage.sql;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class TenantUsageStatementsTest {
+
+    private final CommonSqlStatements statements = new AbstractCommonSqlStatements() {
+        @Override
+        public String dbType() {
+            return "h2";
+        }
+    };
+
+    private Connection connection;
+
+    @BeforeEach
+    public void createTable() throws Exception {
+        connection = DriverManager.getConnection("jdbc:h2:mem:usage-" + UUID.randomUUID());
+        try (Statement statement = connection.createStatement()) {
+            for (String ddl : statements.tenantUsageInitialization()) {
+                statement.execute(ddl);
+            }
+        }
+    }
+
+    @AfterEach
+    public void close() throws Exception {
+        connection.close();
+    }
+
+    @Test
+    public void testUpsertAddsUsageAndStartsRequestsOverPerWindow() throws Exception {
+        upsert("t1", 100, 1, 5, 10);
+        upsert("t1", 50, 1, 3, 10);
+        assertUsage("t1", 150, 2, 8, 10);
+
+        // A later window replaces the request count, storage keeps adding up
+        upsert("t1", 10, 0, 2, 11);
+        assertUsage("t1", 160, 2, 2, 11);
+
+        // A node still writing an earlier window does not reset (or add to) the count
+        upsert("t1", 0, 0, 7, 10);
+        assertUsage("t1", 160, 2, 2, 11);
+
+        upsert("t2", 1, 1, 1, 11);
+        assertUsage("t2", 1, 1, 1, 11);
+    }
+
+    @Test
+    public void testTableDdlIsShippedForEveryDialect() {
+        CommonSqlStatements postgresql = new AbstractCommonSqlStatements() {
+            @Override
+            public String dbType() {
+                return "postgresql";
+            }
+        };
+        List<String> ddl = postgresql.tenantUsageInitialization();
+        Assertions.assertEquals(1, ddl.size());
+        Assertions.assertTrue(ddl.get(0).startsWith("CREATE TABLE IF NOT EXISTS tenant_usage"));
+    }
+
+    private void upsert(String tenantId, long bytes, long entities, long requests, long window) throws Exception {
+        try (PreparedStatement statement = connection.prepareStatement(statements.upsertTenantUsage())) {
+            statement.setString(1, tenantId);
+            statement.setLong(2, bytes);
+            statement.setLong(3, entities);
+            statement.setLong(4, requests);
+            statement.setLong(5, window);
+            statement.setLong(6, System.currentTimeMillis());
+            statement.executeUpdate();
+        }
+    }
+
+    private void assertUsage(String tenantId, long bytes, long entities, long requests, long window) throws Exception {
+        try (Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery(statements.selectTenantUsage())) {
+            boolean found = false;
+            while (rs.next()) {
+                if (tenantId.equals(rs.getString("tenantId"))) {
+                    found = true;
+                    Assertions.assertEquals(bytes, rs.getLong("storageBytes"));
+                    Assertions.assertEquals(entities, rs.getLong("entities"));
+                    Assertions.assertEquals(requests, rs.getLong("requests"));
+                    Assertions.assertEquals(window, rs.getLong("requestsWindow"));
+                }
+            }
+            Assertions.assertTrue(found);
+        }
+    }
+
+}
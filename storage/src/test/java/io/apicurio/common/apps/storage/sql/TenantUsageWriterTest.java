@@ -0,0 +1,121 @@
+package io.apicurio.common.apps.storage.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.UUID;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import io.agroal.api.AgroalDataSource;
+import io.agroal.api.configuration.supplier.AgroalDataSourceConfigurationSupplier;
+import io.apicurio.common.apps.mt.MtProperties;
+import io.apicurio.common.apps.mt.TenantUsage;
+import io.apicurio.common.apps.mt.TenantUsageTracker;
+import io.apicurio.common.apps.storage.sql.jdbi.TestHandleFactory;
+
+public class TenantUsageWriterTest {
+
+    private AgroalDataSource dataSource;
+    private AbstractTenantUsageWriter writer;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        dataSource = AgroalDataSource.from(new AgroalDataSourceConfigurationSupplier()
+                .connectionPoolConfiguration(pool -> pool.maxSize(10)
+                        .connectionFactoryConfiguration(factory -> factory
+                                .jdbcUrl("jdbc:h2:mem:usage-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1"))));
+        CommonSqlStatements sqlStatements = new AbstractCommonSqlStatements() {
+            @Override
+            public String dbType() {
+                return "h2";
+            }
+        };
+        writer = new AbstractTenantUsageWriter() {
+        };
+        writer.log = LoggerFactory.getLogger(AbstractTenantUsageWriter.class);
+        writer.handles = TestHandleFactory.create(dataSource, sqlStatements);
+        writer.sqlStatements = sqlStatements;
+        writer.usageTracker = new TenantUsageTracker();
+        writer.mtProperties = new MtProperties() {
+            @Override
+            public int getUsageBatchSize() {
+                return 2;
+            }
+        };
+        writer.createTable();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Test
+    public void testFlushAddsUsageInBatches() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            writer.usageTracker.recordStorage("t" + i, 100, 1);
+        }
+        writer.usageTracker.getUsage("t0").recordRequest(3);
+        writer.run();
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertEquals(100, storedBytes("t" + i));
+        }
+
+        writer.usageTracker.recordStorage("t0", 50, 1);
+        writer.run();
+        Assertions.assertEquals(150, storedBytes("t0"));
+        Assertions.assertEquals(150, writer.usageTracker.getUsage("t0").getStorageBytes());
+        Assertions.assertEquals(1, writer.usageTracker.getUsage("t0").getRequests(3));
+        // Nothing left to write
+        Assertions.assertTrue(writer.usageTracker.getUsage("t0").drain().isEmpty());
+    }
+
+    @Test
+    public void testFailedFlushIsRetried() throws Exception {
+        writer.usageTracker.recordStorage("t1", 100, 1);
+        execute("DROP TABLE tenant_usage");
+        writer.flush();
+        TenantUsage usage = writer.usageTracker.getUsage("t1");
+        Assertions.assertEquals(100, usage.getStorageBytes());
+
+        writer.createTable();
+        writer.usageTracker.recordStorage("t1", 20, 1);
+        writer.run();
+        Assertions.assertEquals(120, storedBytes("t1"));
+        Assertions.assertEquals(120, usage.getStorageBytes());
+        Assertions.assertEquals(2, usage.getEntities());
+    }
+
+    @Test
+    public void testCreateTableKeepsExistingUsage() throws Exception {
+        writer.usageTracker.recordStorage("t1", 100, 1);
+        writer.run();
+
+        writer.createTable();
+        Assertions.assertEquals(100, storedBytes("t1"));
+    }
+
+    private void execute(String sql) throws Exception {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private long storedBytes(String tenantId) throws Exception {
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement statement = connection.prepareStatement("SELECT storageBytes FROM tenant_usage WHERE tenantId = ?")) {
+            statement.setString(1, tenantId);
+            try (ResultSet rs = statement.executeQuery()) {
+                Assertions.assertTrue(rs.next(), tenantId);
+                return rs.getLong(1);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,66 @@
+package io.apicurio.common.apps.storage.sql;
+
+import java.lang.annotation.Annotation;
+import java.util.Collections;
+import java.util.Iterator;
+
+import javax.enterprise.inject.Instance;
+import javax.enterprise.util.TypeLiteral;
+
+/**
+ * A CDI {@link Instance} holding at most one bean, for tests that create beans by hand.
+ */
+public class TestInstance<T> implements Instance<T> {
+
+    private final T bean;
+
+    public TestInstance(T bean) {
+        this.bean = bean;
+    }
+
+    public static <T> TestInstance<T> empty() {
+        return new TestInstance<>(null);
+    }
+
+    @Override
+    public T get() {
+        if (bean == null) {
+            throw new IllegalStateException("Unsatisfied");
+        }
+        return bean;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return bean == null ? Collections.emptyIterator() : Collections.singleton(bean).iterator();
+    }
+
+    @Override
+    public boolean isUnsatisfied() {
+        return bean == null;
+    }
+
+    @Override
+    public boolean isAmbiguous() {
+        return false;
+    }
+
+    @Override
+    public void destroy(T instance) {
+    }
+
+    @Override
+    public Instance<T> select(Annotation... qualifiers) {
+        return this;
+    }
+
+    @Override
+    public <U extends T> Instance<U> select(Class<U> subtype, Annotation... qualifiers) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <U extends T> Instance<U> select(TypeLiteral<U> subtype, Annotation... qualifiers) {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,27 @@
+package io.apicurio.common.apps.storage.sql.jdbi;
+
+import io.agroal.api.AgroalDataSource;
+import io.apicurio.common.apps.mt.TenantContext;
+import io.apicurio.common.apps.mt.context.FairTenantExecutor;
+import io.apicurio.common.apps.mt.metrics.TenantMetrics;
+import io.apicurio.common.apps.storage.sql.CommonSqlStatements;
+import io.apicurio.common.apps.storage.sql.shard.TenantShardRouter;
+
+/**
+ * Builds a {@link HandleFactory} over a single data source (no sharding, no fair scheduling), for
+ * tests that create beans by hand.
+ */
+public class TestHandleFactory {
+
+    public static HandleFactory create(AgroalDataSource dataSource, CommonSqlStatements sqlStatements) {
+        HandleFactory handles = new HandleFactory();
+        handles.dataSource = dataSource;
+        handles.sqlStatements = sqlStatements;
+        handles.tenantContext = new TenantContext();
+        handles.tenantMetrics = new TenantMetrics();
+        handles.shardRouter = new TenantShardRouter();
+        handles.fairExecutor = new FairTenantExecutor();
+        return handles;
+    }
+
+}
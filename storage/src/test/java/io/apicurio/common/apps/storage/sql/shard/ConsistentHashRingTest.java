@@ -0,0 +1,60 @@
+package io.apicurio.common.apps.storage.sql.shard;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ConsistentHashRingTest {
+
+    private static final int KEYS = 20_000;
+
+    @Test
+    public void testKeysAreSpreadEvenly() {
+        List<String> shards = List.of("shard1", "shard2", "shard3", "shard4");
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(shards, shards, 160);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(ring.get("tenant-" + i), 1, Integer::sum);
+        }
+        for (String shard : shards) {
+            int count = counts.getOrDefault(shard, 0);
+            Assertions.assertTrue(Math.abs(count - KEYS / 4) < KEYS / 4 * 0.25, shard + ": " + count);
+        }
+    }
+
+    @Test
+    public void testMappingIsStable() {
+        List<String> shards = List.of("shard1", "shard2", "shard3");
+        ConsistentHashRing<String> ring1 = new ConsistentHashRing<>(shards, shards, 64);
+        // The order the shards are listed in does not matter, only their names
+        List<String> reordered = List.of("shard3", "shard1", "shard2");
+        ConsistentHashRing<String> ring2 = new ConsistentHashRing<>(reordered, reordered, 64);
+        for (int i = 0; i < 1000; i++) {
+            Assertions.assertEquals(ring1.get("tenant-" + i), ring2.get("tenant-" + i));
+        }
+    }
+
+    @Test
+    public void testAddingAShardOnlyMovesKeysToIt() {
+        List<String> before = List.of("shard1", "shard2", "shard3", "shard4");
+        List<String> after = List.of("shard1", "shard2", "shard3", "shard4", "shard5");
+        ConsistentHashRing<String> ring1 = new ConsistentHashRing<>(before, before, 160);
+        ConsistentHashRing<String> ring2 = new ConsistentHashRing<>(after, after, 160);
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "tenant-" + i;
+            String from = ring1.get(key);
+            String to = ring2.get(key);
+            if (!from.equals(to)) {
+                Assertions.assertEquals("shard5", to, key);
+                moved++;
+            }
+        }
+        // About a fifth of the keys move, instead of most of them with modulo hashing
+        Assertions.assertTrue(Math.abs(moved - KEYS / 5) < KEYS / 5 * 0.25, "moved: " + moved);
+    }
+
+}
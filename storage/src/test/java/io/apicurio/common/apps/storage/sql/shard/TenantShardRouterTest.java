@@ -0,0 +1,204 @@
+package io.apicurio.common.apps.storage.sql.shard;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import io.agroal.api.AgroalDataSource;
+import io.agroal.api.configuration.supplier.AgroalDataSourceConfigurationSupplier;
+import io.apicurio.common.apps.storage.exceptions.StorageException;
+import io.apicurio.common.apps.storage.sql.jdbi.Handle;
+
+public class TenantShardRouterTest {
+
+    private static final String TENANT = "tenant-1";
+
+    private final List<AgroalDataSource> dataSources = new ArrayList<>();
+    private TenantShardRouter router;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Map<String, AgroalDataSource> shards = new LinkedHashMap<>();
+        for (String name : List.of("shard1", "shard2")) {
+            AgroalDataSource dataSource = AgroalDataSource.from(new AgroalDataSourceConfigurationSupplier()
+                    .connectionPoolConfiguration(pool -> pool.maxSize(10)
+                            .connectionFactoryConfiguration(factory -> factory
+                                    .jdbcUrl("jdbc:h2:mem:" + name + "-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1"))));
+            try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE items (tenantId VARCHAR(128) NOT NULL, k VARCHAR(128) NOT NULL, "
+                        + "modifiedOn BIGINT NOT NULL, PRIMARY KEY (tenantId, k))");
+            }
+            dataSources.add(dataSource);
+            shards.put(name, dataSource);
+        }
+        router = new TenantShardRouter();
+        router.log = LoggerFactory.getLogger(TenantShardRouter.class);
+        router.virtualNodes = 160;
+        router.configuredAssignments = Optional.of(List.of(TENANT + "=shard1"));
+        router.moveTimeoutMillis = 100;
+        router.moveWaitTimeoutMillis = 5000;
+        router.init(shards, null);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        dataSources.forEach(AgroalDataSource::close);
+    }
+
+    @Test
+    public void testOnlineMove() throws Exception {
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicInteger writes = new AtomicInteger();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                while (!stop.get()) {
+                    write("k" + writes.get());
+                    writes.incrementAndGet();
+                }
+            } catch (Throwable t) {
+                error.set(t);
+            }
+        });
+        writer.start();
+        while (writes.get() < 10) {
+            Thread.sleep(1);
+        }
+
+        AtomicInteger writesDuringCopy = new AtomicInteger();
+        TestMigration migration = new TestMigration() {
+            @Override
+            public void copy(String tenantId, Handle source, Handle target) throws Exception {
+                int before = writes.get();
+                // A copy that takes longer than the drain timeout does not fail the tenant's work
+                Thread.sleep(3 * router.moveTimeoutMillis);
+                super.copy(tenantId, source, target);
+                writesDuringCopy.set(writes.get() - before);
+            }
+        };
+        Assertions.assertTrue(router.move(TENANT, "shard2", migration));
+        Thread.sleep(20);
+        stop.set(true);
+        writer.join();
+
+        Assertions.assertNull(error.get());
+        Assertions.assertTrue(writesDuringCopy.get() > 0, "the tenant's work was on hold during the copy");
+        Assertions.assertTrue(migration.changesCopied.get() > 0, "changes made during the copy were not copied");
+        Assertions.assertEquals("shard2", router.shardOf(TENANT).getName());
+        Assertions.assertEquals("shard2", router.getAssignments().get(TENANT));
+        Assertions.assertEquals(writes.get(), count(router.getShard("shard2")));
+        Assertions.assertEquals(0, count(router.getShard("shard1")));
+        Assertions.assertFalse(router.move(TENANT, "shard2", migration));
+    }
+
+    @Test
+    public void testFailedCopyLeavesTenantInPlace() throws Exception {
+        write("k1");
+        TestMigration failing = new TestMigration() {
+            @Override
+            public void copyChanges(String tenantId, Handle source, Handle target, Instant since) throws Exception {
+                throw new IllegalStateException("copy failed");
+            }
+        };
+        Assertions.assertThrows(IllegalStateException.class, () -> router.move(TENANT, "shard2", failing));
+        Assertions.assertEquals("shard1", router.shardOf(TENANT).getName());
+        write("k2");
+        Assertions.assertEquals(2, count(router.getShard("shard1")));
+
+        // The tenant can be moved again
+        Assertions.assertTrue(router.move(TENANT, "shard2", new TestMigration()));
+        Assertions.assertEquals(2, count(router.getShard("shard2")));
+    }
+
+    @Test
+    public void testAssignWhileMovingIsRejected() throws Exception {
+        TestMigration migration = new TestMigration() {
+            @Override
+            public void copy(String tenantId, Handle source, Handle target) throws Exception {
+                Assertions.assertThrows(StorageException.class, () -> router.assign(TENANT, "shard1"));
+                Assertions.assertThrows(StorageException.class, () -> router.move(TENANT, "shard2", new TestMigration()));
+                super.copy(tenantId, source, target);
+            }
+        };
+        Assertions.assertTrue(router.move(TENANT, "shard2", migration));
+        Assertions.assertEquals("shard2", router.shardOf(TENANT).getName());
+    }
+
+    private void write(String key) throws Exception {
+        TenantShard shard = router.acquire(TENANT);
+        try (Connection connection = shard.getDataSource().getConnection();
+                PreparedStatement statement = connection.prepareStatement("INSERT INTO items (tenantId, k, modifiedOn) VALUES (?, ?, ?)")) {
+            statement.setString(1, TENANT);
+            statement.setString(2, key);
+            statement.setLong(3, System.currentTimeMillis());
+            statement.executeUpdate();
+        } finally {
+            router.release(TENANT);
+        }
+    }
+
+    private static int count(TenantShard shard) throws Exception {
+        try (Connection connection = shard.getDataSource().getConnection(); Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM items")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    /**
+     * Copies the items table, and only the rows modified since the copy started when catching up.
+     */
+    private static class TestMigration implements TenantShardMigration {
+
+        final AtomicInteger changesCopied = new AtomicInteger();
+
+        @Override
+        public void copy(String tenantId, Handle source, Handle target) throws Exception {
+            target.createUpdate("DELETE FROM items WHERE tenantId = ?").bind(0, tenantId).execute();
+            copyRows(tenantId, source, target, 0);
+        }
+
+        @Override
+        public void copyChanges(String tenantId, Handle source, Handle target, Instant since) throws Exception {
+            changesCopied.addAndGet(copyRows(tenantId, source, target, since.toEpochMilli()));
+        }
+
+        @Override
+        public void cleanup(String tenantId, Handle source) throws Exception {
+            source.createUpdate("DELETE FROM items WHERE tenantId = ?").bind(0, tenantId).execute();
+        }
+
+        private static int copyRows(String tenantId, Handle source, Handle target, long since) {
+            List<String[]> rows = source.createQuery("SELECT k, modifiedOn FROM items WHERE tenantId = ? AND modifiedOn >= ?")
+                    .bind(0, tenantId)
+                    .bind(1, since)
+                    .map(rs -> new String[] { rs.getString(1), rs.getString(2) })
+                    .list();
+            for (String[] row : rows) {
+                target.createUpdate("MERGE INTO items (tenantId, k, modifiedOn) KEY (tenantId, k) VALUES (?, ?, ?)")
+                        .bind(0, tenantId)
+                        .bind(1, row[0])
+                        .bind(2, Long.valueOf(row[1]))
+                        .execute();
+            }
+            return rows.size();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package io.apicurio.common.apps.storage.sql.transfer;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.apicurio.common.apps.config.TenantDynamicConfigPropertyDto;
+import io.apicurio.common.apps.storage.sql.AbstractSqlStorage;
+import io.apicurio.common.apps.storage.sql.CommonSqlStatements;
+
+public class DynamicConfigTransferTest {
+
+    @Test
+    public void testNdjsonRoundTrip() throws Exception {
+        testRoundTrip(ConfigTransferFormat.NDJSON);
+    }
+
+    @Test
+    public void testCsvRoundTrip() throws Exception {
+        testRoundTrip(ConfigTransferFormat.CSV);
+    }
+
+    private void testRoundTrip(ConfigTransferFormat format) throws Exception {
+        MemoryStorage source = storageWithProperties(10);
+        List<ConfigTransferProgress> reported = new ArrayList<>();
+        StringWriter out = new StringWriter();
+        ConfigTransferProgress exported = new DynamicConfigTransfer(source, 3, reported::add).exportTo(out, format, null);
+        Assertions.assertEquals(10, exported.getRecords());
+        Assertions.assertEquals(4, reported.size());
+        Assertions.assertEquals(List.of(3, 3, 3, 1), source.pageSizes);
+
+        MemoryStorage target = new MemoryStorage();
+        ConfigTransferProgress imported = new DynamicConfigTransfer(target, 4, progress -> {})
+                .importFrom(new StringReader(out.toString()), format, null);
+        Assertions.assertEquals(10, imported.getRecords());
+        Assertions.assertEquals(List.of(4, 4, 2), target.batchSizes);
+        Assertions.assertEquals(source.properties, target.properties);
+    }
+
+    @Test
+    public void testResumeExport() throws Exception {
+        MemoryStorage source = storageWithProperties(10);
+        StringWriter full = new StringWriter();
+        new DynamicConfigTransfer(source, 3, progress -> {}).exportTo(full, ConfigTransferFormat.CSV, null);
+
+        // Interrupted after the second page
+        StringWriter out = new StringWriter();
+        List<ConfigTransferProgress> reported = new ArrayList<>();
+        DynamicConfigTransfer interrupted = new DynamicConfigTransfer(source, 3, progress -> {
+            reported.add(progress);
+            if (reported.size() == 2) {
+                throw new IllegalStateException("interrupted");
+            }
+        });
+        Assertions.assertThrows(IllegalStateException.class, () -> interrupted.exportTo(out, ConfigTransferFormat.CSV, null));
+
+        ConfigTransferProgress last = reported.get(1);
+        Assertions.assertEquals(6, last.getRecords());
+        ConfigTransferProgress resumed = new DynamicConfigTransfer(source, 3, progress -> {})
+                .exportTo(out, ConfigTransferFormat.CSV, last);
+        Assertions.assertEquals(10, resumed.getRecords());
+        Assertions.assertEquals(full.toString(), out.toString());
+    }
+
+    @Test
+    public void testResumeImport() throws Exception {
+        MemoryStorage source = storageWithProperties(10);
+        StringWriter out = new StringWriter();
+        new DynamicConfigTransfer(source, 100, progress -> {}).exportTo(out, ConfigTransferFormat.NDJSON, null);
+
+        MemoryStorage target = new MemoryStorage();
+        ConfigTransferProgress resumed = new DynamicConfigTransfer(target, 100, progress -> {})
+                .importFrom(new StringReader(out.toString()), ConfigTransferFormat.NDJSON, new ConfigTransferProgress(4, "", ""));
+        Assertions.assertEquals(10, resumed.getRecords());
+        Assertions.assertEquals(6, target.properties.size());
+        Assertions.assertFalse(target.properties.containsKey(MemoryStorage.key("tenant-0", "prop-0")));
+    }
+
+    @Test
+    public void testInvalidRecordIsRejected() {
+        MemoryStorage target = new MemoryStorage();
+        String csv = "tenantId,name,value,modifiedOn\r\nt1,p1\r\n";
+        Assertions.assertThrows(IOException.class, () -> new DynamicConfigTransfer(target, 10, progress -> {})
+                .importFrom(new StringReader(csv), ConfigTransferFormat.CSV, null));
+        String json = "{\"tenantId\":\"t1\",\"name\":\"p1\"}\n";
+        Assertions.assertThrows(IOException.class, () -> new DynamicConfigTransfer(target, 10, progress -> {})
+                .importFrom(new StringReader(json), ConfigTransferFormat.NDJSON, null));
+        Assertions.assertTrue(target.properties.isEmpty());
+    }
+
+    /**
+     * Properties of several tenants, with values that need quoting or escaping.
+     */
+    private static MemoryStorage storageWithProperties(int count) {
+        String[] values = { "plain", "with,comma", "with \"quotes\"", "multi\nline\r\nvalue", "", "ünïcødé" };
+        MemoryStorage storage = new MemoryStorage();
+        for (int i = 0; i < count; i++) {
+            storage.properties.put(MemoryStorage.key("tenant-" + (i % 3), "prop-" + i), values[i % values.length]);
+        }
+        return storage;
+    }
+
+    /**
+     * Keeps the properties in memory, ordered by (tenantId, name) like the config table pages.
+     */
+    private static class MemoryStorage extends AbstractSqlStorage<CommonSqlStatements> {
+
+        final TreeMap<String, String> properties = new TreeMap<>();
+        final List<Integer> pageSizes = new ArrayList<>();
+        final List<Integer> batchSizes = new ArrayList<>();
+
+        static String key(String tenantId, String name) {
+            return tenantId + '\0' + name;
+        }
+
+        @Override
+        protected int dbVersion() {
+            return 1;
+        }
+
+        @Override
+        public List<TenantDynamicConfigPropertyDto> getConfigPropertiesPage(String afterTenantId, String afterName, int pageSize) {
+            List<TenantDynamicConfigPropertyDto> page = properties.tailMap(key(afterTenantId, afterName), false).entrySet().stream()
+                    .limit(pageSize)
+                    .map(entry -> {
+                        String[] parts = entry.getKey().split("\0");
+                        return new TenantDynamicConfigPropertyDto(parts[0], parts[1], entry.getValue(), 1000);
+                    })
+                    .collect(Collectors.toList());
+            if (!page.isEmpty()) {
+                pageSizes.add(page.size());
+            }
+            return page;
+        }
+
+        @Override
+        public void upsertConfigProperties(List<TenantDynamicConfigPropertyDto> batch) {
+            batchSizes.add(batch.size());
+            Map<String, String> written = batch.stream()
+                    .collect(Collectors.toMap(p -> key(p.getTenantId(), p.getName()), TenantDynamicConfigPropertyDto::getValue));
+            properties.putAll(written);
+        }
+    }
+
+}
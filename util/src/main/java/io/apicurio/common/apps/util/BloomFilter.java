@@ -0,0 +1,118 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter of strings: a compact set that may report false positives (at a rate chosen when it
+ * is created) but never false negatives.  The filter is sized for an expected number of keys; adding
+ * more keys than that raises the false positive rate, see {@link #expectedFalsePositiveRate()}.
+ * <p>
+ * Keys are hashed once (64 bits), and the bit positions are derived from the two halves of the hash
+ * (Kirsch-Mitzenmacher double hashing).  All methods are thread safe and lock free.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Constructor.
+     * @param expectedKeys the number of keys the filter is sized for
+     * @param falsePositiveRate the false positive rate wanted at that number of keys (e.g. 0.01)
+     */
+    public BloomFilter(int expectedKeys, double falsePositiveRate) {
+        int n = Math.max(1, expectedKeys);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.max(1, (m + 63) / 64);
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = words * 64L;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+    }
+
+    /**
+     * Adds a key.
+     * @param key the key
+     */
+    public void add(String key) {
+        long hash = HashUtil.hash64(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        boolean changed = false;
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = bits.get(word);
+            while ((current & mask) == 0) {
+                if (bits.compareAndSet(word, current, current | mask)) {
+                    changed = true;
+                    break;
+                }
+                current = bits.get(word);
+            }
+        }
+        if (changed) {
+            size.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns false if the key was definitely never added, true if it probably was.
+     * @param key the key
+     */
+    public boolean mightContain(String key) {
+        long hash = HashUtil.hash64(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the (approximate) number of distinct keys added
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * @return the size of the filter in bytes
+     */
+    public long sizeInBytes() {
+        return bitCount / 8;
+    }
+
+    /**
+     * @return the expected false positive rate given the number of keys added so far
+     */
+    public double expectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double) hashCount * size.get() / bitCount), hashCount);
+    }
+
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * A compact, immutable String to String map, intended for large numbers of small, long-lived
+ * snapshots (for example the cached config of many tenants).  Entries are stored in two parallel
+ * arrays using open addressing (linear probing), with no per-entry objects.  Keys (property
+ * names) are shared through the {@link StringPool} so that equal names are stored once across
+ * all maps.
+ * <p>
+ * Being immutable, instances can be read from any number of threads without locking; to change
+ * a snapshot, build a new map and swap the reference.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+public final class CompactStringMap extends AbstractMap<String, String> {
+
+    private static final String TRUE = Boolean.TRUE.toString();
+    private static final String FALSE = Boolean.FALSE.toString();
+    private static final CompactStringMap EMPTY = new CompactStringMap(new String[2], new String[2], 0);
+
+    private final String[] keys;
+    private final String[] values;
+    private final int size;
+
+    private CompactStringMap(String[] keys, String[] values, int size) {
+        this.keys = keys;
+        this.values = values;
+        this.size = size;
+    }
+
+    /**
+     * Creates a compact copy of the given map.  Null keys and null values are not supported.
+     * @param source the map to copy
+     */
+    public static CompactStringMap copyOf(Map<String, String> source) {
+        if (source instanceof CompactStringMap) {
+            return (CompactStringMap) source;
+        }
+        if (source.isEmpty()) {
+            return EMPTY;
+        }
+        // Keep the table at most 2/3 full so that probe sequences stay short
+        int capacity = Integer.highestOneBit(Math.max(2, source.size() * 3 / 2) - 1) << 1;
+        String[] keys = new String[capacity];
+        String[] values = new String[capacity];
+        int mask = capacity - 1;
+        int size = 0;
+        for (Map.Entry<String, String> entry : source.entrySet()) {
+            String key = entry.getKey();
+            String value = entry.getValue();
+            if (key == null || value == null) {
+                throw new NullPointerException("Null keys and values are not supported.");
+            }
+            int idx = indexFor(key, mask);
+            while (keys[idx] != null) {
+                idx = (idx + 1) & mask;
+            }
+            keys[idx] = StringPool.intern(key);
+            values[idx] = canonicalValue(value);
+            size++;
+        }
+        return new CompactStringMap(keys, values, size);
+    }
+
+    /**
+     * Values are not pooled (their number is unbounded, e.g. a distinct value per tenant), only the
+     * boolean literals are shared.
+     */
+    private static String canonicalValue(String value) {
+        if (TRUE.equals(value)) {
+            return TRUE;
+        }
+        if (FALSE.equals(value)) {
+            return FALSE;
+        }
+        return value;
+    }
+
+    /**
+     * Returns a rough estimate of the heap retained by this map, not counting pooled keys and
+     * boolean values (which are shared with other maps).
+     */
+    public long estimatedSize() {
+        long rval = 24 + 2 * (16 + 4L * keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                if (!StringPool.isPooled(keys[i])) {
+                    rval += 40 + keys[i].length();
+                }
+                if (!isShared(values[i])) {
+                    rval += 40 + values[i].length();
+                }
+            }
+        }
+        return rval;
+    }
+
+    /**
+     * @see java.util.AbstractMap#get(java.lang.Object)
+     */
+    @Override
+    public String get(Object key) {
+        int idx = indexOf(key);
+        return idx < 0 ? null : values[idx];
+    }
+
+    /**
+     * @see java.util.AbstractMap#containsKey(java.lang.Object)
+     */
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * @see java.util.AbstractMap#size()
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @see java.util.AbstractMap#isEmpty()
+     */
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @see java.util.Map#forEach(java.util.function.BiConsumer)
+     */
+    @Override
+    public void forEach(BiConsumer<? super String, ? super String> action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                action.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * @see java.util.AbstractMap#entrySet()
+     */
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<Map.Entry<String, String>>() {
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new Iterator<Map.Entry<String, String>>() {
+                    private int idx = advance(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return idx < keys.length;
+                    }
+
+                    @Override
+                    public Map.Entry<String, String> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        Map.Entry<String, String> entry = new AbstractMap.SimpleImmutableEntry<>(keys[idx], values[idx]);
+                        idx = advance(idx + 1);
+                        return entry;
+                    }
+
+                    private int advance(int from) {
+                        int i = from;
+                        while (i < keys.length && keys[i] == null) {
+                            i++;
+                        }
+                        return i;
+                    }
+                };
+            }
+        };
+    }
+
+    private static boolean isShared(String value) {
+        return value == TRUE || value == FALSE;
+    }
+
+    private int indexOf(Object key) {
+        if (!(key instanceof String) || size == 0) {
+            return -1;
+        }
+        int mask = keys.length - 1;
+        int idx = indexFor((String) key, mask);
+        String candidate;
+        while ((candidate = keys[idx]) != null) {
+            if (candidate == key || candidate.equals(key)) {
+                return idx;
+            }
+            idx = (idx + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static int indexFor(String key, int mask) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+}
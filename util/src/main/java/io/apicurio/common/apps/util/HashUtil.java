@@ -0,0 +1,46 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author eric.wittmann@gmail.com
+ */
+public class HashUtil {
+
+    /**
+     * 64-bit FNV-1a of the UTF-8 bytes, followed by the MurmurHash3 finalizer so that all bits (and both
+     * halves) are well mixed, even for short keys.  Unlike {@link String#hashCode()} it is stable across
+     * JVMs and releases, so it can be used for placement that every node must agree on.
+     * @param key the key
+     */
+    public static long hash64(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the heaviest keys of a stream using a bounded number of counters (the Space-Saving
+ * algorithm).  While there are free counters every key is counted exactly.  Once they are all in
+ * use, a new key takes over the counter of the lightest monitored key, inheriting its count as an
+ * overestimate (recorded as the counter's error).
+ * <p>
+ * Each counter can also accumulate a fixed number of additional values (e.g. time spent) for its
+ * key, from the moment the key was last admitted.
+ * <p>
+ * To keep updates from contending on a single lock, the keys are partitioned by hash into stripes,
+ * each an independent summary with its own share of the counters and its own lock.  Any key whose
+ * true weight exceeds the total weight of its stripe divided by the stripe's capacity is guaranteed
+ * to be monitored.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+public class SpaceSaving<K> {
+
+    /**
+     * The fewest counters a stripe gets, so that striping does not weaken the guarantee much.
+     */
+    private static final int MIN_STRIPE_CAPACITY = 16;
+
+    private final int capacity;
+    private final Stripe<K>[] stripes;
+    private final int mask;
+
+    /**
+     * Constructor.  The number of stripes depends on the capacity and the number of processors.
+     * @param capacity the number of keys monitored at once
+     * @param valueCount the number of additional values accumulated per key
+     */
+    public SpaceSaving(int capacity, int valueCount) {
+        this(capacity, valueCount, defaultStripes(capacity));
+    }
+
+    /**
+     * Constructor.
+     * @param capacity the number of keys monitored at once (spread evenly over the stripes)
+     * @param valueCount the number of additional values accumulated per key
+     * @param stripes the number of stripes (rounded down to a power of two)
+     */
+    @SuppressWarnings("unchecked")
+    public SpaceSaving(int capacity, int valueCount, int stripes) {
+        int count = Integer.highestOneBit(Math.max(1, Math.min(stripes, capacity)));
+        int stripeCapacity = (capacity + count - 1) / count;
+        this.capacity = stripeCapacity * count;
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new Stripe<>(stripeCapacity, valueCount);
+        }
+        this.mask = count - 1;
+    }
+
+    private static int defaultStripes(int capacity) {
+        return Math.min(2 * Runtime.getRuntime().availableProcessors(), capacity / MIN_STRIPE_CAPACITY);
+    }
+
+    /**
+     * Adds weight to a key, monitoring it if it is not yet monitored, and adds to one of its values.
+     * @param key the key
+     * @param weight the weight to add (used for ranking)
+     * @param valueIndex the value to add to
+     * @param value the amount to add to the value
+     */
+    public void add(K key, long weight, int valueIndex, long value) {
+        Stripe<K> stripe = stripeOf(key);
+        synchronized (stripe) {
+            stripe.add(key, weight, valueIndex, value);
+        }
+    }
+
+    /**
+     * Adds to one of the values of a key, but only if the key is currently monitored.
+     * @param key the key
+     * @param valueIndex the value to add to
+     * @param value the amount to add to the value
+     * @return true if the key is monitored
+     */
+    public boolean addValue(K key, int valueIndex, long value) {
+        Stripe<K> stripe = stripeOf(key);
+        synchronized (stripe) {
+            return stripe.addValue(key, valueIndex, value);
+        }
+    }
+
+    /**
+     * Returns (copies of) the heaviest monitored keys, heaviest first.
+     * @param limit the maximum number of keys to return
+     */
+    public List<Entry<K>> top(int limit) {
+        List<Entry<K>> entries = new ArrayList<>(capacity);
+        for (Stripe<K> stripe : stripes) {
+            synchronized (stripe) {
+                stripe.copyTo(entries);
+            }
+        }
+        entries.sort(Comparator.comparingLong((Entry<K> entry) -> entry.count).reversed());
+        return entries.size() > limit ? new ArrayList<>(entries.subList(0, limit)) : entries;
+    }
+
+    /**
+     * @return the number of keys monitored at once
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of stripes
+     */
+    public int stripes() {
+        return stripes.length;
+    }
+
+    private Stripe<K> stripeOf(K key) {
+        int hash = key.hashCode();
+        // Spread the high bits, as HashMap does, so that similar keys land in different stripes
+        return stripes[(hash ^ (hash >>> 16)) & mask];
+    }
+
+    /**
+     * One independent summary.  Not thread safe, callers synchronize on it.
+     */
+    private static class Stripe<K> {
+
+        private final int capacity;
+        private final int valueCount;
+        private final Map<K, Counter<K>> index;
+        /**
+         * Min-heap of the counters, ordered by count.
+         */
+        private final Counter<K>[] heap;
+        private int size;
+
+        @SuppressWarnings("unchecked")
+        Stripe(int capacity, int valueCount) {
+            this.capacity = capacity;
+            this.valueCount = valueCount;
+            this.index = new HashMap<>(capacity * 2);
+            this.heap = new Counter[capacity];
+        }
+
+        void add(K key, long weight, int valueIndex, long value) {
+            Counter<K> counter = index.get(key);
+            if (counter == null) {
+                counter = admit(key);
+            }
+            counter.values[valueIndex] += value;
+            counter.count += weight;
+            siftDown(counter.position);
+        }
+
+        boolean addValue(K key, int valueIndex, long value) {
+            Counter<K> counter = index.get(key);
+            if (counter == null) {
+                return false;
+            }
+            counter.values[valueIndex] += value;
+            return true;
+        }
+
+        void copyTo(List<Entry<K>> entries) {
+            for (int i = 0; i < size; i++) {
+                Counter<K> counter = heap[i];
+                entries.add(new Entry<>(counter.key, counter.count, counter.error, counter.values.clone()));
+            }
+        }
+
+        private Counter<K> admit(K key) {
+            Counter<K> counter;
+            if (size < capacity) {
+                counter = new Counter<>(key, valueCount);
+                counter.position = size;
+                heap[size++] = counter;
+                siftUp(counter.position);
+            } else {
+                // Take over the lightest counter
+                counter = heap[0];
+                index.remove(counter.key);
+                counter.key = key;
+                counter.error = counter.count;
+                Arrays.fill(counter.values, 0);
+            }
+            index.put(key, counter);
+            return counter;
+        }
+
+        private void siftUp(int position) {
+            Counter<K> counter = heap[position];
+            while (position > 0) {
+                int parent = (position - 1) >>> 1;
+                if (heap[parent].count <= counter.count) {
+                    break;
+                }
+                move(heap[parent], position);
+                position = parent;
+            }
+            move(counter, position);
+        }
+
+        private void siftDown(int position) {
+            Counter<K> counter = heap[position];
+            int half = size >>> 1;
+            while (position < half) {
+                int child = 2 * position + 1;
+                int right = child + 1;
+                if (right < size && heap[right].count < heap[child].count) {
+                    child = right;
+                }
+                if (counter.count <= heap[child].count) {
+                    break;
+                }
+                move(heap[child], position);
+                position = child;
+            }
+            move(counter, position);
+        }
+
+        private void move(Counter<K> counter, int position) {
+            heap[position] = counter;
+            counter.position = position;
+        }
+    }
+
+    private static class Counter<K> {
+        K key;
+        long count;
+        long error;
+        final long[] values;
+        int position;
+
+        Counter(K key, int valueCount) {
+            this.key = key;
+            this.values = new long[valueCount];
+        }
+    }
+
+    /**
+     * A snapshot of one monitored key.
+     */
+    public static class Entry<K> {
+
+        private final K key;
+        private final long count;
+        private final long error;
+        private final long[] values;
+
+        Entry(K key, long count, long error, long[] values) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+            this.values = values;
+        }
+
+        /**
+         * @return the key
+         */
+        public K getKey() {
+            return key;
+        }
+
+        /**
+         * @return the (over)estimated weight of the key
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the maximum overestimation of the count (0 if the key has been counted exactly)
+         */
+        public long getError() {
+            return error;
+        }
+
+        /**
+         * @param valueIndex the value index
+         * @return the value accumulated since the key was admitted
+         */
+        public long getValue(int valueIndex) {
+            return values[valueIndex];
+        }
+    }
+
+}
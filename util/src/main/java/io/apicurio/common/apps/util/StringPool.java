@@ -0,0 +1,64 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A bounded pool of canonical string instances, used to share equal strings between many
+ * long-lived data structures.  Entries are never evicted, so it is only meant for strings from a
+ * small, mostly fixed set (such as config property names), not for values that grow with the
+ * number of tenants.  Once the pool is full, new strings are simply returned as-is.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+public final class StringPool {
+
+    private static final int MAX_SIZE = 64 * 1024;
+    private static final ConcurrentHashMap<String, String> pool = new ConcurrentHashMap<>();
+
+    private StringPool() {
+    }
+
+    /**
+     * Returns the canonical instance of the given string.
+     * @param value a string (may be null)
+     */
+    public static String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String canonical = pool.get(value);
+        if (canonical != null) {
+            return canonical;
+        }
+        if (pool.size() >= MAX_SIZE) {
+            return value;
+        }
+        canonical = pool.putIfAbsent(value, value);
+        return canonical == null ? value : canonical;
+    }
+
+    /**
+     * @param value a string
+     * @return true if the given instance is the canonical (shared) instance of the string
+     */
+    public static boolean isPooled(String value) {
+        return value != null && pool.get(value) == value;
+    }
+
+}
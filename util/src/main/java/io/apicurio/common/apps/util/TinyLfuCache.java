@@ -0,0 +1,506 @@
+/*
+ * Copyright 2022 Red Hat
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.apicurio.common.apps.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ToLongBiFunction;
+
+/**
+ * A bounded cache using the W-TinyLFU eviction policy.  New entries land in a small LRU
+ * "window" segment; entries leaving the window must compete for a place in the main
+ * (segmented LRU) space against that space's eviction victim, and are only admitted if they
+ * have been used more often recently (as estimated by a {@link FrequencySketch}).  This keeps
+ * large numbers of one-off keys from flushing out the frequently used ones.
+ * <p>
+ * The cache is bounded both by number of entries and by total weight (for example an estimate
+ * of the retained bytes, see {@link #weightOf(Object)}).  Reads are lock free; the access is
+ * recorded in a lossy buffer that is replayed against the policy under a lock when writing or
+ * once enough reads have accumulated.
+ * <p>
+ * Values loaded via {@link #get(Object, Function)} are only stored if no invalidation happened
+ * while loading, so that a slow load can never re-populate the cache with stale data.
+ *
+ * @author eric.wittmann@gmail.com
+ */
+public class TinyLfuCache<K, V> {
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+    private static final int DETACHED = 3;
+    private static final int REMOVED = 4;
+
+    private static final int READ_BUFFER_SIZE = 128;
+    private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+    private static final int DRAIN_THRESHOLD_MASK = 31;
+
+    private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<>();
+    private final ToLongBiFunction<K, V> weigher;
+    private final long maxEntries;
+    private final long maxWeight;
+    private final long windowMaxWeight;
+    private final long windowMaxEntries;
+    private final long mainMaxWeight;
+    private final long mainMaxEntries;
+    private final long protectedMaxWeight;
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final FrequencySketch sketch;
+    private final AccessQueue<K, V> window = new AccessQueue<>();
+    private final AccessQueue<K, V> probation = new AccessQueue<>();
+    private final AccessQueue<K, V> protectedQueue = new AccessQueue<>();
+    private long windowWeight;
+    private long windowEntries;
+    private long mainEntries;
+    private long probationWeight;
+    private long protectedWeight;
+    private volatile long totalWeight;
+    private long generation;
+
+    private final AtomicReferenceArray<Node<K, V>> readBuffer = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+    private final AtomicLong readCounter = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructor.
+     * @param maxEntries the maximum number of entries
+     * @param maxWeight the maximum total weight of all entries
+     * @param weigher computes the weight of an entry (must be >= 0 and stable for a given entry)
+     */
+    public TinyLfuCache(long maxEntries, long maxWeight, ToLongBiFunction<K, V> weigher) {
+        if (maxEntries <= 0 || maxWeight <= 0) {
+            throw new IllegalArgumentException("Cache bounds must be positive.");
+        }
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.windowMaxWeight = Math.max(1, maxWeight / 100);
+        this.windowMaxEntries = Math.max(1, maxEntries / 100);
+        this.mainMaxWeight = maxWeight - windowMaxWeight;
+        this.mainMaxEntries = Math.max(1, maxEntries - windowMaxEntries);
+        // Divide first, so that a very large bound (e.g. Long.MAX_VALUE for entry-bounded caches) cannot overflow
+        this.protectedMaxWeight = mainMaxWeight - mainMaxWeight / 5;
+        this.sketch = new FrequencySketch(maxEntries);
+    }
+
+    /**
+     * Returns the cached value for the key, or null if not present.
+     * @param key the key
+     */
+    public V getIfPresent(K key) {
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        recordRead(node);
+        return node.value;
+    }
+
+    /**
+     * Returns the cached value for the key, loading (and caching) it if not present.  Concurrent
+     * callers missing on the same key may each invoke the loader.  A null result from the loader
+     * is returned but not cached.
+     * @param key the key
+     * @param loader loads the value for a key
+     */
+    public V get(K key, Function<K, V> loader) {
+        V value = getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+        long expectedGeneration = currentGeneration();
+        value = loader.apply(key);
+        if (value != null) {
+            put(key, value, expectedGeneration);
+        }
+        return value;
+    }
+
+    /**
+     * Adds or replaces the value for the given key.
+     * @param key the key
+     * @param value the value
+     */
+    public void put(K key, V value) {
+        put(key, value, -1);
+    }
+
+    /**
+     * Returns a stamp that can be passed to {@link #putIfValid(Object, Object, long)}.  Take the
+     * stamp before loading values from their source.
+     */
+    public long stamp() {
+        return currentGeneration();
+    }
+
+    /**
+     * Adds or replaces the value for the given key, unless an invalidation happened since the
+     * given stamp was taken (in which case the value may be stale).
+     * @param key the key
+     * @param value the value
+     * @param stamp a stamp obtained from {@link #stamp()}
+     */
+    public void putIfValid(K key, V value, long stamp) {
+        put(key, value, stamp);
+    }
+
+    /**
+     * Removes the entry for the given key (if any).  Any load of the key in progress will not be
+     * cached.
+     * @param key the key
+     */
+    public void invalidate(K key) {
+        evictionLock.lock();
+        try {
+            generation++;
+            Node<K, V> node = data.remove(key);
+            if (node != null) {
+                unlink(node);
+                totalWeight -= node.weight;
+                node.queue = REMOVED;
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void invalidateAll() {
+        evictionLock.lock();
+        try {
+            generation++;
+            for (Node<K, V> node : data.values()) {
+                node.queue = REMOVED;
+            }
+            data.clear();
+            window.clear();
+            probation.clear();
+            protectedQueue.clear();
+            windowWeight = probationWeight = protectedWeight = 0;
+            windowEntries = mainEntries = 0;
+            totalWeight = 0;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the weight of the entry for the given key, or 0 if not cached.
+     * @param key the key
+     */
+    public long weightOf(K key) {
+        Node<K, V> node = data.get(key);
+        return node == null ? 0 : node.weight;
+    }
+
+    /**
+     * Returns the weight of every cached entry, keyed by cache key.
+     */
+    public Map<K, Long> weights() {
+        Map<K, Long> rval = new HashMap<>();
+        data.forEach((key, node) -> rval.put(key, node.weight));
+        return rval;
+    }
+
+    /**
+     * Returns the number of cached entries.
+     */
+    public long size() {
+        return data.size();
+    }
+
+    /**
+     * Returns the total weight of all cached entries.
+     */
+    public long weightedSize() {
+        return totalWeight;
+    }
+
+    public long maxEntries() {
+        return maxEntries;
+    }
+
+    public long maxWeight() {
+        return maxWeight;
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    private long currentGeneration() {
+        evictionLock.lock();
+        try {
+            return generation;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void put(K key, V value, long expectedGeneration) {
+        long weight = weigher.applyAsLong(key, value);
+        evictionLock.lock();
+        try {
+            if (expectedGeneration >= 0 && expectedGeneration != generation) {
+                return;
+            }
+            drainReadBuffer();
+            Node<K, V> old = data.get(key);
+            if (old != null) {
+                unlink(old);
+                totalWeight -= old.weight;
+                old.queue = REMOVED;
+            }
+            if (weight > maxWeight) {
+                // Can never fit - just make sure the previous (now outdated) value is gone.
+                if (old != null) {
+                    data.remove(key, old);
+                }
+                return;
+            }
+            Node<K, V> node = new Node<>(key, value, weight);
+            data.put(key, node);
+            node.queue = WINDOW;
+            window.addLast(node);
+            windowWeight += weight;
+            windowEntries++;
+            totalWeight += weight;
+            sketch.increment(key);
+            evict();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void recordRead(Node<K, V> node) {
+        long idx = readCounter.getAndIncrement();
+        readBuffer.lazySet((int) (idx & READ_BUFFER_MASK), node);
+        if ((idx & DRAIN_THRESHOLD_MASK) == DRAIN_THRESHOLD_MASK && evictionLock.tryLock()) {
+            try {
+                drainReadBuffer();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    private void drainReadBuffer() {
+        for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+            Node<K, V> node = readBuffer.getAndSet(i, null);
+            if (node != null && node.queue != REMOVED) {
+                onAccess(node);
+            }
+        }
+    }
+
+    private void onAccess(Node<K, V> node) {
+        sketch.increment(node.key);
+        switch (node.queue) {
+            case WINDOW:
+                window.moveToEnd(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                probationWeight -= node.weight;
+                protectedQueue.addLast(node);
+                protectedWeight += node.weight;
+                node.queue = PROTECTED;
+                while (protectedWeight > protectedMaxWeight) {
+                    Node<K, V> demoted = protectedQueue.peekFirst();
+                    protectedQueue.remove(demoted);
+                    protectedWeight -= demoted.weight;
+                    probation.addLast(demoted);
+                    probationWeight += demoted.weight;
+                    demoted.queue = PROBATION;
+                }
+                break;
+            case PROTECTED:
+                protectedQueue.moveToEnd(node);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void evict() {
+        while (windowWeight > windowMaxWeight || windowEntries > windowMaxEntries) {
+            Node<K, V> candidate = window.peekFirst();
+            window.remove(candidate);
+            windowWeight -= candidate.weight;
+            windowEntries--;
+            candidate.queue = DETACHED;
+            admit(candidate);
+        }
+        while (totalWeight > maxWeight || data.size() > maxEntries) {
+            Node<K, V> victim = probation.peekFirst();
+            if (victim == null) {
+                victim = protectedQueue.peekFirst();
+            }
+            if (victim == null) {
+                victim = window.peekFirst();
+            }
+            if (victim == null) {
+                break;
+            }
+            evictNode(victim);
+        }
+    }
+
+    /**
+     * Moves a candidate that has left the window into the main space, evicting main-space victims
+     * as long as the candidate is estimated to be more valuable than them.
+     */
+    private void admit(Node<K, V> candidate) {
+        while (probationWeight + protectedWeight + candidate.weight > mainMaxWeight || mainEntries >= mainMaxEntries) {
+            Node<K, V> victim = probation.peekFirst();
+            if (victim == null) {
+                victim = protectedQueue.peekFirst();
+            }
+            if (victim == null) {
+                break;
+            }
+            if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                evictNode(victim);
+            } else {
+                evictNode(candidate);
+                return;
+            }
+        }
+        probation.addLast(candidate);
+        probationWeight += candidate.weight;
+        mainEntries++;
+        candidate.queue = PROBATION;
+    }
+
+    private void evictNode(Node<K, V> node) {
+        unlink(node);
+        node.queue = REMOVED;
+        data.remove(node.key, node);
+        totalWeight -= node.weight;
+        evictions.increment();
+    }
+
+    private void unlink(Node<K, V> node) {
+        switch (node.queue) {
+            case WINDOW:
+                window.remove(node);
+                windowWeight -= node.weight;
+                windowEntries--;
+                break;
+            case PROBATION:
+                probation.remove(node);
+                probationWeight -= node.weight;
+                mainEntries--;
+                break;
+            case PROTECTED:
+                protectedQueue.remove(node);
+                protectedWeight -= node.weight;
+                mainEntries--;
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        final V value;
+        final long weight;
+        int queue;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, V value, long weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Intrusive doubly-linked LRU queue (least recently used first).
+     */
+    private static final class AccessQueue<K, V> {
+        private Node<K, V> head;
+        private Node<K, V> tail;
+
+        Node<K, V> peekFirst() {
+            return head;
+        }
+
+        void addLast(Node<K, V> node) {
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+        }
+
+        void remove(Node<K, V> node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+
+        void moveToEnd(Node<K, V> node) {
+            if (tail != node) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        void clear() {
+            head = null;
+            tail = null;
+        }
+    }
+
+}
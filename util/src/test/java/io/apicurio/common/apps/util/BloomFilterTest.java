@@ -0,0 +1,55 @@
+package io.apicurio.common.apps.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class BloomFilterTest {
+
+    @Test
+    public void testNoFalseNegatives() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add("tenant-" + i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            Assertions.assertTrue(filter.mightContain("tenant-" + i));
+        }
+        Assertions.assertTrue(filter.size() > 9_900 && filter.size() <= 10_000, "size: " + filter.size());
+    }
+
+    @Test
+    public void testFalsePositiveRate() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add("tenant-" + i);
+        }
+        int falsePositives = 0;
+        int probes = 100_000;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain("other-" + i)) {
+                falsePositives++;
+            }
+        }
+        double rate = (double) falsePositives / probes;
+        Assertions.assertTrue(rate < 0.015, "false positive rate: " + rate);
+        Assertions.assertEquals(0.01, filter.expectedFalsePositiveRate(), 0.003);
+        // About 9.6 bits per key
+        Assertions.assertTrue(filter.sizeInBytes() < 13_000, "bytes: " + filter.sizeInBytes());
+    }
+
+    @Test
+    public void testOverfilledFilterReportsHigherRate() {
+        BloomFilter filter = new BloomFilter(1_000, 0.01);
+        for (int i = 0; i < 5_000; i++) {
+            filter.add("tenant-" + i);
+        }
+        Assertions.assertTrue(filter.expectedFalsePositiveRate() > 0.1);
+    }
+
+    @Test
+    public void testHashIsStable() {
+        // Shard placement depends on these values, they must never change
+        Assertions.assertEquals(0x27a4a8c6e79b9950L, HashUtil.hash64("tenant-1"));
+        Assertions.assertEquals(0xefd01f60ba992926L, HashUtil.hash64(""));
+    }
+}
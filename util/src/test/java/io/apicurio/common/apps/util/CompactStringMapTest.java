@@ -0,0 +1,87 @@
+package io.apicurio.common.apps.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CompactStringMapTest {
+
+    @Test
+    public void testBehavesLikeTheSourceMap() {
+        Map<String, String> source = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            source.put("app.property." + i, "value-" + i);
+        }
+        CompactStringMap map = CompactStringMap.copyOf(source);
+
+        Assertions.assertEquals(source, map);
+        Assertions.assertEquals(source.hashCode(), map.hashCode());
+        Assertions.assertEquals(100, map.size());
+        Assertions.assertEquals("value-42", map.get("app.property.42"));
+        Assertions.assertTrue(map.containsKey("app.property.99"));
+        Assertions.assertFalse(map.containsKey("app.property.100"));
+        Assertions.assertNull(map.get("missing"));
+        Assertions.assertNull(map.get(42));
+
+        Map<String, String> iterated = new HashMap<>();
+        map.forEach(iterated::put);
+        Assertions.assertEquals(source, iterated);
+        Assertions.assertEquals(100, map.entrySet().stream().count());
+    }
+
+    @Test
+    public void testEmptyAndNulls() {
+        Assertions.assertTrue(CompactStringMap.copyOf(new HashMap<>()).isEmpty());
+        Assertions.assertNull(CompactStringMap.copyOf(new HashMap<>()).get("x"));
+
+        Map<String, String> withNull = new HashMap<>();
+        withNull.put("x", null);
+        Assertions.assertThrows(NullPointerException.class, () -> CompactStringMap.copyOf(withNull));
+    }
+
+    @Test
+    public void testIsImmutable() {
+        CompactStringMap map = CompactStringMap.copyOf(Map.of("a", "1"));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> map.put("b", "2"));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> map.remove("a"));
+    }
+
+    @Test
+    public void testKeysAreSharedButValuesAreNotPooled() {
+        Map<String, String> first = new HashMap<>();
+        Map<String, String> second = new HashMap<>();
+        first.put(new String("app.shared.key"), "tenant-1-value");
+        second.put(new String("app.shared.key"), "tenant-2-value");
+        CompactStringMap firstMap = CompactStringMap.copyOf(first);
+        CompactStringMap secondMap = CompactStringMap.copyOf(second);
+
+        String firstKey = firstMap.keySet().iterator().next();
+        String secondKey = secondMap.keySet().iterator().next();
+        Assertions.assertSame(firstKey, secondKey);
+        Assertions.assertTrue(StringPool.isPooled(firstKey));
+        // Per-tenant values must not fill up the (never evicted) pool
+        Assertions.assertFalse(StringPool.isPooled(firstMap.get("app.shared.key")));
+    }
+
+    /**
+     * 20 boolean properties per tenant: the per-tenant overhead is the two arrays only, property
+     * names and boolean values are shared by all tenants.
+     */
+    @Test
+    public void testEstimatedSizePerTenant() {
+        long total = 0;
+        int tenants = 20_000;
+        for (int t = 0; t < tenants; t++) {
+            Map<String, String> properties = new HashMap<>();
+            for (int i = 0; i < 20; i++) {
+                properties.put(new String("app.feature." + i + ".enabled"), (t + i) % 2 == 0 ? "true" : new String("false"));
+            }
+            total += CompactStringMap.copyOf(properties).estimatedSize();
+        }
+        long perTenant = total / tenants;
+        Assertions.assertEquals(24 + 2 * (16 + 4 * 32), perTenant);
+        Assertions.assertTrue(perTenant < 320, "per tenant: " + perTenant);
+    }
+}
@@ -0,0 +1,41 @@
+package io.apicurio.common.apps.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class FrequencySketchTest {
+
+    @Test
+    public void testFrequencyIsCountedAndCapped() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        Assertions.assertEquals(0, sketch.frequency("a"));
+        for (int i = 1; i <= 10; i++) {
+            sketch.increment("a");
+            Assertions.assertEquals(i, sketch.frequency("a"));
+        }
+        for (int i = 0; i < 100; i++) {
+            sketch.increment("a");
+        }
+        Assertions.assertEquals(15, sketch.frequency("a"));
+        Assertions.assertTrue(sketch.frequency("b") < 15);
+    }
+
+    @Test
+    public void testHistoryIsAged() {
+        // 16 counters per row, aged every 160 increments
+        FrequencySketch sketch = new FrequencySketch(16);
+        for (int i = 0; i < 15; i++) {
+            sketch.increment("hot");
+        }
+        Assertions.assertEquals(15, sketch.frequency("hot"));
+
+        int increments = 0;
+        while (sketch.frequency("hot") == 15 && increments < 1000) {
+            sketch.increment("other-" + increments);
+            increments++;
+        }
+        Assertions.assertTrue(increments <= 160, "increments: " + increments);
+        Assertions.assertTrue(sketch.frequency("hot") <= 7, "frequency: " + sketch.frequency("hot"));
+    }
+
+}
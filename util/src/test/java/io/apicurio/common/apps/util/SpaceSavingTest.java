@@ -0,0 +1,110 @@
+package io.apicurio.common.apps.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class SpaceSavingTest {
+
+    @Test
+    public void testExactWhileUnderCapacity() {
+        SpaceSaving<String> summary = new SpaceSaving<>(64, 1, 4);
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j <= i; j++) {
+                summary.add("k" + i, 1, 0, 10);
+            }
+        }
+        List<SpaceSaving.Entry<String>> top = summary.top(3);
+        Assertions.assertEquals(3, top.size());
+        Assertions.assertEquals("k9", top.get(0).getKey());
+        Assertions.assertEquals(10, top.get(0).getCount());
+        Assertions.assertEquals(0, top.get(0).getError());
+        Assertions.assertEquals(100, top.get(0).getValue(0));
+        Assertions.assertEquals("k8", top.get(1).getKey());
+        Assertions.assertEquals("k7", top.get(2).getKey());
+        Assertions.assertEquals(10, summary.top(100).size());
+    }
+
+    @Test
+    public void testFindsHeavyHitters() {
+        SpaceSaving<String> summary = new SpaceSaving<>(64, 1, 4);
+        Map<String, Long> truth = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            // 5 heavy keys take half of the stream, the rest is spread over 10k light keys
+            String key = random.nextBoolean() ? "heavy-" + random.nextInt(5) : "light-" + random.nextInt(10_000);
+            summary.add(key, 1, 0, 0);
+            truth.merge(key, 1L, Long::sum);
+        }
+        List<SpaceSaving.Entry<String>> top = summary.top(5);
+        for (SpaceSaving.Entry<String> entry : top) {
+            Assertions.assertTrue(entry.getKey().startsWith("heavy-"), "unexpected key: " + entry.getKey());
+            long actual = truth.get(entry.getKey());
+            // The count never underestimates, and overestimates by at most the error
+            Assertions.assertTrue(entry.getCount() >= actual);
+            Assertions.assertTrue(entry.getCount() - entry.getError() <= actual);
+        }
+    }
+
+    @Test
+    public void testAddValueOnlyForMonitoredKeys() {
+        SpaceSaving<String> summary = new SpaceSaving<>(1, 2, 1);
+        Assertions.assertFalse(summary.addValue("a", 1, 5));
+        summary.add("a", 1, 0, 1);
+        Assertions.assertTrue(summary.addValue("a", 1, 5));
+        // "b" takes over the only counter, inheriting the count of "a" as its error but not its values
+        summary.add("b", 1, 0, 1);
+        Assertions.assertFalse(summary.addValue("a", 1, 5));
+        SpaceSaving.Entry<String> entry = summary.top(1).get(0);
+        Assertions.assertEquals("b", entry.getKey());
+        Assertions.assertEquals(2, entry.getCount());
+        Assertions.assertEquals(1, entry.getError());
+        Assertions.assertEquals(1, entry.getValue(0));
+        Assertions.assertEquals(0, entry.getValue(1));
+    }
+
+    @Test
+    public void testStripes() {
+        Assertions.assertEquals(4, new SpaceSaving<>(100, 1, 5).stripes());
+        Assertions.assertEquals(100, new SpaceSaving<>(100, 1, 4).capacity());
+        Assertions.assertEquals(1, new SpaceSaving<>(10, 1, 0).stripes());
+        Assertions.assertTrue(new SpaceSaving<>(10, 1).capacity() >= 10);
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws Exception {
+        // Enough counters for every key, whatever stripe it lands in
+        SpaceSaving<String> summary = new SpaceSaving<>(256, 1, 8);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 32_000; i++) {
+                        summary.add("k" + (i % 32), 1, 0, 2);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        List<SpaceSaving.Entry<String>> top = summary.top(100);
+        Assertions.assertEquals(32, top.size());
+        for (SpaceSaving.Entry<String> entry : top) {
+            Assertions.assertEquals(8000, entry.getCount());
+            Assertions.assertEquals(0, entry.getError());
+            Assertions.assertEquals(16000, entry.getValue(0));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package io.apicurio.common.apps.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TinyLfuCacheTest {
+
+    @Test
+    public void testBoundedByEntries() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(100, Long.MAX_VALUE, (k, v) -> 1);
+        for (int i = 0; i < 1000; i++) {
+            cache.put("key-" + i, "value-" + i);
+            Assertions.assertTrue(cache.size() <= 100, "size: " + cache.size());
+        }
+        Assertions.assertEquals(100, cache.size());
+        Assertions.assertEquals(900, cache.evictionCount());
+    }
+
+    @Test
+    public void testBoundedByWeight() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(1000, 100, (k, v) -> v.length());
+        for (int i = 0; i < 50; i++) {
+            cache.put("key-" + i, "0123456789");
+            Assertions.assertTrue(cache.weightedSize() <= 100, "weight: " + cache.weightedSize());
+        }
+        // The window (1% of the weight) cannot hold an entry of weight 10, so only the main space is used
+        Assertions.assertEquals(9, cache.size());
+
+        // A value that can never fit is not stored, and does not leave the previous value behind
+        String key = cache.weights().keySet().iterator().next();
+        cache.put(key, "x".repeat(101));
+        Assertions.assertNull(cache.getIfPresent(key));
+        Assertions.assertEquals(0, cache.weightOf(key));
+    }
+
+    @Test
+    public void testFrequentKeysSurviveScan() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(1000, Long.MAX_VALUE, (k, v) -> 1);
+        for (int i = 0; i < 100; i++) {
+            cache.put("hot-" + i, "value");
+        }
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 100; i++) {
+                Assertions.assertNotNull(cache.getIfPresent("hot-" + i));
+            }
+        }
+        // A scan of one-off keys, five times the size of the cache (an LRU would lose every hot key)
+        for (int i = 0; i < 5000; i++) {
+            cache.put("scan-" + i, "value");
+        }
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertNotNull(cache.getIfPresent("hot-" + i), "hot-" + i);
+        }
+        Assertions.assertTrue(cache.size() <= 1000);
+    }
+
+    @Test
+    public void testLoadRacingAnInvalidationIsNotCached() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(100, 1000, (k, v) -> 1);
+        String value = cache.get("a", key -> {
+            cache.invalidate(key);
+            return "stale";
+        });
+        Assertions.assertEquals("stale", value);
+        Assertions.assertNull(cache.getIfPresent("a"));
+
+        long stamp = cache.stamp();
+        cache.invalidateAll();
+        cache.putIfValid("a", "stale", stamp);
+        Assertions.assertNull(cache.getIfPresent("a"));
+
+        stamp = cache.stamp();
+        cache.putIfValid("a", "fresh", stamp);
+        Assertions.assertEquals("fresh", cache.getIfPresent("a"));
+        Assertions.assertEquals("fresh", cache.get("a", key -> "loaded"));
+    }
+
+    @Test
+    public void testNullIsNotCached() {
+        TinyLfuCache<String, String> cache = new TinyLfuCache<>(100, 1000, (k, v) -> 1);
+        Assertions.assertNull(cache.get("a", key -> null));
+        Assertions.assertEquals(0, cache.size());
+        Assertions.assertEquals("b", cache.get("a", key -> "b"));
+        Assertions.assertEquals(1, cache.size());
+        Assertions.assertEquals(0, cache.hitCount());
+        Assertions.assertEquals(2, cache.missCount());
+    }
+
+}